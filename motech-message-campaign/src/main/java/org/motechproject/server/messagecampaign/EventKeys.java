@@ -13,9 +13,16 @@ public class EventKeys {
     public final static String MESSAGE_LANGUAGES = "MessageLanguages";
     public final static String EXTERNAL_ID_KEY = "ExternalID";
     public static final String MESSAGE_KEY = "MessageKey";
+    public static final String REFERENCE_DATE_KEY = "ReferenceDate";
+    public static final String REMINDER_HOUR_KEY = "ReminderHour";
+    public static final String REMINDER_MINUTE_KEY = "ReminderMinute";
+    public static final String REPEATING_MESSAGE_KEY = "RepeatingMessageKey";
+    public static final String REPETITION_KEY = "Repetition";
 
     public final static String BASE_SUBJECT = "org.motechproject.server.messagecampaign.";
     public final static String MESSAGE_CAMPAIGN_SEND_EVENT_SUBJECT = BASE_SUBJECT + "send-campaign-message";
     public final static String MESSAGE_CAMPAIGN_FIRED_EVENT_SUBJECT = BASE_SUBJECT + "fired-campaign-message";
+    public final static String MESSAGE_CAMPAIGN_REPEAT_EVENT_SUBJECT = BASE_SUBJECT + "send-repeating-campaign-message";
+    public final static String CAMPAIGN_ENGINE_TICK_SUBJECT = BASE_SUBJECT + "campaign-engine-tick";
 
 }
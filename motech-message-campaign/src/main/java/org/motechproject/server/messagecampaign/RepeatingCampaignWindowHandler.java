@@ -0,0 +1,106 @@
+package org.motechproject.server.messagecampaign;
+
+import org.joda.time.LocalDate;
+import org.motechproject.gateway.OutboundEventGateway;
+import org.motechproject.model.MotechEvent;
+import org.motechproject.model.Time;
+import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.scheduler.SchedulerQueryService;
+import org.motechproject.server.event.annotations.MotechListener;
+import org.motechproject.server.messagecampaign.builder.SchedulerPayloadBuilder;
+import org.motechproject.server.messagecampaign.contract.CampaignRequest;
+import org.motechproject.server.messagecampaign.dao.AllMessageCampaigns;
+import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
+import org.motechproject.server.messagecampaign.domain.campaign.RepeatingCampaign;
+import org.motechproject.server.messagecampaign.scheduler.RepeatingProgramScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Handles the jobs of repeating campaigns with a repeatWindow: schedules the repetition one window ahead, then sends
+ * the send-campaign-message event the job of the message would have fired had all repetitions been scheduled at
+ * enrollment. When scheduling fails nothing is sent and the event can be handled again: the scheduler replaces a job
+ * with the JobID of the next repetition, so handling an event twice schedules it once and sends the message twice.
+ *
+ * With a {@link SchedulerQueryService} the window is only moved on while the enrollment has jobs left, so a stop
+ * that unscheduled them while the event was on its way is not undone.
+ */
+public class RepeatingCampaignWindowHandler {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private OutboundEventGateway outboundEventGateway;
+    private MotechSchedulerService schedulerService;
+    private AllMessageCampaigns allMessageCampaigns;
+    private SchedulerQueryService schedulerQueryService;
+
+    public RepeatingCampaignWindowHandler(OutboundEventGateway outboundEventGateway, MotechSchedulerService schedulerService,
+                                          AllMessageCampaigns allMessageCampaigns) {
+        this.outboundEventGateway = outboundEventGateway;
+        this.schedulerService = schedulerService;
+        this.allMessageCampaigns = allMessageCampaigns;
+    }
+
+    @MotechListener(subjects = {EventKeys.MESSAGE_CAMPAIGN_REPEAT_EVENT_SUBJECT})
+    public void handleEvent(MotechEvent motechEvent) {
+        Map<String, Object> params = motechEvent.getParameters();
+        String campaignName = (String) params.get(EventKeys.CAMPAIGN_NAME_KEY);
+        String externalId = (String) params.get(EventKeys.EXTERNAL_ID_KEY);
+        String messageKey = (String) params.get(EventKeys.MESSAGE_KEY);
+
+        Campaign campaign = allMessageCampaigns.get(campaignName);
+        if (!(campaign instanceof RepeatingCampaign)) {
+            log.error("No repeating campaign by name " + campaignName + ", the repetitions of " + messageKey + " for " + externalId + " end here");
+        } else if (stopped(campaignName, externalId)) {
+            log.warn("Campaign " + campaignName + " was stopped for " + externalId + " while " + messageKey + " fired, not scheduling after it");
+        } else {
+            scheduleNextRepetition(params, campaignName, externalId, (RepeatingCampaign) campaign);
+        }
+
+        outboundEventGateway.sendEventMessage(sendEvent(campaignName, externalId, messageKey));
+    }
+
+    private void scheduleNextRepetition(Map<String, Object> params, String campaignName, String externalId, RepeatingCampaign campaign) {
+        Time reminderTime = new Time((Integer) params.get(EventKeys.REMINDER_HOUR_KEY), (Integer) params.get(EventKeys.REMINDER_MINUTE_KEY));
+        LocalDate referenceDate = LocalDate.parse((String) params.get(EventKeys.REFERENCE_DATE_KEY));
+        CampaignRequest request = new CampaignRequest(externalId, campaignName, reminderTime, referenceDate);
+        String repeatingMessageKey = (String) params.get(EventKeys.REPEATING_MESSAGE_KEY);
+        int repetition = (Integer) params.get(EventKeys.REPETITION_KEY);
+
+        RepeatingProgramScheduler scheduler = new RepeatingProgramScheduler(schedulerService, request, campaign);
+        if (!scheduler.repeatsInWindow(repeatingMessageKey)) {
+            log.error("Campaign " + campaignName + " has no repeating message " + repeatingMessageKey + " with a repeatWindow any more, " +
+                      "its repetitions for " + externalId + " end after " + repetition);
+            return;
+        }
+        scheduler.scheduleNextRepetition(repeatingMessageKey, repetition);
+    }
+
+    /**
+     * @return the event the job of the message fires when all repetitions are scheduled at enrollment
+     */
+    private MotechEvent sendEvent(String campaignName, String externalId, String messageKey) {
+        String jobId = String.format("%s%s.%s.%s", EventKeys.BASE_SUBJECT, campaignName, externalId, messageKey);
+        HashMap params = new SchedulerPayloadBuilder()
+                .withJobId(EventKeys.MESSAGE_CAMPAIGN_SEND_EVENT_SUBJECT + "-" + jobId)
+                .withCampaignName(campaignName)
+                .withMessageKey(messageKey)
+                .withExternalId(externalId)
+                .payload();
+        return new MotechEvent(EventKeys.MESSAGE_CAMPAIGN_SEND_EVENT_SUBJECT, params);
+    }
+
+    private boolean stopped(String campaignName, String externalId) {
+        if (schedulerQueryService == null) {
+            return false;
+        }
+        String jobIdPrefix = String.format("%s%s.%s.", EventKeys.BASE_SUBJECT, campaignName, externalId);
+        return schedulerQueryService.countByPrefix(jobIdPrefix) == 0;
+    }
+
+    public void setSchedulerQueryService(SchedulerQueryService schedulerQueryService) {
+        this.schedulerQueryService = schedulerQueryService;
+    }
+}
@@ -0,0 +1,37 @@
+package org.motechproject.server.messagecampaign.builder;
+
+import org.motechproject.server.messagecampaign.EventKeys;
+
+/**
+ * The part of the job payload of a campaign message that is the same for every enrollee: the campaign name, the
+ * message key and the job ID around the external ID. The jobs of all enrollees built from one template share its
+ * strings, so a message key is held once however many jobs there are for it.
+ */
+public final class PayloadTemplate {
+    private final String campaignName;
+    private final String messageKey;
+    private final String jobIdPrefix;
+    private final String jobIdSuffix;
+
+    PayloadTemplate(String campaignName, String messageKey) {
+        this.campaignName = campaignName;
+        this.messageKey = messageKey;
+        this.jobIdPrefix = EventKeys.BASE_SUBJECT + campaignName + ".";
+        this.jobIdSuffix = "." + messageKey;
+    }
+
+    public String campaignName() {
+        return campaignName;
+    }
+
+    public String messageKey() {
+        return messageKey;
+    }
+
+    /**
+     * @return the JobID of the enrollee's job for the message
+     */
+    public String jobId(String externalId) {
+        return jobIdPrefix + externalId + jobIdSuffix;
+    }
+}
@@ -0,0 +1,48 @@
+package org.motechproject.server.messagecampaign.builder;
+
+import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link PayloadTemplate}s of the messages of each campaign definition, built the first time a job is scheduled
+ * for the message. Templates are kept for as long as the definition is in use, so a reloaded campaign gets new ones
+ * and the templates of the old definition go with it.
+ */
+public final class PayloadTemplateCache {
+    private static final Map<Campaign, ConcurrentMap<String, PayloadTemplate>> templates =
+            new WeakHashMap<Campaign, ConcurrentMap<String, PayloadTemplate>>();
+
+    private PayloadTemplateCache() {
+    }
+
+    /**
+     * @param messageKey the message key of the job, for repeating messages with its {Offset} replaced
+     */
+    public static PayloadTemplate templateFor(Campaign campaign, String messageKey) {
+        ConcurrentMap<String, PayloadTemplate> campaignTemplates = templatesOf(campaign);
+        PayloadTemplate template = campaignTemplates.get(messageKey);
+        if (template == null) {
+            template = new PayloadTemplate(campaign.name(), messageKey);
+            PayloadTemplate previous = campaignTemplates.putIfAbsent(messageKey, template);
+            if (previous != null) {
+                template = previous;
+            }
+        }
+        return template;
+    }
+
+    private static ConcurrentMap<String, PayloadTemplate> templatesOf(Campaign campaign) {
+        synchronized (templates) {
+            ConcurrentMap<String, PayloadTemplate> campaignTemplates = templates.get(campaign);
+            if (campaignTemplates == null) {
+                campaignTemplates = new ConcurrentHashMap<String, PayloadTemplate>();
+                templates.put(campaign, campaignTemplates);
+            }
+            return campaignTemplates;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package org.motechproject.server.messagecampaign.builder;
 
+import org.joda.time.LocalDate;
+import org.motechproject.model.Time;
 import org.motechproject.server.messagecampaign.EventKeys;
 
 import java.util.HashMap;
@@ -30,4 +32,32 @@ public class SchedulerPayloadBuilder {
         params.put(EventKeys.MESSAGE_KEY, messageKey);
         return this;
     }
+
+    /**
+     * Sets the JobID, CampaignName, MessageKey and ExternalID of the enrollee's job from the template of its message
+     */
+    public SchedulerPayloadBuilder withTemplate(PayloadTemplate template, String externalId) {
+        params.put(EventKeys.SCHEDULE_JOB_ID_KEY, template.jobId(externalId));
+        params.put(EventKeys.CAMPAIGN_NAME_KEY, template.campaignName());
+        params.put(EventKeys.MESSAGE_KEY, template.messageKey());
+        params.put(EventKeys.EXTERNAL_ID_KEY, externalId);
+        return this;
+    }
+
+    public SchedulerPayloadBuilder withReferenceDate(LocalDate referenceDate) {
+        params.put(EventKeys.REFERENCE_DATE_KEY, referenceDate.toString());
+        return this;
+    }
+
+    public SchedulerPayloadBuilder withReminderTime(Time reminderTime) {
+        params.put(EventKeys.REMINDER_HOUR_KEY, reminderTime.getHour());
+        params.put(EventKeys.REMINDER_MINUTE_KEY, reminderTime.getMinute());
+        return this;
+    }
+
+    public SchedulerPayloadBuilder withRepetition(String repeatingMessageKey, int repetition) {
+        params.put(EventKeys.REPEATING_MESSAGE_KEY, repeatingMessageKey);
+        params.put(EventKeys.REPETITION_KEY, repetition);
+        return this;
+    }
 }
@@ -5,53 +5,173 @@ import org.motechproject.dao.MotechJsonReader;
 import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
 import org.motechproject.server.messagecampaign.domain.message.CampaignMessage;
 import org.motechproject.server.messagecampaign.userspecified.CampaignRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * The campaigns of the definition file, parsed once and kept in memory with their messages indexed by message key.
+ * Campaigns and their message lists are shared between callers and must not be changed.
+ *
+ * The file can be edited while the application runs. It is checked at most once every
+ * messagecampaign.definition.check.interval.millis (1000 by default) and only read again when its modification time or
+ * size changed; the new definitions replace the old ones all at once. A file that can not be read or parsed is logged
+ * and the old definitions are kept. A file inside a jar can not change and is read once.
+ */
 @Component
 public class AllMessageCampaigns {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     public static final String MESSAGECAMPAIGN_DEFINITION_FILE = "messagecampaign.definition.file";
+    public static final String MESSAGECAMPAIGN_DEFINITION_CHECK_INTERVAL = "messagecampaign.definition.check.interval.millis";
+    public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 1000;
 
     private Properties properties;
     private MotechJsonReader motechJsonReader;
+    private final long checkIntervalNanos;
+
+    private volatile Definitions definitions;
+    private volatile long nextCheck;
+    private File file;
+    private long lastModified;
+    private long length;
 
     @Autowired
     public AllMessageCampaigns(@Qualifier(value = "messageCampaignProperties") Properties properties, MotechJsonReader motechJsonReader) {
         this.properties = properties;
         this.motechJsonReader = motechJsonReader;
+        String checkInterval = properties.getProperty(MESSAGECAMPAIGN_DEFINITION_CHECK_INTERVAL);
+        this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(
+                checkInterval == null ? DEFAULT_CHECK_INTERVAL_MILLIS : Long.parseLong(checkInterval.trim()));
     }
 
     public Campaign get(String campaignName) {
+        return currentDefinitions().campaigns.get(campaignName);
+    }
+
+    public CampaignMessage get(String campaignName, String messageKey) {
+        Map<String, CampaignMessage> messages = currentDefinitions().messages.get(campaignName);
+        return messages == null ? null : messages.get(messageKey);
+    }
+
+    /**
+     * Reads the definition file again, whether it changed or not
+     */
+    public synchronized void reload() {
+        URL resource = getClass().getResource(definitionFile());
+        File current = resource == null ? null : toFile(resource);
+        long modified = current == null ? 0 : current.lastModified();
+        long size = current == null ? 0 : current.length();
+
         List<CampaignRecord> campaigns =
                 (List<CampaignRecord>) motechJsonReader.readFromFile(definitionFile(),
                         new TypeToken<List<CampaignRecord>>() {
                         }.getType());
 
-        for (CampaignRecord campaign : campaigns) {
-            if (campaign.name().equals(campaignName)) return campaign.build();
-        }
-        return null;
+        Definitions loaded = new Definitions(campaigns);
+        file = current;
+        lastModified = modified;
+        length = size;
+        definitions = loaded;
+        nextCheck = System.nanoTime() + checkIntervalNanos;
     }
 
-    public CampaignMessage get(String campaignName, String messageKey) {
-        Campaign campaign = get(campaignName);
-        if (campaign != null) {
-            for(Object message : campaign.messages()){
-                CampaignMessage campaignMessage = (CampaignMessage) message;
-                if(campaignMessage.messageKey().equals(messageKey)){
-                    return campaignMessage;
+    private Definitions currentDefinitions() {
+        Definitions current = definitions;
+        if (current == null) {
+            synchronized (this) {
+                if (definitions == null) {
+                    reload();
+                }
+                return definitions;
+            }
+        }
+
+        if (file != null && System.nanoTime() - nextCheck >= 0) {
+            synchronized (this) {
+                if (System.nanoTime() - nextCheck >= 0) {
+                    if (file.lastModified() != lastModified || file.length() != length) {
+                        try {
+                            reload();
+                        } catch (Exception e) {
+                            log.warn("Unable to reload " + file + ", keeping the campaigns read before", e);
+                        }
+                    }
+                    nextCheck = System.nanoTime() + checkIntervalNanos;
                 }
+                return definitions;
             }
         }
-        return null;
+
+        return current;
     }
 
     private String definitionFile() {
         return this.properties.getProperty(MESSAGECAMPAIGN_DEFINITION_FILE);
     }
-}
\ No newline at end of file
+
+    private static File toFile(URL resource) {
+        if (!"file".equals(resource.getProtocol())) {
+            return null;
+        }
+
+        try {
+            return new File(resource.toURI());
+        } catch (URISyntaxException e) {
+            return new File(resource.getFile());
+        }
+    }
+
+    /**
+     * The campaigns by name and their messages by message key. As before, the first campaign or message of a name or
+     * key wins.
+     */
+    private static class Definitions {
+        final Map<String, Campaign> campaigns = new HashMap<String, Campaign>();
+        final Map<String, Map<String, CampaignMessage>> messages = new HashMap<String, Map<String, CampaignMessage>>();
+
+        @SuppressWarnings("unchecked")
+        Definitions(List<CampaignRecord> records) {
+            for (CampaignRecord record : records) {
+                if (campaigns.containsKey(record.name())) {
+                    continue;
+                }
+
+                Campaign campaign = record.build();
+                List<CampaignMessage> campaignMessages = campaign.messages();
+                Map<String, CampaignMessage> byKey = new HashMap<String, CampaignMessage>();
+                for (CampaignMessage message : campaignMessages) {
+                    freeze(message);
+                    if (!byKey.containsKey(message.messageKey())) {
+                        byKey.put(message.messageKey(), message);
+                    }
+                }
+                campaign.setMessages(Collections.unmodifiableList(campaignMessages));
+
+                campaigns.put(record.name(), campaign);
+                messages.put(record.name(), byKey);
+            }
+        }
+
+        private static void freeze(CampaignMessage message) {
+            if (message.formats() != null) {
+                message.formats(Collections.unmodifiableList(message.formats()));
+            }
+            if (message.languages() != null) {
+                message.languages(Collections.unmodifiableList(message.languages()));
+            }
+        }
+    }
+}
@@ -14,6 +14,8 @@ public class RepeatingCampaign extends Campaign<RepeatingCampaignMessage> {
 
     private String maxDuration;
 
+    private Integer repeatWindow;
+
     @Override
     public List<RepeatingCampaignMessage> messages() {
         return this.messages;
@@ -36,4 +38,16 @@ public class RepeatingCampaign extends Campaign<RepeatingCampaignMessage> {
     public String maxDuration() {
         return maxDuration;
     }
+
+    /**
+     * @return how many repetitions of each message are kept scheduled ahead per enrollment, null when all of them are
+     * scheduled at enrollment
+     */
+    public Integer repeatWindow() {
+        return repeatWindow;
+    }
+
+    public void repeatWindow(Integer repeatWindow) {
+        this.repeatWindow = repeatWindow;
+    }
 }
@@ -0,0 +1,61 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import org.joda.time.LocalDate;
+import org.motechproject.server.messagecampaign.domain.campaign.AbsoluteCampaign;
+import org.motechproject.server.messagecampaign.domain.message.AbsoluteCampaignMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The messages of an {@link AbsoluteCampaign} by date, as AbsoluteProgramScheduler schedules them: on their date at
+ * the reminder time.
+ */
+class AbsoluteProgram extends RunOnceProgram {
+    private final String[] messageKeys;
+    private final LocalDate[] dates;
+
+    AbsoluteProgram(AbsoluteCampaign campaign) {
+        List<AbsoluteCampaignMessage> messages = new ArrayList<AbsoluteCampaignMessage>(campaign.messages());
+        Collections.sort(messages, new Comparator<AbsoluteCampaignMessage>() {
+            @Override
+            public int compare(AbsoluteCampaignMessage one, AbsoluteCampaignMessage other) {
+                return one.date().compareTo(other.date());
+            }
+        });
+
+        messageKeys = new String[messages.size()];
+        dates = new LocalDate[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            messageKeys[i] = messages.get(i).messageKey();
+            dates[i] = messages.get(i).date();
+        }
+    }
+
+    @Override
+    protected boolean first(Enrollment enrollment) {
+        return pointAt(enrollment, 0);
+    }
+
+    @Override
+    protected boolean next(Enrollment enrollment) {
+        return pointAt(enrollment, enrollment.nextMessage + 1);
+    }
+
+    @Override
+    protected String messageKey(Enrollment enrollment) {
+        return messageKeys[enrollment.nextMessage];
+    }
+
+    private boolean pointAt(Enrollment enrollment, int message) {
+        if (message >= messageKeys.length) {
+            return false;
+        }
+
+        enrollment.nextMessage = message;
+        enrollment.nextDue = enrollment.reminderOn(dates[message]);
+        return true;
+    }
+}
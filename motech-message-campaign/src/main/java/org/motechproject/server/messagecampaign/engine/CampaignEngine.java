@@ -0,0 +1,202 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import org.joda.time.LocalDate;
+import org.motechproject.gateway.OutboundEventGateway;
+import org.motechproject.metrics.MetricsAgent;
+import org.motechproject.model.CronSchedulableJob;
+import org.motechproject.model.MotechEvent;
+import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.server.event.annotations.MotechListener;
+import org.motechproject.server.messagecampaign.EventKeys;
+import org.motechproject.server.messagecampaign.builder.PayloadTemplate;
+import org.motechproject.server.messagecampaign.builder.PayloadTemplateCache;
+import org.motechproject.server.messagecampaign.builder.SchedulerPayloadBuilder;
+import org.motechproject.server.messagecampaign.contract.CampaignRequest;
+import org.motechproject.server.messagecampaign.dao.AllMessageCampaigns;
+import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
+import org.motechproject.util.DateUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+
+/**
+ * Runs campaigns without a Quartz job per message. Every enrollment is kept in memory with the message that falls
+ * due next and when; a single cron job, the tick, sends the messages that are due and moves each enrollment on to its
+ * next message. The memory taken grows with the number of enrollments, not with the number of messages they will be
+ * sent.
+ *
+ * The events sent are the ones the message schedulers' jobs fire: subject send-campaign-message with the JobID,
+ * CampaignName, MessageKey and ExternalID parameters, where JobID is the name the job would have had. They are sent
+ * at the first tick at or after the time the job would have fired, every minute by default, which is the time itself
+ * for campaigns whose times are whole minutes. Messages whose time passed while no tick ran are sent at the next one.
+ *
+ * The engine is off unless messagecampaign.engine.enabled is true. Like jobs in a RAMJobStore, enrollments do not
+ * survive a restart. Programs are worked out once per campaign definition; an enrollment follows the campaign's
+ * current definition, so changing the messages of a campaign with enrollments may skip or repeat messages.
+ */
+public class CampaignEngine {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    public static final String ENGINE_ENABLED = "messagecampaign.engine.enabled";
+    public static final String ENGINE_TICK_CRON = "messagecampaign.engine.tick.cron";
+    public static final String DEFAULT_TICK_CRON = "0 * * * * ?";
+
+    static final String TICK_JOB_ID = "campaign-engine";
+    static final String METRIC = "motech.messagecampaign.engine";
+
+    private AllMessageCampaigns allMessageCampaigns;
+    private MotechSchedulerService schedulerService;
+    private OutboundEventGateway outboundEventGateway;
+    private MetricsAgent metricsAgent;
+    private final boolean enabled;
+    private final String tickCron;
+
+    private final CampaignEnrollments enrollments = new CampaignEnrollments();
+    private final Map<Campaign, CampaignProgram> programs =
+            Collections.synchronizedMap(new WeakHashMap<Campaign, CampaignProgram>());
+
+    public CampaignEngine(Properties properties, AllMessageCampaigns allMessageCampaigns,
+                          MotechSchedulerService schedulerService, OutboundEventGateway outboundEventGateway) {
+        this.allMessageCampaigns = allMessageCampaigns;
+        this.schedulerService = schedulerService;
+        this.outboundEventGateway = outboundEventGateway;
+        this.enabled = Boolean.parseBoolean(properties.getProperty(ENGINE_ENABLED));
+        String cron = properties.getProperty(ENGINE_TICK_CRON);
+        this.tickCron = cron == null ? DEFAULT_TICK_CRON : cron.trim();
+    }
+
+    /**
+     * Schedules the tick when the engine is enabled, in place of the one scheduled before
+     */
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(MotechSchedulerService.JOB_ID_KEY, TICK_JOB_ID);
+        schedulerService.scheduleJob(new CronSchedulableJob(
+                new MotechEvent(EventKeys.CAMPAIGN_ENGINE_TICK_SUBJECT, params), tickCron));
+        log.info("Campaign engine ticks at " + tickCron);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enrolls the enrollee of the request in the campaign, in place of an enrollment in the same campaign. The
+     * messages of a campaign of run-once messages that are due in the past are skipped, as the scheduler skips their
+     * jobs.
+     */
+    public void startFor(Campaign campaign, CampaignRequest request) {
+        LocalDate referenceDate = request.referenceDate() != null ? request.referenceDate() : DateUtil.today();
+        Enrollment enrollment = new Enrollment(request, referenceDate);
+        if (programOf(campaign).start(enrollment, DateUtil.now().getMillis())) {
+            enrollments.put(enrollment);
+        } else {
+            enrollments.remove(enrollment.campaignName, enrollment.externalId);
+        }
+    }
+
+    public void restartFor(Campaign campaign, CampaignRequest request) {
+        stopFor(request);
+        startFor(campaign, request);
+    }
+
+    public void stopFor(CampaignRequest request) {
+        enrollments.remove(request.campaignName(), request.externalId());
+    }
+
+    public int enrollmentCount() {
+        return enrollments.size();
+    }
+
+    @MotechListener(subjects = {EventKeys.CAMPAIGN_ENGINE_TICK_SUBJECT})
+    public void tick(MotechEvent tickEvent) {
+        long start = System.currentTimeMillis();
+        int sent = fireDue(DateUtil.now().getMillis());
+
+        if (metricsAgent != null) {
+            metricsAgent.logTimedEvent(METRIC + ".tick", System.currentTimeMillis() - start);
+            metricsAgent.logGauge(METRIC + ".enrollments", enrollments.size());
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Campaign engine sent " + sent + " messages");
+        }
+    }
+
+    /**
+     * Sends the messages of all enrollments that are due by now
+     *
+     * @return the number of messages sent
+     */
+    public int fireDue(long now) {
+        int sent = 0;
+        List<String> messageKeys = new ArrayList<String>();
+        Enrollment enrollment;
+        while ((enrollment = enrollments.pollDue(now)) != null) {
+            messageKeys.clear();
+            Campaign campaign = null;
+            try {
+                campaign = allMessageCampaigns.get(enrollment.campaignName);
+                if (campaign == null) {
+                    log.warn("No campaign by name " + enrollment.campaignName + ", dropping " + enrollment);
+                    enrollments.finish(enrollment);
+                    continue;
+                }
+
+                if (programOf(campaign).fire(enrollment, now, messageKeys)) {
+                    enrollments.requeue(enrollment);
+                } else {
+                    enrollments.finish(enrollment);
+                }
+            } catch (RuntimeException e) {
+                log.error("Dropping " + enrollment + " after a failed tick", e);
+                enrollments.finish(enrollment);
+            }
+
+            for (String messageKey : messageKeys) {
+                try {
+                    outboundEventGateway.sendEventMessage(event(campaign, enrollment, messageKey));
+                    sent++;
+                } catch (Exception e) {
+                    log.error("Sending " + messageKey + " to " + enrollment + " failed.", e);
+                }
+            }
+        }
+        return sent;
+    }
+
+    /**
+     * @return the event the job of the message scheduler would have fired
+     */
+    private MotechEvent event(Campaign campaign, Enrollment enrollment, String messageKey) {
+        PayloadTemplate template = PayloadTemplateCache.templateFor(campaign, messageKey);
+        HashMap params = new SchedulerPayloadBuilder()
+                .withTemplate(template, enrollment.externalId)
+                .withJobId(EventKeys.MESSAGE_CAMPAIGN_SEND_EVENT_SUBJECT + "-" + template.jobId(enrollment.externalId))
+                .payload();
+        return new MotechEvent(EventKeys.MESSAGE_CAMPAIGN_SEND_EVENT_SUBJECT, params);
+    }
+
+    private CampaignProgram programOf(Campaign campaign) {
+        CampaignProgram program = programs.get(campaign);
+        if (program == null) {
+            program = CampaignProgram.of(campaign);
+            programs.put(campaign, program);
+        }
+        return program;
+    }
+
+    public void setMetricsAgent(MetricsAgent metricsAgent) {
+        this.metricsAgent = metricsAgent;
+    }
+}
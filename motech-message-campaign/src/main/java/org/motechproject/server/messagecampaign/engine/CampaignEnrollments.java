@@ -0,0 +1,106 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The enrollments of the {@link CampaignEngine}, by campaign and external id, and ordered by the time their next
+ * message falls due.
+ *
+ * An enrollment taken by pollDue is out of the due order until the tick that took it hands it back with requeue or
+ * finish. If the enrollee is stopped or restarted in the meantime, the enrollment handed back is no longer the current
+ * one and is dropped.
+ */
+class CampaignEnrollments {
+    private static final Comparator<Enrollment> BY_DUE_TIME = new Comparator<Enrollment>() {
+        @Override
+        public int compare(Enrollment one, Enrollment other) {
+            if (one.nextDue != other.nextDue) {
+                return one.nextDue < other.nextDue ? -1 : 1;
+            }
+            int byCampaign = one.campaignName.compareTo(other.campaignName);
+            return byCampaign != 0 ? byCampaign : one.externalId.compareTo(other.externalId);
+        }
+    };
+
+    private final Map<String, Map<String, Enrollment>> byCampaign = new HashMap<String, Map<String, Enrollment>>();
+    private final TreeSet<Enrollment> due = new TreeSet<Enrollment>(BY_DUE_TIME);
+    private int size;
+
+    /**
+     * Adds the enrollment, in place of the one with the same campaign and external id
+     */
+    synchronized void put(Enrollment enrollment) {
+        Map<String, Enrollment> enrollments = byCampaign.get(enrollment.campaignName);
+        if (enrollments == null) {
+            enrollments = new HashMap<String, Enrollment>();
+            byCampaign.put(enrollment.campaignName, enrollments);
+        }
+
+        Enrollment replaced = enrollments.put(enrollment.externalId, enrollment);
+        if (replaced != null) {
+            due.remove(replaced);
+        } else {
+            size++;
+        }
+        due.add(enrollment);
+    }
+
+    synchronized Enrollment get(String campaignName, String externalId) {
+        Map<String, Enrollment> enrollments = byCampaign.get(campaignName);
+        return enrollments == null ? null : enrollments.get(externalId);
+    }
+
+    /**
+     * @return the removed enrollment, null if there was none
+     */
+    synchronized Enrollment remove(String campaignName, String externalId) {
+        Map<String, Enrollment> enrollments = byCampaign.get(campaignName);
+        Enrollment removed = enrollments == null ? null : enrollments.remove(externalId);
+        if (removed == null) {
+            return null;
+        }
+
+        due.remove(removed);
+        if (enrollments.isEmpty()) {
+            byCampaign.remove(campaignName);
+        }
+        size--;
+        return removed;
+    }
+
+    /**
+     * @return the enrollment whose message falls due first if it is due by now, taken out of the due order; null
+     * otherwise
+     */
+    synchronized Enrollment pollDue(long now) {
+        if (due.isEmpty() || due.first().nextDue > now) {
+            return null;
+        }
+        return due.pollFirst();
+    }
+
+    /**
+     * Puts an enrollment taken by pollDue back in the due order at its new due time
+     */
+    synchronized void requeue(Enrollment enrollment) {
+        if (get(enrollment.campaignName, enrollment.externalId) == enrollment) {
+            due.add(enrollment);
+        }
+    }
+
+    /**
+     * Removes an enrollment taken by pollDue that has no messages left
+     */
+    synchronized void finish(Enrollment enrollment) {
+        if (get(enrollment.campaignName, enrollment.externalId) == enrollment) {
+            remove(enrollment.campaignName, enrollment.externalId);
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+}
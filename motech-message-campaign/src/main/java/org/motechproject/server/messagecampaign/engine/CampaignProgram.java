@@ -0,0 +1,50 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import org.motechproject.server.messagecampaign.domain.MessageCampaignException;
+import org.motechproject.server.messagecampaign.domain.campaign.AbsoluteCampaign;
+import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
+import org.motechproject.server.messagecampaign.domain.campaign.CronBasedCampaign;
+import org.motechproject.server.messagecampaign.domain.campaign.OffsetCampaign;
+import org.motechproject.server.messagecampaign.domain.campaign.RepeatingCampaign;
+
+import java.util.List;
+
+/**
+ * The messages of a campaign in the order they fall due, worked out once per campaign. An {@link Enrollment} only
+ * keeps its position in the program and the time of its next message; the program tells when the following message
+ * falls due. The times are those of the jobs the campaign's MessageCampaignScheduler schedules.
+ */
+abstract class CampaignProgram {
+
+    static CampaignProgram of(Campaign campaign) {
+        if (campaign instanceof OffsetCampaign) {
+            return new OffsetProgram((OffsetCampaign) campaign);
+        }
+        if (campaign instanceof AbsoluteCampaign) {
+            return new AbsoluteProgram((AbsoluteCampaign) campaign);
+        }
+        if (campaign instanceof RepeatingCampaign) {
+            return new RepeatingProgram((RepeatingCampaign) campaign);
+        }
+        if (campaign instanceof CronBasedCampaign) {
+            return new CronProgram((CronBasedCampaign) campaign);
+        }
+        throw new MessageCampaignException("No program for campaign " + campaign.name() + " of type " + campaign.type());
+    }
+
+    /**
+     * Points the enrollment at its first message the scheduler would schedule a job for
+     *
+     * @return false if the campaign has no such message for the enrollment
+     * @throws IllegalArgumentException where the scheduler would reject the jobs of the enrollment
+     */
+    abstract boolean start(Enrollment enrollment, long now);
+
+    /**
+     * Adds the keys of the enrollment's messages that are due by now, starting with the one it points at, and points
+     * it at the next message that is not
+     *
+     * @return false once the enrollment has no messages left
+     */
+    abstract boolean fire(Enrollment enrollment, long now, List<String> messageKeys);
+}
@@ -0,0 +1,96 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import org.motechproject.scheduler.CompiledCronExpression;
+import org.motechproject.scheduler.CronExpressionCache;
+import org.motechproject.server.messagecampaign.domain.MessageCampaignException;
+import org.motechproject.server.messagecampaign.domain.campaign.CronBasedCampaign;
+import org.motechproject.server.messagecampaign.domain.message.CronBasedCampaignMessage;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The messages of a {@link CronBasedCampaign}, each sent at the times of its cron expression from the reference date
+ * on, as CronBasedProgramScheduler schedules them.
+ *
+ * A message whose time came one or more times since the last tick is sent once and then waits for its first time
+ * after the tick, which is what Quartz does with a missed cron trigger in the messagecampaign job group. An enrollment
+ * points at the message that falls due first; messages due at the same time are sent in the order of the campaign.
+ */
+class CronProgram extends CampaignProgram {
+    private final String[] messageKeys;
+    private final CompiledCronExpression[] expressions;
+
+    CronProgram(CronBasedCampaign campaign) {
+        List<CronBasedCampaignMessage> messages = campaign.messages();
+        messageKeys = new String[messages.size()];
+        expressions = new CompiledCronExpression[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            CronBasedCampaignMessage message = messages.get(i);
+            messageKeys[i] = message.messageKey();
+            try {
+                expressions[i] = CronExpressionCache.compile(message.cron());
+            } catch (ParseException e) {
+                throw new MessageCampaignException("Invalid cron expression " + message.cron() + " of " +
+                        message.messageKey() + " in campaign " + campaign.name());
+            }
+        }
+    }
+
+    /**
+     * Like a cron trigger, a message may fire at the very start of the reference date
+     */
+    @Override
+    boolean start(Enrollment enrollment, long now) {
+        long startTime = enrollment.referenceDate.toDate().getTime();
+        return pointAtFirstAfter(enrollment, startTime - 1000);
+    }
+
+    @Override
+    boolean fire(Enrollment enrollment, long now, List<String> messageKeys) {
+        long due = enrollment.nextDue;
+        int current = enrollment.nextMessage;
+
+        messageKeys.add(this.messageKeys[current]);
+        for (int message = 0; message < expressions.length; message++) {
+            if (message == current) {
+                continue;
+            }
+            long fireTime = fireTimeAfter(message, message > current ? due - 1000 : due);
+            if (fireTime <= now) {
+                messageKeys.add(this.messageKeys[message]);
+            }
+        }
+
+        return pointAtFirstAfter(enrollment, Math.max(due, now));
+    }
+
+    private boolean pointAtFirstAfter(Enrollment enrollment, long time) {
+        long nextDue = Long.MAX_VALUE;
+        int nextMessage = -1;
+        for (int message = 0; message < expressions.length; message++) {
+            long fireTime = fireTimeAfter(message, time);
+            if (fireTime < nextDue) {
+                nextDue = fireTime;
+                nextMessage = message;
+            }
+        }
+
+        if (nextMessage < 0) {
+            return false;
+        }
+
+        enrollment.nextMessage = nextMessage;
+        enrollment.nextDue = nextDue;
+        return true;
+    }
+
+    /**
+     * @return the first time of the message's expression after the given time, Long.MAX_VALUE if there is none
+     */
+    private long fireTimeAfter(int message, long time) {
+        Date fireTime = expressions[message].getTimeAfter(new Date(time));
+        return fireTime == null ? Long.MAX_VALUE : fireTime.getTime();
+    }
+}
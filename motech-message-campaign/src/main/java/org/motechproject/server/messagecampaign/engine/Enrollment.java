@@ -0,0 +1,51 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import org.joda.time.LocalDate;
+import org.motechproject.model.Time;
+import org.motechproject.server.messagecampaign.contract.CampaignRequest;
+import org.motechproject.util.DateUtil;
+
+/**
+ * One enrollee in one campaign and how far the campaign has got: the message that falls due next and when. Which
+ * messages come after it is worked out from the campaign when it is sent, so an enrollment takes the same few fields
+ * however many messages its campaign has.
+ *
+ * The progress is only changed by the {@link CampaignEngine} tick that holds the enrollment.
+ */
+class Enrollment {
+    final String campaignName;
+    final String externalId;
+    final LocalDate referenceDate;
+    final int reminderHour;
+    final int reminderMinute;
+
+    /**
+     * The position of the due message in the campaign, as its {@link CampaignProgram} counts them
+     */
+    int nextMessage;
+    long nextDue;
+
+    Enrollment(CampaignRequest request, LocalDate referenceDate) {
+        this.campaignName = request.campaignName();
+        this.externalId = request.externalId();
+        this.referenceDate = referenceDate;
+        Time reminderTime = request.reminderTime();
+        this.reminderHour = reminderTime == null ? -1 : reminderTime.getHour();
+        this.reminderMinute = reminderTime == null ? -1 : reminderTime.getMinute();
+    }
+
+    /**
+     * @return the reminder time on the given date, in milliseconds, as the message schedulers compute it
+     */
+    long reminderOn(LocalDate date) {
+        if (reminderHour < 0) {
+            throw new IllegalArgumentException("No reminder time for " + externalId + " in campaign " + campaignName);
+        }
+        return DateUtil.newDateTime(date, reminderHour, reminderMinute, 0).withMillisOfSecond(0).getMillis();
+    }
+
+    @Override
+    public String toString() {
+        return campaignName + "." + externalId;
+    }
+}
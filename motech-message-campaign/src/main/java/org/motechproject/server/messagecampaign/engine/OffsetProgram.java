@@ -0,0 +1,70 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import org.motechproject.server.messagecampaign.domain.campaign.OffsetCampaign;
+import org.motechproject.server.messagecampaign.domain.message.OffsetCampaignMessage;
+import org.motechproject.valueobjects.factory.WallTimeFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The messages of an {@link OffsetCampaign} by their offset from the reference date, as OffsetProgramScheduler
+ * schedules them: on the reference date plus the offset in days, at the reminder time.
+ */
+class OffsetProgram extends RunOnceProgram {
+    private final String[] messageKeys;
+    private final int[] offsetDays;
+
+    OffsetProgram(OffsetCampaign campaign) {
+        List<OffsetCampaignMessage> messages = new ArrayList<OffsetCampaignMessage>(campaign.messages());
+        final List<Integer> days = new ArrayList<Integer>(messages.size());
+        for (OffsetCampaignMessage message : messages) {
+            days.add(WallTimeFactory.create(message.timeOffset()).inDays());
+        }
+
+        List<Integer> order = new ArrayList<Integer>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer one, Integer other) {
+                return days.get(one).compareTo(days.get(other));
+            }
+        });
+
+        messageKeys = new String[order.size()];
+        offsetDays = new int[order.size()];
+        for (int i = 0; i < order.size(); i++) {
+            messageKeys[i] = messages.get(order.get(i)).messageKey();
+            offsetDays[i] = days.get(order.get(i));
+        }
+    }
+
+    @Override
+    protected boolean first(Enrollment enrollment) {
+        return pointAt(enrollment, 0);
+    }
+
+    @Override
+    protected boolean next(Enrollment enrollment) {
+        return pointAt(enrollment, enrollment.nextMessage + 1);
+    }
+
+    @Override
+    protected String messageKey(Enrollment enrollment) {
+        return messageKeys[enrollment.nextMessage];
+    }
+
+    private boolean pointAt(Enrollment enrollment, int message) {
+        if (message >= messageKeys.length) {
+            return false;
+        }
+
+        enrollment.nextMessage = message;
+        enrollment.nextDue = enrollment.reminderOn(enrollment.referenceDate.plusDays(offsetDays[message]));
+        return true;
+    }
+}
@@ -0,0 +1,89 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import org.motechproject.server.messagecampaign.domain.MessageCampaignException;
+import org.motechproject.server.messagecampaign.domain.campaign.RepeatingCampaign;
+import org.motechproject.server.messagecampaign.domain.message.RepeatingCampaignMessage;
+import org.motechproject.valueobjects.factory.WallTimeFactory;
+
+import java.util.List;
+
+/**
+ * The messages of a {@link RepeatingCampaign} as RepeatingProgramScheduler expands them: every message on the
+ * reference date and then every repeat interval, at the reminder time, for as long as the campaign's maximum duration.
+ * The {Offset} in a message key is replaced by the number of the repetition, counting from 1.
+ *
+ * Repetitions are not expanded; an enrollment's position is the day of its due message since the reference date
+ * times the number of messages, plus the index of the message. Messages due on the same day are sent in the order of
+ * the campaign.
+ */
+class RepeatingProgram extends RunOnceProgram {
+    private final String[] messageKeys;
+    private final int[] intervalDays;
+    private final int durationDays;
+
+    RepeatingProgram(RepeatingCampaign campaign) {
+        List<RepeatingCampaignMessage> messages = campaign.messages();
+        messageKeys = new String[messages.size()];
+        intervalDays = new int[messages.size()];
+        for (int i = 0; i < messages.size(); i++) {
+            RepeatingCampaignMessage message = messages.get(i);
+            messageKeys[i] = message.messageKey();
+            intervalDays[i] = WallTimeFactory.create(message.repeatInterval()).inDays();
+            if (intervalDays[i] < 1) {
+                throw new MessageCampaignException("Repeat interval of " + message.messageKey() + " in campaign " +
+                        campaign.name() + " is shorter than a day");
+            }
+        }
+        durationDays = WallTimeFactory.create(campaign.maxDuration()).inDays();
+    }
+
+    @Override
+    protected boolean first(Enrollment enrollment) {
+        if (messageKeys.length == 0 || durationDays <= 0) {
+            return false;
+        }
+
+        pointAt(enrollment, 0, 0);
+        return true;
+    }
+
+    @Override
+    protected boolean next(Enrollment enrollment) {
+        int day = enrollment.nextMessage / messageKeys.length;
+        int current = enrollment.nextMessage % messageKeys.length;
+
+        int nextDay = Integer.MAX_VALUE;
+        int nextMessage = -1;
+        for (int message = 0; message < messageKeys.length; message++) {
+            int interval = intervalDays[message];
+            int repetitionDay = (day + interval - 1) / interval * interval;
+            if (repetitionDay == day && message <= current) {
+                repetitionDay += interval;
+            }
+            if (repetitionDay < durationDays && repetitionDay < nextDay) {
+                nextDay = repetitionDay;
+                nextMessage = message;
+            }
+        }
+
+        if (nextMessage < 0) {
+            return false;
+        }
+
+        pointAt(enrollment, nextDay, nextMessage);
+        return true;
+    }
+
+    @Override
+    protected String messageKey(Enrollment enrollment) {
+        int day = enrollment.nextMessage / messageKeys.length;
+        int message = enrollment.nextMessage % messageKeys.length;
+        Integer repetition = day / intervalDays[message] + 1;
+        return messageKeys[message].replace("{Offset}", repetition.toString());
+    }
+
+    private void pointAt(Enrollment enrollment, int day, int message) {
+        enrollment.nextMessage = day * messageKeys.length + message;
+        enrollment.nextDue = enrollment.reminderOn(enrollment.referenceDate.plusDays(day));
+    }
+}
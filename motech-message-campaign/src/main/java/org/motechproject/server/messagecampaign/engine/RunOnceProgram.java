@@ -0,0 +1,55 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import java.util.List;
+
+/**
+ * A program whose messages are each sent once, the ones the message schedulers give a RunOnceSchedulableJob. Every
+ * message due by the time of a tick is sent, as Quartz fires every run-once trigger that was missed. Messages already
+ * due when the enrollment starts are skipped, as the scheduler skips run-once jobs in the past.
+ */
+abstract class RunOnceProgram extends CampaignProgram {
+
+    @Override
+    boolean start(Enrollment enrollment, long now) {
+        if (!first(enrollment)) {
+            return false;
+        }
+
+        while (enrollment.nextDue < now) {
+            if (!next(enrollment)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    boolean fire(Enrollment enrollment, long now, List<String> messageKeys) {
+        do {
+            messageKeys.add(messageKey(enrollment));
+            if (!next(enrollment)) {
+                return false;
+            }
+        } while (enrollment.nextDue <= now);
+        return true;
+    }
+
+    /**
+     * Points the enrollment at its first message
+     *
+     * @return false if there is none
+     */
+    protected abstract boolean first(Enrollment enrollment);
+
+    /**
+     * Points the enrollment at the message after the one it points at
+     *
+     * @return false if there is none
+     */
+    protected abstract boolean next(Enrollment enrollment);
+
+    /**
+     * @return the key of the message the enrollment points at
+     */
+    protected abstract String messageKey(Enrollment enrollment);
+}
@@ -7,14 +7,17 @@ import org.motechproject.model.RunOnceSchedulableJob;
 import org.motechproject.model.Time;
 import org.motechproject.scheduler.MotechSchedulerService;
 import org.motechproject.server.messagecampaign.EventKeys;
+import org.motechproject.server.messagecampaign.builder.PayloadTemplateCache;
 import org.motechproject.server.messagecampaign.builder.SchedulerPayloadBuilder;
 import org.motechproject.server.messagecampaign.contract.CampaignRequest;
 import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
 import org.motechproject.server.messagecampaign.domain.message.CampaignMessage;
 import org.motechproject.util.DateUtil;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public abstract class MessageCampaignScheduler<T extends CampaignMessage> {
@@ -22,20 +25,55 @@ public abstract class MessageCampaignScheduler<T extends CampaignMessage> {
     protected CampaignRequest campaignRequest;
     protected Campaign<T> campaign;
 
+    private List<CronSchedulableJob> cronJobs;
+    private List<RunOnceSchedulableJob> runOnceJobs;
+
     protected MessageCampaignScheduler(MotechSchedulerService schedulerService, CampaignRequest campaignRequest, Campaign<T> campaign) {
         this.schedulerService = schedulerService;
         this.campaign = campaign;
         this.campaignRequest = campaignRequest;
     }
 
+    /**
+     * Schedules the jobs of all campaign messages with one call to the scheduler per job type
+     */
     public void start() {
-        for (CampaignMessage message : campaign.messages())
-            scheduleJobFor(message);
+        List<CronSchedulableJob> cronJobs = new ArrayList<CronSchedulableJob>();
+        List<RunOnceSchedulableJob> runOnceJobs = new ArrayList<RunOnceSchedulableJob>();
+        addJobsTo(cronJobs, runOnceJobs);
+
+        if (!cronJobs.isEmpty())
+            schedulerService.scheduleJobs(cronJobs);
+        if (!runOnceJobs.isEmpty())
+            schedulerService.scheduleRunOnceJobs(runOnceJobs);
+    }
+
+    /**
+     * Adds the jobs of all campaign messages to the lists instead of scheduling them, so that the jobs of many
+     * enrollments can be scheduled together
+     */
+    public void addJobsTo(List<CronSchedulableJob> cronJobs, List<RunOnceSchedulableJob> runOnceJobs) {
+        this.cronJobs = cronJobs;
+        this.runOnceJobs = runOnceJobs;
+        try {
+            for (CampaignMessage message : campaign.messages())
+                scheduleJobFor(message);
+        } finally {
+            this.cronJobs = null;
+            this.runOnceJobs = null;
+        }
     }
 
     public void stop() {
-        String jobIdPrefix = String.format("%s%s.%s", EventKeys.BASE_SUBJECT, campaign.name(), campaignRequest.externalId());
-        schedulerService.unscheduleAllJobs(jobIdPrefix);
+        schedulerService.unscheduleAllJobs(jobIdPrefix());
+    }
+
+    /**
+     * @return the prefix of the job IDs of all jobs of the enrollment, ending in the "." after the external ID so that it
+     * does not match the jobs of external IDs that start with this one
+     */
+    public String jobIdPrefix() {
+        return String.format("%s%s.%s.", EventKeys.BASE_SUBJECT, campaign.name(), campaignRequest.externalId());
     }
 
     public void restart() {
@@ -46,17 +84,24 @@ public abstract class MessageCampaignScheduler<T extends CampaignMessage> {
     protected abstract void scheduleJobFor(CampaignMessage message);
 
     protected void scheduleJobOn(Time startTime, LocalDate startDate, Map<String, Object> params) {
-        MotechEvent motechEvent = new MotechEvent(EventKeys.MESSAGE_CAMPAIGN_SEND_EVENT_SUBJECT, params);
+        scheduleJobOn(EventKeys.MESSAGE_CAMPAIGN_SEND_EVENT_SUBJECT, startTime, startDate, params);
+    }
+
+    protected void scheduleJobOn(String subject, Time startTime, LocalDate startDate, Map<String, Object> params) {
+        runOnceJobs.add(runOnceJob(subject, startTime, startDate, params));
+    }
+
+    protected RunOnceSchedulableJob runOnceJob(String subject, Time startTime, LocalDate startDate, Map<String, Object> params) {
+        MotechEvent motechEvent = new MotechEvent(subject, params);
         Date startDateTime = startDate == null ? null : DateUtil.newDateTime(startDate, startTime.getHour(), startTime.getMinute(), 0).toDate();
-        RunOnceSchedulableJob runOnceSchedulableJob = new RunOnceSchedulableJob(motechEvent, startDateTime);
-        schedulerService.scheduleRunOnceJob(runOnceSchedulableJob);
+        return new RunOnceSchedulableJob(motechEvent, startDateTime);
     }
 
     protected void scheduleJobOn(String cronJobExpression, LocalDate startDate, Map<String, Object> params) {
         MotechEvent motechEvent = new MotechEvent(EventKeys.MESSAGE_CAMPAIGN_SEND_EVENT_SUBJECT, params);
         Date startDateAsDate = startDate == null ? null : startDate.toDate();
         CronSchedulableJob schedulableJob = new CronSchedulableJob(motechEvent, cronJobExpression, startDateAsDate, null);
-        schedulerService.scheduleJob(schedulableJob);
+        cronJobs.add(schedulableJob);
     }
 
     protected LocalDate referenceDate() {
@@ -64,12 +109,8 @@ public abstract class MessageCampaignScheduler<T extends CampaignMessage> {
     }
 
     protected HashMap jobParams(String messageKey) {
-        String jobId = String.format("%s%s.%s.%s", EventKeys.BASE_SUBJECT, campaign.name(), campaignRequest.externalId(), messageKey);
         return new SchedulerPayloadBuilder()
-                .withJobId(jobId)
-                .withCampaignName(campaign.name())
-                .withMessageKey(messageKey)
-                .withExternalId(campaignRequest.externalId())
+                .withTemplate(PayloadTemplateCache.templateFor(campaign, messageKey), campaignRequest.externalId())
                 .payload();
     }
 }
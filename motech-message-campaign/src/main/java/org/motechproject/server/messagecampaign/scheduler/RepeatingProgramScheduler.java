@@ -2,6 +2,8 @@ package org.motechproject.server.messagecampaign.scheduler;
 
 import org.joda.time.LocalDate;
 import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.server.messagecampaign.EventKeys;
+import org.motechproject.server.messagecampaign.builder.SchedulerPayloadBuilder;
 import org.motechproject.server.messagecampaign.contract.CampaignRequest;
 import org.motechproject.server.messagecampaign.domain.campaign.RepeatingCampaign;
 import org.motechproject.server.messagecampaign.domain.message.CampaignMessage;
@@ -9,7 +11,19 @@ import org.motechproject.server.messagecampaign.domain.message.RepeatingCampaign
 import org.motechproject.valueobjects.WallTime;
 import org.motechproject.valueobjects.factory.WallTimeFactory;
 
+import java.util.HashMap;
+
+/**
+ * Schedules a job for every repetition of each message, from the reference date until the campaign's maxDuration.
+ *
+ * A campaign with a repeatWindow only schedules the first repeatWindow repetitions of each message at enrollment. Their
+ * jobs fire send-repeating-campaign-message events carrying what is needed to go on; for each one the
+ * RepeatingCampaignWindowHandler sends the send-campaign-message event the job of the eager schedule would have fired
+ * and schedules the repetition repeatWindow after it with {@link #scheduleNextRepetition}. A window of 1 is taken as
+ * 2, so an enrollment that is not stopped always has a job ahead of the one firing.
+ */
 public class RepeatingProgramScheduler extends MessageCampaignScheduler {
+    public static final int MIN_REPEAT_WINDOW = 2;
 
     public RepeatingProgramScheduler(MotechSchedulerService schedulerService, CampaignRequest enrollRequest, RepeatingCampaign campaign) {
         super(schedulerService, enrollRequest, campaign);
@@ -17,18 +31,92 @@ public class RepeatingProgramScheduler extends MessageCampaignScheduler {
 
     @Override
     protected void scheduleJobFor(CampaignMessage message) {
-        LocalDate startDate = referenceDate();
-        WallTime duration = WallTimeFactory.create(((RepeatingCampaign)campaign).maxDuration());
-        LocalDate endDate = startDate.plusDays(duration.inDays());
-        int repeatIntervalInDays = WallTimeFactory.create(((RepeatingCampaignMessage)message).repeatInterval()).inDays();
-
-        LocalDate jobDate = startDate;
-        Integer index = 1;
-        while (jobDate.isBefore(endDate)) {
-            String messageKey = message.messageKey().replace("{Offset}", index.toString());
-            scheduleJobOn(campaignRequest.reminderTime(), jobDate, jobParams(messageKey));
+        RepeatingCampaignMessage repeatingMessage = (RepeatingCampaignMessage) message;
+        LocalDate endDate = endDate();
+        int repeatIntervalInDays = repeatIntervalInDays(repeatingMessage);
+        int window = repeatWindow();
+
+        LocalDate jobDate = referenceDate();
+        int repetition = 1;
+        while (jobDate.isBefore(endDate) && (window == 0 || repetition <= window)) {
+            if (window == 0) {
+                scheduleJobOn(campaignRequest.reminderTime(), jobDate, jobParams(messageKey(repeatingMessage, repetition)));
+            } else {
+                scheduleJobOn(EventKeys.MESSAGE_CAMPAIGN_REPEAT_EVENT_SUBJECT, campaignRequest.reminderTime(), jobDate, windowJobParams(repeatingMessage, repetition));
+            }
             jobDate = jobDate.plusDays(repeatIntervalInDays);
-            index++;
+            repetition++;
+        }
+    }
+
+    /**
+     * Schedules the repetition of the message one window after the repetition that fired
+     *
+     * @param repeatingMessageKey the message key of the message in the campaign, before its {Offset} is replaced
+     * @return false when there is no such repetition: the campaign ends before it, has no such message or no window
+     */
+    public boolean scheduleNextRepetition(String repeatingMessageKey, int firedRepetition) {
+        int window = repeatWindow();
+        RepeatingCampaignMessage message = message(repeatingMessageKey);
+        if (window == 0 || message == null) {
+            return false;
+        }
+
+        int repetition = firedRepetition + window;
+        LocalDate jobDate = referenceDate().plusDays((repetition - 1) * repeatIntervalInDays(message));
+        if (!jobDate.isBefore(endDate())) {
+            return false;
+        }
+        schedulerService.scheduleRunOnceJob(runOnceJob(EventKeys.MESSAGE_CAMPAIGN_REPEAT_EVENT_SUBJECT,
+                campaignRequest.reminderTime(), jobDate, windowJobParams(message, repetition)));
+        return true;
+    }
+
+    /**
+     * @param repeatingMessageKey the message key of the message in the campaign, before its {Offset} is replaced
+     * @return whether the campaign has the message and schedules its repetitions a window at a time
+     */
+    public boolean repeatsInWindow(String repeatingMessageKey) {
+        return repeatWindow() != 0 && message(repeatingMessageKey) != null;
+    }
+
+    private LocalDate endDate() {
+        WallTime duration = WallTimeFactory.create(((RepeatingCampaign) campaign).maxDuration());
+        return referenceDate().plusDays(duration.inDays());
+    }
+
+    private int repeatIntervalInDays(RepeatingCampaignMessage message) {
+        return WallTimeFactory.create(message.repeatInterval()).inDays();
+    }
+
+    private String messageKey(RepeatingCampaignMessage message, Integer repetition) {
+        return message.messageKey().replace("{Offset}", repetition.toString());
+    }
+
+    private HashMap windowJobParams(RepeatingCampaignMessage message, int repetition) {
+        HashMap params = jobParams(messageKey(message, repetition));
+        params.putAll(new SchedulerPayloadBuilder()
+                .withReferenceDate(referenceDate())
+                .withReminderTime(campaignRequest.reminderTime())
+                .withRepetition(message.messageKey(), repetition)
+                .payload());
+        return params;
+    }
+
+    private RepeatingCampaignMessage message(String repeatingMessageKey) {
+        for (Object message : campaign.messages()) {
+            if (((RepeatingCampaignMessage) message).messageKey().equals(repeatingMessageKey)) {
+                return (RepeatingCampaignMessage) message;
+            }
+        }
+        return null;
+    }
+
+    private int repeatWindow() {
+        Integer window = ((RepeatingCampaign) campaign).repeatWindow();
+        if (window == null || window <= 0) {
+            return 0;
         }
+        return Math.max(window, MIN_REPEAT_WINDOW);
     }
 }
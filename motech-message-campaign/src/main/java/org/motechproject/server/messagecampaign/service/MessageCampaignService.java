@@ -2,9 +2,19 @@ package org.motechproject.server.messagecampaign.service;
 
 import org.motechproject.server.messagecampaign.contract.CampaignRequest;
 
+import java.util.Collection;
+
 public interface MessageCampaignService {
     void startFor(CampaignRequest enrollRequest);
     void restartFor(CampaignRequest enrollRequest);
     void stopFor(CampaignRequest enrollRequest);
 
+    /**
+     * Enrolls all the requests, resolving each campaign once and scheduling the jobs of many enrollments together.
+     * All campaigns are resolved before anything is scheduled.
+     */
+    void startFor(Collection<CampaignRequest> enrollRequests);
+    void restartFor(Collection<CampaignRequest> enrollRequests);
+    void stopFor(Collection<CampaignRequest> enrollRequests);
+
 }
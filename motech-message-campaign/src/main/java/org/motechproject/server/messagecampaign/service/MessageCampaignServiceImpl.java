@@ -1,20 +1,45 @@
 package org.motechproject.server.messagecampaign.service;
 
+import org.motechproject.model.CronSchedulableJob;
+import org.motechproject.model.RunOnceSchedulableJob;
 import org.motechproject.scheduler.MotechSchedulerService;
 import org.motechproject.server.messagecampaign.contract.CampaignRequest;
 import org.motechproject.server.messagecampaign.dao.AllMessageCampaigns;
 import org.motechproject.server.messagecampaign.domain.MessageCampaignException;
 import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
 import org.motechproject.server.messagecampaign.domain.message.CampaignMessage;
+import org.motechproject.server.messagecampaign.engine.CampaignEngine;
 import org.motechproject.server.messagecampaign.scheduler.MessageCampaignScheduler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schedules a Quartz job per campaign message, or enrolls in the {@link CampaignEngine} when it is enabled. Stopping
+ * and restarting with the engine also unschedule the jobs of the enrollee, which may have been scheduled before the
+ * engine was enabled.
+ *
+ * The bulk variants schedule the jobs of up to ENROLLMENTS_PER_CALL enrollments of a campaign with one call to the
+ * scheduler per job type, and unschedule them with one call. Messages due in the past are skipped by the scheduler. A
+ * job the scheduler rejects, such as a cron job with an invalid expression, fails the enrollments of its call and
+ * stops the batch; the calls before it have been made.
+ */
 @Service
 public class MessageCampaignServiceImpl implements MessageCampaignService {
+    static final int ENROLLMENTS_PER_CALL = 500;
+
     private MotechSchedulerService schedulerService;
     private AllMessageCampaigns allMessageCampaigns;
 
+    @Autowired(required = false)
+    private CampaignEngine campaignEngine;
+
     @Autowired
     public MessageCampaignServiceImpl(AllMessageCampaigns allMessageCampaigns, MotechSchedulerService schedulerService) {
         this.allMessageCampaigns = allMessageCampaigns;
@@ -22,21 +47,137 @@ public class MessageCampaignServiceImpl implements MessageCampaignService {
     }
 
     public void startFor(CampaignRequest request) {
-        getCampaignFor(request).start();
+        Campaign<CampaignMessage> campaign = getCampaign(request);
+        if (usesEngine()) {
+            campaignEngine.startFor(campaign, request);
+        } else {
+            campaign.getScheduler(schedulerService, request).start();
+        }
     }
 
     public void restartFor(CampaignRequest request) {
-        getCampaignFor(request).restart();
+        Campaign<CampaignMessage> campaign = getCampaign(request);
+        if (usesEngine()) {
+            campaign.getScheduler(schedulerService, request).stop();
+            campaignEngine.restartFor(campaign, request);
+        } else {
+            campaign.getScheduler(schedulerService, request).restart();
+        }
     }
 
     public void stopFor(CampaignRequest request) {
         getCampaignFor(request).stop();
+        if (usesEngine()) {
+            campaignEngine.stopFor(request);
+        }
+    }
+
+    public void startFor(Collection<CampaignRequest> requests) {
+        for (Map.Entry<Campaign<CampaignMessage>, List<CampaignRequest>> batch : byCampaign(requests).entrySet()) {
+            Campaign<CampaignMessage> campaign = batch.getKey();
+            if (usesEngine()) {
+                for (CampaignRequest request : batch.getValue())
+                    campaignEngine.startFor(campaign, request);
+            } else {
+                for (List<CampaignRequest> chunk : chunks(batch.getValue()))
+                    scheduleJobs(campaign, chunk);
+            }
+        }
+    }
+
+    public void restartFor(Collection<CampaignRequest> requests) {
+        for (Map.Entry<Campaign<CampaignMessage>, List<CampaignRequest>> batch : byCampaign(requests).entrySet()) {
+            Campaign<CampaignMessage> campaign = batch.getKey();
+            for (List<CampaignRequest> chunk : chunks(batch.getValue())) {
+                unscheduleJobs(campaign, chunk);
+                if (usesEngine()) {
+                    for (CampaignRequest request : chunk)
+                        campaignEngine.restartFor(campaign, request);
+                } else {
+                    scheduleJobs(campaign, chunk);
+                }
+            }
+        }
+    }
+
+    public void stopFor(Collection<CampaignRequest> requests) {
+        for (Map.Entry<Campaign<CampaignMessage>, List<CampaignRequest>> batch : byCampaign(requests).entrySet()) {
+            for (List<CampaignRequest> chunk : chunks(batch.getValue())) {
+                unscheduleJobs(batch.getKey(), chunk);
+            }
+            if (usesEngine()) {
+                for (CampaignRequest request : batch.getValue())
+                    campaignEngine.stopFor(request);
+            }
+        }
+    }
+
+    public void setCampaignEngine(CampaignEngine campaignEngine) {
+        this.campaignEngine = campaignEngine;
+    }
+
+    private boolean usesEngine() {
+        return campaignEngine != null && campaignEngine.isEnabled();
+    }
+
+    private void scheduleJobs(Campaign<CampaignMessage> campaign, List<CampaignRequest> requests) {
+        List<CronSchedulableJob> cronJobs = new ArrayList<CronSchedulableJob>();
+        List<RunOnceSchedulableJob> runOnceJobs = new ArrayList<RunOnceSchedulableJob>();
+        for (CampaignRequest request : requests)
+            campaign.getScheduler(schedulerService, request).addJobsTo(cronJobs, runOnceJobs);
+
+        if (!cronJobs.isEmpty())
+            schedulerService.scheduleJobs(cronJobs);
+        if (!runOnceJobs.isEmpty())
+            schedulerService.scheduleRunOnceJobs(runOnceJobs);
+    }
+
+    private void unscheduleJobs(Campaign<CampaignMessage> campaign, List<CampaignRequest> requests) {
+        List<String> jobIdPrefixes = new ArrayList<String>(requests.size());
+        for (CampaignRequest request : requests)
+            jobIdPrefixes.add(campaign.getScheduler(schedulerService, request).jobIdPrefix());
+        schedulerService.unscheduleAllJobs(jobIdPrefixes);
+    }
+
+    /**
+     * @return the requests by campaign, in the order the campaigns first appear; throws before anything is scheduled if
+     * a campaign does not exist
+     */
+    private Map<Campaign<CampaignMessage>, List<CampaignRequest>> byCampaign(Collection<CampaignRequest> requests) {
+        Map<String, Campaign<CampaignMessage>> campaigns = new HashMap<String, Campaign<CampaignMessage>>();
+        Map<Campaign<CampaignMessage>, List<CampaignRequest>> batches = new LinkedHashMap<Campaign<CampaignMessage>, List<CampaignRequest>>();
+        for (CampaignRequest request : requests) {
+            Campaign<CampaignMessage> campaign = campaigns.get(request.campaignName());
+            if (campaign == null) {
+                campaign = getCampaign(request);
+                campaigns.put(request.campaignName(), campaign);
+            }
+
+            List<CampaignRequest> batch = batches.get(campaign);
+            if (batch == null) {
+                batch = new ArrayList<CampaignRequest>();
+                batches.put(campaign, batch);
+            }
+            batch.add(request);
+        }
+        return batches;
+    }
+
+    private List<List<CampaignRequest>> chunks(List<CampaignRequest> requests) {
+        List<List<CampaignRequest>> chunks = new ArrayList<List<CampaignRequest>>();
+        for (int from = 0; from < requests.size(); from += ENROLLMENTS_PER_CALL)
+            chunks.add(requests.subList(from, Math.min(from + ENROLLMENTS_PER_CALL, requests.size())));
+        return chunks;
     }
 
     private MessageCampaignScheduler getCampaignFor(CampaignRequest enrollRequest) {
+        return getCampaign(enrollRequest).getScheduler(schedulerService, enrollRequest);
+    }
+
+    private Campaign<CampaignMessage> getCampaign(CampaignRequest enrollRequest) {
         Campaign<CampaignMessage> campaign = allMessageCampaigns.get(enrollRequest.campaignName());
         if (campaign == null)
             throw new MessageCampaignException("No campaign by name : " + enrollRequest.campaignName());
-        return campaign.getScheduler(schedulerService, enrollRequest);
+        return campaign;
     }
 }
\ No newline at end of file
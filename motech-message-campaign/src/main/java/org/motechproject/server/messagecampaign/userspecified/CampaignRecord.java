@@ -12,6 +12,7 @@ public class CampaignRecord {
     private List<CampaignMessageRecord> messages;
     private CampaignType type;
     private String maxDuration;
+    private Integer repeatWindow;
 
     public String name() {
         return this.name;
@@ -27,6 +28,7 @@ public class CampaignRecord {
         }
         if (type == CampaignType.REPEATING) {
             ((RepeatingCampaign) campaign).maxDuration(maxDuration);
+            ((RepeatingCampaign) campaign).repeatWindow(repeatWindow);
         }
         return campaign;
     }
@@ -66,4 +68,13 @@ public class CampaignRecord {
         this.maxDuration = maxDuration;
         return this;
     }
+
+    public Integer repeatWindow() {
+        return repeatWindow;
+    }
+
+    public CampaignRecord repeatWindow(Integer repeatWindow) {
+        this.repeatWindow = repeatWindow;
+        return this;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,119 @@
+package org.motechproject.server.messagecampaign;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.motechproject.gateway.OutboundEventGateway;
+import org.motechproject.model.MotechEvent;
+import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.server.messagecampaign.builder.CampaignBuilder;
+import org.motechproject.server.messagecampaign.builder.EnrollRequestBuilder;
+import org.motechproject.server.messagecampaign.contract.CampaignRequest;
+import org.motechproject.server.messagecampaign.dao.AllMessageCampaigns;
+import org.motechproject.server.messagecampaign.domain.campaign.RepeatingCampaign;
+import org.motechproject.server.messagecampaign.scheduler.RepeatingProgramScheduler;
+import org.motechproject.util.DateUtil;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.Trigger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"/testApplicationContext.xml"})
+public class RepeatingCampaignWindowHandlerIT {
+    private static final String JOB_GROUP = "messagecampaign";
+
+    @Autowired
+    private MotechSchedulerService schedulerService;
+    @Autowired
+    private SchedulerFactoryBean schedulerFactoryBean;
+
+    private RepeatingProgramScheduler programScheduler;
+
+    @After
+    public void tearDown() {
+        if (programScheduler != null) {
+            programScheduler.stop();
+        }
+    }
+
+    @Test
+    public void shouldSendTheMessageOfAnEventHandledTwice() throws Exception {
+        RepeatingCampaign campaign = new CampaignBuilder().defaultRepeatingCampaign();
+        campaign.maxDuration("10 Weeks");
+        campaign.repeatWindow(3);
+        AllMessageCampaigns allMessageCampaigns = mock(AllMessageCampaigns.class);
+        when(allMessageCampaigns.get(campaign.name())).thenReturn(campaign);
+
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setExternalId(UUID.randomUUID().toString());
+        request.setReferenceDate(DateUtil.today().plusDays(1));
+        programScheduler = new RepeatingProgramScheduler(schedulerService, request, campaign);
+        programScheduler.start();
+
+        RecordingGateway gateway = new RecordingGateway();
+        RepeatingCampaignWindowHandler handler = new RepeatingCampaignWindowHandler(gateway, schedulerService, allMessageCampaigns);
+        MotechEvent event = firstRepetitionEvent(programScheduler.jobIdPrefix());
+
+        handler.handleEvent(event);
+        int jobs = jobsOfEnrollment(programScheduler.jobIdPrefix()).size();
+        handler.handleEvent(event);
+
+        assertEquals(2, gateway.events.size());
+        assertEquals(jobs, jobsOfEnrollment(programScheduler.jobIdPrefix()).size());
+    }
+
+    /**
+     * @return the event the repetition job of the enrollment that fires first sends, as the scheduler sends it
+     */
+    @SuppressWarnings("unchecked")
+    private MotechEvent firstRepetitionEvent(String jobIdPrefix) throws Exception {
+        Scheduler scheduler = schedulerFactoryBean.getScheduler();
+        Trigger first = null;
+        for (String triggerName : jobsOfEnrollment(jobIdPrefix)) {
+            Trigger trigger = scheduler.getTrigger(triggerName, JOB_GROUP);
+            if (triggerName.startsWith(EventKeys.MESSAGE_CAMPAIGN_REPEAT_EVENT_SUBJECT) &&
+                    (first == null || trigger.getNextFireTime().before(first.getNextFireTime()))) {
+                first = trigger;
+            }
+        }
+
+        JobDetail jobDetail = scheduler.getJobDetail(first.getName(), JOB_GROUP);
+        Map<String, Object> params = new HashMap<String, Object>(jobDetail.getJobDataMap().getWrappedMap());
+        String subject = (String) params.remove(MotechEvent.EVENT_TYPE_KEY_NAME);
+        params.put(EventKeys.SCHEDULE_JOB_ID_KEY, jobDetail.getName());
+        return new MotechEvent(subject, params);
+    }
+
+    private List<String> jobsOfEnrollment(String jobIdPrefix) throws Exception {
+        List<String> triggerNames = new ArrayList<String>();
+        for (String triggerName : schedulerFactoryBean.getScheduler().getTriggerNames(JOB_GROUP)) {
+            if (triggerName.contains("-" + jobIdPrefix)) {
+                triggerNames.add(triggerName);
+            }
+        }
+        return triggerNames;
+    }
+
+    private static class RecordingGateway implements OutboundEventGateway {
+        final List<MotechEvent> events = new ArrayList<MotechEvent>();
+
+        @Override
+        public void sendEventMessage(MotechEvent motechEvent) {
+            events.add(motechEvent);
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package org.motechproject.server.messagecampaign;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.motechproject.gateway.OutboundEventGateway;
+import org.motechproject.model.CronSchedulableJob;
+import org.motechproject.model.MotechEvent;
+import org.motechproject.model.RepeatingSchedulableJob;
+import org.motechproject.model.RunOnceSchedulableJob;
+import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.scheduler.SchedulerQueryService;
+import org.motechproject.server.messagecampaign.builder.CampaignBuilder;
+import org.motechproject.server.messagecampaign.builder.EnrollRequestBuilder;
+import org.motechproject.server.messagecampaign.contract.CampaignRequest;
+import org.motechproject.server.messagecampaign.dao.AllMessageCampaigns;
+import org.motechproject.server.messagecampaign.domain.campaign.RepeatingCampaign;
+import org.motechproject.server.messagecampaign.scheduler.RepeatingProgramScheduler;
+import org.motechproject.util.DateUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class RepeatingCampaignWindowHandlerTest {
+    @Mock
+    private AllMessageCampaigns allMessageCampaigns;
+
+    private RecordingSchedulerService schedulerService;
+    private RecordingGateway gateway;
+    private RepeatingCampaignWindowHandler handler;
+    private CampaignRequest request;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        schedulerService = new RecordingSchedulerService();
+        gateway = new RecordingGateway();
+        handler = new RepeatingCampaignWindowHandler(gateway, schedulerService, allMessageCampaigns);
+        request = new EnrollRequestBuilder().withDefaults().build();
+        request.setReferenceDate(DateUtil.today().plusDays(1));
+    }
+
+    @Test
+    public void shouldSendTheSameEventsAsWhenAllRepetitionsAreScheduled() {
+        List<String> expected = new ArrayList<String>();
+        scheduler(campaign(null)).start();
+        for (RunOnceSchedulableJob job : schedulerService.jobs) {
+            expected.add(sent(job, fire(job)));
+        }
+        Collections.sort(expected);
+        assertEquals(16, expected.size());
+
+        schedulerService.jobs.clear();
+        RepeatingCampaign campaign = campaign(3);
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+        scheduler(campaign).start();
+        assertEquals(6, schedulerService.jobs.size());
+
+        List<String> sent = new ArrayList<String>();
+        RunOnceSchedulableJob job;
+        while ((job = schedulerService.next()) != null) {
+            handler.handleEvent(fire(job));
+            assertTrue(schedulerService.jobs.size() <= 6);
+            for (MotechEvent event : gateway.events) {
+                sent.add(sent(job, event));
+            }
+            gateway.events.clear();
+        }
+        Collections.sort(sent);
+
+        assertEquals(expected, sent);
+    }
+
+    @Test
+    public void shouldLeaveNoJobsAfterTheEnrollmentIsStopped() {
+        RepeatingCampaign campaign = campaign(3);
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+        scheduler(campaign).start();
+
+        for (int i = 0; i < 4; i++) {
+            handler.handleEvent(fire(schedulerService.next()));
+        }
+        scheduler(campaign).stop();
+
+        assertNull(schedulerService.next());
+    }
+
+    @Test
+    public void shouldNotMoveTheWindowOfAnEnrollmentStoppedWhileItsJobFired() {
+        RepeatingCampaign campaign = campaign(3);
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+        scheduler(campaign).start();
+        RunOnceSchedulableJob job = schedulerService.next();
+        scheduler(campaign).stop();
+
+        SchedulerQueryService schedulerQueryService = mock(SchedulerQueryService.class);
+        when(schedulerQueryService.countByPrefix("org.motechproject.server.messagecampaign.testCampaign.12345.")).thenReturn(0);
+        handler.setSchedulerQueryService(schedulerQueryService);
+        handler.handleEvent(fire(job));
+
+        assertEquals(1, gateway.events.size());
+        assertEquals(0, schedulerService.jobs.size());
+    }
+
+    @Test
+    public void shouldNotSendTheMessageWhenTheNextRepetitionCanNotBeScheduled() {
+        RepeatingCampaign campaign = campaign(3);
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+        scheduler(campaign).start();
+        RunOnceSchedulableJob job = schedulerService.next();
+        schedulerService.failing = true;
+
+        try {
+            handler.handleEvent(fire(job));
+            fail("scheduling the next repetition should have failed");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, gateway.events.size());
+
+        schedulerService.failing = false;
+        handler.handleEvent(fire(job));
+        handler.handleEvent(fire(job));
+        assertEquals(2, gateway.events.size());
+        assertEquals(6, schedulerService.jobs.size());
+    }
+
+    /**
+     * A campaign of 10 weeks with a message every week and one every 12 days
+     */
+    private RepeatingCampaign campaign(Integer repeatWindow) {
+        RepeatingCampaign campaign = new CampaignBuilder().defaultRepeatingCampaign();
+        campaign.maxDuration("10 Weeks");
+        campaign.repeatWindow(repeatWindow);
+        return campaign;
+    }
+
+    /**
+     * @return the event the job fires, with the job's name as JobID
+     */
+    private MotechEvent fire(RunOnceSchedulableJob job) {
+        MotechEvent jobEvent = job.getMotechEvent();
+        Map<String, Object> params = new HashMap<String, Object>(jobEvent.getParameters());
+        params.put(EventKeys.SCHEDULE_JOB_ID_KEY, jobEvent.getSubject() + "-" + params.get(EventKeys.SCHEDULE_JOB_ID_KEY));
+        return new MotechEvent(jobEvent.getSubject(), params);
+    }
+
+    /**
+     * @return the event sent when the job fired and the second it fired at
+     */
+    private String sent(RunOnceSchedulableJob job, MotechEvent event) {
+        long second = job.getStartDate().getTime() / 1000;
+        return second + " " + event.getSubject() + " " + new TreeMap<String, Object>(event.getParameters());
+    }
+
+    private RepeatingProgramScheduler scheduler(RepeatingCampaign campaign) {
+        return new RepeatingProgramScheduler(schedulerService, request, campaign);
+    }
+
+    /**
+     * Keeps the run-once jobs scheduled and hands them out in the order they fire
+     */
+    private static class RecordingSchedulerService implements MotechSchedulerService {
+        final List<RunOnceSchedulableJob> jobs = new ArrayList<RunOnceSchedulableJob>();
+        boolean failing;
+
+        RunOnceSchedulableJob next() {
+            RunOnceSchedulableJob next = null;
+            for (RunOnceSchedulableJob job : jobs) {
+                if (next == null || job.getStartDate().before(next.getStartDate())) {
+                    next = job;
+                }
+            }
+            jobs.remove(next);
+            return next;
+        }
+
+        /**
+         * Replaces the job with the same JobID, as the scheduler does
+         */
+        @Override
+        public void scheduleRunOnceJob(RunOnceSchedulableJob schedulableJob) {
+            if (failing) {
+                throw new IllegalStateException("job store unavailable");
+            }
+            Object jobId = schedulableJob.getMotechEvent().getParameters().get(EventKeys.SCHEDULE_JOB_ID_KEY);
+            Iterator<RunOnceSchedulableJob> iterator = jobs.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().getMotechEvent().getParameters().get(EventKeys.SCHEDULE_JOB_ID_KEY).equals(jobId)) {
+                    iterator.remove();
+                }
+            }
+            jobs.add(schedulableJob);
+        }
+
+        @Override
+        public void scheduleRunOnceJobs(Collection<RunOnceSchedulableJob> schedulableJobs) {
+            jobs.addAll(schedulableJobs);
+        }
+
+        @Override
+        public void unscheduleAllJobs(String jobIdPrefix) {
+            Iterator<RunOnceSchedulableJob> iterator = jobs.iterator();
+            while (iterator.hasNext()) {
+                String jobId = (String) iterator.next().getMotechEvent().getParameters().get(EventKeys.SCHEDULE_JOB_ID_KEY);
+                if (jobId.startsWith(jobIdPrefix)) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        @Override
+        public void unscheduleAllJobs(Collection<String> jobIdPrefixes) {
+            for (String jobIdPrefix : jobIdPrefixes) {
+                unscheduleAllJobs(jobIdPrefix);
+            }
+        }
+
+        @Override
+        public void scheduleJob(CronSchedulableJob cronSchedulableJob) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void scheduleJobs(Collection<CronSchedulableJob> cronSchedulableJobs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void updateScheduledJob(MotechEvent motechEvent) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void rescheduleJob(String subject, String externalId, String cronExpression) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void scheduleRepeatingJob(RepeatingSchedulableJob repeatingSchedulableJob) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void unscheduleJob(String subject, String externalId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void unscheduleJobs(Collection<String> jobIds) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void unscheduleJobsWithTag(String tag) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void unscheduleRepeatingJob(String subject, String externalId) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class RecordingGateway implements OutboundEventGateway {
+        final List<MotechEvent> events = new ArrayList<MotechEvent>();
+
+        @Override
+        public void sendEventMessage(MotechEvent motechEvent) {
+            events.add(motechEvent);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.motechproject.server.messagecampaign.builder;
+
+import org.joda.time.LocalDate;
+import org.motechproject.model.CronSchedulableJob;
+import org.motechproject.model.MotechEvent;
+import org.motechproject.model.RunOnceSchedulableJob;
+import org.motechproject.model.Time;
+import org.motechproject.server.messagecampaign.EventKeys;
+import org.motechproject.server.messagecampaign.contract.CampaignRequest;
+import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
+import org.motechproject.server.messagecampaign.domain.campaign.OffsetCampaign;
+import org.motechproject.server.messagecampaign.domain.campaign.RepeatingCampaign;
+import org.motechproject.server.messagecampaign.domain.message.OffsetCampaignMessage;
+import org.motechproject.server.messagecampaign.domain.message.RepeatingCampaignMessage;
+import org.motechproject.util.DateUtil;
+import org.quartz.JobDataMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the jobs of N enrollments in a campaign and keeps the JobDataMap a job store keeps for each, once from the
+ * payload templates and once building every payload from scratch as SchedulerPayloadBuilder did before, and prints the
+ * heap the JobDataMaps take. Done for a year of weekly repeating messages, whose message keys are built per job, and
+ * for a 40 week offset campaign, whose message keys come from the campaign definition either way.
+ *
+ * Not a unit test; run it with (the argument is the number of enrollments, 20000 by default):
+ * mvn test-compile exec:java -Dexec.mainClass=org.motechproject.server.messagecampaign.builder.PayloadTemplateBenchmark -Dexec.classpathScope=test -Dexec.args=20000
+ */
+public class PayloadTemplateBenchmark {
+    private static final String CAMPAIGN_NAME = "pregnancy";
+
+    public static void main(String[] args) throws Exception {
+        int enrollments = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        LocalDate referenceDate = DateUtil.today().plusDays(1);
+
+        RepeatingCampaign repeatingCampaign = weeklyCampaign();
+        measure("repeating, per job", repeatingCampaign, referenceDate, enrollments, false);
+        measure("repeating, templates", repeatingCampaign, referenceDate, enrollments, true);
+
+        OffsetCampaign offsetCampaign = pregnancyCampaign();
+        measure("offset, per job", offsetCampaign, referenceDate, enrollments, false);
+        measure("offset, templates", offsetCampaign, referenceDate, enrollments, true);
+    }
+
+    private static void measure(String name, Campaign campaign, LocalDate referenceDate, int enrollments, boolean templates) throws Exception {
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        List<JobDataMap> jobDataMaps = new ArrayList<JobDataMap>();
+        for (int i = 0; i < enrollments; i++) {
+            CampaignRequest request = new CampaignRequest("mother-" + i, CAMPAIGN_NAME, new Time(9, 30), referenceDate);
+            List<RunOnceSchedulableJob> jobs = new ArrayList<RunOnceSchedulableJob>();
+            campaign.getScheduler(null, request).addJobsTo(new ArrayList<CronSchedulableJob>(), jobs);
+            for (RunOnceSchedulableJob job : jobs) {
+                MotechEvent event = job.getMotechEvent();
+                Map<String, Object> params = templates ? event.getParameters() : perJobPayload(campaign, request, event);
+                JobDataMap jobDataMap = new JobDataMap();
+                jobDataMap.putAll(params);
+                jobDataMap.put(MotechEvent.EVENT_TYPE_KEY_NAME, event.getSubject());
+                jobDataMaps.add(jobDataMap);
+            }
+        }
+        long building = millisSince(start);
+        long heap = usedHeap() - heapBefore;
+        System.out.println(String.format("%s: %d jobs built in %d ms, %d MB of JobDataMaps (%d bytes each)",
+                name, jobDataMaps.size(), building, heap / (1024 * 1024), heap / jobDataMaps.size()));
+    }
+
+    /**
+     * @return the payload of the job as built without templates: a JobID formatted for the job and, for repeating
+     * messages, a message key with its {Offset} replaced for the job
+     */
+    private static Map<String, Object> perJobPayload(Campaign campaign, CampaignRequest request, MotechEvent event) {
+        String messageKey = (String) event.getParameters().get(EventKeys.MESSAGE_KEY);
+        if (campaign instanceof RepeatingCampaign) {
+            messageKey = new String(messageKey);
+        }
+        String jobId = String.format("%s%s.%s.%s", EventKeys.BASE_SUBJECT, CAMPAIGN_NAME, request.externalId(), messageKey);
+        return new SchedulerPayloadBuilder()
+                .withJobId(jobId)
+                .withCampaignName(CAMPAIGN_NAME)
+                .withMessageKey(messageKey)
+                .withExternalId(request.externalId())
+                .payload();
+    }
+
+    private static RepeatingCampaign weeklyCampaign() {
+        RepeatingCampaignMessage message = new RepeatingCampaignMessage();
+        message.name("weekly");
+        message.messageKey("child-info-week-{Offset}");
+        message.repeatInterval("1 Week");
+        message.formats(Arrays.asList("IVR"));
+        message.languages(Arrays.asList("en"));
+
+        RepeatingCampaign campaign = new RepeatingCampaign();
+        campaign.setName(CAMPAIGN_NAME);
+        campaign.maxDuration("52 Weeks");
+        campaign.setMessages(Arrays.asList(message));
+        return campaign;
+    }
+
+    private static OffsetCampaign pregnancyCampaign() {
+        List<OffsetCampaignMessage> messages = new ArrayList<OffsetCampaignMessage>();
+        for (int week = 1; week <= 40; week++) {
+            OffsetCampaignMessage message = new OffsetCampaignMessage();
+            message.name("week-" + week);
+            message.messageKey("pregnancy-week-" + week);
+            message.timeOffset(week + (week == 1 ? " Week" : " Weeks"));
+            message.formats(Arrays.asList("IVR"));
+            message.languages(Arrays.asList("en"));
+            messages.add(message);
+        }
+
+        OffsetCampaign campaign = new OffsetCampaign();
+        campaign.setName(CAMPAIGN_NAME);
+        campaign.setMessages(messages);
+        return campaign;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
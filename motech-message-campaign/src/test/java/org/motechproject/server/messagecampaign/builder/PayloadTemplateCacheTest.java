@@ -0,0 +1,81 @@
+package org.motechproject.server.messagecampaign.builder;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.motechproject.model.RunOnceSchedulableJob;
+import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.server.messagecampaign.EventKeys;
+import org.motechproject.server.messagecampaign.contract.CampaignRequest;
+import org.motechproject.server.messagecampaign.domain.campaign.RepeatingCampaign;
+import org.motechproject.server.messagecampaign.scheduler.RepeatingProgramScheduler;
+import org.motechproject.util.DateUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class PayloadTemplateCacheTest {
+
+    @Test
+    public void shouldReturnTheSameTemplateForAMessageOfACampaign() {
+        RepeatingCampaign campaign = new CampaignBuilder().defaultRepeatingCampaign();
+
+        PayloadTemplate template = PayloadTemplateCache.templateFor(campaign, "child-info-week-1-1");
+
+        assertSame(template, PayloadTemplateCache.templateFor(campaign, "child-info-week-1-1"));
+        assertNotSame(template, PayloadTemplateCache.templateFor(campaign, "child-info-week-1-2"));
+    }
+
+    @Test
+    public void shouldBuildNewTemplatesForAReloadedCampaign() {
+        PayloadTemplate template = PayloadTemplateCache.templateFor(new CampaignBuilder().defaultRepeatingCampaign(), "child-info-week-1-1");
+
+        assertNotSame(template, PayloadTemplateCache.templateFor(new CampaignBuilder().defaultRepeatingCampaign(), "child-info-week-1-1"));
+    }
+
+    @Test
+    public void shouldBuildTheJobIdOfTheEnrollee() {
+        PayloadTemplate template = PayloadTemplateCache.templateFor(new CampaignBuilder().defaultRepeatingCampaign(), "child-info-week-1-1");
+
+        assertEquals("testCampaign", template.campaignName());
+        assertEquals("child-info-week-1-1", template.messageKey());
+        assertEquals("org.motechproject.server.messagecampaign.testCampaign.12345.child-info-week-1-1", template.jobId("12345"));
+    }
+
+    @Test
+    public void shouldShareTheMessageKeysOfTheJobsOfAllEnrollees() {
+        RepeatingCampaign campaign = new CampaignBuilder().defaultRepeatingCampaign();
+        List<RunOnceSchedulableJob> firstJobs = jobs(campaign, "12345");
+        List<RunOnceSchedulableJob> secondJobs = jobs(campaign, "67890");
+
+        assertEquals(firstJobs.size(), secondJobs.size());
+        for (int i = 0; i < firstJobs.size(); i++) {
+            Map<String, Object> first = firstJobs.get(i).getMotechEvent().getParameters();
+            Map<String, Object> second = secondJobs.get(i).getMotechEvent().getParameters();
+            assertSame(first.get(EventKeys.MESSAGE_KEY), second.get(EventKeys.MESSAGE_KEY));
+            assertSame(first.get(EventKeys.CAMPAIGN_NAME_KEY), second.get(EventKeys.CAMPAIGN_NAME_KEY));
+            assertEquals("org.motechproject.server.messagecampaign.testCampaign.67890." + second.get(EventKeys.MESSAGE_KEY),
+                    second.get(EventKeys.SCHEDULE_JOB_ID_KEY));
+        }
+    }
+
+    private List<RunOnceSchedulableJob> jobs(RepeatingCampaign campaign, String externalId) {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setExternalId(externalId);
+        request.setReferenceDate(DateUtil.today().plusDays(1));
+        MotechSchedulerService schedulerService = mock(MotechSchedulerService.class);
+
+        new RepeatingProgramScheduler(schedulerService, request, campaign).start();
+
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleRunOnceJobs(capture.capture());
+        return new ArrayList<RunOnceSchedulableJob>(capture.getValue());
+    }
+}
@@ -0,0 +1,160 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import org.joda.time.LocalDate;
+import org.motechproject.gateway.OutboundEventGateway;
+import org.motechproject.model.MotechEvent;
+import org.motechproject.model.Time;
+import org.motechproject.scheduler.JobGroup;
+import org.motechproject.scheduler.JobGroups;
+import org.motechproject.scheduler.MotechSchedulerServiceImpl;
+import org.motechproject.server.messagecampaign.EventKeys;
+import org.motechproject.server.messagecampaign.contract.CampaignRequest;
+import org.motechproject.server.messagecampaign.dao.AllMessageCampaigns;
+import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
+import org.motechproject.server.messagecampaign.domain.campaign.OffsetCampaign;
+import org.motechproject.server.messagecampaign.domain.message.OffsetCampaignMessage;
+import org.motechproject.util.DateUtil;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Enrolls N mothers in a 40 week pregnancy campaign with a message a week, once with a Quartz job per message on a
+ * RAMJobStore and once in the {@link CampaignEngine}, and prints the heap each takes. Then lets the engine send the
+ * whole campaign, a tick per week with a message for every mother, and prints how fast it sends.
+ *
+ * Not a unit test; run it with (the argument is the number of enrollments, 20000 by default):
+ * mvn test-compile exec:java -Dexec.mainClass=org.motechproject.server.messagecampaign.engine.CampaignEngineBenchmark -Dexec.classpathScope=test -Dexec.args=20000
+ *
+ * A job per message takes 40 Quartz jobs per enrollment; give Maven a bigger heap (MAVEN_OPTS=-Xmx4g) before
+ * enrolling 100000 mothers that way.
+ */
+public class CampaignEngineBenchmark {
+    private static final String CAMPAIGN_NAME = "pregnancy";
+    private static final int WEEKS = 40;
+
+    public static void main(String[] args) throws Exception {
+        int enrollments = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final OffsetCampaign campaign = pregnancyCampaign();
+        LocalDate referenceDate = DateUtil.today().plusDays(1);
+
+        jobPerMessage(campaign, referenceDate, enrollments);
+        engine(campaign, referenceDate, enrollments);
+    }
+
+    private static void jobPerMessage(OffsetCampaign campaign, LocalDate referenceDate, int enrollments) throws Exception {
+        JobGroup group = new JobGroup("messagecampaign");
+        group.setSubjectPrefixes(Arrays.asList(EventKeys.BASE_SUBJECT));
+        JobGroups jobGroups = new JobGroups(Collections.singletonList(group));
+
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", "campaign-engine-benchmark");
+        properties.setProperty("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+        properties.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount", "1");
+        SchedulerFactoryBean schedulerFactoryBean = new SchedulerFactoryBean();
+        schedulerFactoryBean.setQuartzProperties(properties);
+        schedulerFactoryBean.afterPropertiesSet();
+
+        MotechSchedulerServiceImpl schedulerService = new MotechSchedulerServiceImpl();
+        ReflectionTestUtils.setField(schedulerService, "schedulerFactoryBean", schedulerFactoryBean);
+        ReflectionTestUtils.setField(schedulerService, "jobGroups", jobGroups);
+
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        for (int i = 0; i < enrollments; i++) {
+            campaign.getScheduler(schedulerService, request(i, referenceDate)).start();
+        }
+        long scheduling = millisSince(start);
+        long heap = usedHeap() - heapBefore;
+        System.out.println(String.format("job per message: enrolled %d in %d ms, %d MB of heap (%d bytes each), %d Quartz jobs",
+                enrollments, scheduling, heap / (1024 * 1024), heap / enrollments,
+                schedulerFactoryBean.getScheduler().getJobNames(group.getName()).length));
+
+        schedulerFactoryBean.destroy();
+        jobGroups.shutdown();
+    }
+
+    private static void engine(final OffsetCampaign campaign, LocalDate referenceDate, int enrollments) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(CampaignEngine.ENGINE_ENABLED, "true");
+        AllMessageCampaigns allMessageCampaigns = new AllMessageCampaigns(new Properties(), null) {
+            @Override
+            public Campaign get(String campaignName) {
+                return campaign;
+            }
+        };
+        CountingGateway gateway = new CountingGateway();
+        CampaignEngine engine = new CampaignEngine(properties, allMessageCampaigns, null, gateway);
+
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        for (int i = 0; i < enrollments; i++) {
+            engine.startFor(campaign, request(i, referenceDate));
+        }
+        long enrolling = millisSince(start);
+        long heap = usedHeap() - heapBefore;
+        System.out.println(String.format("engine: enrolled %d in %d ms, %d MB of heap (%d bytes each)",
+                enrollments, enrolling, heap / (1024 * 1024), heap / enrollments));
+
+        long slowestTick = 0;
+        start = System.nanoTime();
+        for (int week = 1; week <= WEEKS; week++) {
+            long tickStart = System.nanoTime();
+            engine.fireDue(DateUtil.newDateTime(referenceDate.plusDays(7 * week), 9, 30, 0).getMillis());
+            slowestTick = Math.max(slowestTick, millisSince(tickStart));
+        }
+        long sending = Math.max(1, millisSince(start));
+        System.out.println(String.format("engine: sent %d messages in %d ticks, %d ms, %d per second, slowest tick %d ms, %d enrollments left",
+                gateway.sent, WEEKS, sending, gateway.sent * 1000 / sending, slowestTick, engine.enrollmentCount()));
+    }
+
+    private static OffsetCampaign pregnancyCampaign() {
+        List<OffsetCampaignMessage> messages = new ArrayList<OffsetCampaignMessage>();
+        for (int week = 1; week <= WEEKS; week++) {
+            OffsetCampaignMessage message = new OffsetCampaignMessage();
+            message.name("week-" + week);
+            message.messageKey("pregnancy-week-" + week);
+            message.timeOffset(week + (week == 1 ? " Week" : " Weeks"));
+            message.formats(Arrays.asList("IVR"));
+            message.languages(Arrays.asList("en"));
+            messages.add(message);
+        }
+
+        OffsetCampaign campaign = new OffsetCampaign();
+        campaign.setName(CAMPAIGN_NAME);
+        campaign.setMessages(messages);
+        return campaign;
+    }
+
+    private static CampaignRequest request(int mother, LocalDate referenceDate) {
+        return new CampaignRequest("mother-" + mother, CAMPAIGN_NAME, new Time(9, 30), referenceDate);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static class CountingGateway implements OutboundEventGateway {
+        long sent;
+
+        @Override
+        public void sendEventMessage(MotechEvent motechEvent) {
+            sent++;
+        }
+    }
+}
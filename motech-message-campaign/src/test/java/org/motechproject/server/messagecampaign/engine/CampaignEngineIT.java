@@ -0,0 +1,25 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import static org.junit.Assert.assertFalse;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(locations = {"/testApplicationContext.xml"})
+public class CampaignEngineIT {
+    @Autowired
+    private CampaignEngine campaignEngine;
+    @Autowired
+    private ConfigurableListableBeanFactory beanFactory;
+
+    @Test
+    public void shouldNotStartTheBatchingGatewayWhenTheEngineIsDisabled() {
+        assertFalse(campaignEngine.isEnabled());
+        assertFalse(beanFactory.containsSingleton("batchingOutboundEventGateway"));
+    }
+}
@@ -0,0 +1,284 @@
+package org.motechproject.server.messagecampaign.engine;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.motechproject.gateway.OutboundEventGateway;
+import org.motechproject.model.CronSchedulableJob;
+import org.motechproject.model.MotechEvent;
+import org.motechproject.model.RunOnceSchedulableJob;
+import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.server.messagecampaign.EventKeys;
+import org.motechproject.server.messagecampaign.builder.CampaignBuilder;
+import org.motechproject.server.messagecampaign.builder.CampaignMessageBuilder;
+import org.motechproject.server.messagecampaign.builder.EnrollRequestBuilder;
+import org.motechproject.server.messagecampaign.contract.CampaignRequest;
+import org.motechproject.server.messagecampaign.dao.AllMessageCampaigns;
+import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
+import org.motechproject.server.messagecampaign.domain.campaign.CronBasedCampaign;
+import org.motechproject.server.messagecampaign.domain.campaign.OffsetCampaign;
+import org.motechproject.server.messagecampaign.domain.message.CronBasedCampaignMessage;
+import org.motechproject.util.DateUtil;
+import org.quartz.CronExpression;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+import static org.mockito.MockitoAnnotations.initMocks;
+
+public class CampaignEngineTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Mock
+    private AllMessageCampaigns allMessageCampaigns;
+    @Mock
+    private MotechSchedulerService schedulerService;
+
+    private RecordingGateway gateway;
+    private CampaignEngine engine;
+
+    @Before
+    public void setUp() {
+        initMocks(this);
+        gateway = new RecordingGateway();
+        Properties properties = new Properties();
+        properties.setProperty(CampaignEngine.ENGINE_ENABLED, "true");
+        engine = new CampaignEngine(properties, allMessageCampaigns, schedulerService, gateway);
+    }
+
+    @Test
+    public void shouldScheduleOneTick() {
+        engine.start();
+
+        ArgumentCaptor<CronSchedulableJob> capture = ArgumentCaptor.forClass(CronSchedulableJob.class);
+        verify(schedulerService).scheduleJob(capture.capture());
+        assertEquals(CampaignEngine.DEFAULT_TICK_CRON, capture.getValue().getCronExpression());
+        assertEquals(EventKeys.CAMPAIGN_ENGINE_TICK_SUBJECT, capture.getValue().getMotechEvent().getSubject());
+    }
+
+    @Test
+    public void shouldNotScheduleTickUnlessEnabled() {
+        engine = new CampaignEngine(new Properties(), allMessageCampaigns, schedulerService, gateway);
+        engine.start();
+
+        assertFalse(engine.isEnabled());
+        verifyZeroInteractions(schedulerService);
+    }
+
+    @Test
+    public void shouldSendOffsetMessagesWhenTheirJobsWouldFire() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        Campaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+
+        assertSameEventsAsRunOnceJobs(campaign, request);
+    }
+
+    @Test
+    public void shouldSendAbsoluteMessagesWhenTheirJobsWouldFire() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        Campaign campaign = new CampaignBuilder().defaultAbsoluteCampaign();
+
+        assertSameEventsAsRunOnceJobs(campaign, request);
+    }
+
+    @Test
+    public void shouldSendRepeatingMessagesWhenTheirJobsWouldFire() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setReferenceDate(DateUtil.today().plusDays(1));
+        Campaign campaign = new CampaignBuilder().defaultRepeatingCampaign();
+
+        assertSameEventsAsRunOnceJobs(campaign, request);
+    }
+
+    @Test
+    public void shouldSendCronMessagesWhenTheirJobsWouldFire() throws Exception {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setReferenceDate(DateUtil.today().plusDays(1));
+        Campaign campaign = dailyCronCampaign("0 30 9 * * ?", "0 0 18 * * ?", "0 30 9 * * ?");
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+
+        campaign.getScheduler(schedulerService, request).start();
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleJobs(capture.capture());
+
+        long end = request.referenceDate().toDate().getTime() + 5 * DAY;
+        TreeMap<Long, Set<Map<String, Object>>> expected = new TreeMap<Long, Set<Map<String, Object>>>();
+        for (Object job : capture.getValue()) {
+            CronSchedulableJob cronJob = (CronSchedulableJob) job;
+            CronExpression expression = new CronExpression(cronJob.getCronExpression());
+            Date fireTime = expression.getTimeAfter(new Date(cronJob.getStartTime().getTime() - 1000));
+            while (fireTime.getTime() < end) {
+                expect(expected, fireTime.getTime(), cronJob.getMotechEvent());
+                fireTime = expression.getTimeAfter(fireTime);
+            }
+        }
+        assertEquals(15, count(expected));
+
+        engine.startFor(campaign, request);
+        assertSendsAtTheirTimes(expected);
+    }
+
+    @Test
+    public void shouldSendMissedCronMessagesOnceAtTheNextTick() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setReferenceDate(DateUtil.today().plusDays(1));
+        Campaign campaign = dailyCronCampaign("0 30 9 * * ?", "0 0 18 * * ?");
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+        engine.startFor(campaign, request);
+
+        long threeDaysLater = request.referenceDate().toDate().getTime() + 3 * DAY;
+        assertEquals(2, engine.fireDue(threeDaysLater));
+        assertEquals(0, engine.fireDue(threeDaysLater + 60000));
+        assertEquals(1, engine.fireDue(threeDaysLater + 10 * 60 * 60 * 1000L));
+    }
+
+    @Test
+    public void shouldSendNothingAfterStop() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        OffsetCampaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+
+        engine.startFor(campaign, request);
+        assertEquals(1, engine.enrollmentCount());
+        engine.stopFor(request);
+
+        assertEquals(0, engine.fireDue(Long.MAX_VALUE));
+        assertEquals(0, engine.enrollmentCount());
+    }
+
+    @Test
+    public void shouldKeepOneEnrollmentPerEnrollee() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        OffsetCampaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+
+        engine.startFor(campaign, request);
+        engine.restartFor(campaign, request);
+        engine.startFor(campaign, request);
+
+        assertEquals(1, engine.enrollmentCount());
+        assertEquals(2, engine.fireDue(Long.MAX_VALUE));
+        assertEquals(0, engine.enrollmentCount());
+    }
+
+    @Test
+    public void shouldSkipMessagesDueInThePast() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setReferenceDate(DateUtil.today().minusDays(10));
+        OffsetCampaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+
+        engine.startFor(campaign, request);
+
+        assertEquals(1, engine.fireDue(Long.MAX_VALUE));
+        assertEquals("child-info-week-1a", gateway.events.get(0).getParameters().get(EventKeys.MESSAGE_KEY));
+    }
+
+    @Test
+    public void shouldNotEnrollWhenAllMessagesAreDueInThePast() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setReferenceDate(DateUtil.today().minusDays(20));
+        OffsetCampaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+
+        engine.startFor(campaign, request);
+
+        assertEquals(0, engine.enrollmentCount());
+    }
+
+    private void assertSameEventsAsRunOnceJobs(Campaign campaign, CampaignRequest request) {
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+
+        campaign.getScheduler(schedulerService, request).start();
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleRunOnceJobs(capture.capture());
+
+        TreeMap<Long, Set<Map<String, Object>>> expected = new TreeMap<Long, Set<Map<String, Object>>>();
+        for (Object job : capture.getValue()) {
+            RunOnceSchedulableJob runOnceJob = (RunOnceSchedulableJob) job;
+            expect(expected, runOnceJob.getStartDate().getTime() / 1000 * 1000, runOnceJob.getMotechEvent());
+        }
+        assertEquals(capture.getValue().size(), count(expected));
+
+        engine.startFor(campaign, request);
+        assertSendsAtTheirTimes(expected);
+
+        engine.fireDue(expected.lastKey() + 365 * DAY);
+        assertEquals(0, gateway.events.size());
+        assertEquals(0, engine.enrollmentCount());
+    }
+
+    /**
+     * Ticks just before and at every expected time and checks the events sent at each
+     */
+    private void assertSendsAtTheirTimes(TreeMap<Long, Set<Map<String, Object>>> expected) {
+        for (Map.Entry<Long, Set<Map<String, Object>>> fire : expected.entrySet()) {
+            engine.fireDue(fire.getKey() - 1);
+            assertEquals("sent early", 0, gateway.events.size());
+
+            engine.fireDue(fire.getKey());
+            Set<Map<String, Object>> sent = new HashSet<Map<String, Object>>();
+            for (MotechEvent event : gateway.events) {
+                assertEquals(EventKeys.MESSAGE_CAMPAIGN_SEND_EVENT_SUBJECT, event.getSubject());
+                sent.add(event.getParameters());
+            }
+            assertEquals(fire.getValue(), sent);
+            assertEquals(fire.getValue().size(), gateway.events.size());
+            gateway.events.clear();
+        }
+    }
+
+    /**
+     * Adds the event a job fires: its parameters with the job's name as JobID
+     */
+    private void expect(TreeMap<Long, Set<Map<String, Object>>> expected, long time, MotechEvent jobEvent) {
+        Map<String, Object> params = new HashMap<String, Object>(jobEvent.getParameters());
+        params.put(EventKeys.SCHEDULE_JOB_ID_KEY, jobEvent.getSubject() + "-" + params.get(EventKeys.SCHEDULE_JOB_ID_KEY));
+
+        Set<Map<String, Object>> atTime = expected.get(time);
+        if (atTime == null) {
+            atTime = new HashSet<Map<String, Object>>();
+            expected.put(time, atTime);
+        }
+        atTime.add(params);
+    }
+
+    private int count(TreeMap<Long, Set<Map<String, Object>>> expected) {
+        int count = 0;
+        for (Set<Map<String, Object>> atTime : expected.values()) {
+            count += atTime.size();
+        }
+        return count;
+    }
+
+    private CronBasedCampaign dailyCronCampaign(String... expressions) {
+        List<CronBasedCampaignMessage> messages = new ArrayList<CronBasedCampaignMessage>();
+        for (int i = 0; i < expressions.length; i++) {
+            messages.add(new CampaignMessageBuilder().cronBasedCampaignMessage("CM" + i, expressions[i], "cron-message" + i));
+        }
+
+        CronBasedCampaign campaign = new CronBasedCampaign();
+        campaign.setName("testCampaign");
+        campaign.setMessages(messages);
+        return campaign;
+    }
+
+    private static class RecordingGateway implements OutboundEventGateway {
+        final List<MotechEvent> events = new ArrayList<MotechEvent>();
+
+        @Override
+        public void sendEventMessage(MotechEvent motechEvent) {
+            events.add(motechEvent);
+        }
+    }
+}
@@ -11,6 +11,8 @@ import org.motechproject.server.messagecampaign.contract.CampaignRequest;
 import org.motechproject.server.messagecampaign.domain.campaign.CronBasedCampaign;
 import org.motechproject.util.DateUtil;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
@@ -35,10 +37,11 @@ public class CronBasedProgramSchedulerTest {
         CronBasedProgramScheduler cronBasedProgramScheduler = new CronBasedProgramScheduler(schedulerService, request, campaign);
 
         cronBasedProgramScheduler.start();
-        ArgumentCaptor<CronSchedulableJob> capture = ArgumentCaptor.forClass(CronSchedulableJob.class);
-        verify(schedulerService, times(2)).scheduleJob(capture.capture());
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleJobs(capture.capture());
 
-        List<CronSchedulableJob> allJobs = capture.getAllValues();
+        List<CronSchedulableJob> allJobs = new ArrayList<CronSchedulableJob>(capture.getValue());
+        assertEquals(2, allJobs.size());
         assertEquals(campaign.messages().get(0).cron(), allJobs.get(0).getCronExpression());
         assertEquals(DateUtil.today(), DateUtil.newDate(allJobs.get(0).getStartTime()));
         assertEquals("org.motechproject.server.messagecampaign.send-campaign-message", allJobs.get(0).getMotechEvent().getSubject());
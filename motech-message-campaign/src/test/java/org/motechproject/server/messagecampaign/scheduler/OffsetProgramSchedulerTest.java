@@ -11,6 +11,8 @@ import org.motechproject.server.messagecampaign.contract.CampaignRequest;
 import org.motechproject.server.messagecampaign.domain.campaign.OffsetCampaign;
 import org.motechproject.util.DateUtil;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -37,10 +39,11 @@ public class OffsetProgramSchedulerTest {
         OffsetProgramScheduler offsetProgramScheduler = new OffsetProgramScheduler(schedulerService, request, campaign);
 
         offsetProgramScheduler.start();
-        ArgumentCaptor<RunOnceSchedulableJob> capture = ArgumentCaptor.forClass(RunOnceSchedulableJob.class);
-        verify(schedulerService, times(2)).scheduleRunOnceJob(capture.capture());
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleRunOnceJobs(capture.capture());
 
-        List<RunOnceSchedulableJob> allJobs = capture.getAllValues();
+        List<RunOnceSchedulableJob> allJobs = new ArrayList<RunOnceSchedulableJob>(capture.getValue());
+        assertEquals(2, allJobs.size());
 
         Date startDate1 = DateUtil.newDateTime(DateUtil.today().plusDays(7), request.reminderTime().getHour(), request.reminderTime().getMinute(), 0).toDate();
         assertEquals(startDate1.toString(), allJobs.get(0).getStartDate().toString());
@@ -7,16 +7,21 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.motechproject.model.RunOnceSchedulableJob;
 import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.server.messagecampaign.EventKeys;
 import org.motechproject.server.messagecampaign.builder.CampaignBuilder;
 import org.motechproject.server.messagecampaign.builder.EnrollRequestBuilder;
 import org.motechproject.server.messagecampaign.contract.CampaignRequest;
 import org.motechproject.server.messagecampaign.domain.campaign.RepeatingCampaign;
 import org.motechproject.util.DateUtil;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -40,10 +45,11 @@ public class RepeatingProgramSchedulerTest {
         RepeatingProgramScheduler repeatingProgramScheduler = new RepeatingProgramScheduler(schedulerService, request, campaign);
 
         repeatingProgramScheduler.start();
-        ArgumentCaptor<RunOnceSchedulableJob> capture = ArgumentCaptor.forClass(RunOnceSchedulableJob.class);
-        verify(schedulerService, times(4)).scheduleRunOnceJob(capture.capture());
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleRunOnceJobs(capture.capture());
 
-        List<RunOnceSchedulableJob> allJobs = capture.getAllValues();
+        List<RunOnceSchedulableJob> allJobs = new ArrayList<RunOnceSchedulableJob>(capture.getValue());
+        assertEquals(4, allJobs.size());
 
         LocalDate jobDate = request.referenceDate();
         assertJob(allJobs.get(0), "org.motechproject.server.messagecampaign.testCampaign.12345.child-info-week-1-1", "child-info-week-1-1", jobDate.toDate());
@@ -52,6 +58,29 @@ public class RepeatingProgramSchedulerTest {
         assertJob(allJobs.get(3), "org.motechproject.server.messagecampaign.testCampaign.12345.child-info-week-2-2", "child-info-week-2-2", jobDate.plusDays(12).toDate());
     }
 
+    @Test
+    public void shouldNotStopTheJobsOfExternalIdsThatStartWithTheStoppedOne() {
+        RepeatingCampaign campaign = new CampaignBuilder().defaultRepeatingCampaign();
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setReferenceDate(DateUtil.today().plusDays(1));
+        request.setExternalId("123");
+        CampaignRequest prefixRequest = new EnrollRequestBuilder().withDefaults().build();
+        prefixRequest.setReferenceDate(DateUtil.today().plusDays(1));
+        prefixRequest.setExternalId("12");
+
+        new RepeatingProgramScheduler(schedulerService, request, campaign).start();
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleRunOnceJobs(capture.capture());
+        String jobIdPrefix = new RepeatingProgramScheduler(schedulerService, prefixRequest, campaign).jobIdPrefix();
+
+        assertEquals("org.motechproject.server.messagecampaign.testCampaign.12.", jobIdPrefix);
+        for (Object job : capture.getValue()) {
+            String jobId = (String) ((RunOnceSchedulableJob) job).getMotechEvent().getParameters().get(EventKeys.SCHEDULE_JOB_ID_KEY);
+            assertFalse(jobId, jobId.startsWith(jobIdPrefix));
+            assertTrue(jobId, jobId.startsWith(new RepeatingProgramScheduler(schedulerService, request, campaign).jobIdPrefix()));
+        }
+    }
+
     @Test
     public void shouldRescheduleJobs() {
         CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
@@ -61,11 +90,12 @@ public class RepeatingProgramSchedulerTest {
         RepeatingProgramScheduler repeatingProgramScheduler = new RepeatingProgramScheduler(schedulerService, request, campaign);
 
         repeatingProgramScheduler.restart();
-        ArgumentCaptor<RunOnceSchedulableJob> capture = ArgumentCaptor.forClass(RunOnceSchedulableJob.class);
-        verify(schedulerService, times(1)).unscheduleAllJobs("org.motechproject.server.messagecampaign.testCampaign.12345");
-        verify(schedulerService, times(4)).scheduleRunOnceJob(capture.capture());
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService, times(1)).unscheduleAllJobs("org.motechproject.server.messagecampaign.testCampaign.12345.");
+        verify(schedulerService).scheduleRunOnceJobs(capture.capture());
 
-        List<RunOnceSchedulableJob> allJobs = capture.getAllValues();
+        List<RunOnceSchedulableJob> allJobs = new ArrayList<RunOnceSchedulableJob>(capture.getValue());
+        assertEquals(4, allJobs.size());
 
         LocalDate jobDate = request.referenceDate();
         assertJob(allJobs.get(0), "org.motechproject.server.messagecampaign.testCampaign.12345.child-info-week-1-1", "child-info-week-1-1", jobDate.toDate());
@@ -74,6 +104,70 @@ public class RepeatingProgramSchedulerTest {
         assertJob(allJobs.get(3), "org.motechproject.server.messagecampaign.testCampaign.12345.child-info-week-2-2", "child-info-week-2-2", jobDate.plusDays(12).toDate());
     }
 
+    @Test
+    public void shouldScheduleOnlyTheRepetitionsOfTheWindow() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setReferenceDate(DateUtil.today().plusDays(1));
+        RepeatingCampaign campaign = new CampaignBuilder().defaultRepeatingCampaign();
+        campaign.maxDuration("8 Weeks");
+        campaign.repeatWindow(3);
+
+        new RepeatingProgramScheduler(schedulerService, request, campaign).start();
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleRunOnceJobs(capture.capture());
+
+        List<RunOnceSchedulableJob> allJobs = new ArrayList<RunOnceSchedulableJob>(capture.getValue());
+        assertEquals(6, allJobs.size());
+
+        LocalDate jobDate = request.referenceDate();
+        assertWindowJob(allJobs.get(0), "child-info-week-1-1", 1, jobDate.toDate());
+        assertWindowJob(allJobs.get(1), "child-info-week-2-1", 2, jobDate.plusDays(7).toDate());
+        assertWindowJob(allJobs.get(2), "child-info-week-3-1", 3, jobDate.plusDays(14).toDate());
+        assertWindowJob(allJobs.get(3), "child-info-week-1-2", 1, jobDate.toDate());
+        assertWindowJob(allJobs.get(4), "child-info-week-2-2", 2, jobDate.plusDays(12).toDate());
+        assertWindowJob(allJobs.get(5), "child-info-week-3-2", 3, jobDate.plusDays(24).toDate());
+    }
+
+    @Test
+    public void shouldScheduleTheRepetitionOneWindowAheadUntilTheCampaignEnds() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setReferenceDate(DateUtil.today().plusDays(1));
+        RepeatingCampaign campaign = new CampaignBuilder().defaultRepeatingCampaign();
+        campaign.maxDuration("8 Weeks");
+        campaign.repeatWindow(3);
+        RepeatingProgramScheduler repeatingProgramScheduler = new RepeatingProgramScheduler(schedulerService, request, campaign);
+
+        assertTrue(repeatingProgramScheduler.scheduleNextRepetition("child-info-week-{Offset}-1", 3));
+        assertFalse(repeatingProgramScheduler.scheduleNextRepetition("child-info-week-{Offset}-1", 6));
+        assertFalse(repeatingProgramScheduler.scheduleNextRepetition("no-such-message", 1));
+
+        ArgumentCaptor<RunOnceSchedulableJob> capture = ArgumentCaptor.forClass(RunOnceSchedulableJob.class);
+        verify(schedulerService, times(1)).scheduleRunOnceJob(capture.capture());
+        assertWindowJob(capture.getValue(), "child-info-week-6-1", 6, request.referenceDate().plusDays(35).toDate());
+    }
+
+    @Test
+    public void shouldKeepAtLeastTwoRepetitionsInTheWindow() {
+        CampaignRequest request = new EnrollRequestBuilder().withDefaults().build();
+        request.setReferenceDate(DateUtil.today().plusDays(1));
+        RepeatingCampaign campaign = new CampaignBuilder().defaultRepeatingCampaign();
+        campaign.maxDuration("8 Weeks");
+        campaign.repeatWindow(1);
+
+        new RepeatingProgramScheduler(schedulerService, request, campaign).start();
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleRunOnceJobs(capture.capture());
+
+        assertEquals(2 * RepeatingProgramScheduler.MIN_REPEAT_WINDOW, capture.getValue().size());
+    }
+
+    private void assertWindowJob(RunOnceSchedulableJob runOnceSchedulableJob, String messageKey, int repetition, Date jobDate) {
+        assertDate(jobDate, runOnceSchedulableJob.getStartDate());
+        assertEquals(EventKeys.MESSAGE_CAMPAIGN_REPEAT_EVENT_SUBJECT, runOnceSchedulableJob.getMotechEvent().getSubject());
+        assertMotechEvent(runOnceSchedulableJob, "org.motechproject.server.messagecampaign.testCampaign.12345." + messageKey, messageKey);
+        assertEquals(repetition, runOnceSchedulableJob.getMotechEvent().getParameters().get(EventKeys.REPETITION_KEY));
+    }
+
     private void assertJob(RunOnceSchedulableJob runOnceSchedulableJob, String jobId, String messageKey, Date jobDate) {
         assertDate(jobDate, runOnceSchedulableJob.getStartDate());
         assertEquals(MESSAGE_CAMPAIGN_EVENT_SUBJECT, runOnceSchedulableJob.getMotechEvent().getSubject());
@@ -6,11 +6,16 @@ import org.junit.Test;
 import org.motechproject.dao.MotechJsonReader;
 import org.motechproject.server.messagecampaign.dao.AllMessageCampaigns;
 import org.motechproject.server.messagecampaign.domain.campaign.AbsoluteCampaign;
+import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
 import org.motechproject.server.messagecampaign.domain.campaign.CronBasedCampaign;
 import org.motechproject.server.messagecampaign.domain.campaign.OffsetCampaign;
 import org.motechproject.server.messagecampaign.domain.campaign.RepeatingCampaign;
 import org.motechproject.server.messagecampaign.domain.message.*;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.Type;
 import java.util.*;
 
 import static junit.framework.Assert.*;
@@ -106,6 +111,93 @@ public class AllMessageCampaignsTest {
         assertNull(campaignMessage);
     }
 
+    @Test
+    public void shouldParseDefinitionFileOnce() {
+        CountingJsonReader motechJsonReader = new CountingJsonReader();
+        Properties properties = new Properties();
+        properties.setProperty("messagecampaign.definition.file", "/simple-message-campaign.json");
+        allMessageCampaigns = new AllMessageCampaigns(properties, motechJsonReader);
+
+        Campaign campaign = allMessageCampaigns.get("Relative Dates Message Program");
+        assertSame(campaign, allMessageCampaigns.get("Relative Dates Message Program"));
+        assertNotNull(allMessageCampaigns.get("Relative Dates Message Program", "child-info-week-1b"));
+        assertNotNull(allMessageCampaigns.get("Absolute Dates Message Program", "random-2"));
+
+        assertEquals(1, motechJsonReader.reads);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotLetCallersChangeSharedCampaign() {
+        allMessageCampaigns.get("Relative Dates Message Program").messages().clear();
+    }
+
+    @Test
+    public void shouldReloadChangedDefinitionFile() throws Exception {
+        File file = new File(new File(getClass().getResource("/simple-message-campaign.json").toURI()).getParentFile(),
+                             "reloaded-message-campaign.json");
+        try {
+            writeCampaign(file, "week-1");
+            Properties properties = new Properties();
+            properties.setProperty("messagecampaign.definition.file", "/" + file.getName());
+            properties.setProperty("messagecampaign.definition.check.interval.millis", "0");
+            allMessageCampaigns = new AllMessageCampaigns(properties, new MotechJsonReader());
+
+            assertNotNull(allMessageCampaigns.get("Reloaded Program", "week-1"));
+
+            writeCampaign(file, "week-one");
+            file.setLastModified(file.lastModified() + 2000);
+
+            assertNull(allMessageCampaigns.get("Reloaded Program", "week-1"));
+            assertNotNull(allMessageCampaigns.get("Reloaded Program", "week-one"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldKeepCampaignsWhenChangedFileCanNotBeParsed() throws Exception {
+        File file = new File(new File(getClass().getResource("/simple-message-campaign.json").toURI()).getParentFile(),
+                             "broken-message-campaign.json");
+        try {
+            writeCampaign(file, "week-1");
+            Properties properties = new Properties();
+            properties.setProperty("messagecampaign.definition.file", "/" + file.getName());
+            properties.setProperty("messagecampaign.definition.check.interval.millis", "0");
+            allMessageCampaigns = new AllMessageCampaigns(properties, new MotechJsonReader());
+            assertNotNull(allMessageCampaigns.get("Reloaded Program"));
+
+            FileWriter writer = new FileWriter(file);
+            writer.write("[{\"name\" : ");
+            writer.close();
+            file.setLastModified(file.lastModified() + 2000);
+
+            assertNotNull(allMessageCampaigns.get("Reloaded Program", "week-1"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    private void writeCampaign(File file, String messageKey) throws IOException {
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write("[{\"name\" : \"Reloaded Program\", \"type\" : \"OFFSET\", \"messages\" : [{\"name\" : \"Week 1\", " +
+                         "\"formats\" : [\"IVR\"], \"languages\" : [\"en\"], \"messageKey\" : \"" + messageKey + "\", " +
+                         "\"timeOffset\" : \"1 Week\"}]}]");
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static class CountingJsonReader extends MotechJsonReader {
+        int reads;
+
+        @Override
+        public Object readFromFile(String classpathFile, Type type) {
+            reads++;
+            return super.readFromFile(classpathFile, type);
+        }
+    }
+
     private void assertMessageWithAbsoluteSchedule(AbsoluteCampaignMessage message, String name, String[] formats, Object messageKey, Date date) {
         assertMessage(message, name, formats, messageKey);
         assertEquals(date, message.date().toDate());
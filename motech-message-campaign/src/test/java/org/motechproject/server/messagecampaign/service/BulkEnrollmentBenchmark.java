@@ -0,0 +1,145 @@
+package org.motechproject.server.messagecampaign.service;
+
+import org.joda.time.LocalDate;
+import org.motechproject.model.Time;
+import org.motechproject.scheduler.JobGroup;
+import org.motechproject.scheduler.JobGroups;
+import org.motechproject.scheduler.MotechSchedulerServiceImpl;
+import org.motechproject.server.messagecampaign.EventKeys;
+import org.motechproject.server.messagecampaign.contract.CampaignRequest;
+import org.motechproject.server.messagecampaign.dao.AllMessageCampaigns;
+import org.motechproject.server.messagecampaign.domain.campaign.Campaign;
+import org.motechproject.server.messagecampaign.domain.campaign.OffsetCampaign;
+import org.motechproject.server.messagecampaign.domain.message.OffsetCampaignMessage;
+import org.motechproject.util.DateUtil;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Enrolls N mothers in a 12 week campaign with a message a week on a RAMJobStore and stops them again, once with a
+ * call to startFor and stopFor per mother and once with the bulk startFor and stopFor, and prints how fast each goes
+ * and how many times the campaign was looked up.
+ *
+ * Not a unit test; run it with (the argument is the number of enrollments, 50000 by default):
+ * mvn test-compile exec:java -Dexec.mainClass=org.motechproject.server.messagecampaign.service.BulkEnrollmentBenchmark -Dexec.classpathScope=test -Dexec.args=50000
+ *
+ * A RAMJobStore has no transactions, so this only measures the cost of a scheduler call per enrollment; with a JDBC
+ * job store each of those calls is a transaction as well.
+ */
+public class BulkEnrollmentBenchmark {
+    private static final String CAMPAIGN_NAME = "pregnancy";
+    private static final int WEEKS = 12;
+
+    public static void main(String[] args) throws Exception {
+        int enrollments = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        OffsetCampaign campaign = pregnancyCampaign();
+        List<CampaignRequest> requests = requests(enrollments, DateUtil.today().plusDays(1));
+
+        enrollAndStop("one at a time", campaign, requests, false);
+        enrollAndStop("bulk", campaign, requests, true);
+    }
+
+    private static void enrollAndStop(String name, OffsetCampaign campaign, List<CampaignRequest> requests, boolean bulk) throws Exception {
+        JobGroup group = new JobGroup("messagecampaign");
+        group.setSubjectPrefixes(Arrays.asList(EventKeys.BASE_SUBJECT));
+        JobGroups jobGroups = new JobGroups(Collections.singletonList(group));
+
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", "bulk-enrollment-benchmark-" + (bulk ? "bulk" : "single"));
+        properties.setProperty("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+        properties.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount", "1");
+        SchedulerFactoryBean schedulerFactoryBean = new SchedulerFactoryBean();
+        schedulerFactoryBean.setQuartzProperties(properties);
+        schedulerFactoryBean.afterPropertiesSet();
+
+        MotechSchedulerServiceImpl schedulerService = new MotechSchedulerServiceImpl();
+        ReflectionTestUtils.setField(schedulerService, "schedulerFactoryBean", schedulerFactoryBean);
+        ReflectionTestUtils.setField(schedulerService, "jobGroups", jobGroups);
+
+        CountingCampaigns allMessageCampaigns = new CountingCampaigns(campaign);
+        MessageCampaignServiceImpl service = new MessageCampaignServiceImpl(allMessageCampaigns, schedulerService);
+
+        long start = System.nanoTime();
+        if (bulk) {
+            service.startFor(requests);
+        } else {
+            for (CampaignRequest request : requests) {
+                service.startFor(request);
+            }
+        }
+        long enrolling = Math.max(1, millisSince(start));
+        int jobs = schedulerFactoryBean.getScheduler().getJobNames(group.getName()).length;
+        System.out.println(String.format("%s: enrolled %d in %d ms, %d per second, %d Quartz jobs, %d campaign lookups",
+                name, requests.size(), enrolling, requests.size() * 1000L / enrolling, jobs, allMessageCampaigns.lookups));
+
+        allMessageCampaigns.lookups = 0;
+        start = System.nanoTime();
+        if (bulk) {
+            service.stopFor(requests);
+        } else {
+            for (CampaignRequest request : requests) {
+                service.stopFor(request);
+            }
+        }
+        long stopping = Math.max(1, millisSince(start));
+        System.out.println(String.format("%s: stopped %d in %d ms, %d per second, %d Quartz jobs left, %d campaign lookups",
+                name, requests.size(), stopping, requests.size() * 1000L / stopping,
+                schedulerFactoryBean.getScheduler().getJobNames(group.getName()).length, allMessageCampaigns.lookups));
+
+        schedulerFactoryBean.destroy();
+        jobGroups.shutdown();
+    }
+
+    private static OffsetCampaign pregnancyCampaign() {
+        List<OffsetCampaignMessage> messages = new ArrayList<OffsetCampaignMessage>();
+        for (int week = 1; week <= WEEKS; week++) {
+            OffsetCampaignMessage message = new OffsetCampaignMessage();
+            message.name("week-" + week);
+            message.messageKey("pregnancy-week-" + week);
+            message.timeOffset(week + (week == 1 ? " Week" : " Weeks"));
+            message.formats(Arrays.asList("IVR"));
+            message.languages(Arrays.asList("en"));
+            messages.add(message);
+        }
+
+        OffsetCampaign campaign = new OffsetCampaign();
+        campaign.setName(CAMPAIGN_NAME);
+        campaign.setMessages(messages);
+        return campaign;
+    }
+
+    private static List<CampaignRequest> requests(int enrollments, LocalDate referenceDate) {
+        List<CampaignRequest> requests = new ArrayList<CampaignRequest>(enrollments);
+        for (int mother = 0; mother < enrollments; mother++) {
+            requests.add(new CampaignRequest("mother-" + mother, CAMPAIGN_NAME, new Time(9, 30), referenceDate));
+        }
+        return requests;
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static class CountingCampaigns extends AllMessageCampaigns {
+        private final Campaign campaign;
+        int lookups;
+
+        CountingCampaigns(Campaign campaign) {
+            super(new Properties(), null);
+            this.campaign = campaign;
+        }
+
+        @Override
+        public Campaign get(String campaignName) {
+            lookups++;
+            return campaign;
+        }
+    }
+}
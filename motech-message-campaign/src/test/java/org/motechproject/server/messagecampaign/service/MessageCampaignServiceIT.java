@@ -3,7 +3,6 @@ package org.motechproject.server.messagecampaign.service;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.motechproject.model.Time;
-import org.motechproject.scheduler.MotechSchedulerServiceImpl;
 import org.motechproject.server.messagecampaign.contract.CampaignRequest;
 import org.motechproject.util.DateUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +15,7 @@ import static org.junit.Assert.assertEquals;
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(locations = {"/testApplicationContext.xml"})
 public class MessageCampaignServiceIT {
+    private static final String JOB_GROUP = "messagecampaign";
 
     @Autowired
     private MessageCampaignService messageCampaignService;
@@ -24,19 +24,19 @@ public class MessageCampaignServiceIT {
 
     @Test
     public void testEnrollForAbsoluteProgram() throws Exception {
-        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length;
+        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(JOB_GROUP).length;
 
         CampaignRequest enrollRequest = new CampaignRequest();
         enrollRequest.setCampaignName("Absolute Dates Message Program");
         enrollRequest.setExternalId("patient_Id1");
         enrollRequest.setReminderTime(new Time(9, 30));
         messageCampaignService.startFor(enrollRequest);
-        assertEquals(scheduledJobsNum + 2, schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
+        assertEquals(scheduledJobsNum + 2, schedulerFactoryBean.getScheduler().getTriggerNames(JOB_GROUP).length);
     }
 
     @Test
     public void testEnrollForOffsetProgram() throws Exception {
-        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length;
+        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(JOB_GROUP).length;
 
         CampaignRequest enrollRequest = new CampaignRequest();
         enrollRequest.setCampaignName("Relative Dates Message Program");
@@ -44,12 +44,12 @@ public class MessageCampaignServiceIT {
         enrollRequest.setReferenceDate(DateUtil.today().plusDays(1));
         enrollRequest.setReminderTime(new Time(9, 30));
         messageCampaignService.startFor(enrollRequest);
-        assertEquals(scheduledJobsNum + 3, schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
+        assertEquals(scheduledJobsNum + 3, schedulerFactoryBean.getScheduler().getTriggerNames(JOB_GROUP).length);
     }
 
     @Test
     public void testEnrollForRepeatingProgram() throws Exception {
-        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length;
+        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(JOB_GROUP).length;
 
         CampaignRequest enrollRequest = new CampaignRequest();
         enrollRequest.setCampaignName("Relative Parameterized Dates Message Program");
@@ -57,18 +57,18 @@ public class MessageCampaignServiceIT {
         enrollRequest.setReferenceDate(DateUtil.today().plusDays(1));
         enrollRequest.setReminderTime(new Time(9, 30));
         messageCampaignService.startFor(enrollRequest);
-        assertEquals(scheduledJobsNum + 12, schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
+        assertEquals(scheduledJobsNum + 12, schedulerFactoryBean.getScheduler().getTriggerNames(JOB_GROUP).length);
     }
 
     @Test
     public void testEnrollForCronBasedProgram() throws Exception {
-        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length;
+        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(JOB_GROUP).length;
 
         CampaignRequest enrollRequest = new CampaignRequest();
         enrollRequest.setCampaignName("Cron based Message Program");
         enrollRequest.setExternalId("patiend_Id3");
         enrollRequest.setReferenceDate(DateUtil.today());
         messageCampaignService.startFor(enrollRequest);
-        assertEquals(scheduledJobsNum + 1, schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
+        assertEquals(scheduledJobsNum + 1, schedulerFactoryBean.getScheduler().getTriggerNames(JOB_GROUP).length);
     }
 }
@@ -2,14 +2,26 @@ package org.motechproject.server.messagecampaign.service;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
+import org.motechproject.model.Time;
 import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.server.messagecampaign.builder.CampaignBuilder;
 import org.motechproject.server.messagecampaign.contract.CampaignRequest;
 import org.motechproject.server.messagecampaign.dao.AllMessageCampaigns;
 import org.motechproject.server.messagecampaign.domain.MessageCampaignException;
 import org.motechproject.server.messagecampaign.domain.campaign.AbsoluteCampaign;
+import org.motechproject.server.messagecampaign.domain.campaign.OffsetCampaign;
+import org.motechproject.server.messagecampaign.engine.CampaignEngine;
 import org.motechproject.server.messagecampaign.scheduler.MessageCampaignScheduler;
+import org.motechproject.util.DateUtil;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -76,6 +88,43 @@ public class MessageCampaignServiceImplTest {
         verify(scheduler).stop();
     }
 
+    @Test
+    public void shouldEnrollInCampaignEngineWhenEnabled() {
+        String campaignName = "campaign-name";
+        CampaignRequest campaignRequest = new CampaignRequest();
+        campaignRequest.setCampaignName(campaignName);
+        AbsoluteCampaign absoluteCampaign = mock(AbsoluteCampaign.class);
+        CampaignEngine campaignEngine = mock(CampaignEngine.class);
+
+        when(allMessageCampaigns.get(campaignName)).thenReturn(absoluteCampaign);
+        when(campaignEngine.isEnabled()).thenReturn(true);
+        messageCampaignService.setCampaignEngine(campaignEngine);
+
+        messageCampaignService.startFor(campaignRequest);
+
+        verify(campaignEngine).startFor(absoluteCampaign, campaignRequest);
+        verify(absoluteCampaign, never()).getScheduler(schedulerService, campaignRequest);
+    }
+
+    @Test
+    public void shouldStopCampaignSchedulerAndEngineWhenEngineIsEnabled() {
+        String campaignName = "campaign-name";
+        CampaignRequest campaignRequest = new CampaignRequest();
+        campaignRequest.setCampaignName(campaignName);
+        AbsoluteCampaign absoluteCampaign = mock(AbsoluteCampaign.class);
+        CampaignEngine campaignEngine = mock(CampaignEngine.class);
+
+        when(allMessageCampaigns.get(campaignName)).thenReturn(absoluteCampaign);
+        when(absoluteCampaign.getScheduler(schedulerService, campaignRequest)).thenReturn(scheduler);
+        when(campaignEngine.isEnabled()).thenReturn(true);
+        messageCampaignService.setCampaignEngine(campaignEngine);
+
+        messageCampaignService.stopFor(campaignRequest);
+
+        verify(scheduler).stop();
+        verify(campaignEngine).stopFor(campaignRequest);
+    }
+
     @Test(expected = MessageCampaignException.class)
     public void enrollWithUnknownCampaignTest() {
         String campaignName = "non-existent-campaign-name";
@@ -86,4 +135,101 @@ public class MessageCampaignServiceImplTest {
 
         messageCampaignService.startFor(enrollRequest);
     }
+
+    @Test
+    public void shouldResolveTheCampaignOnceAndScheduleTheJobsOfABatchTogether() {
+        OffsetCampaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+
+        messageCampaignService.startFor(requests("testCampaign", 3));
+
+        verify(allMessageCampaigns, times(1)).get("testCampaign");
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService, times(1)).scheduleRunOnceJobs(capture.capture());
+        assertEquals(3 * campaign.messages().size(), capture.getValue().size());
+    }
+
+    @Test
+    public void shouldCallTheSchedulerOncePerChunkOfEnrollments() {
+        OffsetCampaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+
+        messageCampaignService.startFor(requests("testCampaign", MessageCampaignServiceImpl.ENROLLMENTS_PER_CALL + 1));
+
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService, times(2)).scheduleRunOnceJobs(capture.capture());
+        assertEquals(campaign.messages().size(), capture.getValue().size());
+    }
+
+    @Test
+    public void shouldUnscheduleTheJobsOfABatchTogether() {
+        OffsetCampaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+
+        messageCampaignService.stopFor(requests("testCampaign", 2));
+
+        verify(schedulerService).unscheduleAllJobs(Arrays.asList(
+                "org.motechproject.server.messagecampaign.testCampaign.external-id-0.",
+                "org.motechproject.server.messagecampaign.testCampaign.external-id-1."));
+    }
+
+    @Test
+    public void shouldUnscheduleAndScheduleTheJobsOfABatchToRestart() {
+        OffsetCampaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+
+        messageCampaignService.restartFor(requests("testCampaign", 2));
+
+        verify(schedulerService).unscheduleAllJobs(Arrays.asList(
+                "org.motechproject.server.messagecampaign.testCampaign.external-id-0.",
+                "org.motechproject.server.messagecampaign.testCampaign.external-id-1."));
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleRunOnceJobs(capture.capture());
+        assertEquals(2 * campaign.messages().size(), capture.getValue().size());
+    }
+
+    @Test
+    public void shouldScheduleNothingWhenACampaignOfTheBatchDoesNotExist() {
+        OffsetCampaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+        List<CampaignRequest> requests = requests("testCampaign", 2);
+        requests.addAll(requests("non-existent-campaign-name", 1));
+
+        try {
+            messageCampaignService.startFor(requests);
+        } catch (MessageCampaignException expected) {
+            verifyZeroInteractions(schedulerService);
+            return;
+        }
+        throw new AssertionError("Enrolled in a campaign that does not exist");
+    }
+
+    @Test
+    public void shouldEnrollABatchInCampaignEngineWhenEnabled() {
+        OffsetCampaign campaign = new CampaignBuilder().defaultOffsetCampaign();
+        when(allMessageCampaigns.get("testCampaign")).thenReturn(campaign);
+        CampaignEngine campaignEngine = mock(CampaignEngine.class);
+        when(campaignEngine.isEnabled()).thenReturn(true);
+        messageCampaignService.setCampaignEngine(campaignEngine);
+        List<CampaignRequest> requests = requests("testCampaign", 2);
+
+        messageCampaignService.startFor(requests);
+
+        verify(campaignEngine).startFor(campaign, requests.get(0));
+        verify(campaignEngine).startFor(campaign, requests.get(1));
+        verifyZeroInteractions(schedulerService);
+    }
+
+    private List<CampaignRequest> requests(String campaignName, int count) {
+        List<CampaignRequest> requests = new ArrayList<CampaignRequest>();
+        for (int i = 0; i < count; i++) {
+            CampaignRequest request = new CampaignRequest();
+            request.setCampaignName(campaignName);
+            request.setExternalId("external-id-" + i);
+            request.setReminderTime(new Time(9, 30));
+            request.setReferenceDate(DateUtil.today().plusDays(1));
+            requests.add(request);
+        }
+        return requests;
+    }
 }
@@ -68,13 +68,14 @@ public class CampaignRecordTest {
     @Test
     public void testBuildRepeatingCampaign() {
         messageRecord = CampaignMessageRecordBuilder.createRepeatingCampaignMessageRecord("Message 1", "message-key");
-        campaignRecord = CampaignRecordBuilder.repeatingCampaignRecord("Campaign 1", messageRecord);
+        campaignRecord = CampaignRecordBuilder.repeatingCampaignRecord("Campaign 1", messageRecord).repeatWindow(3);
 
         Campaign campaign = campaignRecord.build();
         assertTrue(campaign instanceof RepeatingCampaign);
         RepeatingCampaign repeatingCampaign = (RepeatingCampaign) campaign;
         assertEquals(campaignRecord.name(), repeatingCampaign.name());
         assertEquals(campaignRecord.maxDuration(), repeatingCampaign.maxDuration());
+        assertEquals(Integer.valueOf(3), repeatingCampaign.repeatWindow());
         assertEquals(CampaignType.REPEATING, repeatingCampaign.type());
         List<RepeatingCampaignMessage> messages = repeatingCampaign.messages();
         assertEquals(1, messages.size());
@@ -1,24 +1,30 @@
 package org.motechproject.server.pillreminder;
 
-import org.joda.time.DateTime;
 import org.motechproject.gateway.OutboundEventGateway;
 import org.motechproject.model.MotechEvent;
-import org.motechproject.model.RepeatingSchedulableJob;
-import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.scheduler.MotechSchedulerServiceImpl;
+import org.motechproject.scheduler.SchedulerQueryService;
 import org.motechproject.server.event.annotations.MotechListener;
 import org.motechproject.server.pillreminder.dao.AllPillRegimens;
 import org.motechproject.server.pillreminder.domain.DailyScheduleDetails;
 import org.motechproject.server.pillreminder.domain.Dosage;
 import org.motechproject.server.pillreminder.domain.PillRegimen;
+import org.motechproject.server.pillreminder.service.PillRegimenJobScheduler;
 import org.motechproject.server.pillreminder.util.PillReminderTimeUtils;
-import org.motechproject.util.DateUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.Date;
 import java.util.Map;
 
+/**
+ * Sends the reminders of a dosage until its response is captured.
+ *
+ * The repeat reminders of a dosage are scheduled with its daily job. Regimens scheduled before that have only their
+ * daily job, so on the first reminder of the day the repeat reminders are scheduled when the scheduler has no
+ * "-repeat" job for the dosage. Without a {@link SchedulerQueryService} to ask, the "-repeat" job is unscheduled and
+ * scheduled again on the first reminder of every day.
+ */
 public class ReminderEventHandler {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
     @Autowired
@@ -27,8 +33,11 @@ public class ReminderEventHandler {
     @Autowired
     private AllPillRegimens allPillRegimens;
 
-    @Autowired
-    private MotechSchedulerService schedulerService;
+    @Autowired(required = false)
+    private PillRegimenJobScheduler pillRegimenJobScheduler;
+
+    @Autowired(required = false)
+    private SchedulerQueryService schedulerQueryService;
 
     private PillReminderTimeUtils pillReminderTimeUtils;
 
@@ -36,12 +45,17 @@ public class ReminderEventHandler {
         pillReminderTimeUtils = new PillReminderTimeUtils();
     }
 
-    public ReminderEventHandler(OutboundEventGateway outboundEventGateway, AllPillRegimens allPillRegimens, PillReminderTimeUtils pillRegimenTimeUtils,
-                                MotechSchedulerService schedulerService) {
+    public ReminderEventHandler(OutboundEventGateway outboundEventGateway, AllPillRegimens allPillRegimens, PillReminderTimeUtils pillRegimenTimeUtils) {
         this.outboundEventGateway = outboundEventGateway;
         this.allPillRegimens = allPillRegimens;
         this.pillReminderTimeUtils = pillRegimenTimeUtils;
-        this.schedulerService = schedulerService;
+    }
+
+    public ReminderEventHandler(OutboundEventGateway outboundEventGateway, AllPillRegimens allPillRegimens, PillReminderTimeUtils pillRegimenTimeUtils,
+                                PillRegimenJobScheduler pillRegimenJobScheduler, SchedulerQueryService schedulerQueryService) {
+        this(outboundEventGateway, allPillRegimens, pillRegimenTimeUtils);
+        this.pillRegimenJobScheduler = pillRegimenJobScheduler;
+        this.schedulerQueryService = schedulerQueryService;
     }
 
     @MotechListener(subjects = {EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER})
@@ -52,34 +66,34 @@ public class ReminderEventHandler {
 
             if (!dosage.isTodaysDosageResponseCaptured()) {
                 outboundEventGateway.sendEventMessage(createNewMotechEvent(dosage, pillRegimen, motechEvent, EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT));
-                if (isFirstReminder(dosage, pillRegimen))
-                    scheduleRepeatReminders(motechEvent, pillRegimen, dosage);
+                if (isFirstReminder(dosage, pillRegimen) && !hasRepeatReminders(dosage))
+                    scheduleRepeatReminders(pillRegimen, dosage);
             }
         } catch (Exception e) {
             logger.error("Failed to handle PillReminder, it would not be retried", e);
         }
     }
 
-    private void scheduleRepeatReminders(MotechEvent motechEvent, PillRegimen pillRegimen, Dosage dosage) {
-        DateTime dosageTime = DateUtil.now().withHourOfDay(dosage.getDosageTime().getHour()).withMinuteOfHour(dosage.getDosageTime().getMinute());
-        DailyScheduleDetails scheduleDetails = pillRegimen.getScheduleDetails();
-        Date startTime = dosageTime.plusMinutes(scheduleDetails.getRepeatIntervalInMinutes()).toDate();
-        Date endTime = dosageTime.plusHours(scheduleDetails.getPillWindowInHours()).plusMinutes(1).toDate();
-        MotechEvent repeatingReminderEvent = createNewMotechEvent(dosage, pillRegimen, motechEvent, EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER);
-
-        repeatingReminderEvent.getParameters().put(MotechSchedulerService.JOB_ID_KEY, dosage.getId());
-        RepeatingSchedulableJob retryRemindersJob = new RepeatingSchedulableJob(repeatingReminderEvent,
-                startTime, endTime, scheduleDetails.getRepeatIntervalInMinutes() * 60 * 1000);
-        schedulerService.scheduleRepeatingJob(retryRemindersJob);
-
-    }
-
     private boolean isFirstReminder(Dosage dosage, PillRegimen pillRegimen) {
         DailyScheduleDetails scheduleDetails = pillRegimen.getScheduleDetails();
         int numberOfReminders = pillReminderTimeUtils.timesPillRemindersSent(dosage, scheduleDetails.getPillWindowInHours(), scheduleDetails.getRepeatIntervalInMinutes());
         return numberOfReminders == 0;
     }
 
+    private boolean hasRepeatReminders(Dosage dosage) {
+        if (schedulerQueryService == null) {
+            return false;
+        }
+        String repeatJobId = EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER + "-" + dosage.getId() + MotechSchedulerServiceImpl.REPEAT_JOB_SUFFIX;
+        return schedulerQueryService.countByPrefix(repeatJobId) > 0;
+    }
+
+    private void scheduleRepeatReminders(PillRegimen pillRegimen, Dosage dosage) {
+        if (pillRegimenJobScheduler != null && pillRegimenJobScheduler.scheduleRepeatingJob(pillRegimen, dosage)) {
+            logger.info("Scheduled the missing repeat reminders of dosage " + dosage.getId() + " of " + pillRegimen.getExternalId());
+        }
+    }
+
     private MotechEvent createNewMotechEvent(Dosage dosage, PillRegimen pillRegimen, MotechEvent eventRaisedByScheduler, String subject) {
         MotechEvent motechEvent = new MotechEvent(subject);
         Map<String,Object> eventParams = motechEvent.getParameters();
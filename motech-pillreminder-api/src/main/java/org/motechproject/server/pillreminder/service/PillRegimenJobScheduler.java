@@ -2,22 +2,29 @@ package org.motechproject.server.pillreminder.service;
 
 import org.motechproject.model.CronSchedulableJob;
 import org.motechproject.model.MotechEvent;
+import org.motechproject.model.RepeatingSchedulableJob;
+import org.motechproject.model.Time;
 import org.motechproject.scheduler.MotechSchedulerService;
 import org.motechproject.scheduler.builder.CronJobSimpleExpressionBuilder;
 import org.motechproject.server.pillreminder.EventKeys;
 import org.motechproject.server.pillreminder.ReminderEventHandler;
 import org.motechproject.server.pillreminder.builder.SchedulerPayloadBuilder;
+import org.motechproject.server.pillreminder.domain.DailyScheduleDetails;
 import org.motechproject.server.pillreminder.domain.Dosage;
 import org.motechproject.server.pillreminder.domain.PillRegimen;
 import org.motechproject.util.DateUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 
 @Component
 public class PillRegimenJobScheduler {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
     private MotechSchedulerService schedulerService;
 
     @Autowired
@@ -26,10 +33,31 @@ public class PillRegimenJobScheduler {
     }
 
     public void scheduleDailyJob(PillRegimen pillRegimen) {
+        List<CronSchedulableJob> schedulableJobs = new ArrayList<CronSchedulableJob>();
+        for (Dosage dosage : pillRegimen.getDosages()) {
+            schedulableJobs.add(getSchedulableDailyJob(pillRegimen.getId(), pillRegimen.getExternalId(), dosage));
+        }
+        schedulerService.scheduleJobs(schedulableJobs);
+
         for (Dosage dosage : pillRegimen.getDosages()) {
-            CronSchedulableJob schedulableJob = getSchedulableDailyJob(pillRegimen.getId(), pillRegimen.getExternalId(), dosage);
-            schedulerService.scheduleJob(schedulableJob);
+            scheduleRepeatingJob(pillRegimen, dosage);
+        }
+    }
+
+    /**
+     * Schedules the repeat reminders of the dosage, unscheduling those already scheduled first
+     *
+     * @return false if the dosage has no repeat reminders
+     */
+    public boolean scheduleRepeatingJob(PillRegimen pillRegimen, Dosage dosage) {
+        RepeatingSchedulableJob repeatingJob = getSchedulableRepeatingJob(pillRegimen.getId(), pillRegimen.getExternalId(),
+                                                                          dosage, pillRegimen.getScheduleDetails());
+        if (repeatingJob == null) {
+            return false;
         }
+        schedulerService.unscheduleRepeatingJob(EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER, dosage.getId());
+        schedulerService.scheduleRepeatingJob(repeatingJob);
+        return true;
     }
 
     public void unscheduleJobs(PillRegimen regimen) {
@@ -40,6 +68,39 @@ public class PillRegimenJobScheduler {
     }
 
     protected CronSchedulableJob getSchedulableDailyJob(String pillRegimenId, String externalId, Dosage dosage) {
+        MotechEvent motechEvent = reminderEvent(pillRegimenId, externalId, dosage);
+        String cronJobExpression = new CronJobSimpleExpressionBuilder(dosage.getDosageTime()).build();
+        return new CronSchedulableJob(motechEvent, cronJobExpression, startDate(dosage), endDate(dosage));
+    }
+
+    /**
+     * The reminders repeated after the first one of a dosage: every repeat interval until the pill window closes, every
+     * day, as one job.
+     *
+     * @return null if the pill window is shorter than the repeat interval or the dosage has ended
+     */
+    protected RepeatingSchedulableJob getSchedulableRepeatingJob(String pillRegimenId, String externalId, Dosage dosage,
+                                                                 DailyScheduleDetails scheduleDetails) {
+        int repeatIntervalInMinutes = scheduleDetails.getRepeatIntervalInMinutes();
+        int pillWindowInMinutes = Math.min(scheduleDetails.getPillWindowInHours() * 60, MINUTES_PER_DAY - 1);
+        if (repeatIntervalInMinutes <= 0 || pillWindowInMinutes < repeatIntervalInMinutes) {
+            return null;
+        }
+
+        Date startDate = startDate(dosage);
+        Date endDate = endDate(dosage);
+        if (endDate != null && !endDate.after(startDate)) {
+            return null;
+        }
+
+        Time dosageTime = dosage.getDosageTime();
+        return new RepeatingSchedulableJob(reminderEvent(pillRegimenId, externalId, dosage), startDate,
+                                           endDate, repeatIntervalInMinutes * 60 * 1000L,
+                                           plusMinutes(dosageTime, repeatIntervalInMinutes),
+                                           plusMinutes(dosageTime, pillWindowInMinutes));
+    }
+
+    private MotechEvent reminderEvent(String pillRegimenId, String externalId, Dosage dosage) {
         Map<String, Object> eventParams = new SchedulerPayloadBuilder()
                 .withJobId(dosage.getId())
                 .withDosageId(dosage.getId())
@@ -47,10 +108,19 @@ public class PillRegimenJobScheduler {
                 .withExternalId(externalId)
                 .payload();
 
-        MotechEvent motechEvent = new MotechEvent(EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER, eventParams);
-        String cronJobExpression = new CronJobSimpleExpressionBuilder(dosage.getDosageTime()).build();
-        Date endDate = dosage.getEndDate() == null ? null : dosage.getEndDate().toDate();
-        Date startDate = DateUtil.newDateTime(dosage.getStartDate().toDate()).isBefore(DateUtil.now()) ? DateUtil.now().toDate() : dosage.getStartDate().toDate();
-        return new CronSchedulableJob(motechEvent, cronJobExpression, startDate, endDate);
+        return new MotechEvent(EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER, eventParams);
+    }
+
+    private Date startDate(Dosage dosage) {
+        return DateUtil.newDateTime(dosage.getStartDate().toDate()).isBefore(DateUtil.now()) ? DateUtil.now().toDate() : dosage.getStartDate().toDate();
+    }
+
+    private Date endDate(Dosage dosage) {
+        return dosage.getEndDate() == null ? null : dosage.getEndDate().toDate();
+    }
+
+    private Time plusMinutes(Time time, int minutes) {
+        int minuteOfDay = (time.getHour() * 60 + time.getMinute() + minutes) % MINUTES_PER_DAY;
+        return new Time(minuteOfDay / 60, minuteOfDay % 60);
     }
 }
\ No newline at end of file
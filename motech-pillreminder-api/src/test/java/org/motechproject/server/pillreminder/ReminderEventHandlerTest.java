@@ -1,11 +1,10 @@
 package org.motechproject.server.pillreminder;
 
 
-import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
-import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
 import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.motechproject.gateway.OutboundEventGateway;
@@ -13,18 +12,22 @@ import org.motechproject.model.MotechEvent;
 import org.motechproject.model.RepeatingSchedulableJob;
 import org.motechproject.model.Time;
 import org.motechproject.scheduler.MotechSchedulerService;
+import org.motechproject.scheduler.SchedulerQueryService;
 import org.motechproject.server.pillreminder.builder.SchedulerPayloadBuilder;
 import org.motechproject.server.pillreminder.builder.testbuilder.DosageBuilder;
 import org.motechproject.server.pillreminder.builder.testbuilder.PillRegimenBuilder;
 import org.motechproject.server.pillreminder.dao.AllPillRegimens;
 import org.motechproject.server.pillreminder.domain.DailyScheduleDetails;
 import org.motechproject.server.pillreminder.domain.Dosage;
+import org.motechproject.server.pillreminder.domain.Medicine;
 import org.motechproject.server.pillreminder.domain.PillRegimen;
+import org.motechproject.server.pillreminder.service.PillRegimenJobScheduler;
 import org.motechproject.server.pillreminder.util.PillReminderTimeUtils;
 import org.motechproject.util.DateUtil;
 
-import java.util.Date;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertNotNull;
@@ -42,16 +45,13 @@ public class ReminderEventHandlerTest {
     @Mock
     private PillReminderTimeUtils pillRegimenTimeUtils;
 
-    @Mock
-    private MotechSchedulerService schedulerService;
-
     private ReminderEventHandler pillReminderEventHandler;
 
 
     @Before
     public void setUp() {
         initMocks(this);
-        pillReminderEventHandler = new ReminderEventHandler(outboundEventGateway, allPillRegimens, pillRegimenTimeUtils, schedulerService);
+        pillReminderEventHandler = new ReminderEventHandler(outboundEventGateway, allPillRegimens, pillRegimenTimeUtils);
     }
 
     @Test
@@ -169,70 +169,89 @@ public class ReminderEventHandlerTest {
     }
     
     @Test
-    public void shouldScheduleRepeatRemindersForFirstCall() {
-        int pillWindow = 0;
+    public void shouldScheduleMissingRepeatRemindersOnFirstReminder() {
         String externalId = "externalId";
         String dosageId = "dosageId";
-        int retryInterval = 4;
-
         Dosage dosage = buildDosageNotYetTaken(dosageId);
-
-        PillRegimen pillRegimen = buildPillRegimen(externalId, pillWindow, dosage, retryInterval);
-
+        dosage.setMedicines(new HashSet<Medicine>(Arrays.asList(new Medicine("med1", DateUtil.today(), null))));
+        PillRegimen pillRegimen = buildPillRegimen(externalId, 1, dosage, 15);
         when(allPillRegimens.findByExternalId(externalId)).thenReturn(pillRegimen);
+        MotechSchedulerService schedulerService = mock(MotechSchedulerService.class);
+        SchedulerQueryService schedulerQueryService = mock(SchedulerQueryService.class);
+        when(schedulerQueryService.countByPrefix(EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER + "-dosageId-repeat")).thenReturn(0);
 
-        MotechEvent motechEvent = buildMotechEvent(externalId, dosageId);
-        pillReminderEventHandler.handleEvent(motechEvent);
+        new ReminderEventHandler(outboundEventGateway, allPillRegimens, pillRegimenTimeUtils,
+                                 new PillRegimenJobScheduler(schedulerService), schedulerQueryService)
+                .handleEvent(buildMotechEvent(externalId, dosageId));
 
         ArgumentCaptor<RepeatingSchedulableJob> captor = ArgumentCaptor.forClass(RepeatingSchedulableJob.class);
         verify(schedulerService).scheduleRepeatingJob(captor.capture());
-
-        assertEquals(10, captor.getValue().getStartTime().getHours());
-        assertEquals(29, captor.getValue().getStartTime().getMinutes());
-        assertEquals(dosage.getId(), captor.getValue().getMotechEvent().getParameters().get(MotechSchedulerService.JOB_ID_KEY));
+        assertEquals(dosageId, captor.getValue().getMotechEvent().getParameters().get(MotechSchedulerService.JOB_ID_KEY));
+        assertEquals(10, captor.getValue().getDailyWindowStart().getHour().intValue());
+        assertEquals(40, captor.getValue().getDailyWindowStart().getMinute().intValue());
     }
 
     @Test
-    public void shouldNotScheduleRepeatRemindersForReminderCalls() {
-        int pillWindow = 1;
+    public void shouldRescheduleRepeatRemindersOnEveryFirstReminderWithoutAQueryService() {
         String externalId = "externalId";
         String dosageId = "dosageId";
-        int retryInterval = 4;
-
         Dosage dosage = buildDosageNotYetTaken(dosageId);
+        dosage.setMedicines(new HashSet<Medicine>(Arrays.asList(new Medicine("med1", DateUtil.today(), null))));
+        PillRegimen pillRegimen = buildPillRegimen(externalId, 1, dosage, 15);
+        when(allPillRegimens.findByExternalId(externalId)).thenReturn(pillRegimen);
+        MotechSchedulerService schedulerService = mock(MotechSchedulerService.class);
+        ReminderEventHandler handler = new ReminderEventHandler(outboundEventGateway, allPillRegimens, pillRegimenTimeUtils,
+                                                                new PillRegimenJobScheduler(schedulerService), null);
 
-        PillRegimen pillRegimen = buildPillRegimen(externalId, pillWindow, dosage, retryInterval);
+        handler.handleEvent(buildMotechEvent(externalId, dosageId));
+        handler.handleEvent(buildMotechEvent(externalId, dosageId));
 
-        when(allPillRegimens.findByExternalId(externalId)).thenReturn(pillRegimen);
+        InOrder inOrder = inOrder(schedulerService);
+        for (int day = 0; day < 2; day++) {
+            inOrder.verify(schedulerService).unscheduleRepeatingJob(EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER, dosageId);
+            inOrder.verify(schedulerService).scheduleRepeatingJob(Matchers.<RepeatingSchedulableJob>any());
+        }
+        verify(outboundEventGateway, times(2)).sendEventMessage(Matchers.<MotechEvent>any());
+    }
 
-        MotechEvent motechEvent = buildMotechEvent(externalId, dosageId);
+    @Test
+    public void shouldNotScheduleRepeatRemindersThatAreScheduled() {
+        String externalId = "externalId";
+        String dosageId = "dosageId";
+        Dosage dosage = buildDosageNotYetTaken(dosageId);
+        dosage.setMedicines(new HashSet<Medicine>(Arrays.asList(new Medicine("med1", DateUtil.today(), null))));
+        PillRegimen pillRegimen = buildPillRegimen(externalId, 1, dosage, 15);
+        when(allPillRegimens.findByExternalId(externalId)).thenReturn(pillRegimen);
+        MotechSchedulerService schedulerService = mock(MotechSchedulerService.class);
+        SchedulerQueryService schedulerQueryService = mock(SchedulerQueryService.class);
+        when(schedulerQueryService.countByPrefix(EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER + "-dosageId-repeat")).thenReturn(1);
 
-        when(pillRegimenTimeUtils.timesPillRemindersSent(dosage, pillWindow, retryInterval)).thenReturn(1);
-        
-        pillReminderEventHandler.handleEvent(motechEvent);
+        new ReminderEventHandler(outboundEventGateway, allPillRegimens, pillRegimenTimeUtils,
+                                 new PillRegimenJobScheduler(schedulerService), schedulerQueryService)
+                .handleEvent(buildMotechEvent(externalId, dosageId));
 
         verify(schedulerService, never()).scheduleRepeatingJob(Matchers.<RepeatingSchedulableJob>any());
     }
 
-    private class RepeatingSchedulableJobArgumentMatcher extends ArgumentMatcher<RepeatingSchedulableJob> {
-   	
-    	Time time;
-    	
-        public RepeatingSchedulableJobArgumentMatcher(Time dosageTime) {
-        	this.time = dosageTime;
-		}
-
-		@Override
-        public boolean matches(Object o) {
-            DateTime dosageTime = DateUtil.now().withHourOfDay(time.getHour()).withMinuteOfHour(time.getMinute());
-            Date startTime = dosageTime.toDate();
-
-        	RepeatingSchedulableJob job = (RepeatingSchedulableJob)o;
-        	return job.getStartTime().getHours() == startTime.getHours()
-        			&& job.getStartTime().getMinutes() == startTime.getMinutes();
-        }
+    @Test
+    public void shouldNotScheduleRepeatRemindersOnLaterReminders() {
+        String externalId = "externalId";
+        String dosageId = "dosageId";
+        Dosage dosage = buildDosageNotYetTaken(dosageId);
+        PillRegimen pillRegimen = buildPillRegimen(externalId, 1, dosage, 15);
+        when(allPillRegimens.findByExternalId(externalId)).thenReturn(pillRegimen);
+        when(pillRegimenTimeUtils.timesPillRemindersSent(dosage, 1, 15)).thenReturn(1);
+        MotechSchedulerService schedulerService = mock(MotechSchedulerService.class);
+        SchedulerQueryService schedulerQueryService = mock(SchedulerQueryService.class);
+
+        new ReminderEventHandler(outboundEventGateway, allPillRegimens, pillRegimenTimeUtils,
+                                 new PillRegimenJobScheduler(schedulerService), schedulerQueryService)
+                .handleEvent(buildMotechEvent(externalId, dosageId));
+
+        verify(schedulerService, never()).scheduleRepeatingJob(Matchers.<RepeatingSchedulableJob>any());
+        verify(outboundEventGateway).sendEventMessage(Matchers.<MotechEvent>any());
     }
-    
+
     private MotechEvent buildMotechEvent(String externalId, String dosageId) {
         HashMap eventParams = new SchedulerPayloadBuilder().withDosageId(dosageId).withExternalId(externalId).withJobId(dosageId).payload();
         return new MotechEvent(EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT, eventParams);
@@ -6,10 +6,12 @@ import org.joda.time.LocalDate;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.internal.exceptions.util.ScenarioPrinter;
 import org.motechproject.model.CronSchedulableJob;
+import org.motechproject.model.RepeatingSchedulableJob;
 import org.motechproject.model.Time;
 import org.motechproject.scheduler.MotechSchedulerService;
 import org.motechproject.server.pillreminder.EventKeys;
@@ -24,12 +26,14 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.quartz.SchedulerException;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 
 import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -78,7 +82,51 @@ public class PillRegimenJobSchedulerTest {
         pillRegimen = new PillRegimen(externalId, dosages, new DailyScheduleDetails(15, 2));
         pillRegimen.setId(pillRegimenId);
         jobScheduler.scheduleDailyJob(pillRegimen);
-        verify(schedulerService, times(2)).scheduleJob(any(CronSchedulableJob.class));
+        ArgumentCaptor<Collection> capture = ArgumentCaptor.forClass(Collection.class);
+        verify(schedulerService).scheduleJobs(capture.capture());
+        assertEquals(2, capture.getValue().size());
+    }
+
+    @Test
+    public void shouldScheduleRepeatRemindersOfEachDosageAsOneJob() {
+        pillRegimen = new PillRegimen(externalId, dosages, new DailyScheduleDetails(15, 2));
+        pillRegimen.setId(pillRegimenId);
+        jobScheduler.scheduleDailyJob(pillRegimen);
+
+        ArgumentCaptor<RepeatingSchedulableJob> captor = ArgumentCaptor.forClass(RepeatingSchedulableJob.class);
+        verify(schedulerService, times(2)).scheduleRepeatingJob(captor.capture());
+        for (RepeatingSchedulableJob repeatingJob : captor.getAllValues()) {
+            assertTrue(repeatingJob.hasDailyWindow());
+        }
+        verify(schedulerService).unscheduleRepeatingJob(EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER, "dosage1");
+        verify(schedulerService).unscheduleRepeatingJob(EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER, "dosage2");
+    }
+
+    @Test
+    public void shouldRepeatRemindersUntilPillWindowCloses() {
+        final HashSet<Medicine> medicines = new HashSet<Medicine>() {{
+            add(new Medicine("med1", DateUtil.today(), null));
+        }};
+        final Dosage dosage = new Dosage(new Time(10, 5), medicines);
+        dosage.setId("dosage1");
+
+        RepeatingSchedulableJob repeatingJob = jobScheduler.getSchedulableRepeatingJob(pillRegimenId, externalId, dosage,
+                                                                                        new DailyScheduleDetails(15, 2));
+
+        assertEquals(new Time(10, 20), repeatingJob.getDailyWindowStart());
+        assertEquals(new Time(12, 5), repeatingJob.getDailyWindowEnd());
+        assertEquals(15 * 60 * 1000L, repeatingJob.getRepeatInterval());
+        assertEquals("dosage1", repeatingJob.getMotechEvent().getParameters().get(MotechSchedulerService.JOB_ID_KEY));
+        assertEquals(EventKeys.PILLREMINDER_REMINDER_EVENT_SUBJECT_SCHEDULER, repeatingJob.getMotechEvent().getSubject());
+    }
+
+    @Test
+    public void shouldNotRepeatRemindersWhenPillWindowIsShorterThanRepeatInterval() {
+        pillRegimen = new PillRegimen(externalId, dosages, new DailyScheduleDetails(15, 0));
+        pillRegimen.setId(pillRegimenId);
+        jobScheduler.scheduleDailyJob(pillRegimen);
+
+        verify(schedulerService, never()).scheduleRepeatingJob(any(RepeatingSchedulableJob.class));
     }
 
     @Test
@@ -5,7 +5,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
-import org.motechproject.scheduler.MotechSchedulerServiceImpl;
+import org.motechproject.scheduler.CoalescedTriggers;
 import org.motechproject.server.pillreminder.contract.DailyPillRegimenRequest;
 import org.motechproject.server.pillreminder.contract.DosageRequest;
 import org.motechproject.server.pillreminder.contract.MedicineRequest;
@@ -14,7 +14,6 @@ import org.motechproject.server.pillreminder.domain.PillRegimen;
 import org.motechproject.util.DateUtil;
 import org.quartz.SchedulerException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.quartz.SchedulerFactoryBean;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -24,10 +23,13 @@ import java.util.Arrays;
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(locations = {"/testApplicationContext.xml"})
 public class PillReminderServiceIT {
+    // Pill reminders are coalesced, so their jobs are counted as members of the shared triggers
+    private static final String JOB_GROUP = "pillreminder";
+
     @Autowired
     private org.motechproject.server.pillreminder.service.PillReminderService pillReminderService;
     @Autowired
-    private SchedulerFactoryBean schedulerFactoryBean;
+    private CoalescedTriggers coalescedTriggers;
     
     @Autowired
     private AllPillRegimens allPillRegimens;
@@ -44,7 +46,7 @@ public class PillReminderServiceIT {
     @Test
     public void shouldSaveTheDailyPillRegimenAndScheduleJob() throws SchedulerException {
 
-        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length;
+        int scheduledJobsNum = coalescedTriggers.size(JOB_GROUP);
 
         ArrayList<MedicineRequest> medicineRequests = new ArrayList<MedicineRequest>();
         MedicineRequest medicineRequest1 = new MedicineRequest("m1", startDate, endDate);
@@ -56,13 +58,13 @@ public class PillReminderServiceIT {
         dosageContracts.add(new DosageRequest(9, 5, medicineRequests));
 
         pillReminderService.createNew(new DailyPillRegimenRequest("1234", 2, 15, dosageContracts));
-        Assert.assertEquals(scheduledJobsNum + 1, schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
+        Assert.assertEquals(scheduledJobsNum + 1, coalescedTriggers.size(JOB_GROUP));
     }
 
     @Test
     public void shouldRenewThePillRegimenAndScheduleJob() throws SchedulerException {
 
-        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length;
+        int scheduledJobsNum = coalescedTriggers.size(JOB_GROUP);
 
         ArrayList<MedicineRequest> medicineRequests = new ArrayList<MedicineRequest>();
         MedicineRequest medicineRequest1 = new MedicineRequest("m1", startDate, endDate);
@@ -80,7 +82,7 @@ public class PillReminderServiceIT {
         newDosageContracts.add(new DosageRequest(9, 5, Arrays.asList(new MedicineRequest("m1", DateUtil.today(), DateUtil.today().plusDays(100)))));
         newDosageContracts.add(new DosageRequest(4, 5, Arrays.asList(new MedicineRequest("m2", DateUtil.today(), DateUtil.today().plusDays(100)))));
         pillReminderService.renew(new DailyPillRegimenRequest(externalId, 2, 15, newDosageContracts));
-        Assert.assertEquals(scheduledJobsNum + 2, schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
+        Assert.assertEquals(scheduledJobsNum + 2, coalescedTriggers.size(JOB_GROUP));
         PillRegimen regimen = allPillRegimens.findByExternalId(externalId);
         allPillRegimens.remove(regimen);
     }
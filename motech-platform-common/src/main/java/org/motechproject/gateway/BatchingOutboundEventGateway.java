@@ -0,0 +1,337 @@
+package org.motechproject.gateway;
+
+import org.motechproject.model.MotechEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.DeliveryMode;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An {@link OutboundEventGateway} that publishes events in transacted JMS batches instead of one send per event.
+ *
+ * Events are handed to a bounded queue and a single publishing thread sends them through one long lived session and
+ * producer, committing once per batch. A batch is committed when it holds batchSize events or when flushIntervalMillis
+ * has passed since its first event, whichever comes first. Senders block when queueCapacity events are waiting.
+ *
+ * Events are sent as ObjectMessages, the same way the Spring Integration gateway sends them, so the inbound channel
+ * adapter does not need to know which gateway was used. Events still waiting in the queue are lost if the process dies;
+ * use {@link #flush()} where the caller must know that its events reached the broker.
+ */
+public class BatchingOutboundEventGateway implements OutboundEventGateway {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private ConnectionFactory connectionFactory;
+    private Destination destination;
+
+    private int batchSize = 100;
+    private long flushIntervalMillis = 50;
+    private int queueCapacity = 10000;
+
+    private BlockingQueue<MotechEvent> queue;
+    private Thread publisher;
+    private volatile boolean running;
+
+    // Read locked by senders from checking running until their event is queued and write locked by start and stop to
+    // change it, so no event is queued after the publisher was told to drain the queue and stop. Taken before this.
+    private final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+
+    // Events accepted by sendEventMessage and events committed to the broker, guarded by this
+    private long sent;
+    private long committed;
+    private boolean publisherDone;
+
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+
+    public BatchingOutboundEventGateway() {
+    }
+
+    public BatchingOutboundEventGateway(ConnectionFactory connectionFactory, Destination destination) {
+        this.connectionFactory = connectionFactory;
+        this.destination = destination;
+    }
+
+    public void setConnectionFactory(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    public void setDestination(Destination destination) {
+        this.destination = destination;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void start() {
+        runningLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (running) {
+                    return;
+                }
+
+                if (connectionFactory == null || destination == null) {
+                    throw new IllegalStateException(
+                            "BatchingOutboundEventGateway needs a connection factory and a destination");
+                }
+
+                if (batchSize < 1 || flushIntervalMillis < 0 || queueCapacity < batchSize) {
+                    throw new IllegalStateException(String.format("Invalid batching configuration: batchSize=%d " +
+                            "flushIntervalMillis=%d queueCapacity=%d", batchSize, flushIntervalMillis, queueCapacity));
+                }
+
+                queue = new ArrayBlockingQueue<MotechEvent>(queueCapacity);
+                publisherDone = false;
+                running = true;
+
+                publisher = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        publish();
+                    }
+                }, "motech-outbound-event-publisher");
+                publisher.setDaemon(true);
+                publisher.start();
+            }
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Stop accepting events, publish the ones already queued and close the JMS resources. Waits for the senders that
+     * are queueing an event, their events are published too.
+     */
+    public void stop() {
+        Thread thread;
+        runningLock.writeLock().lock();
+        try {
+            synchronized (this) {
+                if (!running) {
+                    return;
+                }
+                running = false;
+                thread = publisher;
+            }
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue an event for publishing. Blocks while the queue is full.
+     *
+     * @throws IllegalStateException if the gateway is not started or has been stopped
+     */
+    @Override
+    public void sendEventMessage(MotechEvent motechEvent) {
+        if (motechEvent == null) {
+            throw new IllegalArgumentException("Can not send a null event");
+        }
+
+        runningLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new IllegalStateException("BatchingOutboundEventGateway is not started");
+            }
+
+            queue.put(motechEvent);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing event " + motechEvent.getSubject(), e);
+        } finally {
+            runningLock.readLock().unlock();
+        }
+
+        synchronized (this) {
+            sent++;
+        }
+    }
+
+    /**
+     * Block until every event queued before this call has been committed to the broker
+     */
+    public synchronized void flush() throws InterruptedException {
+        long target = sent;
+
+        while (committed < target) {
+            if (publisherDone) {
+                throw new IllegalStateException("BatchingOutboundEventGateway stopped before the events were published");
+            }
+            wait();
+        }
+    }
+
+    private void publish() {
+        List<MotechEvent> batch = new ArrayList<MotechEvent>(batchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    fill(batch);
+                }
+
+                if (!batch.isEmpty()) {
+                    send(batch);
+                    committed(batch.size());
+                    batch.clear();
+                }
+            } catch (JMSException e) {
+                log.error("Failed to publish a batch of " + batch.size() + " events, retrying", e);
+                closeSession();
+                if (!pause()) {
+                    break;
+                }
+            }
+        }
+
+        closeSession();
+
+        if (!batch.isEmpty() || !queue.isEmpty()) {
+            log.error(String.format("Stopped with %d unpublished events", batch.size() + queue.size()));
+        }
+
+        synchronized (this) {
+            publisherDone = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait for the first event of a batch, then take events until the batch is full or its flush interval has passed
+     */
+    private void fill(List<MotechEvent> batch) {
+        MotechEvent first = poll(IDLE_POLL_MILLIS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !running) {
+                return;
+            }
+
+            MotechEvent next = poll(TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private MotechEvent poll(long timeoutMillis) {
+        try {
+            return running ? queue.poll(timeoutMillis, TimeUnit.MILLISECONDS) : queue.poll();
+        } catch (InterruptedException e) {
+            // Only stop() ends the publisher, it drains the queue first
+            return null;
+        }
+    }
+
+    private void send(List<MotechEvent> batch) throws JMSException {
+        if (session == null) {
+            openSession();
+        }
+
+        try {
+            for (MotechEvent event : batch) {
+                producer.send(session.createObjectMessage(event));
+            }
+            session.commit();
+        } catch (JMSException e) {
+            try {
+                session.rollback();
+            } catch (JMSException rollbackException) {
+                log.warn("Failed to roll back batch", rollbackException);
+            }
+            throw e;
+        }
+    }
+
+    private synchronized void committed(int count) {
+        committed += count;
+        notifyAll();
+    }
+
+    private void openSession() throws JMSException {
+        connection = connectionFactory.createConnection();
+        session = connection.createSession(true, Session.SESSION_TRANSACTED);
+        producer = session.createProducer(destination);
+        producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+    }
+
+    private void closeSession() {
+        // Close the session explicitly, a caching connection factory hands out a shared connection that ignores close()
+        if (session != null) {
+            try {
+                session.close();
+            } catch (JMSException e) {
+                log.warn("Failed to close JMS session", e);
+            }
+        }
+
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (JMSException e) {
+                log.warn("Failed to close JMS connection", e);
+            }
+        }
+
+        connection = null;
+        session = null;
+        producer = null;
+    }
+
+    /**
+     * @return false if the gateway was stopped, a failing broker should not hold up shutdown
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(RETRY_DELAY_MILLIS);
+        } catch (InterruptedException e) {
+            // retry right away
+        }
+        return running;
+    }
+}
@@ -35,6 +35,8 @@ import org.motechproject.model.RepeatingSchedulableJob;
 import org.motechproject.model.RunOnceSchedulableJob;
 import org.motechproject.model.CronSchedulableJob;
 
+import java.util.Collection;
+
 /**
  * Motech Scheduler Gateway provides access to Motech Scheduler. A proxy for that interface will be generated at run-time.
  *
@@ -82,4 +84,28 @@ public interface MotechSchedulerGateway {
      * @param jobId
      */
     public void unscheduleJob(String jobId);
+
+    /**
+     * Sends one message with all the given CronSchedulableJobs as payload, scheduled by the receiving scheduler in one
+     * go. The collection must be serializable, like an ArrayList.
+     *
+     * @param cronSchedulableJobs
+     */
+    public void scheduleJobs(Collection<CronSchedulableJob> cronSchedulableJobs);
+
+    /**
+     * Sends one message with all the given RunOnceSchedulableJobs as payload, scheduled by the receiving scheduler in
+     * one go. The collection must be serializable, like an ArrayList.
+     *
+     * @param schedulableJobs
+     */
+    public void scheduleRunOnceJobs(Collection<RunOnceSchedulableJob> schedulableJobs);
+
+    /**
+     * Sends one message with all the given job IDs (Strings) as payload, unscheduled by the receiving scheduler in one
+     * go. The collection must be serializable, like an ArrayList.
+     *
+     * @param jobIds
+     */
+    public void unscheduleJobs(Collection<String> jobIds);
 }
@@ -24,17 +24,35 @@ public interface MetricsAgent
     public void logEvent(String metric);
 
     /**
-     * Starts a timer for metric.  Later calls to startTimer without a corresponding call to endTimer for the same
-     * metric are ignored
+     * Starts a timer for metric.  A timer started while another for the same metric is open is nested in it, and the
+     * next stopTimer ends the latest one.  Timers belong to the calling thread, so concurrent callers can time the same
+     * metric
      *
      * @param metric The metric being timed
      */
     public void startTimer(String metric);
 
     /**
-     * Ends the timer for metric and records it.  No action is taken if a start timer was not recorded for metric
+     * Ends the latest timer for metric and records it.  No action is taken if a start timer was not recorded for metric on
+     * the calling thread
      *
      * @param metric The metric being timed
      */
     public void stopTimer(String metric);
+
+    /**
+     * Reports a duration that was measured elsewhere, such as the delay between when an event was due and when it ran
+     *
+     * @param metric The metric being recorded
+     * @param time The duration in milliseconds
+     */
+    public void logTimedEvent(String metric, long time);
+
+    /**
+     * Reports the current value of metric, replacing any value reported before
+     *
+     * @param metric The metric being recorded
+     * @param value The current value
+     */
+    public void logGauge(String metric, long value);
 }
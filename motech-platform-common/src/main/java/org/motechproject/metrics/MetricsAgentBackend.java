@@ -59,4 +59,12 @@ public interface MetricsAgentBackend
      * @param time The execution time of this event in milliseconds
      */
     public void logTimedEvent(String metric, long time);
+
+    /**
+     * Reports the current value of metric
+     *
+     * @param metric The metric being recorded
+     * @param value The current value
+     */
+    public void logGauge(String metric, long value);
 }
@@ -0,0 +1,416 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.metrics.impl;
+
+import org.motechproject.metrics.MetricsAgentBackend;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A statsd backend that never does network I/O on the caller's thread.
+ *
+ * Stats are put in a bounded lock-free ring buffer and a single flusher thread sends them every flushIntervalMillis,
+ * or sooner when the buffer is half full, through one long lived DatagramChannel. Counters are summed and gauges keep
+ * their last value between two flushes; timings are sent one by one so statsd can still compute their percentiles. As
+ * many stats as fit in maxPacketSize bytes are sent in one datagram, one stat per line.
+ *
+ * When the buffer is full stats are dropped rather than blocking the caller, and the number of dropped stats is
+ * reported as the motech.metrics.statsd.dropped counter.
+ */
+public class BatchingStatsdAgentBackendImpl implements MetricsAgentBackend
+{
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    static final String DROPPED_METRIC = "motech.metrics.statsd.dropped";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String COUNTER = "c";
+    private static final String TIMER = "ms";
+    private static final String GAUGE = "g";
+
+    private String serverHost;
+    private int serverPort;
+    private boolean generateHostBasedStats;
+    private long flushIntervalMillis = 500;
+    // Ethernet MTU minus the IP and UDP headers
+    private int maxPacketSize = 1432;
+    private int bufferSize = 16384;
+
+    private String hostName;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    // Multiple producers, one consumer: producers claim a slot by moving tail, the flusher frees it by moving head
+    private AtomicReferenceArray<Stat> ring;
+    private int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Flusher thread only
+    private DatagramChannel channel;
+    private InetSocketAddress serverAddress;
+    private ByteBuffer packet;
+    private final StringBuilder line = new StringBuilder();
+    private final Map<String, Long> counters = new HashMap<String, Long>();
+    private final Map<String, Long> gauges = new HashMap<String, Long>();
+
+    public BatchingStatsdAgentBackendImpl() {
+        try
+        {
+            hostName = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e)
+        {
+            // This is ok it just means host specific metrics will not be published
+            log.error("Unable to get local hostname", e);
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+
+        // Kept across restarts, a stat offered while stopping still sits in the ring and is sent after the next start
+        if (ring == null) {
+            int capacity = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+            ring = new AtomicReferenceArray<Stat>(capacity);
+            mask = capacity - 1;
+        }
+
+        serverAddress = new InetSocketAddress(serverHost, serverPort);
+        if (serverAddress.isUnresolved()) {
+            log.error(String.format("Unable to resolve statsd host %s, stats will not be sent", serverHost));
+        }
+
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        packet = ByteBuffer.allocate(maxPacketSize);
+
+        running = true;
+        flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flushPeriodically();
+            }
+        }, "motech-statsd-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Send the stats still in the buffer and close the channel
+     */
+    public void stop() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = flusher;
+        }
+
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reports an occurrence of metric, incrementing it's count. Ignores parameters
+     *
+     * @param metric     The metric being recorded
+     * @param parameters Ignored
+     */
+    @Override
+    public void logEvent(String metric, Map<String, String> parameters)
+    {
+        logEvent(metric);
+    }
+
+    /**
+     * Reports an occurrence of metric, incrementing it's count.
+     *
+     * @param metric The metric being recorded
+     */
+    @Override
+    public void logEvent(String metric)
+    {
+        offer(new Stat(metric, 1, COUNTER));
+    }
+
+    /**
+     * Reports an occurrence of metric in milliseconds
+     *
+     * @param metric The metric being recorded
+     * @param time   The execution time of this event in milliseconds
+     */
+    @Override
+    public void logTimedEvent(String metric, long time)
+    {
+        offer(new Stat(metric, time, TIMER));
+    }
+
+    /**
+     * Reports the current value of metric
+     *
+     * @param metric The metric being recorded
+     * @param value  The current value
+     */
+    @Override
+    public void logGauge(String metric, long value)
+    {
+        offer(new Stat(metric, value, GAUGE));
+    }
+
+    private void offer(Stat stat) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        int capacity = mask + 1;
+        while (true) {
+            long claimed = tail.get();
+            long used = claimed - head;
+
+            if (used >= capacity) {
+                dropped.incrementAndGet();
+                return;
+            }
+
+            if (tail.compareAndSet(claimed, claimed + 1)) {
+                ring.lazySet((int) (claimed & mask), stat);
+                if (used == capacity / 2) {
+                    LockSupport.unpark(flusher);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the next stat, or null if the buffer is empty or the next slot is claimed but not yet filled
+     */
+    private Stat poll() {
+        int slot = (int) (head & mask);
+        Stat stat = ring.get(slot);
+
+        if (stat != null) {
+            ring.lazySet(slot, null);
+            head = head + 1;
+        }
+
+        return stat;
+    }
+
+    private void flushPeriodically() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+        while (running) {
+            LockSupport.parkNanos(this, intervalNanos);
+            flush();
+        }
+
+        flush();
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close statsd channel", e);
+        }
+    }
+
+    private void flush() {
+        Stat stat;
+        while ((stat = poll()) != null) {
+            if (stat.type == COUNTER) {
+                Long count = counters.get(stat.metric);
+                counters.put(stat.metric, count == null ? stat.value : count + stat.value);
+            } else if (stat.type == GAUGE) {
+                gauges.put(stat.metric, stat.value);
+            } else {
+                write(stat.metric, stat.value, stat.type);
+            }
+        }
+
+        long droppedStats = dropped.getAndSet(0);
+        if (droppedStats > 0) {
+            Long count = counters.get(DROPPED_METRIC);
+            counters.put(DROPPED_METRIC, count == null ? droppedStats : count + droppedStats);
+        }
+
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            write(counter.getKey(), counter.getValue(), COUNTER);
+        }
+        for (Map.Entry<String, Long> gauge : gauges.entrySet()) {
+            write(gauge.getKey(), gauge.getValue(), GAUGE);
+        }
+        counters.clear();
+        gauges.clear();
+
+        sendPacket();
+    }
+
+    private void write(String metric, long value, String type) {
+        writeLine(null, metric, value, type);
+
+        if (generateHostBasedStats && hostName != null) {
+            writeLine(hostName, metric, value, type);
+        }
+    }
+
+    private void writeLine(String prefix, String metric, long value, String type) {
+        line.setLength(0);
+        if (prefix != null) {
+            line.append(prefix).append('.');
+        }
+        line.append(metric).append(':').append(value).append('|').append(type);
+        byte[] bytes = line.toString().getBytes(UTF8);
+
+        if (packet.position() > 0 && packet.position() + 1 + bytes.length > packet.capacity()) {
+            sendPacket();
+        }
+
+        if (bytes.length > packet.capacity()) {
+            // Too long for any packet, statsd may still accept it on its own
+            send(ByteBuffer.wrap(bytes));
+            return;
+        }
+
+        if (packet.position() > 0) {
+            packet.put((byte) '\n');
+        }
+        packet.put(bytes);
+    }
+
+    private void sendPacket() {
+        if (packet.position() == 0) {
+            return;
+        }
+
+        packet.flip();
+        send(packet);
+        packet.clear();
+    }
+
+    private void send(ByteBuffer data) {
+        if (serverAddress.isUnresolved()) {
+            return;
+        }
+
+        try {
+            if (channel.send(data, serverAddress) == 0) {
+                // The socket buffer is full, losing a packet is better than stalling the flusher
+                log.debug("Dropped statsd packet, socket buffer full");
+            }
+        } catch (IOException e) {
+            log.error(String.format("Could not send stats to host %s:%d", serverHost, serverPort), e);
+        }
+    }
+
+    public String getServerHost()
+    {
+        return serverHost;
+    }
+
+    public void setServerHost(String serverHost)
+    {
+        this.serverHost = serverHost;
+    }
+
+    public int getServerPort()
+    {
+        return serverPort;
+    }
+
+    public void setServerPort(int port)
+    {
+        this.serverPort = port;
+    }
+
+    public boolean isGenerateHostBasedStats()
+    {
+        return generateHostBasedStats;
+    }
+
+    public void setGenerateHostBasedStats(boolean generateHostBasedStats)
+    {
+        this.generateHostBasedStats = generateHostBasedStats;
+    }
+
+    public void setFlushIntervalMillis(long flushIntervalMillis)
+    {
+        this.flushIntervalMillis = flushIntervalMillis;
+    }
+
+    public void setMaxPacketSize(int maxPacketSize)
+    {
+        this.maxPacketSize = maxPacketSize;
+    }
+
+    public void setBufferSize(int bufferSize)
+    {
+        this.bufferSize = bufferSize;
+    }
+
+    private static class Stat {
+        final String metric;
+        final long value;
+        final String type;
+
+        Stat(String metric, long value, String type) {
+            this.metric = metric;
+            this.value = value;
+            this.type = type;
+        }
+    }
+}
@@ -111,4 +111,16 @@ public class LoggingAgentBackendImpl implements MetricsAgentBackend
     {
         metrics.info(String.format("%smetric=%s time=%d", prefix, metric, time));
     }
+
+    /**
+     * Reports the current value of metric
+     *
+     * @param metric The metric being recorded
+     * @param value  The current value
+     */
+    @Override
+    public void logGauge(String metric, long value)
+    {
+        metrics.info(String.format("%smetric=%s value=%d", prefix, metric, value));
+    }
 }
@@ -2,21 +2,35 @@ package org.motechproject.metrics.impl;
 
 import org.motechproject.metrics.MetricsAgent;
 import org.motechproject.metrics.MetricsAgentBackend;
-import org.motechproject.util.DateUtil;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 public class MultipleMetricsAgentImpl implements MetricsAgent
 {
+    /**
+     * The most timers of one metric a thread keeps open; when more are started the oldest is dropped, so the starts
+     * of timers that were never stopped do not pile up
+     */
+    public static final int MAX_OPEN_TIMERS = 16;
+
     List<MetricsAgentBackend> metricsAgents;
 
-    Map<String, Long> timers;
+    // Start times in System.nanoTime() per thread and metric, the latest on top, so consumers timing the same metric
+    // concurrently each get their own timer without any locking and nested timers of a metric each get their own start
+    private final ThreadLocal<Map<String, Deque<Long>>> timers = new ThreadLocal<Map<String, Deque<Long>>>() {
+        @Override
+        protected Map<String, Deque<Long>> initialValue() {
+            return new HashMap<String, Deque<Long>>();
+        }
+    };
 
     public MultipleMetricsAgentImpl() {
-        timers = new HashMap<String, Long>();
     }
 
     /**
@@ -48,37 +62,83 @@ public class MultipleMetricsAgentImpl implements MetricsAgent
     }
 
     /**
-     * Starts a timer for metric.  Later calls to startTimer without a corresponding call to endTimer for the same
-     * metric are ignored
+     * Starts a timer for metric on the calling thread.  A timer started while another for the same metric is open on
+     * the thread is nested in it: the next stopTimer ends the latest one.  Other threads time the metric independently
      *
      * @param metric The metric being timed
      */
     @Override
     public void startTimer(String metric)
     {
-        if (!timers.containsKey(metric)) {
-            timers.put(metric, DateUtil.now().getMillis());
+        Map<String, Deque<Long>> threadTimers = timers.get();
+        Deque<Long> startTimes = threadTimers.get(metric);
+
+        if (startTimes == null) {
+            startTimes = new ArrayDeque<Long>();
+            threadTimers.put(metric, startTimes);
+        } else if (startTimes.size() >= MAX_OPEN_TIMERS) {
+            startTimes.removeLast();
         }
+        startTimes.push(nanoTime());
     }
 
     /**
-     * Ends the timer for metric and records it.  No action is taken if a start timer was not recorded for metric
+     * Ends the calling thread's latest timer for metric and records it in milliseconds.  No action is taken if a start
+     * timer was not recorded for metric on this thread
      *
      * @param metric The metric being timed
      */
     @Override
     public void stopTimer(String metric)
     {
-        if (timers.containsKey(metric)) {
-            long startTime = timers.get(metric);
-            long endTime = DateUtil.now().getMillis();
-            long executionTime = endTime - startTime;
+        Map<String, Deque<Long>> threadTimers = timers.get();
+        Deque<Long> startTimes = threadTimers.get(metric);
+        Long startTime = startTimes == null ? null : startTimes.poll();
+
+        if (startTimes != null && startTimes.isEmpty()) {
+            threadTimers.remove(metric);
+        }
+        if (startTime != null) {
+            long executionTime = TimeUnit.NANOSECONDS.toMillis(nanoTime() - startTime);
 
             for (MetricsAgentBackend agent : getMetricsAgents()) {
                 agent.logTimedEvent(metric, executionTime);
             }
+        }
+    }
 
-            timers.remove(metric);
+    /**
+     * Reports a duration that was measured elsewhere
+     *
+     * @param metric The metric being recorded
+     * @param time   The duration in milliseconds
+     */
+    @Override
+    public void logTimedEvent(String metric, long time)
+    {
+        for (MetricsAgentBackend agent : getMetricsAgents()) {
+            agent.logTimedEvent(metric, time);
+        }
+    }
+
+    /**
+     * Monotonic clock the timers are measured with, unaffected by changes to the wall clock
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Reports the current value of metric, replacing any value reported before
+     *
+     * @param metric The metric being recorded
+     * @param value  The current value
+     */
+    @Override
+    public void logGauge(String metric, long value)
+    {
+        for (MetricsAgentBackend agent : getMetricsAgents()) {
+            agent.logGauge(metric, value);
         }
     }
 
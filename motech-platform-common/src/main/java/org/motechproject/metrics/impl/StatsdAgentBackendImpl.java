@@ -45,7 +45,10 @@ import java.util.Map;
  * A very simple metric backend that logs all metrics over UDP.
  * The intended receiver is a statsd server
  * (http://codeascraft.etsy.com/2011/02/15/measure-anything-measure-everything/)
+ *
+ * @deprecated sends every stat on the caller's thread through a new socket, use {@link BatchingStatsdAgentBackendImpl}
  */
+@Deprecated
 public class StatsdAgentBackendImpl implements MetricsAgentBackend
 {
     private final Logger log = LoggerFactory.getLogger(this.getClass());
@@ -118,6 +121,25 @@ public class StatsdAgentBackendImpl implements MetricsAgentBackend
         send(stats);
     }
 
+    /**
+     * Reports the current value of metric
+     *
+     * @param metric The metric being recorded
+     * @param value  The current value
+     */
+    @Override
+    public void logGauge(String metric, long value)
+    {
+        ArrayList<String> stats = new ArrayList<String>();
+        stats.add(String.format("%s:%d|g", metric, value));
+
+        if (generateHostBasedStats && hostName != null) {
+            stats.add(String.format("%s.%s:%d|g", hostName, metric, value));
+        }
+
+        send(stats);
+    }
+
     private boolean send(ArrayList<String> stats) {
 		DatagramSocket sock;
 
@@ -0,0 +1,66 @@
+package org.motechproject.metrics.registry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts occurrences and the rate at which they happen over the last minute.
+ *
+ * The minute is kept as 60 one second slots, each stamped with the second it counts. The first mark in a new second
+ * claims the slot by swapping the stamp and resets it, so marking stays lock-free; a mark racing with that reset can be
+ * lost from the rate, never from the count.
+ */
+public class Meter {
+    private static final int WINDOW_SECONDS = 60;
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLongArray slotCounts = new AtomicLongArray(WINDOW_SECONDS);
+    private final AtomicLongArray slotSeconds = new AtomicLongArray(WINDOW_SECONDS);
+
+    public Meter() {
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            slotSeconds.set(i, -1);
+        }
+    }
+
+    public void mark() {
+        mark(currentSecond());
+    }
+
+    void mark(long second) {
+        count.incrementAndGet();
+
+        int slot = (int) (second % WINDOW_SECONDS);
+        long stamp = slotSeconds.get(slot);
+        if (stamp != second && slotSeconds.compareAndSet(slot, stamp, second)) {
+            slotCounts.set(slot, 0);
+        }
+        slotCounts.incrementAndGet(slot);
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the average number of marks per second over the last minute
+     */
+    public double getOneMinuteRate() {
+        return getOneMinuteRate(currentSecond());
+    }
+
+    double getOneMinuteRate(long second) {
+        long total = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            long stamp = slotSeconds.get(i);
+            if (stamp > second - WINDOW_SECONDS && stamp <= second) {
+                total += slotCounts.get(i);
+            }
+        }
+        return (double) total / WINDOW_SECONDS;
+    }
+
+    private static long currentSecond() {
+        return System.currentTimeMillis() / 1000;
+    }
+}
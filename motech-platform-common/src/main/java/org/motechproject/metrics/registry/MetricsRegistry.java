@@ -0,0 +1,138 @@
+package org.motechproject.metrics.registry;
+
+import org.motechproject.metrics.MetricsAgentBackend;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A metrics backend that keeps everything in memory, so percentiles can be read without any external infrastructure:
+ * timed events go into a {@link Histogram} per metric, events into a {@link Meter} and gauges keep their last value.
+ *
+ * Add it to the MultipleMetricsAgentImpl backends to feed it from MetricsAgent.logEvent, startTimer/stopTimer and
+ * logGauge, and read it through {@link MetricsScrapeServer}. Recording never locks; a metric's structures are created
+ * the first time it is recorded.
+ */
+public class MetricsRegistry implements MetricsAgentBackend
+{
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_NAMES = {"p50", "p90", "p99", "p999"};
+
+    private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+    private final ConcurrentMap<String, Meter> meters = new ConcurrentHashMap<String, Meter>();
+    private final ConcurrentMap<String, AtomicLong> gauges = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * Marks the metric's meter. Parameters are ignored
+     */
+    @Override
+    public void logEvent(String metric, Map<String, String> parameters)
+    {
+        logEvent(metric);
+    }
+
+    @Override
+    public void logEvent(String metric)
+    {
+        getMeter(metric).mark();
+    }
+
+    /**
+     * Records the time in the metric's histogram
+     *
+     * @param metric The metric being recorded
+     * @param time   The execution time of this event in milliseconds
+     */
+    @Override
+    public void logTimedEvent(String metric, long time)
+    {
+        getHistogram(metric).record(time);
+    }
+
+    @Override
+    public void logGauge(String metric, long value)
+    {
+        AtomicLong gauge = gauges.get(metric);
+        if (gauge == null) {
+            AtomicLong created = new AtomicLong();
+            gauge = gauges.putIfAbsent(metric, created);
+            if (gauge == null) {
+                gauge = created;
+            }
+        }
+        gauge.set(value);
+    }
+
+    public Histogram getHistogram(String metric) {
+        Histogram histogram = histograms.get(metric);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(metric, created);
+            if (histogram == null) {
+                histogram = created;
+            }
+        }
+        return histogram;
+    }
+
+    public Meter getMeter(String metric) {
+        Meter meter = meters.get(metric);
+        if (meter == null) {
+            Meter created = new Meter();
+            meter = meters.putIfAbsent(metric, created);
+            if (meter == null) {
+                meter = created;
+            }
+        }
+        return meter;
+    }
+
+    /**
+     * @return the last value reported for the gauge, or null if it was never reported
+     */
+    public Long getGauge(String metric) {
+        AtomicLong gauge = gauges.get(metric);
+        return gauge == null ? null : gauge.get();
+    }
+
+    /**
+     * Writes every metric as "name.statistic value" lines, sorted by name. Timings are in milliseconds.
+     */
+    public void writeTo(StringBuilder out) {
+        for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(histograms).entrySet()) {
+            String name = entry.getKey();
+            Histogram histogram = entry.getValue();
+
+            line(out, name, "count", histogram.getCount());
+            line(out, name, "mean", format(histogram.getMean()));
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                line(out, name, PERCENTILE_NAMES[i], histogram.getPercentile(PERCENTILES[i]));
+            }
+            line(out, name, "max", histogram.getMax());
+        }
+
+        for (Map.Entry<String, Meter> entry : new TreeMap<String, Meter>(meters).entrySet()) {
+            line(out, entry.getKey(), "count", entry.getValue().getCount());
+            line(out, entry.getKey(), "rate1m", format(entry.getValue().getOneMinuteRate()));
+        }
+
+        for (Map.Entry<String, AtomicLong> entry : new TreeMap<String, AtomicLong>(gauges).entrySet()) {
+            out.append(entry.getKey()).append(' ').append(entry.getValue().get()).append('\n');
+        }
+    }
+
+    private static void line(StringBuilder out, String name, String statistic, Object value) {
+        out.append(name).append('.').append(statistic).append(' ').append(value).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value)) {
+            return Long.toString((long) value);
+        }
+        return String.format(Locale.ENGLISH, "%.3f", value);
+    }
+}
@@ -0,0 +1,110 @@
+package org.motechproject.metrics.registry;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+/**
+ * Serves the {@link MetricsRegistry} as plain text on http://host:port/metrics, bound to the loopback interface by
+ * default. Uses the HTTP server that ships with the JDK so it needs no servlet container.
+ *
+ * Failing to bind the port is logged and does not stop the application; a second context on the same host simply runs
+ * without an endpoint.
+ *
+ * The endpoint does not authenticate its callers, so it is off unless enabled; applicationPlatformCommon.xml enables it
+ * when the system property motech.metrics.scrape.enabled is true.
+ */
+public class MetricsScrapeServer
+{
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    static final String PATH = "/metrics";
+
+    private MetricsRegistry metricsRegistry;
+    private String host = "127.0.0.1";
+    private int port = 9102;
+    private boolean enabled;
+
+    private HttpServer server;
+
+    public MetricsScrapeServer() {
+    }
+
+    public MetricsScrapeServer(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public synchronized void start() {
+        if (server != null || !enabled) {
+            return;
+        }
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        } catch (IOException e) {
+            log.error(String.format("Unable to serve metrics on %s:%d", host, port), e);
+            return;
+        }
+
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StringBuilder body = new StringBuilder();
+                metricsRegistry.writeTo(body);
+                byte[] bytes = body.toString().getBytes("UTF-8");
+
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(bytes);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+        server.start();
+
+        log.info(String.format("Serving metrics on http://%s:%d%s", host, getPort(), PATH));
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * @return the port the endpoint listens on, the actual one if it was configured as 0
+     */
+    public synchronized int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+}
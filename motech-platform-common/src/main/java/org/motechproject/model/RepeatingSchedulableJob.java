@@ -37,6 +37,8 @@ import java.util.Date;
 /**
  * Schedulable Job - a data carrier class for a scheduled job that can be fired set number of times
  *
+ * A job with a daily window repeats only between the window's start and end time of each day (both included), from
+ * its start time until its end time, e.g. every 15 minutes between 09:00 and 10:00. Its end time may be null.
  */
 public class RepeatingSchedulableJob implements Serializable {
 
@@ -47,6 +49,8 @@ public class RepeatingSchedulableJob implements Serializable {
     private Date endTime;
     private Integer repeatCount;
     private long repeatInterval;
+    private Time dailyWindowStart;
+    private Time dailyWindowEnd;
 
     public RepeatingSchedulableJob(MotechEvent motechEvent,
                                    Date startTime, Date endTime,
@@ -68,6 +72,15 @@ public class RepeatingSchedulableJob implements Serializable {
         this.repeatInterval = repeatInterval;
     }
 
+    public RepeatingSchedulableJob(MotechEvent motechEvent,
+                                   Date startTime, Date endTime,
+                                   long repeatInterval,
+                                   Time dailyWindowStart, Time dailyWindowEnd) {
+        this(motechEvent, startTime, endTime, repeatInterval);
+        this.dailyWindowStart = dailyWindowStart;
+        this.dailyWindowEnd = dailyWindowEnd;
+    }
+
     public MotechEvent getMotechEvent()
     {
         return motechEvent;
@@ -118,12 +131,38 @@ public class RepeatingSchedulableJob implements Serializable {
         this.repeatInterval = repeatInterval;
     }
 
+    public Time getDailyWindowStart()
+    {
+        return dailyWindowStart;
+    }
+
+    public void setDailyWindowStart(Time dailyWindowStart)
+    {
+        this.dailyWindowStart = dailyWindowStart;
+    }
+
+    public Time getDailyWindowEnd()
+    {
+        return dailyWindowEnd;
+    }
+
+    public void setDailyWindowEnd(Time dailyWindowEnd)
+    {
+        this.dailyWindowEnd = dailyWindowEnd;
+    }
+
+    public boolean hasDailyWindow()
+    {
+        return dailyWindowStart != null && dailyWindowEnd != null;
+    }
+
 	@Override
 	public String toString() {
 		return "RepeatingSchedulableJob [motechEvent=" + motechEvent
 				+ ", startTime=" + startTime + ", endTime=" + endTime
 				+ ", repeatCount=" + repeatCount + ", repeatInterval="
-				+ repeatInterval + "]";
+				+ repeatInterval + ", dailyWindowStart=" + dailyWindowStart
+				+ ", dailyWindowEnd=" + dailyWindowEnd + "]";
 	}
     
 }
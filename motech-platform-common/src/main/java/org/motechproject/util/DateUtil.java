@@ -5,26 +5,32 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDate;
 import org.motechproject.MotechException;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
 import java.util.Date;
 import java.util.Properties;
 import java.util.TimeZone;
 
+/**
+ * Dates and times in the configured time zone. The time zone is read once from the timezone property of
+ * /date.properties; the current time comes from a {@link TimeSource}, by default a {@link PropertiesFileTimeSource} on
+ * the same file, or the system clock when there is no such file. Tests can install a {@link FixedTimeSource} or
+ * {@link OffsetTimeSource} with {@link #setTimeSource(TimeSource)}.
+ */
 public class DateUtil {
 
-    private static DateTimeZone dateTimeZone;
-    private static Properties dateProperties;
+    private static final String DATE_PROPERTIES = "/date.properties";
+
+    private static volatile DateTimeZone dateTimeZone;
+    private static volatile TimeSource timeSource;
 
     public static DateTime now() {
-        DateTimeZone timeZone = getTimeZone();
-        return new DateTime(timeZone);
+        return getTimeSource().now(getTimeZone());
     }
 
     public static LocalDate today() {
-        if (getTestMode()) return getTestDate();
-        return new LocalDate(getTimeZone());
+        return getTimeSource().today(getTimeZone());
     }
 
     public static LocalDate tomorrow() {
@@ -54,47 +60,56 @@ public class DateUtil {
         return new LocalDate(date.getTime(), getTimeZone());
     }
 
-    private static DateTimeZone getTimeZone() {
-        if (dateTimeZone != null) return dateTimeZone;
-        try {
-            Properties properties = getProperties(false);
-            if (properties == null) return DateTimeZone.getDefault();
+    public static TimeSource getTimeSource() {
+        TimeSource current = timeSource;
+        if (current != null) return current;
 
-            String timeZoneString = properties.getProperty("timezone");
-            dateTimeZone = DateTimeZone.forTimeZone(TimeZone.getTimeZone(timeZoneString));
-        } catch (IOException e) {
-            throw new MotechException("Error while loading timezone from date.getProperties", e);
+        synchronized (DateUtil.class) {
+            if (timeSource == null) {
+                URL resource = DateUtil.class.getResource(DATE_PROPERTIES);
+                timeSource = resource == null ? new SystemTimeSource() : new PropertiesFileTimeSource(resource);
+            }
+            return timeSource;
         }
-        return dateTimeZone;
     }
 
-    private static Boolean getTestMode() {
-        try {
-            Properties properties = getProperties(true);
-            if (properties == null) return false;
-            return Boolean.parseBoolean(properties.getProperty("test.mode"));
-        } catch (IOException e) {
-            throw new MotechException("Error while loading test.mode from ivr.getProperties", e);
-        }
+    /**
+     * Replace the time source for the whole JVM, null goes back to the default
+     */
+    public static void setTimeSource(TimeSource source) {
+        timeSource = source;
     }
 
-    private static LocalDate getTestDate() {
-        try {
-            Properties properties = getProperties(true);
-            return LocalDate.parse(properties.getProperty("dateutil.today"));
-        } catch (IOException e) {
-            throw new MotechException("Error while loading dateutil.today from ivr.getProperties", e);
+    private static DateTimeZone getTimeZone() {
+        DateTimeZone current = dateTimeZone;
+        if (current != null) return current;
+
+        synchronized (DateUtil.class) {
+            if (dateTimeZone == null) {
+                dateTimeZone = loadTimeZone();
+            }
+            return dateTimeZone;
         }
     }
 
-    private static Properties getProperties(boolean reload) throws IOException {
-        if (!reload && dateProperties != null) return dateProperties;
+    private static DateTimeZone loadTimeZone() {
+        URL resource = DateUtil.class.getResource(DATE_PROPERTIES);
+        if (resource == null) return DateTimeZone.getDefault();
 
-        dateProperties = new Properties();
-        InputStream fileStream = new FileInputStream(DateUtil.class.getResource("/date.properties").getFile());
+        try {
+            Properties properties = new Properties();
+            InputStream stream = resource.openStream();
+            try {
+                properties.load(stream);
+            } finally {
+                stream.close();
+            }
 
-        dateProperties.load(fileStream);
-        fileStream.close();
-        return dateProperties;
+            String timeZoneString = properties.getProperty("timezone");
+            if (timeZoneString == null) return DateTimeZone.getDefault();
+            return DateTimeZone.forTimeZone(TimeZone.getTimeZone(timeZoneString));
+        } catch (IOException e) {
+            throw new MotechException("Error while loading timezone from date.getProperties", e);
+        }
     }
-}
\ No newline at end of file
+}
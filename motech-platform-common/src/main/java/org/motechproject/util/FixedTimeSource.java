@@ -0,0 +1,26 @@
+package org.motechproject.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+/**
+ * A clock that is stopped at a given instant, for tests
+ */
+public class FixedTimeSource implements TimeSource {
+    private final long instant;
+
+    public FixedTimeSource(DateTime instant) {
+        this.instant = instant.getMillis();
+    }
+
+    @Override
+    public DateTime now(DateTimeZone timeZone) {
+        return new DateTime(instant, timeZone);
+    }
+
+    @Override
+    public LocalDate today(DateTimeZone timeZone) {
+        return new LocalDate(instant, timeZone);
+    }
+}
@@ -0,0 +1,34 @@
+package org.motechproject.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+/**
+ * The system clock moved by a fixed amount, so time keeps running from a chosen starting point. Useful for tests and
+ * for trying out schedules days ahead on a test server.
+ */
+public class OffsetTimeSource implements TimeSource {
+    private final long offsetMillis;
+
+    public OffsetTimeSource(long offsetMillis) {
+        this.offsetMillis = offsetMillis;
+    }
+
+    /**
+     * @param start what the clock should read now
+     */
+    public OffsetTimeSource(DateTime start) {
+        this(start.getMillis() - System.currentTimeMillis());
+    }
+
+    @Override
+    public DateTime now(DateTimeZone timeZone) {
+        return new DateTime(System.currentTimeMillis() + offsetMillis, timeZone);
+    }
+
+    @Override
+    public LocalDate today(DateTimeZone timeZone) {
+        return new LocalDate(System.currentTimeMillis() + offsetMillis, timeZone);
+    }
+}
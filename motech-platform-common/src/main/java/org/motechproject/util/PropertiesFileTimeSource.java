@@ -0,0 +1,133 @@
+package org.motechproject.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.motechproject.MotechException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The system clock, except that today can be pinned to a date with a date.properties file:
+ *
+ * test.mode=true
+ * dateutil.today=2011-10-17
+ *
+ * The file can be edited while the application runs. It is checked at most once every checkIntervalMillis and only
+ * read again when its modification time or size changed, so asking for the time does not touch the disk. A file inside
+ * a jar can not change and is read once. As before, only today() follows the test date; now() is always the system
+ * clock.
+ */
+public class PropertiesFileTimeSource implements TimeSource {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 1000;
+
+    private final URL resource;
+    private final File file;
+    private final long checkIntervalNanos;
+
+    private volatile Settings settings;
+    private volatile long nextCheck;
+    private long lastModified;
+    private long length;
+
+    public PropertiesFileTimeSource(URL resource) {
+        this(resource, DEFAULT_CHECK_INTERVAL_MILLIS);
+    }
+
+    public PropertiesFileTimeSource(URL resource, long checkIntervalMillis) {
+        this.resource = resource;
+        this.file = toFile(resource);
+        this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+
+        try {
+            reload();
+        } catch (Exception e) {
+            throw new MotechException("Error while loading test.mode from " + resource, e);
+        }
+        nextCheck = System.nanoTime() + checkIntervalNanos;
+    }
+
+    @Override
+    public DateTime now(DateTimeZone timeZone) {
+        return new DateTime(timeZone);
+    }
+
+    @Override
+    public LocalDate today(DateTimeZone timeZone) {
+        Settings current = currentSettings();
+        return current.testMode ? current.testDate : new LocalDate(timeZone);
+    }
+
+    private Settings currentSettings() {
+        if (file != null && System.nanoTime() - nextCheck >= 0) {
+            synchronized (this) {
+                if (System.nanoTime() - nextCheck >= 0) {
+                    if (file.lastModified() != lastModified || file.length() != length) {
+                        try {
+                            reload();
+                        } catch (Exception e) {
+                            log.warn(String.format("Unable to reload %s, keeping test.mode=%s", file,
+                                                   settings.testMode), e);
+                        }
+                    }
+                    nextCheck = System.nanoTime() + checkIntervalNanos;
+                }
+            }
+        }
+
+        return settings;
+    }
+
+    private synchronized void reload() throws IOException {
+        long modified = file == null ? 0 : file.lastModified();
+        long size = file == null ? 0 : file.length();
+
+        Properties properties = new Properties();
+        InputStream stream = file == null ? resource.openStream() : new FileInputStream(file);
+        try {
+            properties.load(stream);
+        } finally {
+            stream.close();
+        }
+
+        boolean testMode = Boolean.parseBoolean(properties.getProperty("test.mode"));
+        LocalDate testDate = testMode ? LocalDate.parse(properties.getProperty("dateutil.today")) : null;
+
+        settings = new Settings(testMode, testDate);
+        lastModified = modified;
+        length = size;
+    }
+
+    private static File toFile(URL resource) {
+        if (!"file".equals(resource.getProtocol())) {
+            return null;
+        }
+
+        try {
+            return new File(resource.toURI());
+        } catch (URISyntaxException e) {
+            return new File(resource.getFile());
+        }
+    }
+
+    private static class Settings {
+        final boolean testMode;
+        final LocalDate testDate;
+
+        Settings(boolean testMode, LocalDate testDate) {
+            this.testMode = testMode;
+            this.testDate = testDate;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package org.motechproject.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+/**
+ * The system clock
+ */
+public class SystemTimeSource implements TimeSource {
+    @Override
+    public DateTime now(DateTimeZone timeZone) {
+        return new DateTime(timeZone);
+    }
+
+    @Override
+    public LocalDate today(DateTimeZone timeZone) {
+        return new LocalDate(timeZone);
+    }
+}
@@ -0,0 +1,15 @@
+package org.motechproject.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+/**
+ * Where {@link DateUtil} gets the current time from. Implementations are called on every DateUtil.now() and
+ * DateUtil.today() and must be cheap and thread safe.
+ */
+public interface TimeSource {
+    DateTime now(DateTimeZone timeZone);
+
+    LocalDate today(DateTimeZone timeZone);
+}
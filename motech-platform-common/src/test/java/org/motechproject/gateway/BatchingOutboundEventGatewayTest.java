@@ -0,0 +1,160 @@
+package org.motechproject.gateway;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.model.MotechEvent;
+
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.ObjectMessage;
+import javax.jms.Session;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+public class BatchingOutboundEventGatewayTest {
+    private ConnectionFactory connectionFactory;
+    private Connection connection;
+    private Session session;
+    private MessageProducer producer;
+    private Destination destination;
+
+    private BatchingOutboundEventGateway gateway;
+
+    @Before
+    public void setUp() throws JMSException {
+        connectionFactory = mock(ConnectionFactory.class);
+        connection = mock(Connection.class);
+        session = mock(Session.class);
+        producer = mock(MessageProducer.class);
+        destination = mock(Destination.class);
+
+        when(connectionFactory.createConnection()).thenReturn(connection);
+        when(connection.createSession(true, Session.SESSION_TRANSACTED)).thenReturn(session);
+        when(session.createProducer(destination)).thenReturn(producer);
+        when(session.createObjectMessage(any(Serializable.class))).thenReturn(mock(ObjectMessage.class));
+
+        gateway = new BatchingOutboundEventGateway(connectionFactory, destination);
+    }
+
+    @After
+    public void tearDown() {
+        gateway.stop();
+    }
+
+    @Test
+    public void shouldCommitFullBatchesThroughOneProducer() throws Exception {
+        gateway.setBatchSize(100);
+        gateway.setFlushIntervalMillis(10000);
+        gateway.start();
+
+        for (int i = 0; i < 200; i++) {
+            gateway.sendEventMessage(new MotechEvent("org.motechproject.test"));
+        }
+        gateway.flush();
+
+        verify(producer, times(200)).send(any(ObjectMessage.class));
+        verify(session, times(2)).commit();
+        verify(session, times(1)).createProducer(destination);
+        verify(connectionFactory, times(1)).createConnection();
+    }
+
+    @Test
+    public void shouldCommitPartialBatchAfterFlushInterval() throws Exception {
+        gateway.setBatchSize(100);
+        gateway.setFlushIntervalMillis(10);
+        gateway.start();
+
+        gateway.sendEventMessage(new MotechEvent("org.motechproject.test"));
+        gateway.flush();
+
+        verify(producer, times(1)).send(any(ObjectMessage.class));
+        verify(session, times(1)).commit();
+    }
+
+    @Test
+    public void shouldPublishQueuedEventsOnStop() throws Exception {
+        gateway.setBatchSize(10);
+        gateway.setFlushIntervalMillis(10000);
+        gateway.start();
+
+        for (int i = 0; i < 25; i++) {
+            gateway.sendEventMessage(new MotechEvent("org.motechproject.test"));
+        }
+        gateway.stop();
+
+        verify(producer, times(25)).send(any(ObjectMessage.class));
+        verify(connection).close();
+    }
+
+    @Test
+    public void shouldRollBackAndRetryFailedBatch() throws Exception {
+        doThrow(new JMSException("broker went away")).doNothing().when(session).commit();
+        gateway.setFlushIntervalMillis(0);
+        gateway.start();
+
+        gateway.sendEventMessage(new MotechEvent("org.motechproject.test"));
+        gateway.flush();
+
+        verify(session).rollback();
+        verify(session, times(2)).commit();
+        verify(connectionFactory, times(2)).createConnection();
+    }
+
+    @Test
+    public void shouldPublishEveryEventAcceptedWhileStopping() throws Exception {
+        gateway.setBatchSize(10);
+        gateway.setFlushIntervalMillis(1);
+        gateway.setQueueCapacity(20);
+        gateway.start();
+
+        final AtomicInteger accepted = new AtomicInteger();
+        List<Thread> senders = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            Thread sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            gateway.sendEventMessage(new MotechEvent("org.motechproject.test"));
+                            accepted.incrementAndGet();
+                        }
+                    } catch (IllegalStateException e) {
+                        // stopped
+                    }
+                }
+            });
+            sender.start();
+            senders.add(sender);
+        }
+
+        Thread.sleep(50);
+        gateway.stop();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+
+        verify(producer, times(accepted.get())).send(any(ObjectMessage.class));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectEventsBeforeStart() {
+        gateway.sendEventMessage(new MotechEvent("org.motechproject.test"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectEventsAfterStop() {
+        gateway.start();
+        gateway.stop();
+
+        gateway.sendEventMessage(new MotechEvent("org.motechproject.test"));
+    }
+}
@@ -0,0 +1,133 @@
+package org.motechproject.gateway;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.motechproject.model.MotechEvent;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Events per second published to an embedded, persistent ActiveMQ broker by:
+ * - a JmsTemplate over the CachingConnectionFactory as configured in integrationCommon.xml (cacheProducers=false),
+ *   which is what the jms:outbound-channel-adapter behind the outboundEventGateway does for every event
+ * - the same with cacheProducers=true
+ * - the {@link BatchingOutboundEventGateway}
+ *
+ * Every run drains the queue afterwards so the runs start from the same broker state.
+ *
+ * Not a unit test; run it with:
+ * mvn test-compile exec:java -Dexec.mainClass=org.motechproject.gateway.OutboundEventGatewayBenchmark -Dexec.classpathScope=test
+ */
+public class OutboundEventGatewayBenchmark {
+    private static final String BROKER_URL = "vm://outbound-benchmark?create=false";
+    private static final int EVENTS = 20000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        File dataDirectory = new File(System.getProperty("java.io.tmpdir"), "motech-outbound-benchmark");
+
+        BrokerService broker = new BrokerService();
+        broker.setBrokerName("outbound-benchmark");
+        broker.setDataDirectoryFile(dataDirectory);
+        broker.setDeleteAllMessagesOnStartup(true);
+        broker.setUseJmx(false);
+        broker.setPersistent(true);
+        broker.start();
+
+        ActiveMQConnectionFactory targetConnectionFactory = new ActiveMQConnectionFactory(BROKER_URL);
+        ActiveMQQueue queue = new ActiveMQQueue("motech.benchmark.events");
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                long uncached = timeJmsTemplate(targetConnectionFactory, queue, false);
+                drain(targetConnectionFactory, queue);
+                long cached = timeJmsTemplate(targetConnectionFactory, queue, true);
+                drain(targetConnectionFactory, queue);
+                long batched = timeBatching(targetConnectionFactory, queue);
+                drain(targetConnectionFactory, queue);
+
+                System.out.println(String.format("round %d: jmsTemplate %d events/s, jmsTemplate cached producers " +
+                        "%d events/s, batching %d events/s", round, perSecond(uncached), perSecond(cached),
+                        perSecond(batched)));
+            }
+        } finally {
+            broker.stop();
+        }
+    }
+
+    private static long timeJmsTemplate(ActiveMQConnectionFactory targetConnectionFactory, ActiveMQQueue queue,
+                                        boolean cacheProducers) {
+        CachingConnectionFactory connectionFactory = new CachingConnectionFactory(targetConnectionFactory);
+        connectionFactory.setSessionCacheSize(10);
+        connectionFactory.setCacheProducers(cacheProducers);
+
+        JmsTemplate jmsTemplate = new JmsTemplate(connectionFactory);
+        jmsTemplate.setDefaultDestination(queue);
+
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < EVENTS; i++) {
+                jmsTemplate.convertAndSend(event(i));
+            }
+            return System.nanoTime() - start;
+        } finally {
+            connectionFactory.destroy();
+        }
+    }
+
+    private static long timeBatching(ActiveMQConnectionFactory targetConnectionFactory, ActiveMQQueue queue)
+            throws InterruptedException {
+        BatchingOutboundEventGateway gateway = new BatchingOutboundEventGateway(targetConnectionFactory, queue);
+        gateway.start();
+
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < EVENTS; i++) {
+                gateway.sendEventMessage(event(i));
+            }
+            gateway.flush();
+            return System.nanoTime() - start;
+        } finally {
+            gateway.stop();
+        }
+    }
+
+    private static void drain(ActiveMQConnectionFactory connectionFactory, ActiveMQQueue queue) throws Exception {
+        Connection connection = connectionFactory.createConnection();
+        try {
+            connection.start();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(queue);
+
+            int received = 0;
+            while (consumer.receive(1000) != null) {
+                received++;
+            }
+            if (received != EVENTS) {
+                throw new IllegalStateException(String.format("Expected %d events on the queue, found %d", EVENTS,
+                                                              received));
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static MotechEvent event(int i) {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("ExternalID", "external-" + i);
+        parameters.put("JobID", "job-" + i);
+        return new MotechEvent("org.motechproject.benchmark.fired", parameters);
+    }
+
+    private static long perSecond(long nanos) {
+        return EVENTS * 1000000000L / Math.max(nanos, 1);
+    }
+}
@@ -31,20 +31,22 @@
  */
 package org.motechproject.metrics;
 
-import org.joda.time.DateTime;
-import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.motechproject.metrics.impl.MultipleMetricsAgentImpl;
-import org.motechproject.util.DateUtil;
-import org.powermock.core.classloader.annotations.PrepareForTest;
-import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.*;
-import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
 /**
  * MultipleMetricsAgentImpl Tester.
@@ -53,13 +55,8 @@ import static org.powermock.api.mockito.PowerMockito.mockStatic;
  * @since <pre>03/25/2011</pre>
  * @version 1.0
  */
-
-@PrepareForTest(DateUtil.class)
 public class MultipleMetricsAgentImplTest {
 
-    @Rule
-    public PowerMockRule rule = new PowerMockRule();
-
     @Test
     public void testLogEventNullParameters() throws Exception {
         MultipleMetricsAgentImpl metricsAgent = new MultipleMetricsAgentImpl();
@@ -82,6 +79,17 @@ public class MultipleMetricsAgentImplTest {
         verify(agent).logEvent("test.metric");
     }
 
+    @Test
+    public void testLogTimedEvent() throws Exception {
+        MultipleMetricsAgentImpl metricsAgent = new MultipleMetricsAgentImpl();
+        MetricsAgentBackend agent = mock(MetricsAgentBackend.class);
+        metricsAgent.addMetricAgent(agent);
+
+        metricsAgent.logTimedEvent("test.metric", 42);
+
+        verify(agent).logTimedEvent("test.metric", 42);
+    }
+
     @Test
     public void testLogEventNoAgents() throws Exception {
         MultipleMetricsAgentImpl metricsAgent = new MultipleMetricsAgentImpl();
@@ -107,28 +115,145 @@ public class MultipleMetricsAgentImplTest {
     }
 
     @Test
-    public void testMultipleStartTimerCalls() throws InterruptedException
-    {
-        mockStatic(DateUtil.class);
+    public void testLogGaugeTwoAgents() {
         MultipleMetricsAgentImpl metricsAgent = new MultipleMetricsAgentImpl();
 
+        MetricsAgentBackend agent1 = mock(MetricsAgentBackend.class);
+        metricsAgent.addMetricAgent(agent1);
+
+        MetricsAgentBackend agent2 = mock(MetricsAgentBackend.class);
+        metricsAgent.addMetricAgent(agent2);
+
+        metricsAgent.logGauge("test.metric", 42);
+
+        verify(agent1).logGauge("test.metric", 42);
+        verify(agent2).logGauge("test.metric", 42);
+    }
+
+    @Test
+    public void testNestedStartTimerCalls() throws InterruptedException
+    {
+        final AtomicLong clock = new AtomicLong();
+        MultipleMetricsAgentImpl metricsAgent = new MultipleMetricsAgentImpl() {
+            @Override
+            protected long nanoTime() {
+                return clock.get();
+            }
+        };
+
         MetricsAgentBackend agent = mock(MetricsAgentBackend.class);
         ArgumentCaptor<Long> argument = ArgumentCaptor.forClass(Long.class);
         metricsAgent.addMetricAgent(agent);
 
-        DateTime date1 = new DateTime(2011, 1, 1, 10, 25, 30, 0);
-        DateTime date2 = new DateTime(2011, 1, 1, 10, 25, 31, 0);
-        when(DateUtil.now()).thenReturn(date1);
+        clock.set(TimeUnit.SECONDS.toNanos(10));
         metricsAgent.startTimer("test.metric");
 
-        when(DateUtil.now()).thenReturn(date2);
+        clock.set(TimeUnit.SECONDS.toNanos(11));
         metricsAgent.startTimer("test.metric");
+
+        clock.set(TimeUnit.SECONDS.toNanos(13));
+        metricsAgent.stopTimer("test.metric");
+        clock.set(TimeUnit.SECONDS.toNanos(14));
+        metricsAgent.stopTimer("test.metric");
+
+        verify(agent, times(2)).logTimedEvent(anyString(), argument.capture());
+        assertEquals(2000, argument.getAllValues().get(0).longValue());
+        assertEquals(4000, argument.getAllValues().get(1).longValue());
+    }
+
+    @Test
+    public void testTimerNotStoppedDoesNotStretchLaterTimers()
+    {
+        final AtomicLong clock = new AtomicLong();
+        MultipleMetricsAgentImpl metricsAgent = new MultipleMetricsAgentImpl() {
+            @Override
+            protected long nanoTime() {
+                return clock.get();
+            }
+        };
+
+        MetricsAgentBackend agent = mock(MetricsAgentBackend.class);
+        ArgumentCaptor<Long> argument = ArgumentCaptor.forClass(Long.class);
+        metricsAgent.addMetricAgent(agent);
+
+        // A handler that threw before stopping its timer
+        metricsAgent.startTimer("test.metric");
+
+        clock.set(TimeUnit.SECONDS.toNanos(60));
+        metricsAgent.startTimer("test.metric");
+        clock.set(TimeUnit.SECONDS.toNanos(61));
         metricsAgent.stopTimer("test.metric");
 
         verify(agent).logTimedEvent(anyString(), argument.capture());
         assertEquals(1000, argument.getValue().longValue());
     }
 
+    @Test
+    public void testTimersNotStoppedAreDropped()
+    {
+        final AtomicLong clock = new AtomicLong();
+        MultipleMetricsAgentImpl metricsAgent = new MultipleMetricsAgentImpl() {
+            @Override
+            protected long nanoTime() {
+                return clock.get();
+            }
+        };
+
+        MetricsAgentBackend agent = mock(MetricsAgentBackend.class);
+        metricsAgent.addMetricAgent(agent);
+
+        for (int i = 0; i < MultipleMetricsAgentImpl.MAX_OPEN_TIMERS + 5; i++) {
+            metricsAgent.startTimer("test.metric");
+        }
+        for (int i = 0; i < MultipleMetricsAgentImpl.MAX_OPEN_TIMERS + 5; i++) {
+            metricsAgent.stopTimer("test.metric");
+        }
+
+        verify(agent, times(MultipleMetricsAgentImpl.MAX_OPEN_TIMERS)).logTimedEvent(anyString(), anyLong());
+    }
+
+    @Test
+    public void testConcurrentTimersForSameMetric() throws InterruptedException
+    {
+        final MultipleMetricsAgentImpl metricsAgent = new MultipleMetricsAgentImpl();
+        RecordingBackend agent = new RecordingBackend();
+        metricsAgent.addMetricAgent(agent);
+
+        int threads = 16;
+        final CountDownLatch started = new CountDownLatch(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            final long sleep = 20 + i * 10;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        started.countDown();
+                        started.await();
+                        metricsAgent.startTimer("test.metric");
+                        Thread.sleep(sleep);
+                        metricsAgent.stopTimer("test.metric");
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, Long.toString(sleep)).start();
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(threads, agent.timings.size());
+
+        // Every thread recorded its own timer, from its own start time
+        for (Map.Entry<String, Long> timing : agent.timings.entrySet()) {
+            long sleep = Long.parseLong(timing.getKey());
+            assertTrue(timing.getKey() + "ms sleep timed as " + timing.getValue() + "ms",
+                       timing.getValue() >= sleep && timing.getValue() < sleep + 1000);
+        }
+    }
+
     @Test
     public void testStartTimerNoAgents() {
         MultipleMetricsAgentImpl metricsAgent = new MultipleMetricsAgentImpl();
@@ -180,4 +305,26 @@ public class MultipleMetricsAgentImplTest {
 
         verify(agent, times(1)).logTimedEvent(anyString(), anyLong());
     }
+
+    private static class RecordingBackend implements MetricsAgentBackend {
+        // Timings by the name of the thread that recorded them
+        final ConcurrentMap<String, Long> timings = new ConcurrentHashMap<String, Long>();
+
+        @Override
+        public void logEvent(String metric, Map<String, String> parameters) {
+        }
+
+        @Override
+        public void logEvent(String metric) {
+        }
+
+        @Override
+        public void logTimedEvent(String metric, long time) {
+            timings.put(Thread.currentThread().getName(), time);
+        }
+
+        @Override
+        public void logGauge(String metric, long value) {
+        }
+    }
 }
@@ -0,0 +1,163 @@
+package org.motechproject.metrics.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BatchingStatsdAgentBackendImplTest {
+    private static final int MAX_PACKET_SIZE = 512;
+
+    private DatagramSocket receiver;
+    private BatchingStatsdAgentBackendImpl backend;
+
+    @Before
+    public void setUp() throws Exception {
+        receiver = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        receiver.setSoTimeout(2000);
+        receiver.setReceiveBufferSize(1 << 20);
+
+        backend = new BatchingStatsdAgentBackendImpl();
+        backend.setServerHost("127.0.0.1");
+        backend.setServerPort(receiver.getLocalPort());
+        backend.setFlushIntervalMillis(10000);
+        backend.setMaxPacketSize(MAX_PACKET_SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        backend.stop();
+        receiver.close();
+    }
+
+    @Test
+    public void shouldAggregateCountersAndKeepLastGauge() throws Exception {
+        backend.start();
+
+        for (int i = 0; i < 100; i++) {
+            backend.logEvent("test.counter");
+        }
+        backend.logGauge("test.gauge", 1);
+        backend.logGauge("test.gauge", 7);
+        backend.logTimedEvent("test.timer", 12);
+        backend.logTimedEvent("test.timer", 15);
+        backend.stop();
+
+        List<String> packets = receive();
+        assertEquals(1, packets.size());
+
+        List<String> lines = lines(packets);
+        assertEquals(4, lines.size());
+        assertTrue(lines.contains("test.counter:100|c"));
+        assertTrue(lines.contains("test.gauge:7|g"));
+        assertTrue(lines.contains("test.timer:12|ms"));
+        assertTrue(lines.contains("test.timer:15|ms"));
+    }
+
+    @Test
+    public void shouldSplitStatsIntoPacketsUpToMaxPacketSize() throws Exception {
+        backend.start();
+
+        for (int i = 0; i < 200; i++) {
+            backend.logEvent("test.counter." + i);
+        }
+        backend.stop();
+
+        List<String> packets = receive();
+        assertTrue(packets.size() > 1);
+        for (String packet : packets) {
+            assertTrue(packet.length() <= MAX_PACKET_SIZE);
+        }
+
+        List<String> lines = lines(packets);
+        assertEquals(200, lines.size());
+        for (int i = 0; i < 200; i++) {
+            assertTrue(lines.contains("test.counter." + i + ":1|c"));
+        }
+    }
+
+    @Test
+    public void shouldFlushPeriodically() throws Exception {
+        backend.setFlushIntervalMillis(20);
+        backend.start();
+
+        backend.logEvent("test.counter");
+
+        byte[] buffer = new byte[MAX_PACKET_SIZE];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        receiver.receive(packet);
+        assertEquals("test.counter:1|c", new String(packet.getData(), 0, packet.getLength(), "UTF-8"));
+    }
+
+    @Test
+    public void shouldReportDroppedStatsWhenBufferIsFull() throws Exception {
+        backend.setBufferSize(4);
+        backend.start();
+
+        for (int i = 0; i < 200; i++) {
+            backend.logTimedEvent("test.timer", i);
+        }
+        backend.stop();
+
+        // Every stat is either sent or counted as dropped, the flusher may have run several times
+        long sent = 0;
+        long dropped = 0;
+        for (String line : lines(receive())) {
+            if (line.startsWith("test.timer:")) {
+                sent++;
+            } else if (line.startsWith(BatchingStatsdAgentBackendImpl.DROPPED_METRIC + ":")) {
+                dropped += Long.parseLong(line.substring(line.indexOf(':') + 1, line.indexOf('|')));
+            }
+        }
+        assertTrue(dropped > 0);
+        assertEquals(200, sent + dropped);
+    }
+
+    @Test
+    public void shouldPrefixHostBasedStats() throws Exception {
+        backend.setGenerateHostBasedStats(true);
+        backend.start();
+
+        backend.logEvent("test.counter");
+        backend.stop();
+
+        List<String> lines = lines(receive());
+        String hostName = InetAddress.getLocalHost().getHostName();
+        assertTrue(lines.contains("test.counter:1|c"));
+        assertTrue(lines.contains(hostName + ".test.counter:1|c"));
+    }
+
+    private List<String> receive() throws Exception {
+        List<String> packets = new ArrayList<String>();
+        receiver.setSoTimeout(200);
+
+        byte[] buffer = new byte[65536];
+        try {
+            while (true) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                receiver.receive(packet);
+                packets.add(new String(packet.getData(), 0, packet.getLength(), "UTF-8"));
+            }
+        } catch (SocketTimeoutException e) {
+            return packets;
+        }
+    }
+
+    private static List<String> lines(List<String> packets) {
+        List<String> lines = new ArrayList<String>();
+        for (String packet : packets) {
+            for (String line : packet.split("\n")) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,99 @@
+package org.motechproject.metrics.registry;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void shouldBeEmptyBeforeRecording() {
+        Histogram histogram = new Histogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void shouldKeepSmallValuesExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(99, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(100, histogram.getMax());
+        assertEquals(50.5, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void shouldKeepLargeValuesWithinTwoPercent() {
+        Histogram histogram = new Histogram();
+        Random random = new Random(42);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1000 + random.nextInt(1000000);
+            histogram.record(values[i]);
+        }
+
+        java.util.Arrays.sort(values);
+        long expected = values[(int) Math.ceil(0.99 * values.length) - 1];
+        long actual = histogram.getPercentile(99);
+        assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected / 50);
+    }
+
+    @Test
+    public void shouldMapEveryValueToABucketThatHoldsIt() {
+        long[] values = {0, 1, 127, 128, 129, 130, 255, 256, 1000, 65535, 1L << 30, (1L << 40) + 123};
+        for (long value : values) {
+            int bucket = Histogram.bucket(value);
+            assertTrue(value + " above bucket " + bucket, value <= Histogram.highestValue(bucket));
+            if (bucket > 0) {
+                assertTrue(value + " below bucket " + bucket, value > Histogram.highestValue(bucket - 1));
+            }
+        }
+    }
+
+    @Test
+    public void shouldCountHugeValuesInLastBucket() {
+        Histogram histogram = new Histogram();
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(Histogram.BUCKETS - 1, Histogram.bucket(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertEquals(1, histogram.getCount());
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentRecords() throws InterruptedException {
+        final Histogram histogram = new Histogram();
+        int threads = 8;
+        final int recordsPerThread = 100000;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < recordsPerThread; j++) {
+                        histogram.record(thread * 1000 + j % 1000);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(threads * recordsPerThread, histogram.getCount());
+        assertEquals(7999, histogram.getMax());
+    }
+}
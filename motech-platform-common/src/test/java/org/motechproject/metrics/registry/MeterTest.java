@@ -0,0 +1,40 @@
+package org.motechproject.metrics.registry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MeterTest {
+
+    @Test
+    public void shouldAverageMarksOverLastMinute() {
+        Meter meter = new Meter();
+        for (int i = 0; i < 120; i++) {
+            meter.mark(1000);
+        }
+        meter.mark(1030);
+
+        assertEquals(121, meter.getCount());
+        assertEquals(121.0 / 60, meter.getOneMinuteRate(1030), 0.0001);
+    }
+
+    @Test
+    public void shouldForgetMarksOlderThanAMinute() {
+        Meter meter = new Meter();
+        meter.mark(1000);
+        meter.mark(1059);
+
+        assertEquals(1.0 / 60, meter.getOneMinuteRate(1060), 0.0001);
+        assertEquals(2, meter.getCount());
+    }
+
+    @Test
+    public void shouldResetReusedSlot() {
+        Meter meter = new Meter();
+        meter.mark(1000);
+        meter.mark(1000);
+        meter.mark(1060);
+
+        assertEquals(1.0 / 60, meter.getOneMinuteRate(1060), 0.0001);
+    }
+}
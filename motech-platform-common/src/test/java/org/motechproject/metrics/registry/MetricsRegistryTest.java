@@ -0,0 +1,108 @@
+package org.motechproject.metrics.registry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+    private MetricsRegistry registry;
+    private MetricsScrapeServer server;
+
+    @Before
+    public void setUp() {
+        registry = new MetricsRegistry();
+    }
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void shouldRecordTimedEventsInHistogram() {
+        for (int i = 1; i <= 100; i++) {
+            registry.logTimedEvent("motech.relay", i);
+        }
+
+        assertEquals(100, registry.getHistogram("motech.relay").getCount());
+        assertEquals(99, registry.getHistogram("motech.relay").getPercentile(99));
+    }
+
+    @Test
+    public void shouldMarkMeterForEvents() {
+        registry.logEvent("motech.fired");
+        registry.logEvent("motech.fired", null);
+
+        assertEquals(2, registry.getMeter("motech.fired").getCount());
+    }
+
+    @Test
+    public void shouldKeepLastGaugeValue() {
+        assertNull(registry.getGauge("motech.queue"));
+
+        registry.logGauge("motech.queue", 3);
+        registry.logGauge("motech.queue", 5);
+
+        assertEquals(Long.valueOf(5), registry.getGauge("motech.queue"));
+    }
+
+    @Test
+    public void shouldWriteAllMetrics() {
+        registry.logTimedEvent("motech.relay", 12);
+        registry.logEvent("motech.fired");
+        registry.logGauge("motech.queue", 5);
+
+        StringBuilder out = new StringBuilder();
+        registry.writeTo(out);
+        String text = out.toString();
+
+        assertTrue(text.contains("motech.relay.count 1\n"));
+        assertTrue(text.contains("motech.relay.p99 12\n"));
+        assertTrue(text.contains("motech.relay.p999 12\n"));
+        assertTrue(text.contains("motech.relay.max 12\n"));
+        assertTrue(text.contains("motech.fired.count 1\n"));
+        assertTrue(text.contains("motech.queue 5\n"));
+    }
+
+    @Test
+    public void shouldServeMetricsOverHttp() throws Exception {
+        registry.logTimedEvent("motech.relay", 12);
+
+        server = new MetricsScrapeServer(registry);
+        server.setPort(0);
+        server.setEnabled(true);
+        server.start();
+
+        URL url = new URL("http://127.0.0.1:" + server.getPort() + MetricsScrapeServer.PATH);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        assertEquals(200, connection.getResponseCode());
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+        StringBuilder body = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            body.append(line).append('\n');
+        }
+        reader.close();
+
+        assertTrue(body.toString().contains("motech.relay.p99 12\n"));
+    }
+
+    @Test
+    public void shouldNotServeMetricsUnlessEnabled() {
+        server = new MetricsScrapeServer(registry);
+        server.setPort(0);
+        server.start();
+
+        assertEquals(0, server.getPort());
+    }
+}
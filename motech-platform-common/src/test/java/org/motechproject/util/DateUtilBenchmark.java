@@ -0,0 +1,70 @@
+package org.motechproject.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.TimeZone;
+
+/**
+ * Times DateUtil.now() and DateUtil.today() against the lookup they used to do, which read /date.properties from the
+ * classpath on every call to find out whether test mode was on.
+ *
+ * Not a unit test; run it with:
+ * mvn test-compile exec:java -Dexec.mainClass=org.motechproject.util.DateUtilBenchmark -Dexec.classpathScope=test
+ */
+public class DateUtilBenchmark {
+    private static final int CALLS = 200000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        long sink = 0;
+        System.out.println(String.format("%d calls per round", CALLS));
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                sink += legacyToday().hashCode();
+            }
+            long legacy = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                sink += DateUtil.today().hashCode();
+            }
+            long today = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < CALLS; i++) {
+                sink += DateUtil.now().getMillis();
+            }
+            long now = System.nanoTime() - start;
+
+            System.out.println(String.format("round %d: legacy today() %d ns, today() %d ns, now() %d ns", round,
+                                             legacy / CALLS, today / CALLS, now / CALLS));
+        }
+
+        if (sink == Long.MIN_VALUE) {
+            System.out.println(sink);
+        }
+    }
+
+    private static LocalDate legacyToday() throws IOException {
+        Properties properties = new Properties();
+        FileInputStream stream = new FileInputStream(DateUtil.class.getResource("/date.properties").getFile());
+        try {
+            properties.load(stream);
+        } finally {
+            stream.close();
+        }
+
+        DateTimeZone timeZone = DateTimeZone.forTimeZone(TimeZone.getTimeZone(properties.getProperty("timezone")));
+        if (Boolean.parseBoolean(properties.getProperty("test.mode"))) {
+            return LocalDate.parse(properties.getProperty("dateutil.today"));
+        }
+        return new DateTime(timeZone).toLocalDate();
+    }
+}
@@ -0,0 +1,117 @@
+package org.motechproject.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TimeSourceTest {
+    private File file;
+
+    @After
+    public void tearDown() {
+        DateUtil.setTimeSource(null);
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void shouldUseInstalledTimeSource() {
+        DateTime instant = new DateTime(2011, 10, 17, 10, 30, 0, 0);
+        DateUtil.setTimeSource(new FixedTimeSource(instant));
+
+        assertEquals(instant.getMillis(), DateUtil.now().getMillis());
+        assertEquals(DateUtil.now().toLocalDate(), DateUtil.today());
+    }
+
+    @Test
+    public void shouldGoBackToDefaultTimeSource() {
+        DateUtil.setTimeSource(new FixedTimeSource(new DateTime(2000, 1, 1, 0, 0, 0, 0)));
+        DateUtil.setTimeSource(null);
+
+        assertTrue(Math.abs(DateUtil.now().getMillis() - System.currentTimeMillis()) < 60000);
+    }
+
+    @Test
+    public void shouldKeepOffsetClockRunning() throws InterruptedException {
+        DateTime start = new DateTime(2011, 10, 17, 10, 30, 0, 0);
+        OffsetTimeSource timeSource = new OffsetTimeSource(start);
+
+        DateTime first = timeSource.now(DateTimeZone.UTC);
+        Thread.sleep(5);
+        DateTime second = timeSource.now(DateTimeZone.UTC);
+
+        assertTrue(Math.abs(first.getMillis() - start.getMillis()) < 60000);
+        assertTrue(second.isAfter(first));
+    }
+
+    @Test
+    public void shouldPinTodayInTestMode() throws IOException {
+        file = write(null, "test.mode=true\ndateutil.today=2011-10-17\n");
+        PropertiesFileTimeSource timeSource = new PropertiesFileTimeSource(file.toURI().toURL());
+
+        assertEquals(new LocalDate(2011, 10, 17), timeSource.today(DateTimeZone.UTC));
+        assertTrue(Math.abs(timeSource.now(DateTimeZone.UTC).getMillis() - System.currentTimeMillis()) < 60000);
+    }
+
+    @Test
+    public void shouldUseSystemDateOutsideTestMode() throws IOException {
+        file = write(null, "test.mode=false\ndateutil.today=2011-10-17\n");
+        PropertiesFileTimeSource timeSource = new PropertiesFileTimeSource(file.toURI().toURL());
+
+        assertEquals(new LocalDate(DateTimeZone.UTC), timeSource.today(DateTimeZone.UTC));
+    }
+
+    @Test
+    public void shouldPickUpChangedFile() throws IOException {
+        file = write(null, "test.mode=true\ndateutil.today=2011-10-17\n");
+        PropertiesFileTimeSource timeSource = new PropertiesFileTimeSource(file.toURI().toURL(), 0);
+        assertEquals(new LocalDate(2011, 10, 17), timeSource.today(DateTimeZone.UTC));
+
+        write(file, "test.mode=true\ndateutil.today=2011-12-01\n");
+        file.setLastModified(file.lastModified() + 2000);
+
+        assertEquals(new LocalDate(2011, 12, 1), timeSource.today(DateTimeZone.UTC));
+    }
+
+    @Test
+    public void shouldNotRereadUnchangedFileWithinInterval() throws IOException {
+        file = write(null, "test.mode=true\ndateutil.today=2011-10-17\n");
+        PropertiesFileTimeSource timeSource = new PropertiesFileTimeSource(file.toURI().toURL(), 60000);
+
+        write(file, "test.mode=true\ndateutil.today=2011-12-01\n");
+        file.setLastModified(file.lastModified() + 2000);
+
+        assertEquals(new LocalDate(2011, 10, 17), timeSource.today(DateTimeZone.UTC));
+    }
+
+    @Test
+    public void shouldKeepSettingsWhenReloadFails() throws IOException {
+        file = write(null, "test.mode=true\ndateutil.today=2011-10-17\n");
+        PropertiesFileTimeSource timeSource = new PropertiesFileTimeSource(file.toURI().toURL(), 0);
+
+        write(file, "test.mode=true\ndateutil.today=not-a-date\n");
+        file.setLastModified(file.lastModified() + 2000);
+
+        assertEquals(new LocalDate(2011, 10, 17), timeSource.today(DateTimeZone.UTC));
+    }
+
+    private File write(File target, String content) throws IOException {
+        File out = target == null ? File.createTempFile("date", ".properties") : target;
+        FileWriter writer = new FileWriter(out);
+        try {
+            writer.write(content);
+        } finally {
+            writer.close();
+        }
+        return out;
+    }
+}
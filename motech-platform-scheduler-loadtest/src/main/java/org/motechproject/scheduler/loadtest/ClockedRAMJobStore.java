@@ -0,0 +1,68 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler.loadtest;
+
+import org.quartz.Trigger;
+import org.quartz.core.SchedulingContext;
+import org.quartz.simpl.RAMJobStore;
+
+import java.util.Date;
+
+/**
+ * A RAMJobStore that keeps time by a {@link HarnessClock} instead of the system clock. Triggers are stored with their
+ * fire times on the harness clock; when Quartz acquires one its next fire time is translated to the system time at
+ * which the harness clock shows it, which is what the scheduler thread waits for and what the job sees as its
+ * scheduled fire time. Fire lag is therefore measured from the moment the harness clock reached the fire time.
+ *
+ * Quartz creates the store from quartz.properties, so the clock is set statically with {@link #setClock(HarnessClock)}.
+ */
+public class ClockedRAMJobStore extends RAMJobStore {
+    private static volatile HarnessClock clock = new HarnessClock();
+
+    public static void setClock(HarnessClock harnessClock) {
+        clock = harnessClock;
+    }
+
+    public static HarnessClock getClock() {
+        return clock;
+    }
+
+    @Override
+    public Trigger acquireNextTrigger(SchedulingContext ctxt, long noLaterThan) {
+        long offset = clock.getOffsetMillis();
+        Trigger trigger = super.acquireNextTrigger(ctxt, noLaterThan + offset);
+        if (trigger != null && offset != 0 && trigger.getNextFireTime() != null) {
+            trigger.setNextFireTime(new Date(trigger.getNextFireTime().getTime() - offset));
+        }
+        return trigger;
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler.loadtest;
+
+import org.motechproject.metrics.registry.Histogram;
+import org.motechproject.metrics.registry.MetricsRegistry;
+import org.motechproject.scheduler.JobGroup;
+import org.motechproject.scheduler.JobGroups;
+import org.motechproject.scheduler.MotechSchedulerServiceImpl;
+import org.motechproject.scheduler.SchedulerFirePipeline;
+import org.motechproject.util.DateUtil;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.SimpleTrigger;
+import org.quartz.jobs.NoOpJob;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reproduces a fire storm off production. Starts the scheduler module as applicationPlatformScheduler.xml wires it,
+ * with an embedded vm:// ActiveMQ broker, a RAM job store on a {@link HarnessClock} and a
+ * {@link CountingEventGateway} in place of JMS. It schedules N jobs that all fire at the same time an hour ahead, a
+ * third each cron, run once and repeating, then moves the clock to that time so that they all fire at once, and then
+ * a minute at a time while the repeating jobs fire again.
+ *
+ * For the storm and every minute after it, it prints how many jobs fired and how fast; at the end the fire lag of each
+ * job group (from the moment the clock reached the fire time until the event was sent), the heap taken by the
+ * scheduled jobs and the peak heap while they fired. Runs offline: the broker has no transport connectors and Quartz
+ * does not check for updates.
+ *
+ * Run it with (the arguments are the number of jobs, 100000 by default, and the minutes of repeats, 5 by default):
+ * mvn exec:java -pl motech-platform-scheduler-loadtest -Dexec.args="100000 5"
+ */
+public class FireStorm {
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+    private static final long LEAD_MILLIS = 60 * MINUTE_MILLIS;
+    private static final long YEAR_MILLIS = 365 * 24 * LEAD_MILLIS;
+    private static final long STEP_TIMEOUT_MILLIS = 10 * MINUTE_MILLIS;
+    private static final String WAKE_UP = "fire-storm-wake-up";
+
+    private final HarnessClock clock;
+    private final MotechSchedulerServiceImpl schedulerService;
+    private final Scheduler scheduler;
+    private final CountingEventGateway gateway;
+    private final MetricsRegistry metricsRegistry;
+    private final JobGroups jobGroups;
+
+    public FireStorm(ClassPathXmlApplicationContext context, HarnessClock clock) {
+        this.clock = clock;
+        this.schedulerService = (MotechSchedulerServiceImpl) context.getBean("schedulerService");
+        this.scheduler = (Scheduler) context.getBean("schedulerFactoryBean");
+        this.gateway = (CountingEventGateway) context.getBean("countingEventGateway");
+        this.metricsRegistry = (MetricsRegistry) context.getBean("metricsRegistry");
+        this.jobGroups = (JobGroups) context.getBean("schedulerJobGroups");
+
+        ((SchedulerFirePipeline) context.getBean("schedulerFirePipeline")).setPublisher(gateway);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int minutes = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        HarnessClock clock = new HarnessClock();
+        DateUtil.setTimeSource(clock);
+        ClockedRAMJobStore.setClock(clock);
+
+        ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("fireStormContext.xml");
+        try {
+            new FireStorm(context, clock).run(jobs, minutes);
+        } finally {
+            context.close();
+            DateUtil.setTimeSource(null);
+        }
+    }
+
+    public void run(int jobs, int minutes) throws Exception {
+        scheduler.scheduleJob(wakeUpJob(), wakeUpTrigger());
+
+        long now = clock.currentTimeMillis();
+        Date storm = new Date(now - now % MINUTE_MILLIS + MINUTE_MILLIS + LEAD_MILLIS);
+        StormJobFactory factory = new StormJobFactory(clock.now(), storm, minutes, MINUTE_MILLIS);
+
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        int repeating = 0;
+        for (int i = 0; i < jobs; i++) {
+            switch (i % 3) {
+                case 0:
+                    schedulerService.scheduleJob(factory.cronJob(i));
+                    break;
+                case 1:
+                    schedulerService.scheduleRunOnceJob(factory.runOnceJob(i));
+                    break;
+                default:
+                    schedulerService.scheduleRepeatingJob(factory.repeatingJob(i));
+                    repeating++;
+            }
+        }
+        long loading = millisSince(start);
+        long heap = usedHeap() - heapBefore;
+        System.out.println(String.format("scheduled %d jobs (%d repeating) in %d ms, %d jobs/s, %d MB of heap", jobs,
+                                         repeating, loading, jobs * 1000L / Math.max(loading, 1),
+                                         heap / (1024 * 1024)));
+
+        HeapSampler heapSampler = new HeapSampler();
+        heapSampler.start();
+        try {
+            fire("storm", storm, jobs);
+            for (int minute = 1; minute <= minutes; minute++) {
+                fire("minute " + minute, new Date(storm.getTime() + minute * MINUTE_MILLIS), repeating);
+            }
+        } finally {
+            heapSampler.interrupt();
+            heapSampler.join();
+        }
+
+        for (JobGroup group : jobGroups.getGroups()) {
+            String metric = "motech.scheduler." + group.getName();
+            Histogram lag = metricsRegistry.getHistogram(metric + ".fire-latency");
+            if (lag.getCount() > 0) {
+                System.out.println(String.format("%s: fire lag p50 %d ms, p99 %d ms, p99.9 %d ms, max %d ms over %d " +
+                                                 "fires, %d misfired", group.getName(), lag.getPercentile(50),
+                                                 lag.getPercentile(99), lag.getPercentile(99.9), lag.getMax(),
+                                                 lag.getCount(), metricsRegistry.getMeter(metric + ".misfired").getCount()));
+            }
+        }
+        System.out.println(String.format("peak heap while firing: %d MB", heapSampler.peak.get() / (1024 * 1024)));
+    }
+
+    /**
+     * Moves the clock to time and waits until the expected number of jobs fired
+     */
+    private void fire(String name, Date time, int expected) throws Exception {
+        long target = gateway.getSent() + expected;
+
+        clock.advanceTo(time);
+        long start = System.nanoTime();
+        wakeUpScheduler();
+
+        boolean done = gateway.awaitSent(target, STEP_TIMEOUT_MILLIS);
+        long millis = Math.max((gateway.getLastSentNanos() - start) / 1000000, 1);
+        long fired = expected - (target - gateway.getSent());
+        System.out.println(String.format("%s: %d of %d jobs fired in %d ms, %d fires/s%s", name, fired, expected, millis,
+                                         fired * 1000 / millis, done ? "" : ", timed out"));
+    }
+
+    /**
+     * The scheduler thread sleeps until the trigger it acquired before the clock moved, or for up to 30 seconds if it
+     * had none. Unscheduling a job signals it to look for due triggers again right away.
+     */
+    private void wakeUpScheduler() throws SchedulerException {
+        scheduler.unscheduleJob(WAKE_UP, WAKE_UP);
+        scheduler.scheduleJob(wakeUpJob(), wakeUpTrigger());
+    }
+
+    private static JobDetail wakeUpJob() {
+        return new JobDetail(WAKE_UP, WAKE_UP, NoOpJob.class);
+    }
+
+    private static SimpleTrigger wakeUpTrigger() {
+        return new SimpleTrigger(WAKE_UP, WAKE_UP, new Date(System.currentTimeMillis() + 100 * YEAR_MILLIS));
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static class HeapSampler extends Thread {
+        final AtomicLong peak = new AtomicLong();
+
+        HeapSampler() {
+            super("FireStorm-heap");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            Runtime runtime = Runtime.getRuntime();
+            while (!isInterrupted()) {
+                long used = runtime.totalMemory() - runtime.freeMemory();
+                if (used > peak.get()) {
+                    peak.set(used);
+                }
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler.loadtest;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+import org.motechproject.util.TimeSource;
+
+import java.util.Date;
+
+/**
+ * The clock of a load test: the system clock plus an offset that only grows. Installed with
+ * DateUtil.setTimeSource(clock) it is what MOTECH code sees as now, and {@link ClockedRAMJobStore} hands triggers to
+ * Quartz as if this were the time, so moving the clock forward makes every job due in the skipped interval fire at
+ * once.
+ */
+public class HarnessClock implements TimeSource {
+    private volatile long offsetMillis;
+
+    public long currentTimeMillis() {
+        return System.currentTimeMillis() + offsetMillis;
+    }
+
+    public Date now() {
+        return new Date(currentTimeMillis());
+    }
+
+    /**
+     * @return how far the clock is ahead of the system clock
+     */
+    public long getOffsetMillis() {
+        return offsetMillis;
+    }
+
+    /**
+     * @return the system time at which the clock shows time, if it is not moved again
+     */
+    public long toSystemTime(long time) {
+        return time - offsetMillis;
+    }
+
+    public synchronized void advance(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("The clock can not go back " + millis + "ms");
+        }
+        offsetMillis += millis;
+    }
+
+    /**
+     * Moves the clock forward to time, or leaves it if it is already past it
+     */
+    public synchronized void advanceTo(Date time) {
+        advance(Math.max(0, time.getTime() - currentTimeMillis()));
+    }
+
+    @Override
+    public DateTime now(DateTimeZone timeZone) {
+        return new DateTime(currentTimeMillis(), timeZone);
+    }
+
+    @Override
+    public LocalDate today(DateTimeZone timeZone) {
+        return new LocalDate(currentTimeMillis(), timeZone);
+    }
+}
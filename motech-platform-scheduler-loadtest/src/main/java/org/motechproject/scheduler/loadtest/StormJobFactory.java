@@ -0,0 +1,95 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler.loadtest;
+
+import org.motechproject.model.CronSchedulableJob;
+import org.motechproject.model.MotechEvent;
+import org.motechproject.model.RepeatingSchedulableJob;
+import org.motechproject.model.RunOnceSchedulableJob;
+import org.motechproject.scheduler.MotechSchedulerService;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the jobs of a fire storm: every job first fires at the storm time. Cron jobs are daily reminders, as the
+ * message campaigns schedule them, run once jobs fire once, and repeating jobs fire again every repeat interval for
+ * repeatCount more times, as the pill reminder retries do.
+ */
+public class StormJobFactory {
+    public static final String SUBJECT = "org.motechproject.loadtest.storm";
+
+    private final Date storm;
+    private final Date now;
+    private final int repeatCount;
+    private final long repeatIntervalMillis;
+
+    /**
+     * @param now the time the jobs are scheduled at, on the harness clock
+     * @param storm when the jobs fire, on the harness clock
+     */
+    public StormJobFactory(Date now, Date storm, int repeatCount, long repeatIntervalMillis) {
+        this.now = now;
+        this.storm = storm;
+        this.repeatCount = repeatCount;
+        this.repeatIntervalMillis = repeatIntervalMillis;
+    }
+
+    public CronSchedulableJob cronJob(int i) {
+        Calendar time = Calendar.getInstance();
+        time.setTime(storm);
+        String cronExpression = String.format("%d %d %d * * ?", time.get(Calendar.SECOND), time.get(Calendar.MINUTE),
+                                              time.get(Calendar.HOUR_OF_DAY));
+        return new CronSchedulableJob(event("cron", i), cronExpression, now, null);
+    }
+
+    public RunOnceSchedulableJob runOnceJob(int i) {
+        return new RunOnceSchedulableJob(event("once", i), storm);
+    }
+
+    public RepeatingSchedulableJob repeatingJob(int i) {
+        Date end = new Date(storm.getTime() + (repeatCount + 1) * repeatIntervalMillis);
+        return new RepeatingSchedulableJob(event("repeat", i), storm, end, repeatCount, repeatIntervalMillis);
+    }
+
+    public Date getStorm() {
+        return storm;
+    }
+
+    private static MotechEvent event(String kind, int i) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(MotechSchedulerService.JOB_ID_KEY, kind + "-" + i);
+        return new MotechEvent(SUBJECT, params);
+    }
+}
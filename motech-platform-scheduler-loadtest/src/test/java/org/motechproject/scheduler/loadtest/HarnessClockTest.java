@@ -0,0 +1,46 @@
+package org.motechproject.scheduler.loadtest;
+
+import org.junit.Test;
+
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HarnessClockTest {
+
+    @Test
+    public void shouldRunWithSystemClockUntilAdvanced() {
+        HarnessClock clock = new HarnessClock();
+
+        assertEquals(0, clock.getOffsetMillis());
+        assertTrue(Math.abs(clock.currentTimeMillis() - System.currentTimeMillis()) < 1000);
+    }
+
+    @Test
+    public void shouldAdvanceToTime() {
+        HarnessClock clock = new HarnessClock();
+        Date hourLater = new Date(System.currentTimeMillis() + 60 * 60 * 1000);
+
+        clock.advanceTo(hourLater);
+
+        assertTrue(clock.currentTimeMillis() >= hourLater.getTime());
+        assertTrue(clock.getOffsetMillis() > 59 * 60 * 1000);
+        assertTrue(Math.abs(clock.toSystemTime(hourLater.getTime()) - System.currentTimeMillis()) < 1000);
+    }
+
+    @Test
+    public void shouldNotGoBackToEarlierTime() {
+        HarnessClock clock = new HarnessClock();
+        clock.advance(1000);
+
+        clock.advanceTo(new Date(System.currentTimeMillis() - 60 * 1000));
+
+        assertEquals(1000, clock.getOffsetMillis());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNegativeAdvance() {
+        new HarnessClock().advance(-1);
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import org.quartz.JobDetail;
+import org.quartz.JobPersistenceException;
+import org.quartz.SchedulerConfigException;
+import org.quartz.SchedulerException;
+import org.quartz.Trigger;
+import org.quartz.core.SchedulingContext;
+import org.quartz.impl.jdbcjobstore.JobStoreTX;
+import org.quartz.spi.ClassLoadHelper;
+import org.quartz.spi.SchedulerSignaler;
+
+import java.sql.Connection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Quartz's JDBC job store, so scheduled jobs survive a restart, plus bulk writes: {@link #storeJobsAndTriggers} and
+ * {@link #removeTriggers} write batchSize jobs per transaction instead of taking the lock and committing once per job.
+ *
+ * Bulk writes go straight to the store, so scheduler listeners are not told about them; MOTECH does not register any.
+ * The scheduler thread is signalled so that a new trigger that fires sooner than the one it is waiting for is not
+ * missed.
+ *
+ * Configured from quartz.properties, see quartz-durable.properties for an embedded H2 setup.
+ */
+public class BatchingJobStoreTX extends JobStoreTX {
+
+    private static final ConcurrentMap<String, BatchingJobStoreTX> STORES =
+            new ConcurrentHashMap<String, BatchingJobStoreTX>();
+
+    private int batchSize = 500;
+    private SchedulerSignaler schedulerSignaler;
+
+    /**
+     * @return the store of the scheduler with the given name, null if that scheduler does not use this store
+     */
+    public static BatchingJobStoreTX forScheduler(String schedulerName) {
+        return STORES.get(schedulerName);
+    }
+
+    @Override
+    public void initialize(ClassLoadHelper loadHelper, SchedulerSignaler signaler) throws SchedulerConfigException {
+        super.initialize(loadHelper, signaler);
+        schedulerSignaler = signaler;
+        STORES.put(getInstanceName(), this);
+    }
+
+    @Override
+    public void shutdown() {
+        STORES.remove(getInstanceName(), this);
+        super.shutdown();
+    }
+
+    /**
+     * Does what Scheduler.scheduleJob(JobDetail, Trigger) does for each pair, batchSize pairs per transaction. A batch
+     * that fails is rolled back; the batches before it stay stored.
+     *
+     * @param replace replace existing jobs and triggers with the same names instead of failing
+     */
+    public void storeJobsAndTriggers(final List<JobDetail> jobs, final List<Trigger> triggers, final boolean replace)
+            throws SchedulerException {
+        if (jobs.size() != triggers.size()) {
+            throw new IllegalArgumentException("Every job needs one trigger, got " + jobs.size() + " jobs and " +
+                    triggers.size() + " triggers");
+        }
+
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < jobs.size(); i++) {
+            Date firstFireTime = prepare(jobs.get(i), triggers.get(i));
+            earliest = Math.min(earliest, firstFireTime.getTime());
+        }
+
+        final SchedulingContext context = schedulingContext();
+        try {
+            for (int from = 0; from < jobs.size(); from += batchSize) {
+                final int start = from;
+                final int end = Math.min(from + batchSize, jobs.size());
+
+                executeInLock(isLockOnInsert() || replace ? LOCK_TRIGGER_ACCESS : null, new TransactionCallback() {
+                    @Override
+                    public Object execute(Connection conn) throws JobPersistenceException {
+                        for (int i = start; i < end; i++) {
+                            storeJob(conn, context, jobs.get(i), replace);
+                            storeTrigger(conn, context, triggers.get(i), jobs.get(i), replace, STATE_WAITING, false,
+                                         false);
+                        }
+                        return null;
+                    }
+                });
+            }
+        } finally {
+            if (earliest != Long.MAX_VALUE) {
+                schedulerSignaler.signalSchedulingChange(earliest);
+            }
+        }
+    }
+
+    /**
+     * Does what Scheduler.unscheduleJob(String, String) does for each trigger name, batchSize triggers per
+     * transaction. Names that are not scheduled are skipped.
+     *
+     * @return the number of triggers removed
+     */
+    public int removeTriggers(final List<String> triggerNames, final String groupName) throws JobPersistenceException {
+        final SchedulingContext context = schedulingContext();
+        int removed = 0;
+
+        try {
+            for (int from = 0; from < triggerNames.size(); from += batchSize) {
+                final int start = from;
+                final int end = Math.min(from + batchSize, triggerNames.size());
+
+                removed += (Integer) executeInLock(LOCK_TRIGGER_ACCESS, new TransactionCallback() {
+                    @Override
+                    public Object execute(Connection conn) throws JobPersistenceException {
+                        int count = 0;
+                        for (int i = start; i < end; i++) {
+                            if (removeTrigger(conn, context, triggerNames.get(i), groupName)) {
+                                count++;
+                            }
+                        }
+                        return count;
+                    }
+                });
+            }
+        } finally {
+            schedulerSignaler.signalSchedulingChange(0);
+        }
+
+        return removed;
+    }
+
+    private Date prepare(JobDetail job, Trigger trigger) throws SchedulerException {
+        job.validate();
+
+        if (trigger.getJobName() == null) {
+            trigger.setJobName(job.getName());
+            trigger.setJobGroup(job.getGroup());
+        } else if (!trigger.getJobName().equals(job.getName()) || !trigger.getJobGroup().equals(job.getGroup())) {
+            throw new SchedulerException("Trigger " + trigger.getFullName() + " does not reference job " +
+                    job.getFullName());
+        }
+        trigger.validate();
+
+        Date firstFireTime = trigger.computeFirstFireTime(null);
+        if (firstFireTime == null) {
+            throw new SchedulerException("Based on configured schedule, the trigger " + trigger.getFullName() +
+                    " will never fire.");
+        }
+        return firstFireTime;
+    }
+
+    private SchedulingContext schedulingContext() {
+        SchedulingContext context = new SchedulingContext();
+        context.setInstanceId(getInstanceId());
+        return context;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import org.motechproject.model.MotechEvent;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cron jobs of a {@link JobGroup} with coalesceCronJobs set that share their subject and cron expression, such as all
+ * pill reminders at 09:05, are kept here as members of one slot instead of as a Quartz job and trigger each. Quartz
+ * only holds one trigger per slot; when it fires, {@link SchedulerFirePipeline} sends the event of every member whose
+ * start and end time include the fire time.
+ *
+ * Members only live in memory, so {@link MotechSchedulerServiceImpl} only coalesces on a job store that is not
+ * persistent. Members past their end time are dropped when their slot fires, and a slot that lost all its members that
+ * way is discarded and its trigger unscheduled, like a slot whose last job was unscheduled.
+ *
+ * Adding and removing members is done by the scheduler service, holding the lock of this object while it keeps the
+ * slot triggers in step; firing reads the members without locking.
+ */
+public class CoalescedTriggers {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    public static final String SLOT_KEY = "CoalescedSlot";
+
+    private static final String SLOT_NAME_PREFIX = "coalesced:";
+
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+    private final ConcurrentMap<String, Slot> memberSlots = new ConcurrentHashMap<String, Slot>();
+
+    private volatile JobIndex jobIndex;
+    private volatile Scheduler scheduler;
+
+    /**
+     * @return the name of the trigger and job of the slot for the subject and cron expression. It does not start with
+     * the subject, so prefix lookups of the members never find the slot itself.
+     */
+    public static String slotName(String subject, String cronExpression) {
+        return SLOT_NAME_PREFIX + subject + ":" + cronExpression;
+    }
+
+    public boolean hasSlot(String slotName) {
+        return slots.containsKey(slotName);
+    }
+
+    public boolean contains(String jobName) {
+        return memberSlots.containsKey(jobName);
+    }
+
+    /**
+     * @return the member with the job name, null if no slot has it
+     */
+    public Member member(String jobName) {
+        Slot slot = memberSlots.get(jobName);
+        return slot == null ? null : slot.members.get(jobName);
+    }
+
+    /**
+     * @return the slot of the member with the job name, null if no slot has it
+     */
+    public Slot slotOf(String jobName) {
+        return memberSlots.get(jobName);
+    }
+
+    /**
+     * Adds the job to its slot, creating the slot if needed, and takes it out of the slot it was in before.
+     *
+     * @return the previous slot of the job if it is empty now and its trigger can go, null otherwise
+     */
+    public synchronized Slot add(String group, String subject, String cronExpression, Member member) {
+        String slotName = slotName(subject, cronExpression);
+        Slot slot = slots.get(slotName);
+        if (slot == null) {
+            slot = new Slot(slotName, group, subject, cronExpression);
+            slots.put(slotName, slot);
+        }
+
+        slot.members.put(member.jobName, member);
+        Slot previous = memberSlots.put(member.jobName, slot);
+        if (previous != null && previous != slot) {
+            previous.members.remove(member.jobName);
+            return discardIfEmpty(previous);
+        }
+        return null;
+    }
+
+    /**
+     * @return the slot of the job if it is empty now and its trigger can go, null otherwise
+     */
+    public synchronized Slot remove(String jobName) {
+        Slot slot = memberSlots.remove(jobName);
+        if (slot == null) {
+            return null;
+        }
+        slot.members.remove(jobName);
+        return discardIfEmpty(slot);
+    }
+
+    /**
+     * @return the events of the members of the slot that are due at the fire time
+     */
+    public List<MotechEvent> fire(String slotName, Date fireTime) {
+        Slot slot = slots.get(slotName);
+        if (slot == null) {
+            return Collections.emptyList();
+        }
+
+        List<MotechEvent> events = new ArrayList<MotechEvent>(slot.members.size());
+        for (Member member : slot.members.values()) {
+            if (member.endTime != null && fireTime.after(member.endTime)) {
+                expire(slot, member);
+            } else if (member.startTime == null || !fireTime.before(member.startTime)) {
+                Map<String, Object> params = new HashMap<String, Object>(member.parameters);
+                params.put(MotechSchedulerService.JOB_ID_KEY, member.jobName);
+                events.add(new MotechEvent(slot.subject, params));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * @return the number of members in the slots of the group
+     */
+    public int size(String group) {
+        int size = 0;
+        for (Slot slot : slots.values()) {
+            if (slot.group.equals(group)) {
+                size += slot.members.size();
+            }
+        }
+        return size;
+    }
+
+    public int size() {
+        return memberSlots.size();
+    }
+
+    /**
+     * @param jobIndex forgets members dropped at their end time
+     */
+    public void setJobIndex(JobIndex jobIndex) {
+        this.jobIndex = jobIndex;
+    }
+
+    /**
+     * @param scheduler unschedules the trigger of a slot whose last member was dropped at its end time
+     */
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    private synchronized void expire(Slot slot, Member member) {
+        if (slot.members.remove(member.jobName, member) && memberSlots.remove(member.jobName, slot)) {
+            JobIndex index = jobIndex;
+            if (index != null) {
+                index.remove(member.jobName);
+            }
+            unschedule(discardIfEmpty(slot));
+        }
+    }
+
+    /**
+     * @param slot a discarded slot, may be null
+     */
+    private void unschedule(Slot slot) {
+        Scheduler slotScheduler = scheduler;
+        if (slot == null || slotScheduler == null) {
+            return;
+        }
+
+        try {
+            slotScheduler.unscheduleJob(slot.name, slot.group);
+        } catch (SchedulerException e) {
+            log.error("Can not unschedule the trigger of the empty slot " + slot.name, e);
+        }
+    }
+
+    private Slot discardIfEmpty(Slot slot) {
+        if (slot.members.isEmpty()) {
+            slots.remove(slot.name, slot);
+            return slot;
+        }
+        return null;
+    }
+
+    public static class Slot {
+        private final String name;
+        private final String group;
+        private final String subject;
+        private final String cronExpression;
+        private final ConcurrentMap<String, Member> members = new ConcurrentHashMap<String, Member>();
+
+        Slot(String name, String group, String subject, String cronExpression) {
+            this.name = name;
+            this.group = group;
+            this.subject = subject;
+            this.cronExpression = cronExpression;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getGroup() {
+            return group;
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getCronExpression() {
+            return cronExpression;
+        }
+    }
+
+    public static class Member {
+        private final String jobName;
+        private final Map<String, Object> parameters;
+        private final Date startTime;
+        private final Date endTime;
+
+        /**
+         * @param parameters the parameters of the job's event, copied
+         * @param startTime may be null
+         * @param endTime may be null
+         */
+        public Member(String jobName, Map<String, Object> parameters, Date startTime, Date endTime) {
+            this.jobName = jobName;
+            this.parameters = new HashMap<String, Object>(parameters);
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public Map<String, Object> getParameters() {
+            return Collections.unmodifiableMap(parameters);
+        }
+
+        public Date getStartTime() {
+            return startTime;
+        }
+
+        public Date getEndTime() {
+            return endTime;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import org.quartz.CronExpression;
+
+import java.text.ParseException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A parsed cron expression that triggers can share, handed out by {@link CronExpressionCache}.
+ *
+ * Quartz clones the expression of every trigger it stores, which parses the expression again. A compiled expression
+ * is never changed after it is built, so clone() returns the same instance and all triggers with the same expression
+ * share one. Its time zone is fixed; setting a different one is rejected.
+ *
+ * The daily "0 M H * * ?" and weekly "0 M H ? * D" expressions MOTECH builds compute their next fire time directly
+ * instead of walking Quartz's field sets. Times that do not exist on a day because of a daylight saving change fall
+ * back to Quartz.
+ */
+public class CompiledCronExpression extends CronExpression {
+    private static final Pattern DAILY_OR_WEEKLY = Pattern.compile("0 (\\d{1,2}) (\\d{1,2}) (?:\\* \\* \\?|\\? \\* ([1-7]))");
+    private static final int DAYS_TO_SEARCH = 8;
+
+    private final String source;
+    private final int hour;
+    private final int minute;
+    private final int dayOfWeek;
+
+    public CompiledCronExpression(String cronExpression, TimeZone timeZone) throws ParseException {
+        super(cronExpression);
+        super.setTimeZone(timeZone);
+        this.source = cronExpression;
+
+        Matcher matcher = DAILY_OR_WEEKLY.matcher(cronExpression.trim());
+        if (matcher.matches()) {
+            minute = Integer.parseInt(matcher.group(1));
+            hour = Integer.parseInt(matcher.group(2));
+            dayOfWeek = matcher.group(3) == null ? 0 : Integer.parseInt(matcher.group(3));
+        } else {
+            minute = -1;
+            hour = -1;
+            dayOfWeek = 0;
+        }
+    }
+
+    /**
+     * @return the expression as it was given; {@link #getCronExpression()} is upper-cased by Quartz
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * @return whether the next fire time is computed without Quartz
+     */
+    public boolean isDailyOrWeekly() {
+        return hour >= 0;
+    }
+
+    @Override
+    public Date getTimeAfter(Date afterTime) {
+        if (!isDailyOrWeekly()) {
+            return super.getTimeAfter(afterTime);
+        }
+
+        Calendar calendar = Calendar.getInstance(getTimeZone());
+        // like Quartz, the first candidate is the whole second after afterTime
+        calendar.setTimeInMillis((afterTime.getTime() / 1000 + 1) * 1000);
+        long earliest = calendar.getTimeInMillis();
+
+        for (int day = 0; day < DAYS_TO_SEARCH; day++) {
+            calendar.set(Calendar.HOUR_OF_DAY, hour);
+            calendar.set(Calendar.MINUTE, minute);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            if (calendar.get(Calendar.HOUR_OF_DAY) != hour || calendar.get(Calendar.MINUTE) != minute) {
+                return super.getTimeAfter(afterTime);
+            }
+
+            if (calendar.getTimeInMillis() >= earliest &&
+                    (dayOfWeek == 0 || calendar.get(Calendar.DAY_OF_WEEK) == dayOfWeek)) {
+                return calendar.getTime();
+            }
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return super.getTimeAfter(afterTime);
+    }
+
+    @Override
+    public void setTimeZone(TimeZone timeZone) {
+        if (!getTimeZone().equals(timeZone)) {
+            throw new UnsupportedOperationException("The time zone of a shared cron expression can not be changed");
+        }
+    }
+
+    @Override
+    public Object clone() {
+        return this;
+    }
+}
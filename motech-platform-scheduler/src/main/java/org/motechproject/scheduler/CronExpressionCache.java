@@ -0,0 +1,97 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import java.text.ParseException;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link CompiledCronExpression}s of the cron expressions scheduled so far, so that an expression is parsed once
+ * and not for every job. MOTECH builds only a few dozen distinct expressions (mostly "0 M H * * ?"), so the cache
+ * simply starts over once it holds MAX_SIZE of them.
+ *
+ * Shared by the cron expression builders and {@link MotechSchedulerServiceImpl}.
+ */
+public final class CronExpressionCache {
+    public static final int MAX_SIZE = 10000;
+
+    private static final ConcurrentMap<String, CompiledCronExpression> expressions =
+            new ConcurrentHashMap<String, CompiledCronExpression>();
+
+    private CronExpressionCache() {
+    }
+
+    /**
+     * @return the compiled expression in the default time zone
+     * @throws ParseException if the expression is invalid; invalid expressions are not cached
+     */
+    public static CompiledCronExpression compile(String cronExpression) throws ParseException {
+        TimeZone timeZone = TimeZone.getDefault();
+        CompiledCronExpression compiled = expressions.get(cronExpression);
+        if (compiled != null && compiled.getTimeZone().equals(timeZone)) {
+            return compiled;
+        }
+
+        compiled = new CompiledCronExpression(cronExpression, timeZone);
+        if (expressions.size() >= MAX_SIZE) {
+            expressions.clear();
+        }
+        expressions.put(cronExpression, compiled);
+        return compiled;
+    }
+
+    /**
+     * Compiles a built expression ahead of scheduling it.
+     *
+     * @return the cached instance of the expression, so jobs built with the same expression share one string; an
+     * invalid expression is returned as it is and reported when it is scheduled
+     */
+    public static String intern(String cronExpression) {
+        try {
+            return compile(cronExpression).getSource();
+        } catch (ParseException e) {
+            return cronExpression;
+        } catch (RuntimeException e) {
+            return cronExpression;
+        }
+    }
+
+    public static int size() {
+        return expressions.size();
+    }
+
+    public static void clear() {
+        expressions.clear();
+    }
+}
@@ -0,0 +1,178 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import org.motechproject.model.Time;
+import org.quartz.SimpleTrigger;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * A trigger that repeats every repeatInterval within a window of each day, from startTime until endTime, e.g. every
+ * 15 minutes between 09:00 and 10:00 (both included). A window whose end is before its start spans midnight.
+ *
+ * It replaces scheduling a new repeating job every day. A {@link SimpleTrigger} with an unbounded repeat count
+ * whose fire times are restricted to the window; persistent job stores keep it serialized, like any trigger with
+ * additional properties.
+ */
+public class DailyWindowTrigger extends SimpleTrigger {
+    private static final long serialVersionUID = 1L;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private int windowStartMinute;
+    private int windowLengthMinutes;
+    private TimeZone timeZone;
+
+    public DailyWindowTrigger() {
+    }
+
+    public DailyWindowTrigger(String name, String group, Date startTime, Date endTime, long repeatInterval,
+                              Time windowStart, Time windowEnd) {
+        super(name, group, startTime, endTime, REPEAT_INDEFINITELY, repeatInterval);
+        this.windowStartMinute = minuteOfDay(windowStart);
+        this.windowLengthMinutes = (minuteOfDay(windowEnd) - windowStartMinute + MINUTES_PER_DAY) % MINUTES_PER_DAY;
+        this.timeZone = TimeZone.getDefault();
+    }
+
+    @Override
+    public Date computeFirstFireTime(org.quartz.Calendar calendar) {
+        Date fireTime = getFireTimeAfter(new Date(getStartTime().getTime() - 1));
+        while (fireTime != null && calendar != null && !calendar.isTimeIncluded(fireTime.getTime())) {
+            fireTime = getFireTimeAfter(fireTime);
+        }
+        setNextFireTime(fireTime);
+        return fireTime;
+    }
+
+    /**
+     * @return the first time in a window strictly after afterTime and not before the start time, null if there is
+     * none before the end time
+     */
+    @Override
+    public Date getFireTimeAfter(Date afterTime) {
+        long after = afterTime == null ? System.currentTimeMillis() : afterTime.getTime();
+        after = Math.max(after, getStartTime().getTime() - 1);
+
+        // yesterday's window may still be open if it spans midnight
+        Calendar day = windowStart(after, -1);
+        for (int i = 0; i < 3; i++, nextDay(day)) {
+            long start = day.getTimeInMillis();
+            long last = start + lastOffset();
+            if (after >= last) {
+                continue;
+            }
+
+            long fireTime = after < start ? start : start + ((after - start) / getRepeatInterval() + 1) * getRepeatInterval();
+            if (fireTime > last) {
+                continue;
+            }
+            return getEndTime() != null && fireTime >= getEndTime().getTime() ? null : new Date(fireTime);
+        }
+        return null;
+    }
+
+    /**
+     * @return the last time in a window strictly before endTime and not before the start time, null if there is none
+     */
+    @Override
+    public Date getFireTimeBefore(Date endTime) {
+        if (endTime == null) {
+            return null;
+        }
+        long before = endTime.getTime();
+
+        Calendar day = windowStart(before, 0);
+        for (int i = 0; i < 3; i++, previousDay(day)) {
+            long start = day.getTimeInMillis();
+            if (start >= before) {
+                continue;
+            }
+
+            long fireTime = start + Math.min(lastOffset(), (before - 1 - start) / getRepeatInterval() * getRepeatInterval());
+            return fireTime < getStartTime().getTime() ? null : new Date(fireTime);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean hasAdditionalProperties() {
+        return true;
+    }
+
+    public int getWindowStartMinute() {
+        return windowStartMinute;
+    }
+
+    public int getWindowLengthMinutes() {
+        return windowLengthMinutes;
+    }
+
+    /**
+     * @return the offset of the last fire time of a window from its start
+     */
+    private long lastOffset() {
+        long windowLength = windowLengthMinutes * 60000L;
+        return windowLength / getRepeatInterval() * getRepeatInterval();
+    }
+
+    private Calendar windowStart(long time, int days) {
+        Calendar day = Calendar.getInstance(timeZone);
+        day.setTimeInMillis(time);
+        day.add(Calendar.DAY_OF_MONTH, days);
+        setToWindowStart(day);
+        return day;
+    }
+
+    private void nextDay(Calendar day) {
+        day.add(Calendar.DAY_OF_MONTH, 1);
+        setToWindowStart(day);
+    }
+
+    private void previousDay(Calendar day) {
+        day.add(Calendar.DAY_OF_MONTH, -1);
+        setToWindowStart(day);
+    }
+
+    private void setToWindowStart(Calendar day) {
+        day.set(Calendar.HOUR_OF_DAY, windowStartMinute / 60);
+        day.set(Calendar.MINUTE, windowStartMinute % 60);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+    }
+
+    private static int minuteOfDay(Time time) {
+        return time.getHour() * 60 + time.getMinute();
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import org.quartz.CronTrigger;
+import org.quartz.SimpleTrigger;
+import org.quartz.Trigger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A Quartz group for the jobs of one module, picked by the start of the job's subject, e.g.
+ *
+ * <bean class="org.motechproject.scheduler.JobGroup">
+ *     <property name="name" value="pillreminder"/>
+ *     <property name="subjectPrefixes">
+ *         <list><value>org.motechproject.server.pillreminder.</value></list>
+ *     </property>
+ *     <property name="threadCount" value="4"/>
+ *     <property name="misfirePolicy" value="SKIP"/>
+ * </bean>
+ *
+ * The Quartz threads only hand a fired job to its group, which sends the event on threads of its own. A burst of jobs
+ * in one group therefore queues up behind that group's threads and does not hold up the jobs of other groups. A group
+ * without threads sends on the Quartz thread, as all jobs did before groups existed.
+ *
+ * Quartz counts a job as done, and deletes a run-once trigger, as soon as it is handed over, so the queue is bounded by
+ * queueCapacity: once it is full the Quartz thread sends the job itself, which holds Quartz back until the group
+ * catches up. The group's threads are not daemons, and {@link #shutdown()} lets them send what is queued.
+ */
+public class JobGroup {
+
+    public enum MisfirePolicy {
+        /**
+         * Quartz' default: fire once as soon as possible
+         */
+        SMART,
+        /**
+         * Fire once as soon as possible, whatever the trigger type
+         */
+        FIRE_NOW,
+        /**
+         * Do not fire late; wait for the next fire time, if there is one
+         */
+        SKIP
+    }
+
+    public static final long DEFAULT_MISFIRE_THRESHOLD_MILLIS = 60000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    public static final long DEFAULT_SHUTDOWN_TIMEOUT_MILLIS = 60000;
+
+    private String name;
+    private List<String> subjectPrefixes = new ArrayList<String>();
+    private int threadCount;
+    private MisfirePolicy misfirePolicy = MisfirePolicy.SMART;
+    private long misfireThresholdMillis = DEFAULT_MISFIRE_THRESHOLD_MILLIS;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private long shutdownTimeoutMillis = DEFAULT_SHUTDOWN_TIMEOUT_MILLIS;
+    private boolean coalesceCronJobs;
+
+    private volatile ExecutorService executor;
+
+    public JobGroup() {
+    }
+
+    public JobGroup(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Sends the fired job on one of the group's threads, or on the calling thread if the group has none, its queue is
+     * full or it was shut down
+     */
+    public void execute(Runnable fire) {
+        ExecutorService groupExecutor = executor();
+        if (groupExecutor == null) {
+            fire.run();
+        } else {
+            groupExecutor.execute(fire);
+        }
+    }
+
+    /**
+     * @return the number of fired jobs waiting for one of the group's threads
+     */
+    public int getQueued() {
+        ExecutorService groupExecutor = executor;
+        return groupExecutor == null ? 0 : ((ThreadPoolExecutor) groupExecutor).getQueue().size();
+    }
+
+    /**
+     * A job that waited longer than the threshold for its turn is dropped when the group skips misfires. Quartz applies
+     * the same policy to triggers it could not fire in time, see {@link #applyMisfirePolicy(Trigger)}.
+     */
+    public boolean isMisfired(long latencyMillis) {
+        return misfirePolicy == MisfirePolicy.SKIP && latencyMillis > misfireThresholdMillis;
+    }
+
+    public void applyMisfirePolicy(Trigger trigger) {
+        switch (misfirePolicy) {
+            case FIRE_NOW:
+                trigger.setMisfireInstruction(trigger instanceof CronTrigger ?
+                        CronTrigger.MISFIRE_INSTRUCTION_FIRE_ONCE_NOW : SimpleTrigger.MISFIRE_INSTRUCTION_FIRE_NOW);
+                break;
+            case SKIP:
+                trigger.setMisfireInstruction(trigger instanceof CronTrigger ?
+                        CronTrigger.MISFIRE_INSTRUCTION_DO_NOTHING :
+                        SimpleTrigger.MISFIRE_INSTRUCTION_RESCHEDULE_NEXT_WITH_REMAINING_COUNT);
+                break;
+            default:
+                trigger.setMisfireInstruction(Trigger.MISFIRE_INSTRUCTION_SMART_POLICY);
+        }
+    }
+
+    public boolean matches(String jobName) {
+        return matchLength(jobName) >= 0;
+    }
+
+    /**
+     * @return the length of the longest prefix the job name starts with, or -1 if it starts with none. Job names start
+     * with the subject, so a subject prefix matches the names of all jobs of the subject.
+     */
+    int matchLength(String jobName) {
+        int longest = -1;
+        for (String prefix : subjectPrefixes) {
+            if (jobName.startsWith(prefix) && prefix.length() > longest) {
+                longest = prefix.length();
+            }
+        }
+        return longest;
+    }
+
+    /**
+     * Stops taking jobs on the group's threads; the jobs already queued are still sent, see {@link #awaitTermination()}
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Waits up to shutdownTimeoutMillis for the group's threads to send the jobs queued before {@link #shutdown()}
+     *
+     * @return false if jobs were still queued or being sent when the time was up
+     */
+    public boolean awaitTermination() throws InterruptedException {
+        ExecutorService groupExecutor = executor;
+        return groupExecutor == null || groupExecutor.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null && threadCount > 0) {
+            executor = new ThreadPoolExecutor(threadCount, threadCount, 0, TimeUnit.MILLISECONDS,
+                                              new LinkedBlockingQueue<Runnable>(queueCapacity), new GroupThreadFactory(name),
+                                              new SendOnCallingThread());
+        }
+        return executor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<String> getSubjectPrefixes() {
+        return subjectPrefixes;
+    }
+
+    public void setSubjectPrefixes(List<String> subjectPrefixes) {
+        this.subjectPrefixes = subjectPrefixes;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    public MisfirePolicy getMisfirePolicy() {
+        return misfirePolicy;
+    }
+
+    public void setMisfirePolicy(MisfirePolicy misfirePolicy) {
+        this.misfirePolicy = misfirePolicy;
+    }
+
+    public long getMisfireThresholdMillis() {
+        return misfireThresholdMillis;
+    }
+
+    public void setMisfireThresholdMillis(long misfireThresholdMillis) {
+        this.misfireThresholdMillis = misfireThresholdMillis;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public long getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public void setShutdownTimeoutMillis(long shutdownTimeoutMillis) {
+        this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    }
+
+    /**
+     * @return whether cron jobs with the same subject and expression share one trigger, see {@link CoalescedTriggers}
+     */
+    public boolean isCoalesceCronJobs() {
+        return coalesceCronJobs;
+    }
+
+    public void setCoalesceCronJobs(boolean coalesceCronJobs) {
+        this.coalesceCronJobs = coalesceCronJobs;
+    }
+
+    @Override
+    public String toString() {
+        return "JobGroup{" + name + ", subjectPrefixes=" + subjectPrefixes + ", threadCount=" + threadCount +
+               ", queueCapacity=" + queueCapacity + ", misfirePolicy=" + misfirePolicy + ", coalesceCronJobs=" + coalesceCronJobs + "}";
+    }
+
+    private static class GroupThreadFactory implements ThreadFactory {
+        private final String namePrefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        GroupThreadFactory(String group) {
+            this.namePrefix = "MotechScheduler-" + group + "-";
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + count.incrementAndGet());
+            thread.setDaemon(false);
+            return thread;
+        }
+    }
+
+    /**
+     * Unlike ThreadPoolExecutor.CallerRunsPolicy also sends the job when the group was shut down, as Quartz will not
+     * fire it again
+     */
+    private static class SendOnCallingThread implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable fire, ThreadPoolExecutor executor) {
+            fire.run();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import org.motechproject.metrics.MetricsAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link JobGroup}s declared by the modules, plus the "default" group for every job no module claims. The default
+ * group has no threads of its own unless one is declared with that name.
+ *
+ * For every fired job the delay between its scheduled fire time and the moment its event is sent is reported as
+ * motech.scheduler.[group].fire-latency, with the group's queue length as motech.scheduler.[group].queued.
+ *
+ * The scheduler factory holds the fire pipeline, which holds the groups, so Spring shuts Quartz down before it calls
+ * {@link #shutdown()}; the groups then send what they have queued while the event gateway is still up.
+ */
+public class JobGroups {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private volatile List<JobGroup> groups = new ArrayList<JobGroup>();
+    private volatile Map<String, JobGroup> groupsByName = new HashMap<String, JobGroup>();
+    private volatile JobGroup defaultGroup = new JobGroup(MotechSchedulerServiceImpl.JOB_GROUP_NAME);
+
+    private MetricsAgent metricsAgent;
+
+    public JobGroups() {
+    }
+
+    public JobGroups(List<JobGroup> groups) {
+        setGroups(groups);
+    }
+
+    /**
+     * @return the group of the job with the longest subject prefix the job name starts with, the default group if none
+     */
+    public JobGroup groupFor(String jobName) {
+        JobGroup match = defaultGroup;
+        int longest = -1;
+        for (JobGroup group : groups) {
+            int length = group.matchLength(jobName);
+            if (length > longest) {
+                longest = length;
+                match = group;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * @return the group with the name, the default group if there is none
+     */
+    public JobGroup group(String name) {
+        JobGroup group = groupsByName.get(name);
+        return group == null ? defaultGroup : group;
+    }
+
+    public List<JobGroup> getGroups() {
+        List<JobGroup> all = new ArrayList<JobGroup>(groups);
+        if (!groupsByName.containsKey(defaultGroup.getName())) {
+            all.add(defaultGroup);
+        }
+        return all;
+    }
+
+    /**
+     * Sends a fired job of the group on the group's threads.
+     *
+     * @param scheduledFireTime when Quartz was due to fire the job
+     * @param send sends the job's event
+     */
+    public void fire(String groupName, final Date scheduledFireTime, final Runnable send) {
+        final JobGroup group = group(groupName);
+        final String metric = "motech.scheduler." + group.getName();
+
+        group.execute(new Runnable() {
+            @Override
+            public void run() {
+                long latency = scheduledFireTime == null ? 0 : System.currentTimeMillis() - scheduledFireTime.getTime();
+                if (group.isMisfired(latency)) {
+                    log.warn("Skipping a job of group " + group.getName() + " that is " + latency + "ms late");
+                    if (metricsAgent != null) {
+                        metricsAgent.logEvent(metric + ".misfired");
+                    }
+                    return;
+                }
+
+                send.run();
+
+                if (metricsAgent != null) {
+                    metricsAgent.logTimedEvent(metric + ".fire-latency", latency);
+                    metricsAgent.logGauge(metric + ".queued", group.getQueued());
+                }
+            }
+        });
+    }
+
+    /**
+     * Shuts the groups down and waits for each to send the jobs it has queued
+     */
+    public void shutdown() {
+        List<JobGroup> all = getGroups();
+        for (JobGroup group : all) {
+            group.shutdown();
+        }
+        for (JobGroup group : all) {
+            try {
+                if (!group.awaitTermination()) {
+                    log.error("Job group " + group.getName() + " did not send its " + group.getQueued() +
+                              " queued jobs within " + group.getShutdownTimeoutMillis() + "ms; they are lost");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.error("Interrupted while job group " + group.getName() + " sent its queued jobs", e);
+                return;
+            }
+        }
+    }
+
+    @Autowired(required = false)
+    public void setGroups(List<JobGroup> groups) {
+        Map<String, JobGroup> byName = new HashMap<String, JobGroup>();
+        JobGroup defaultGroup = new JobGroup(MotechSchedulerServiceImpl.JOB_GROUP_NAME);
+        for (JobGroup group : groups) {
+            if (byName.put(group.getName(), group) != null) {
+                throw new IllegalArgumentException("Job group " + group.getName() + " is declared twice");
+            }
+            if (MotechSchedulerServiceImpl.JOB_GROUP_NAME.equals(group.getName())) {
+                defaultGroup = group;
+            }
+            log.info("Scheduling jobs in " + group);
+        }
+
+        this.groupsByName = byName;
+        this.defaultGroup = defaultGroup;
+        this.groups = new ArrayList<JobGroup>(groups);
+    }
+
+    @Autowired(required = false)
+    public void setMetricsAgent(MetricsAgent metricsAgent) {
+        this.metricsAgent = metricsAgent;
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import org.quartz.Trigger;
+import org.quartz.listeners.SchedulerListenerSupport;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Finds scheduled triggers by the start of their name or job ID, or by tag, without going through every trigger of the
+ * group. Keys are kept as "key\0triggerName" in sorted sets, so all keys starting with a prefix are one contiguous
+ * range. Trigger names are unique across the {@link JobGroup}s, and the index remembers which group each one is in.
+ *
+ * Each entry can also hold the {@link JobSchedule} of the trigger the job was scheduled with, so that
+ * {@link SchedulerQueryService} can tell when jobs fire without asking the job store. The trigger itself is not kept;
+ * the job store has its own copy of it.
+ *
+ * {@link MotechSchedulerServiceImpl} adds and removes triggers as it schedules and unschedules them; registered as a
+ * scheduler listener the index also drops triggers that Quartz removes because they will not fire again.
+ */
+public class JobIndex extends SchedulerListenerSupport {
+    private static final char SEPARATOR = '\0';
+
+    private final ConcurrentSkipListSet<String> prefixKeys = new ConcurrentSkipListSet<String>();
+    private final ConcurrentSkipListSet<String> tagKeys = new ConcurrentSkipListSet<String>();
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Adds a trigger of the default group.
+     */
+    public void add(String triggerName, String jobId, Collection<String> tags) {
+        add(triggerName, MotechSchedulerServiceImpl.JOB_GROUP_NAME, jobId, tags);
+    }
+
+    /**
+     * @param jobId the JobID the trigger was scheduled with, may be null
+     * @param tags may be null
+     */
+    public void add(String triggerName, String group, String jobId, Collection<String> tags) {
+        add(triggerName, group, jobId, tags, null);
+    }
+
+    /**
+     * @param trigger the trigger the job was scheduled with, may be null; only its {@link JobSchedule} is kept
+     */
+    public void add(String triggerName, String group, String jobId, Collection<String> tags, Trigger trigger) {
+        Entry entry = new Entry(group, jobId, tags == null ? new ArrayList<String>() : new ArrayList<String>(tags),
+                                JobSchedule.of(trigger));
+        Entry previous = entries.put(triggerName, entry);
+        if (previous != null) {
+            removeKeys(triggerName, previous);
+        }
+
+        prefixKeys.add(triggerName + SEPARATOR + triggerName);
+        if (jobId != null) {
+            prefixKeys.add(jobId + SEPARATOR + triggerName);
+        }
+        for (String tag : entry.tags) {
+            tagKeys.add(tag + SEPARATOR + triggerName);
+        }
+    }
+
+    public void remove(String triggerName) {
+        Entry entry = entries.remove(triggerName);
+        if (entry != null) {
+            removeKeys(triggerName, entry);
+        }
+    }
+
+    /**
+     * @return the names of the triggers whose name or job ID starts with the prefix
+     */
+    public List<String> triggersStartingWith(String prefix) {
+        Set<String> triggerNames = new LinkedHashSet<String>();
+        for (String key : prefixKeys.tailSet(prefix)) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            triggerNames.add(key.substring(key.lastIndexOf(SEPARATOR) + 1));
+        }
+        return new ArrayList<String>(triggerNames);
+    }
+
+    /**
+     * @return the names of the triggers scheduled with exactly this job ID
+     */
+    public List<String> triggersWithJobId(String jobId) {
+        String prefix = jobId + SEPARATOR;
+        List<String> triggerNames = new ArrayList<String>();
+        for (String key : prefixKeys.tailSet(prefix)) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            String triggerName = key.substring(prefix.length());
+            if (jobId.equals(jobIdOf(triggerName))) {
+                triggerNames.add(triggerName);
+            }
+        }
+        return triggerNames;
+    }
+
+    /**
+     * @return the names of the triggers scheduled with the tag
+     */
+    public List<String> triggersTagged(String tag) {
+        String prefix = tag + SEPARATOR;
+        List<String> triggerNames = new ArrayList<String>();
+        for (String key : tagKeys.tailSet(prefix)) {
+            if (!key.startsWith(prefix)) {
+                break;
+            }
+            triggerNames.add(key.substring(prefix.length()));
+        }
+        return triggerNames;
+    }
+
+    /**
+     * @return the group the trigger was scheduled in, null if it is not indexed
+     */
+    public String groupOf(String triggerName) {
+        Entry entry = entries.get(triggerName);
+        return entry == null ? null : entry.group;
+    }
+
+    /**
+     * @return the job ID the trigger was scheduled with, null if it has none or is not indexed
+     */
+    public String jobIdOf(String triggerName) {
+        Entry entry = entries.get(triggerName);
+        return entry == null ? null : entry.jobId;
+    }
+
+    /**
+     * @return the schedule of the trigger the job was scheduled with, null if it is unknown or the job is not indexed
+     */
+    public JobSchedule scheduleOf(String triggerName) {
+        Entry entry = entries.get(triggerName);
+        return entry == null ? null : entry.schedule;
+    }
+
+    /**
+     * Replaces the schedule of an indexed trigger, e.g. after it was rescheduled with a new cron expression.
+     */
+    public void setSchedule(String triggerName, Trigger trigger) {
+        Entry entry = entries.get(triggerName);
+        if (entry != null) {
+            entry.schedule = JobSchedule.of(trigger);
+        }
+    }
+
+    /**
+     * @return the names of all indexed triggers, in no particular order
+     */
+    public Collection<String> triggerNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void triggerFinalized(Trigger trigger) {
+        if (trigger != null) {
+            Entry entry = entries.get(trigger.getName());
+            if (entry != null && entry.group.equals(trigger.getGroup()) && entries.remove(trigger.getName(), entry)) {
+                removeKeys(trigger.getName(), entry);
+            }
+        }
+    }
+
+    private void removeKeys(String triggerName, Entry entry) {
+        prefixKeys.remove(triggerName + SEPARATOR + triggerName);
+        if (entry.jobId != null) {
+            prefixKeys.remove(entry.jobId + SEPARATOR + triggerName);
+        }
+        for (String tag : entry.tags) {
+            tagKeys.remove(tag + SEPARATOR + triggerName);
+        }
+    }
+
+    private static class Entry {
+        final String group;
+        final String jobId;
+        final List<String> tags;
+        volatile JobSchedule schedule;
+
+        Entry(String group, String jobId, List<String> tags, JobSchedule schedule) {
+            this.group = group;
+            this.jobId = jobId;
+            this.tags = tags;
+            this.schedule = schedule;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import org.motechproject.model.Time;
+import org.quartz.CronExpression;
+import org.quartz.CronTrigger;
+import org.quartz.SimpleTrigger;
+import org.quartz.Trigger;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * When a job fires, as {@link JobIndex} keeps it for {@link SchedulerQueryService}: the start and end time of its
+ * trigger and what is needed to compute its fire times, without the trigger itself. The job store already holds the
+ * trigger, so the index does not keep a second copy of it.
+ *
+ * Cron schedules in the default time zone share their expression through the {@link CronExpressionCache}, so a query
+ * can compute the fire times of an expression once for all the jobs scheduled with it.
+ */
+public abstract class JobSchedule {
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final long startTime;
+    private final long endTime;
+
+    JobSchedule(Date startTime, Date endTime) {
+        this.startTime = startTime == null ? 0 : startTime.getTime();
+        this.endTime = endTime == null ? Long.MAX_VALUE : endTime.getTime();
+    }
+
+    /**
+     * @return the schedule of the trigger, null if the trigger is null or of a type whose fire times are unknown
+     */
+    public static JobSchedule of(Trigger trigger) {
+        if (trigger instanceof CronTrigger) {
+            return cron((CronTrigger) trigger);
+        }
+        if (trigger instanceof DailyWindowTrigger) {
+            DailyWindowTrigger window = (DailyWindowTrigger) trigger;
+            return new DailyWindow(window.getStartTime(), window.getEndTime(), window.getRepeatInterval(),
+                                   window.getWindowStartMinute(), window.getWindowLengthMinutes());
+        }
+        if (trigger != null && trigger.getClass() == SimpleTrigger.class) {
+            SimpleTrigger simple = (SimpleTrigger) trigger;
+            return new Simple(simple.getStartTime(), simple.getEndTime(), simple.getRepeatInterval(),
+                              simple.getRepeatCount());
+        }
+        return null;
+    }
+
+    private static JobSchedule cron(CronTrigger trigger) {
+        String cronExpression = trigger.getCronExpression();
+        if (cronExpression == null) {
+            return null;
+        }
+
+        try {
+            TimeZone timeZone = trigger.getTimeZone();
+            CronExpression expression = TimeZone.getDefault().equals(timeZone) ?
+                    CronExpressionCache.compile(cronExpression) : new CompiledCronExpression(cronExpression, timeZone);
+            return new Cron(trigger.getStartTime(), trigger.getEndTime(), expression);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the first fire time strictly after afterTime, null if the job does not fire again
+     */
+    public abstract Date getFireTimeAfter(Date afterTime);
+
+    /**
+     * @return the expression of a cron schedule in the default time zone, shared with every other job scheduled with
+     * it; null for other schedules
+     */
+    public CompiledCronExpression getSharedCronExpression() {
+        return null;
+    }
+
+    /**
+     * @return the number of fire times at or after from and before to, at most max
+     */
+    public int countFires(Date from, Date to, int max) {
+        int count = 0;
+        Date fireTime = getFireTimeAfter(new Date(from.getTime() - 1));
+        while (fireTime != null && fireTime.before(to) && count < max) {
+            count++;
+            fireTime = getFireTimeAfter(fireTime);
+        }
+        return count;
+    }
+
+    /**
+     * @return whether the time is between the start and end time of the schedule, both included
+     */
+    public boolean includes(Date time) {
+        return time.getTime() >= startTime && time.getTime() <= endTime;
+    }
+
+    long getStartTime() {
+        return startTime;
+    }
+
+    long getEndTime() {
+        return endTime;
+    }
+
+    Date endTimeOrNull() {
+        return endTime == Long.MAX_VALUE ? null : new Date(endTime);
+    }
+
+    private static class Cron extends JobSchedule {
+        private final CronExpression expression;
+
+        Cron(Date startTime, Date endTime, CronExpression expression) {
+            super(startTime, endTime);
+            this.expression = expression;
+        }
+
+        @Override
+        public Date getFireTimeAfter(Date afterTime) {
+            long after = afterTime == null ? System.currentTimeMillis() : afterTime.getTime();
+            // like CronTrigger, a job fires at its start time if the expression does
+            after = Math.max(after, getStartTime() - 1000);
+
+            Date fireTime = expression.getTimeAfter(new Date(after));
+            return fireTime == null || fireTime.getTime() > getEndTime() ? null : fireTime;
+        }
+
+        @Override
+        public CompiledCronExpression getSharedCronExpression() {
+            return expression instanceof CompiledCronExpression && TimeZone.getDefault().equals(expression.getTimeZone()) ?
+                    (CompiledCronExpression) expression : null;
+        }
+    }
+
+    private static class Simple extends JobSchedule {
+        private final long repeatInterval;
+        private final int repeatCount;
+
+        Simple(Date startTime, Date endTime, long repeatInterval, int repeatCount) {
+            super(startTime, endTime);
+            this.repeatInterval = repeatInterval;
+            this.repeatCount = repeatCount;
+        }
+
+        @Override
+        public Date getFireTimeAfter(Date afterTime) {
+            long after = afterTime == null ? System.currentTimeMillis() : afterTime.getTime();
+            long fireTime;
+            if (after < getStartTime()) {
+                fireTime = getStartTime();
+            } else if (repeatInterval <= 0) {
+                return null;
+            } else {
+                long fires = (after - getStartTime()) / repeatInterval + 1;
+                if (repeatCount != SimpleTrigger.REPEAT_INDEFINITELY && fires > repeatCount) {
+                    return null;
+                }
+                fireTime = getStartTime() + fires * repeatInterval;
+            }
+            return fireTime > getEndTime() ? null : new Date(fireTime);
+        }
+
+        /**
+         * Counts the fire times without going through them.
+         */
+        @Override
+        public int countFires(Date from, Date to, int max) {
+            long last = Math.min(to.getTime() - 1, getEndTime());
+            if (repeatInterval <= 0 || repeatCount == 0) {
+                return getStartTime() >= from.getTime() && getStartTime() <= last && max > 0 ? 1 : 0;
+            }
+            if (repeatCount != SimpleTrigger.REPEAT_INDEFINITELY) {
+                last = Math.min(last, getStartTime() + repeatCount * repeatInterval);
+            }
+            if (last < getStartTime() || last < from.getTime()) {
+                return 0;
+            }
+
+            long first = from.getTime() <= getStartTime() ? 0 : (from.getTime() - getStartTime() - 1) / repeatInterval + 1;
+            long count = (last - getStartTime()) / repeatInterval - first + 1;
+            return (int) Math.max(0, Math.min(count, max));
+        }
+    }
+
+    private static class DailyWindow extends JobSchedule {
+        private final long repeatInterval;
+        private final int windowStartMinute;
+        private final int windowLengthMinutes;
+
+        DailyWindow(Date startTime, Date endTime, long repeatInterval, int windowStartMinute, int windowLengthMinutes) {
+            super(startTime, endTime);
+            this.repeatInterval = repeatInterval;
+            this.windowStartMinute = windowStartMinute;
+            this.windowLengthMinutes = windowLengthMinutes;
+        }
+
+        @Override
+        public Date getFireTimeAfter(Date afterTime) {
+            return trigger().getFireTimeAfter(afterTime);
+        }
+
+        /**
+         * Counts the fire times with one trigger built for the call, which is dropped again.
+         */
+        @Override
+        public int countFires(Date from, Date to, int max) {
+            DailyWindowTrigger trigger = trigger();
+            int count = 0;
+            Date fireTime = trigger.getFireTimeAfter(new Date(from.getTime() - 1));
+            while (fireTime != null && fireTime.before(to) && count < max) {
+                count++;
+                fireTime = trigger.getFireTimeAfter(fireTime);
+            }
+            return count;
+        }
+
+        private DailyWindowTrigger trigger() {
+            int windowEndMinute = (windowStartMinute + windowLengthMinutes) % MINUTES_PER_DAY;
+            return new DailyWindowTrigger("schedule", null, new Date(getStartTime()), endTimeOrNull(), repeatInterval,
+                                          new Time(windowStartMinute / 60, windowStartMinute % 60),
+                                          new Time(windowEndMinute / 60, windowEndMinute % 60));
+        }
+    }
+}
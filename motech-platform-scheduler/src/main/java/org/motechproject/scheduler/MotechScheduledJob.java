@@ -31,43 +31,23 @@
  */
 package org.motechproject.scheduler;
 
-import org.motechproject.model.MotechEvent;
 import org.quartz.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 
-import java.util.Map;
-
 /**
- *
+ * Fires a scheduled job through the {@link SchedulerFirePipeline} in the scheduler context. Quartz creates a new
+ * instance for every fire, so the job itself holds nothing.
  */
 public class MotechScheduledJob implements Job {
 
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
     @Override
-    @SuppressWarnings("unchecked")
     public void execute(JobExecutionContext jobExecutionContext) throws JobExecutionException {
 
-        log.info("executing...");
-
         try {
-            JobDetail jobDetail = jobExecutionContext.getJobDetail();
-            JobDataMap jobDataMap = jobDetail.getJobDataMap();
-
-
-            String jobId = jobDetail.getName();
-            String eventType = jobDataMap.getString(MotechEvent.EVENT_TYPE_KEY_NAME);
-            Map<String, Object> params = jobDataMap.getWrappedMap();
-            params.remove(MotechEvent.EVENT_TYPE_KEY_NAME);
-            params.put("JobID", jobId);
-
-            MotechEvent motechEvent = new MotechEvent(eventType, params);
-
-            log.info("Sending Motech Event Message: " + motechEvent);
-
             SchedulerContext schedulerContext;
             try {
                 schedulerContext = jobExecutionContext.getScheduler().getContext();
@@ -76,12 +56,14 @@ public class MotechScheduledJob implements Job {
                 return;
             }
 
-            ApplicationContext applicationContext = (ApplicationContext) schedulerContext.get("applicationContext");
-
-            SchedulerFireEventGateway schedulerFiredEventGateway =
-                    (SchedulerFireEventGateway) applicationContext.getBean("schedulerFireEventGateway");
+            SchedulerFirePipeline pipeline =
+                    (SchedulerFirePipeline) schedulerContext.get(SchedulerFirePipeline.SCHEDULER_CONTEXT_KEY);
+            if (pipeline == null) {
+                ApplicationContext applicationContext = (ApplicationContext) schedulerContext.get("applicationContext");
+                pipeline = SchedulerFirePipeline.fromApplicationContext(applicationContext);
+            }
 
-            schedulerFiredEventGateway.sendEventMessage(motechEvent);
+            pipeline.fire(jobExecutionContext.getJobDetail(), jobExecutionContext.getScheduledFireTime());
         } catch (Exception e) {
             log.error("Job execution failed.", e);
         }
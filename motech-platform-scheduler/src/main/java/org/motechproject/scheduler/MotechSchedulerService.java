@@ -36,6 +36,8 @@ import org.motechproject.model.MotechEvent;
 import org.motechproject.model.RepeatingSchedulableJob;
 import org.motechproject.model.RunOnceSchedulableJob;
 
+import java.util.Collection;
+
 /**
  * Motech Scheduler Service Interface provides methods to schedule reschedule and unschedule a job
  *
@@ -46,6 +48,12 @@ import org.motechproject.model.RunOnceSchedulableJob;
 public interface MotechSchedulerService {
     public static final String JOB_ID_KEY = "JobID";
 
+    /**
+     * Optional MotechEvent parameter with the tags of a job, a String or a Collection of Strings, for
+     * unscheduleJobsWithTag(String)
+     */
+    public static final String JOB_TAGS_KEY = "JobTags";
+
     /**
      * Schedules the given schedulable job. The Job ID by which the job will be referencing in the future should be provided
      * in an Instance of MotechEvent in SchedulableJob (see MotechEvent.jobId)
@@ -56,6 +64,14 @@ public interface MotechSchedulerService {
      */
     public void scheduleJob(CronSchedulableJob cronSchedulableJob);
 
+    /**
+     * Schedules the given schedulable jobs like scheduleJob(CronSchedulableJob), in one transaction when the job store
+     * supports it. Jobs with the same job ID as an existing job replace it.
+     *
+     * @param cronSchedulableJobs
+     */
+    public void scheduleJobs(Collection<CronSchedulableJob> cronSchedulableJobs);
+
     /**
      * Updates MotechEvent data of the job defined by jobIb in the given instance of that class
      *
@@ -79,12 +95,23 @@ public interface MotechSchedulerService {
      *
      * If a job with the same job ID as the given exists, this job will be unscheduled and the given schedulable job will be scheduled
      *
+     * A job with a daily window is scheduled as one trigger that repeats within the window of every day
+     *
      * @param repeatingSchedulableJob
      */
     public void scheduleRepeatingJob(RepeatingSchedulableJob repeatingSchedulableJob);
 
     public void scheduleRunOnceJob(RunOnceSchedulableJob schedulableJob);
 
+    /**
+     * Schedules the given run once jobs like scheduleRunOnceJob(RunOnceSchedulableJob), in one transaction when the job
+     * store supports it. Jobs with the same job ID as an existing job replace it. Jobs scheduleRunOnceJob would reject,
+     * such as jobs due in the past, are logged and skipped.
+     *
+     * @param schedulableJobs
+     */
+    public void scheduleRunOnceJobs(Collection<RunOnceSchedulableJob> schedulableJobs);
+
     /**
      * Unschedules a job with the given job ID
      *  @param subject : String representing domain operation eg. "pill-reminder", "outbox-call" or motechEvent.getSubject()
@@ -92,7 +119,35 @@ public interface MotechSchedulerService {
      */
     public void unscheduleJob(String subject, String externalId);
 
+    /**
+     * Unschedules the jobs with the given job IDs, in one transaction when the job store supports it. Job IDs that are
+     * not scheduled are ignored.
+     *
+     * @param jobIds : subject + "-" + externalId of each job, as for unscheduleJob(String, String)
+     */
+    public void unscheduleJobs(Collection<String> jobIds);
+
+    /**
+     * Unschedules all jobs whose job ID, or subject + "-" + job ID, starts with the given prefix
+     *
+     * @param jobIdPrefix
+     */
     public void unscheduleAllJobs(String jobIdPrefix);
 
+    /**
+     * Unschedules all jobs whose job ID, or subject + "-" + job ID, starts with any of the given prefixes, in one
+     * transaction when the job store supports it
+     *
+     * @param jobIdPrefixes
+     */
+    public void unscheduleAllJobs(Collection<String> jobIdPrefixes);
+
+    /**
+     * Unschedules all jobs that were scheduled with the given tag in their JOB_TAGS_KEY parameter
+     *
+     * @param tag
+     */
+    public void unscheduleJobsWithTag(String tag);
+
     void unscheduleRepeatingJob(String subject, String externalId);
 }
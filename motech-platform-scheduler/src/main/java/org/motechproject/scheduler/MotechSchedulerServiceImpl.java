@@ -43,10 +43,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.quartz.SchedulerFactoryBean;
 
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Motech Scheduler Service implementation
+ *
+ * Jobs are placed in the {@link JobGroup} that claims their subject, or in the "default" group. A job keeps the group
+ * it was scheduled in until it is unscheduled or scheduled again.
+ *
  * @see MotechSchedulerService
  */
 public class MotechSchedulerServiceImpl implements MotechSchedulerService {
@@ -61,11 +72,197 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
     @Autowired
     private SchedulerFactoryBean schedulerFactoryBean;
 
+    @Autowired(required = false)
+    private JobGroups jobGroups = new JobGroups();
+
+    @Autowired(required = false)
+    private CoalescedTriggers coalescedTriggers;
+    private volatile Boolean persistentJobStore;
+
+    private final JobIndex jobIndex = new JobIndex();
+    private volatile boolean jobIndexLoaded;
+
     @Override
     public void scheduleJob(CronSchedulableJob cronSchedulableJob) {
 
         log.info("Scheduling the job: " + cronSchedulableJob);
 
+        MotechEvent motechEvent = validCronJobEvent(cronSchedulableJob);
+        String externalId = (String) motechEvent.getParameters().get(JOB_ID_KEY);
+        String jobId = motechEvent.getSubject() + "-" + externalId;
+        JobGroup group = jobGroups.groupFor(jobId);
+        if (coalesces(group)) {
+            coalesce(jobId, group, motechEvent, cronSchedulableJob);
+            return;
+        }
+
+        JobDetail jobDetail = new JobDetail(jobId, group.getName(), MotechScheduledJob.class);
+        putMotechEventDataToJobDataMap(jobDetail.getJobDataMap(), motechEvent);
+
+        Trigger trigger = cronTrigger(jobId, group, cronSchedulableJob);
+
+        Scheduler scheduler = schedulerFactoryBean.getScheduler();
+        Trigger existingTrigger = null;
+        try {
+            existingTrigger = scheduler.getTrigger(jobId, groupOf(jobId));
+        } catch (SchedulerException e) {
+            String errorMessage = "Schedule or reschedule the job: " + jobId +
+                    ".\n  " + e.getMessage();
+            log.error(errorMessage, e);
+            throw new MotechSchedulerException(errorMessage);
+        }
+
+        if (existingTrigger != null) {
+            unscheduleJob( motechEvent.getSubject() , externalId);
+        }
+
+        scheduleJob(jobDetail, trigger);
+
+    }
+
+    @Override
+    public void scheduleJobs(Collection<CronSchedulableJob> cronSchedulableJobs) {
+
+        log.info("Scheduling " + cronSchedulableJobs.size() + " jobs");
+
+        List<JobDetail> jobDetails = new ArrayList<JobDetail>(cronSchedulableJobs.size());
+        List<Trigger> triggers = new ArrayList<Trigger>(cronSchedulableJobs.size());
+        for (CronSchedulableJob cronSchedulableJob : cronSchedulableJobs) {
+            MotechEvent motechEvent = validCronJobEvent(cronSchedulableJob);
+            String jobId = motechEvent.getSubject() + "-" + motechEvent.getParameters().get(JOB_ID_KEY);
+            JobGroup group = jobGroups.groupFor(jobId);
+            if (coalesces(group)) {
+                coalesce(jobId, group, motechEvent, cronSchedulableJob);
+                continue;
+            }
+
+            JobDetail jobDetail = new JobDetail(jobId, group.getName(), MotechScheduledJob.class);
+            putMotechEventDataToJobDataMap(jobDetail.getJobDataMap(), motechEvent);
+
+            jobDetails.add(jobDetail);
+            triggers.add(cronTrigger(jobId, group, cronSchedulableJob));
+        }
+
+        if (!jobDetails.isEmpty()) {
+            scheduleJobs(jobDetails, triggers);
+        }
+    }
+
+    /**
+     * Cron jobs are coalesced for groups that ask for it, unless the job store is persistent: the members of a
+     * {@link CoalescedTriggers} slot only live in memory.
+     */
+    private boolean coalesces(JobGroup group) {
+        return coalescedTriggers != null && group.isCoalesceCronJobs() && !persistentJobStore();
+    }
+
+    private boolean persistentJobStore() {
+        if (persistentJobStore == null) {
+            try {
+                persistentJobStore = schedulerFactoryBean.getScheduler().getMetaData().isJobStoreSupportsPersistence();
+            } catch (SchedulerException e) {
+                String errorMessage = "Can not get the scheduler meta data " + e.getMessage();
+                log.error(errorMessage, e);
+                throw new MotechSchedulerException(errorMessage);
+            }
+        }
+        return persistentJobStore;
+    }
+
+    private void coalesce(String jobId, JobGroup group, MotechEvent motechEvent, CronSchedulableJob cronSchedulableJob) {
+        CoalescedTriggers.Member member = new CoalescedTriggers.Member(jobId, motechEvent.getParameters(),
+                cronSchedulableJob.getStartTime(), cronSchedulableJob.getEndTime());
+        coalesce(group.getName(), motechEvent.getSubject(), cronSchedulableJob.getCronExpression(), member);
+    }
+
+    /**
+     * Adds the job to the slot for its subject and cron expression, scheduling the slot's trigger when it is the first
+     * job of the slot and unscheduling the trigger of the slot it leaves when it was the last one there.
+     */
+    private void coalesce(String groupName, String subject, String cronExpression, CoalescedTriggers.Member member) {
+        String jobId = member.getJobName();
+        Scheduler scheduler = schedulerFactoryBean.getScheduler();
+        try {
+            String previousGroup = jobIndex().groupOf(jobId);
+            if (previousGroup != null && !coalescedTriggers.contains(jobId)) {
+                scheduler.unscheduleJob(jobId, previousGroup);
+            }
+
+            synchronized (coalescedTriggers) {
+                String slotName = CoalescedTriggers.slotName(subject, cronExpression);
+                if (!coalescedTriggers.hasSlot(slotName)) {
+                    JobDetail jobDetail = new JobDetail(slotName, groupName, MotechScheduledJob.class);
+                    jobDetail.getJobDataMap().put(CoalescedTriggers.SLOT_KEY, slotName);
+                    scheduler.scheduleJob(jobDetail, slotTrigger(slotName, groupName, cronExpression));
+                }
+
+                unscheduleSlot(coalescedTriggers.add(groupName, subject, cronExpression, member));
+            }
+
+            index(jobIndex(), jobId, groupName, member.getParameters(),
+                  memberSchedule(jobId, groupName, cronExpression, member));
+        } catch (SchedulerException e) {
+            String errorMessage = "Can not schedule the job: " + jobId + " " + e.getMessage();
+            log.error(errorMessage, e);
+            throw new MotechSchedulerException(errorMessage);
+        }
+    }
+
+    private Trigger slotTrigger(String slotName, String groupName, String cronExpression) {
+        try {
+            CronTrigger trigger = new CronTrigger(slotName, groupName);
+            trigger.setCronExpression(CronExpressionCache.compile(cronExpression));
+            jobGroups.group(groupName).applyMisfirePolicy(trigger);
+            return trigger;
+        } catch (ParseException e) {
+            String errorMessage = "Can not schedule the job: " + slotName + "\n invalid Cron expression: " +
+                                                cronExpression;
+            log.error(errorMessage);
+            throw new MotechSchedulerException(errorMessage);
+        }
+    }
+
+    /**
+     * @return a trigger that is not scheduled, describing when the member of a slot fires
+     */
+    private Trigger memberSchedule(String jobId, String groupName, String cronExpression, CoalescedTriggers.Member member) {
+        try {
+            CronTrigger schedule = new CronTrigger(jobId, groupName);
+            schedule.setCronExpression(CronExpressionCache.compile(cronExpression));
+            if (member.getStartTime() != null) {
+                schedule.setStartTime(member.getStartTime());
+            }
+            schedule.setEndTime(member.getEndTime());
+            return schedule;
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param slot a slot without members, may be null
+     */
+    private void unscheduleSlot(CoalescedTriggers.Slot slot) throws SchedulerException {
+        if (slot != null) {
+            schedulerFactoryBean.getScheduler().unscheduleJob(slot.getName(), slot.getGroup());
+        }
+    }
+
+    /**
+     * @return whether the job was a member of a {@link CoalescedTriggers} slot
+     */
+    private boolean uncoalesce(String jobId) throws SchedulerException {
+        if (coalescedTriggers == null || !coalescedTriggers.contains(jobId)) {
+            return false;
+        }
+
+        synchronized (coalescedTriggers) {
+            unscheduleSlot(coalescedTriggers.remove(jobId));
+        }
+        return true;
+    }
+
+    private MotechEvent validCronJobEvent(CronSchedulableJob cronSchedulableJob) {
         if (cronSchedulableJob == null ) {
 
             String errorMessage = "SchedulableJob can not be null";
@@ -79,16 +276,14 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
             log.error(errorMessage);
             throw new IllegalArgumentException(errorMessage);
         }
+        return motechEvent;
+    }
 
-        String externalId = (String) motechEvent.getParameters().get(JOB_ID_KEY);
-        String jobId = motechEvent.getSubject() + "-" + externalId;
-        JobDetail jobDetail = new JobDetail(jobId, JOB_GROUP_NAME, MotechScheduledJob.class);
-        putMotechEventDataToJobDataMap(jobDetail.getJobDataMap(), motechEvent);
-
-        Trigger trigger;
-
+    private Trigger cronTrigger(String jobId, JobGroup group, CronSchedulableJob cronSchedulableJob) {
         try {
-            trigger = new CronTrigger(jobId, JOB_GROUP_NAME, cronSchedulableJob.getCronExpression());
+            CronTrigger trigger = new CronTrigger(jobId, group.getName());
+            trigger.setCronExpression(CronExpressionCache.compile(cronSchedulableJob.getCronExpression()));
+            group.applyMisfirePolicy(trigger);
             Date startTime = cronSchedulableJob.getStartTime();
             Date endTime = cronSchedulableJob.getEndTime();
 			if(startTime!=null) {
@@ -97,30 +292,13 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
 			if(endTime!=null) {
 				trigger.setEndTime(endTime);
 			}
+            return trigger;
         } catch (ParseException e) {
             String errorMessage = "Can not schedule the job: " + jobId + "\n invalid Cron expression: " +
                                                 cronSchedulableJob.getCronExpression();
             log.error(errorMessage);
             throw new MotechSchedulerException(errorMessage);
         }
-
-        Scheduler scheduler = schedulerFactoryBean.getScheduler();
-        Trigger existingTrigger = null;
-        try {
-            existingTrigger = scheduler.getTrigger(jobId, JOB_GROUP_NAME);
-        } catch (SchedulerException e) {
-            String errorMessage = "Schedule or reschedule the job: " + jobId +
-                    ".\n  " + e.getMessage();
-            log.error(errorMessage, e);
-            throw new MotechSchedulerException(errorMessage);
-        }
-
-        if (existingTrigger != null) {
-            unscheduleJob( motechEvent.getSubject() , externalId);
-        }
-
-        scheduleJob(jobDetail, trigger);
-
     }
 
 
@@ -139,8 +317,16 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         String jobId =  motechEvent.getSubject() + "-" + (String)motechEvent.getParameters().get(JOB_ID_KEY);
         Trigger trigger;
 
+        CoalescedTriggers.Slot slot = coalescedTriggers == null ? null : coalescedTriggers.slotOf(jobId);
+        CoalescedTriggers.Member member = coalescedTriggers == null ? null : coalescedTriggers.member(jobId);
+        if (slot != null && member != null) {
+            coalesce(slot.getGroup(), slot.getSubject(), slot.getCronExpression(), new CoalescedTriggers.Member(jobId,
+                    motechEvent.getParameters(), member.getStartTime(), member.getEndTime()));
+            return;
+        }
+
         try {
-            trigger =  scheduler.getTrigger(jobId, JOB_GROUP_NAME);
+            trigger =  scheduler.getTrigger(jobId, groupOf(jobId));
 
             if (trigger == null) {
                 String errorMessage = "Can not update the job: " + jobId + " The job does not exist (not scheduled)";
@@ -156,7 +342,7 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         }
 
         try {
-            scheduler.deleteJob(jobId, JOB_GROUP_NAME);
+            scheduler.deleteJob(jobId, trigger.getGroup());
         } catch (SchedulerException e) {
             String errorMessage = "Can not update the job: " + jobId +
                     ".\n Can not delete old instance of the job " + e.getMessage();
@@ -164,7 +350,7 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
             throw new MotechSchedulerException(errorMessage);
         }
 
-        JobDetail jobDetail = new JobDetail(jobId, JOB_GROUP_NAME, MotechScheduledJob.class);
+        JobDetail jobDetail = new JobDetail(jobId, trigger.getGroup(), MotechScheduledJob.class);
         putMotechEventDataToJobDataMap(jobDetail.getJobDataMap(), motechEvent);
 
         scheduleJob(jobDetail, trigger);
@@ -188,12 +374,19 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
             throw new IllegalArgumentException(errorMessage);
         }
 
+        CoalescedTriggers.Slot slot = coalescedTriggers == null ? null : coalescedTriggers.slotOf(jobId);
+        CoalescedTriggers.Member member = coalescedTriggers == null ? null : coalescedTriggers.member(jobId);
+        if (slot != null && member != null) {
+            coalesce(slot.getGroup(), slot.getSubject(), cronExpression, member);
+            return;
+        }
+
         Scheduler scheduler = schedulerFactoryBean.getScheduler();
 
         CronTrigger trigger;
 
         try {
-            trigger = (CronTrigger) scheduler.getTrigger(jobId, JOB_GROUP_NAME);
+            trigger = (CronTrigger) scheduler.getTrigger(jobId, groupOf(jobId));
 
             if (trigger == null) {
                 String errorMessage = "Can not reschedule the job: " + jobId + " The job does not exist (not scheduled)";
@@ -214,7 +407,7 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         }
 
         try {
-            trigger.setCronExpression(cronExpression);
+            trigger.setCronExpression(CronExpressionCache.compile(cronExpression));
         } catch (ParseException e) {
             String errorMessage = "Can not reschedule the job: " + jobId + " Invalid Cron expression: " +
                                                 cronExpression;
@@ -223,7 +416,8 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         }
 
         try {
-            schedulerFactoryBean.getScheduler().rescheduleJob(jobId, JOB_GROUP_NAME, trigger);
+            schedulerFactoryBean.getScheduler().rescheduleJob(jobId, trigger.getGroup(), trigger);
+            jobIndex().setSchedule(jobId, trigger);
         } catch (SchedulerException e) {
             String errorMessage = "Can not reschedule the job: " + jobId + " " + e.getMessage();
             log.error(errorMessage, e);
@@ -265,7 +459,7 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         }
 
         Date jobEndDate = repeatingSchedulableJob.getEndTime();
-        if (jobEndDate == null ) {
+        if (jobEndDate == null && !repeatingSchedulableJob.hasDailyWindow()) {
             String errorMessage = "Invalid RepeatingSchedulableJob. The job end date can not be null";
             log.error(errorMessage);
              throw new IllegalArgumentException(errorMessage);
@@ -284,13 +478,21 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         }
 
         String jobId =  motechEvent.getSubject() + "-" + (String)motechEvent.getParameters().get(JOB_ID_KEY) + REPEAT_JOB_SUFFIX;
-        JobDetail jobDetail = new JobDetail(jobId, JOB_GROUP_NAME, MotechScheduledJob.class);
+        JobGroup group = jobGroups.groupFor(jobId);
+        JobDetail jobDetail = new JobDetail(jobId, group.getName(), MotechScheduledJob.class);
         putMotechEventDataToJobDataMap(jobDetail.getJobDataMap(), motechEvent);
 
         Trigger trigger;
-        trigger = new SimpleTrigger(jobId, JOB_GROUP_NAME, jobStartDate, jobEndDate,
-        							jobRepeatCount,
-        							jobRepeatInterval);
+        if (repeatingSchedulableJob.hasDailyWindow()) {
+            trigger = new DailyWindowTrigger(jobId, group.getName(), jobStartDate, jobEndDate, jobRepeatInterval,
+                                             repeatingSchedulableJob.getDailyWindowStart(),
+                                             repeatingSchedulableJob.getDailyWindowEnd());
+        } else {
+            trigger = new SimpleTrigger(jobId, group.getName(), jobStartDate, jobEndDate,
+                                        jobRepeatCount,
+                                        jobRepeatInterval);
+        }
+        group.applyMisfirePolicy(trigger);
 
         scheduleJob(jobDetail, trigger);
     }
@@ -300,6 +502,58 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
 
         log.info("Scheduling the Job: " + schedulableJob);
 
+        MotechEvent motechEvent = validRunOnceJobEvent(schedulableJob, new Date());
+
+        String jobId =  motechEvent.getSubject() + "-" + (String)motechEvent.getParameters().get(JOB_ID_KEY);
+        JobGroup group = jobGroups.groupFor(jobId);
+        JobDetail jobDetail = new JobDetail(jobId, group.getName(), MotechScheduledJob.class);
+        putMotechEventDataToJobDataMap(jobDetail.getJobDataMap(), motechEvent);
+
+        Trigger trigger = new SimpleTrigger(jobId, group.getName(), schedulableJob.getStartDate());
+        group.applyMisfirePolicy(trigger);
+
+        scheduleJob(jobDetail, trigger);
+
+    }
+
+    /**
+     * Jobs scheduleRunOnceJob would reject, such as jobs due in the past, are logged and skipped; the others are
+     * still scheduled.
+     */
+    @Override
+    public void scheduleRunOnceJobs(Collection<RunOnceSchedulableJob> schedulableJobs) {
+
+        log.info("Scheduling " + schedulableJobs.size() + " run once jobs");
+
+        Date currentDate = new Date();
+        List<JobDetail> jobDetails = new ArrayList<JobDetail>(schedulableJobs.size());
+        List<Trigger> triggers = new ArrayList<Trigger>(schedulableJobs.size());
+        for (RunOnceSchedulableJob schedulableJob : schedulableJobs) {
+            MotechEvent motechEvent;
+            try {
+                motechEvent = validRunOnceJobEvent(schedulableJob, currentDate);
+            } catch (IllegalArgumentException e) {
+                // logged by validRunOnceJobEvent
+                continue;
+            }
+            String jobId = motechEvent.getSubject() + "-" + motechEvent.getParameters().get(JOB_ID_KEY);
+            JobGroup group = jobGroups.groupFor(jobId);
+            JobDetail jobDetail = new JobDetail(jobId, group.getName(), MotechScheduledJob.class);
+            putMotechEventDataToJobDataMap(jobDetail.getJobDataMap(), motechEvent);
+
+            Trigger trigger = new SimpleTrigger(jobId, group.getName(), schedulableJob.getStartDate());
+            group.applyMisfirePolicy(trigger);
+
+            jobDetails.add(jobDetail);
+            triggers.add(trigger);
+        }
+
+        if (!jobDetails.isEmpty()) {
+            scheduleJobs(jobDetails, triggers);
+        }
+    }
+
+    private MotechEvent validRunOnceJobEvent(RunOnceSchedulableJob schedulableJob, Date currentDate) {
         if (schedulableJob == null ) {
             String errorMessage = "SchedulableJob can not be null";
             log.error(errorMessage);
@@ -310,32 +564,25 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         if (motechEvent == null) {
             String errorMessage = "Invalid SchedulableJob. MotechEvent of the SchedulableJob can not be null";
             log.error(errorMessage);
-            throw new IllegalArgumentException();
+            throw new IllegalArgumentException(errorMessage);
         }
 
+        Object jobId = motechEvent.getParameters().get(JOB_ID_KEY);
         Date jobStartDate = schedulableJob.getStartDate();
         if (jobStartDate == null ) {
-            String errorMessage = "Invalid RunOnceSchedulableJob. The job start date can not be null";
+            String errorMessage = "Invalid RunOnceSchedulableJob. The job start date can not be null. JobID: " + jobId;
             log.error(errorMessage);
              throw new IllegalArgumentException(errorMessage);
         }
-        Date currentDate = new Date();
         if (jobStartDate.before(currentDate) ) {
             String errorMessage = "Invalid RunOnceSchedulableJob. The job start date can not be in the past. \n" +
+                                                " JobID: " + jobId +
                                                 " Job start date: " + jobStartDate.toString() +
                                                 " Attempted to schedule at:" + currentDate.toString();
             log.error(errorMessage);
-             throw new IllegalArgumentException();
+             throw new IllegalArgumentException(errorMessage);
         }
-
-        String jobId =  motechEvent.getSubject() + "-" + (String)motechEvent.getParameters().get(JOB_ID_KEY);
-        JobDetail jobDetail = new JobDetail(jobId, JOB_GROUP_NAME, MotechScheduledJob.class);
-        putMotechEventDataToJobDataMap(jobDetail.getJobDataMap(), motechEvent);
-
-        Trigger trigger = new SimpleTrigger(jobId, JOB_GROUP_NAME, jobStartDate);
-
-        scheduleJob(jobDetail, trigger);
-
+        return motechEvent;
     }
 
     @Override
@@ -364,7 +611,10 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         }
 
         try {
-            schedulerFactoryBean.getScheduler().unscheduleJob(jobId, JOB_GROUP_NAME);
+            if (!uncoalesce(jobId)) {
+                schedulerFactoryBean.getScheduler().unscheduleJob(jobId, groupOf(jobId));
+            }
+            jobIndex().remove(jobId);
         } catch (SchedulerException e) {
             String errorMessage = "Can not unschedule the job: " + jobId + " " + e.getMessage();
             log.error(errorMessage, e);
@@ -373,29 +623,115 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
     }
 
     @Override
-    public void unscheduleAllJobs(String jobIdPrefix) {
+    public void unscheduleJobs(Collection<String> jobIds) {
 
-        log.info("Unscheduling the Jobs given jobIdPrefix: " + jobIdPrefix);
+        log.info("Unscheduling " + jobIds.size() + " jobs");
+
+        List<String> triggerNames = new ArrayList<String>(jobIds);
+        if (triggerNames.contains(null)) {
+            String errorMessage = "Scheduled Job ID can not be null";
+            log.error(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
 
         try {
-            String[] triggerNames = schedulerFactoryBean.getScheduler().getTriggerNames(JOB_GROUP_NAME);
-            for(String triggerName : triggerNames) {
-                if (StringUtils.isNotEmpty(jobIdPrefix) && triggerName.contains(jobIdPrefix)) {
-                    unscheduleJob(triggerName);
+            Map<String, List<String>> triggerNamesByGroup = new HashMap<String, List<String>>();
+            for (String triggerName : triggerNames) {
+                if (uncoalesce(triggerName)) {
+                    continue;
+                }
+
+                String group = groupOf(triggerName);
+                List<String> groupTriggerNames = triggerNamesByGroup.get(group);
+                if (groupTriggerNames == null) {
+                    groupTriggerNames = new ArrayList<String>();
+                    triggerNamesByGroup.put(group, groupTriggerNames);
                 }
+                groupTriggerNames.add(triggerName);
             }
 
+            removeTriggers(triggerNamesByGroup);
+
+            JobIndex index = jobIndex();
+            for (String triggerName : triggerNames) {
+                index.remove(triggerName);
+            }
         } catch (SchedulerException e) {
-            String errorMessage = "Can not unschedule jobs given jobIdPrefix: " + jobIdPrefix + " " + e.getMessage();
+            String errorMessage = "Can not unschedule " + triggerNames.size() + " jobs " + e.getMessage();
             log.error(errorMessage, e);
             throw new MotechSchedulerException(errorMessage);
         }
     }
 
+    /**
+     * Unschedules the jobs whose job ID, or full name subject-jobID, starts with the prefix. Looked up in the
+     * {@link JobIndex}, so with a RAMJobStore the cost depends on the number of matching jobs, not on all scheduled
+     * jobs. A persistent job store can be shared with other nodes, so the jobs they scheduled are indexed first.
+     */
+    @Override
+    public void unscheduleAllJobs(String jobIdPrefix) {
+
+        log.info("Unscheduling the Jobs given jobIdPrefix: " + jobIdPrefix);
+
+        if (StringUtils.isEmpty(jobIdPrefix)) {
+            return;
+        }
+
+        List<String> triggerNames = storedJobIndex().triggersStartingWith(jobIdPrefix);
+        if (!triggerNames.isEmpty()) {
+            unscheduleJobs(triggerNames);
+        }
+    }
+
+    @Override
+    public void unscheduleAllJobs(Collection<String> jobIdPrefixes) {
+
+        log.info("Unscheduling the Jobs given " + jobIdPrefixes.size() + " jobIdPrefixes");
+
+        JobIndex index = storedJobIndex();
+        Set<String> triggerNames = new LinkedHashSet<String>();
+        for (String jobIdPrefix : jobIdPrefixes) {
+            if (!StringUtils.isEmpty(jobIdPrefix)) {
+                triggerNames.addAll(index.triggersStartingWith(jobIdPrefix));
+            }
+        }
+        if (!triggerNames.isEmpty()) {
+            unscheduleJobs(triggerNames);
+        }
+    }
+
+    @Override
+    public void unscheduleJobsWithTag(String tag) {
+
+        log.info("Unscheduling the Jobs tagged: " + tag);
+
+        if (tag == null) {
+            String errorMessage = "Tag can not be null";
+            log.error(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        List<String> triggerNames = storedJobIndex().triggersTagged(tag);
+        if (!triggerNames.isEmpty()) {
+            unscheduleJobs(triggerNames);
+        }
+    }
+
+    /**
+     * Schedules the job, replacing the job of the same name if there is one, in its group or in the group it was
+     * scheduled in before.
+     */
     private void scheduleJob(JobDetail jobDetail, Trigger trigger) {
 
          try {
-            schedulerFactoryBean.getScheduler().scheduleJob(jobDetail, trigger);
+            Scheduler scheduler = schedulerFactoryBean.getScheduler();
+            String previousGroup = jobIndex().groupOf(jobDetail.getName());
+            if (previousGroup != null && !previousGroup.equals(jobDetail.getGroup())) {
+                scheduler.unscheduleJob(jobDetail.getName(), previousGroup);
+            }
+            scheduler.unscheduleJob(jobDetail.getName(), jobDetail.getGroup());
+            scheduler.scheduleJob(jobDetail, trigger);
+            index(jobIndex(), jobDetail, trigger);
         } catch (SchedulerException e) {
              String errorMessage = "Can not schedule the job:\n " +
                                                 jobDetail.toString() +"\n"+ trigger.toString() +
@@ -405,6 +741,165 @@ public class MotechSchedulerServiceImpl implements MotechSchedulerService {
         }
     }
 
+    /**
+     * Schedules the jobs in one transaction of the job store if it is a {@link BatchingJobStoreTX}, one by one
+     * otherwise. Jobs that are already scheduled are replaced.
+     */
+    private void scheduleJobs(List<JobDetail> jobDetails, List<Trigger> triggers) {
+        Scheduler scheduler = schedulerFactoryBean.getScheduler();
+        JobIndex index = jobIndex();
+        try {
+            Map<String, List<String>> movedTriggerNames = new HashMap<String, List<String>>();
+            for (JobDetail jobDetail : jobDetails) {
+                String previousGroup = index.groupOf(jobDetail.getName());
+                if (previousGroup != null && !previousGroup.equals(jobDetail.getGroup())) {
+                    List<String> groupTriggerNames = movedTriggerNames.get(previousGroup);
+                    if (groupTriggerNames == null) {
+                        groupTriggerNames = new ArrayList<String>();
+                        movedTriggerNames.put(previousGroup, groupTriggerNames);
+                    }
+                    groupTriggerNames.add(jobDetail.getName());
+                }
+            }
+            removeTriggers(movedTriggerNames);
+
+            BatchingJobStoreTX jobStore = BatchingJobStoreTX.forScheduler(scheduler.getSchedulerName());
+            if (jobStore != null) {
+                jobStore.storeJobsAndTriggers(jobDetails, triggers, true);
+            } else {
+                for (int i = 0; i < jobDetails.size(); i++) {
+                    scheduler.unscheduleJob(jobDetails.get(i).getName(), jobDetails.get(i).getGroup());
+                    scheduler.scheduleJob(jobDetails.get(i), triggers.get(i));
+                }
+            }
+
+            for (int i = 0; i < jobDetails.size(); i++) {
+                index(index, jobDetails.get(i), triggers.get(i));
+            }
+        } catch (SchedulerException e) {
+            String errorMessage = "Can not schedule " + jobDetails.size() + " jobs " + e.getMessage();
+            log.error(errorMessage, e);
+            throw new MotechSchedulerException(errorMessage);
+        }
+    }
+
+    private void removeTriggers(Map<String, List<String>> triggerNamesByGroup) throws SchedulerException {
+        Scheduler scheduler = schedulerFactoryBean.getScheduler();
+        BatchingJobStoreTX jobStore = BatchingJobStoreTX.forScheduler(scheduler.getSchedulerName());
+        for (Map.Entry<String, List<String>> group : triggerNamesByGroup.entrySet()) {
+            if (jobStore != null) {
+                jobStore.removeTriggers(group.getValue(), group.getKey());
+            } else {
+                for (String triggerName : group.getValue()) {
+                    scheduler.unscheduleJob(triggerName, group.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the group the job was scheduled in, or the group it would be scheduled in if it is not scheduled
+     */
+    private String groupOf(String jobId) {
+        String group = jobIndex().groupOf(jobId);
+        return group == null ? jobGroups.groupFor(jobId).getName() : group;
+    }
+
+    /**
+     * @return the index of the scheduled jobs, for {@link SchedulerQueryService}
+     */
+    public JobIndex getJobIndex() {
+        return jobIndex();
+    }
+
+    /**
+     * The index is filled from the job store the first time it is needed, which only finds jobs when the store is
+     * persistent. Jobs are always named after their trigger.
+     */
+    private JobIndex jobIndex() {
+        if (jobIndexLoaded) {
+            return jobIndex;
+        }
+
+        synchronized (jobIndex) {
+            if (!jobIndexLoaded) {
+                Scheduler scheduler = schedulerFactoryBean.getScheduler();
+                try {
+                    scheduler.addSchedulerListener(jobIndex);
+                    if (coalescedTriggers != null) {
+                        coalescedTriggers.setJobIndex(jobIndex);
+                        coalescedTriggers.setScheduler(scheduler);
+                    }
+                    indexStoredJobs(scheduler);
+                } catch (SchedulerException e) {
+                    String errorMessage = "Can not load the scheduled jobs " + e.getMessage();
+                    log.error(errorMessage, e);
+                    throw new MotechSchedulerException(errorMessage);
+                }
+                log.info("Indexed " + jobIndex.size() + " scheduled jobs");
+                jobIndexLoaded = true;
+            }
+        }
+        return jobIndex;
+    }
+
+    /**
+     * The index is only told about the jobs scheduled through this scheduler, so when the job store is persistent,
+     * and may be shared with other nodes, the jobs in the store that are not in the index yet are added to it first.
+     * This reads every trigger name in the store, as unscheduling by prefix did before the index.
+     */
+    private JobIndex storedJobIndex() {
+        JobIndex index = jobIndex();
+        if (!persistentJobStore()) {
+            return index;
+        }
+
+        synchronized (index) {
+            try {
+                indexStoredJobs(schedulerFactoryBean.getScheduler());
+            } catch (SchedulerException e) {
+                String errorMessage = "Can not load the scheduled jobs " + e.getMessage();
+                log.error(errorMessage, e);
+                throw new MotechSchedulerException(errorMessage);
+            }
+        }
+        return index;
+    }
+
+    private void indexStoredJobs(Scheduler scheduler) throws SchedulerException {
+        for (String group : scheduler.getTriggerGroupNames()) {
+            for (String triggerName : scheduler.getTriggerNames(group)) {
+                if (group.equals(jobIndex.groupOf(triggerName))) {
+                    continue;
+                }
+                JobDetail jobDetail = scheduler.getJobDetail(triggerName, group);
+                if (jobDetail != null && !jobDetail.getJobDataMap().containsKey(CoalescedTriggers.SLOT_KEY)) {
+                    index(jobIndex, jobDetail, scheduler.getTrigger(triggerName, group));
+                }
+            }
+        }
+    }
+
+    private void index(JobIndex index, JobDetail jobDetail, Trigger schedule) {
+        index(index, jobDetail.getName(), jobDetail.getGroup(), jobDetail.getJobDataMap(), schedule);
+    }
+
+    private void index(JobIndex index, String jobName, String group, Map<?, ?> jobData, Trigger schedule) {
+        Object jobId = jobData.get(JOB_ID_KEY);
+        Object tags = jobData.get(JOB_TAGS_KEY);
+
+        List<String> tagList = new ArrayList<String>();
+        if (tags instanceof Collection) {
+            for (Object tag : (Collection<?>) tags) {
+                tagList.add(String.valueOf(tag));
+            }
+        } else if (tags != null) {
+            tagList.add(String.valueOf(tags));
+        }
+
+        index.add(jobName, group, jobId == null ? null : String.valueOf(jobId), tagList, schedule);
+    }
+
     private void putMotechEventDataToJobDataMap(JobDataMap jobDataMap, MotechEvent motechEvent) {
         jobDataMap.putAll(motechEvent.getParameters());
         jobDataMap.put(MotechEvent.EVENT_TYPE_KEY_NAME, motechEvent.getSubject());
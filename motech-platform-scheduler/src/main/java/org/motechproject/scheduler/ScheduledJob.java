@@ -0,0 +1,82 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import java.util.Date;
+
+/**
+ * A scheduled job as {@link SchedulerQueryService} reports it.
+ */
+public class ScheduledJob {
+    private final String name;
+    private final String group;
+    private final String jobId;
+    private final Date nextFireTime;
+
+    public ScheduledJob(String name, String group, String jobId, Date nextFireTime) {
+        this.name = name;
+        this.group = group;
+        this.jobId = jobId;
+        this.nextFireTime = nextFireTime;
+    }
+
+    /**
+     * @return the name of the job and its trigger, subject-jobId
+     */
+    public String getName() {
+        return name;
+    }
+
+    public String getGroup() {
+        return group;
+    }
+
+    /**
+     * @return the JobID (external id) the job was scheduled with
+     */
+    public String getJobId() {
+        return jobId;
+    }
+
+    /**
+     * @return when the job fires next, null if it will not fire again or its schedule is unknown
+     */
+    public Date getNextFireTime() {
+        return nextFireTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ScheduledJob [name=" + name + ", group=" + group + ", jobId=" + jobId + ", nextFireTime=" +
+                nextFireTime + "]";
+    }
+}
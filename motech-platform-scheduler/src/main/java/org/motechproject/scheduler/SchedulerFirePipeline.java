@@ -0,0 +1,174 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import org.motechproject.gateway.OutboundEventGateway;
+import org.motechproject.model.MotechEvent;
+import org.quartz.JobDetail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a fired job into its MotechEvent, or the trigger of a {@link CoalescedTriggers} slot into the events of its
+ * members, and hands them to the job's {@link JobGroup} for sending. The pipeline is wired once and put in the Quartz
+ * scheduler context, so a fire costs no bean lookups.
+ *
+ * Events go to the schedulerFireEventGateway, one synchronous JMS send each, unless a publisher is set. With the
+ * batchingOutboundEventGateway as publisher a fire only queues its event, and a burst of fires reaches the broker in a
+ * few transacted batches; the trade-off is that queued events are lost if the process dies before they are published.
+ */
+public class SchedulerFirePipeline {
+
+    public static final String SCHEDULER_CONTEXT_KEY = "schedulerFirePipeline";
+
+    static final String JOB_GROUPS_BEAN = "schedulerJobGroups";
+    static final String GATEWAY_BEAN = "schedulerFireEventGateway";
+    static final String COALESCED_TRIGGERS_BEAN = "schedulerCoalescedTriggers";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private SchedulerFireEventGateway schedulerFireEventGateway;
+    private OutboundEventGateway publisher;
+    private JobGroups jobGroups = new JobGroups();
+    private CoalescedTriggers coalescedTriggers;
+
+    public SchedulerFirePipeline() {
+    }
+
+    public SchedulerFirePipeline(SchedulerFireEventGateway schedulerFireEventGateway, JobGroups jobGroups) {
+        this.schedulerFireEventGateway = schedulerFireEventGateway;
+        setJobGroups(jobGroups);
+    }
+
+    /**
+     * Wires a pipeline from the beans of the context, for schedulers whose context does not hold one
+     */
+    public static SchedulerFirePipeline fromApplicationContext(ApplicationContext applicationContext) {
+        JobGroups jobGroups = applicationContext.containsBean(JOB_GROUPS_BEAN) ?
+                (JobGroups) applicationContext.getBean(JOB_GROUPS_BEAN) : null;
+        SchedulerFirePipeline pipeline = new SchedulerFirePipeline(
+                (SchedulerFireEventGateway) applicationContext.getBean(GATEWAY_BEAN), jobGroups);
+        if (applicationContext.containsBean(COALESCED_TRIGGERS_BEAN)) {
+            pipeline.setCoalescedTriggers((CoalescedTriggers) applicationContext.getBean(COALESCED_TRIGGERS_BEAN));
+        }
+        return pipeline;
+    }
+
+    /**
+     * The job's data map becomes the event's parameters as is. Quartz hands every execution its own copy of the job,
+     * so there is no need to copy it again.
+     */
+    @SuppressWarnings("unchecked")
+    public void fire(JobDetail jobDetail, Date scheduledFireTime) {
+        Map<String, Object> params = jobDetail.getJobDataMap().getWrappedMap();
+
+        String slotName = (String) params.get(CoalescedTriggers.SLOT_KEY);
+        if (slotName != null) {
+            fireSlot(jobDetail.getGroup(), slotName, scheduledFireTime);
+            return;
+        }
+
+        String eventType = (String) params.remove(MotechEvent.EVENT_TYPE_KEY_NAME);
+        params.put("JobID", jobDetail.getName());
+
+        fire(jobDetail.getGroup(), new MotechEvent(eventType, params), scheduledFireTime);
+    }
+
+    /**
+     * Sends the event of every member of a {@link CoalescedTriggers} slot that is due
+     */
+    private void fireSlot(String group, String slotName, Date scheduledFireTime) {
+        if (coalescedTriggers == null) {
+            log.error("Can not fire " + slotName + ", there are no coalesced triggers");
+            return;
+        }
+
+        List<MotechEvent> events = coalescedTriggers.fire(slotName,
+                                                          scheduledFireTime == null ? new Date() : scheduledFireTime);
+        if (log.isDebugEnabled()) {
+            log.debug("Sending " + events.size() + " Motech Event Messages of " + slotName);
+        }
+
+        for (MotechEvent motechEvent : events) {
+            fire(group, motechEvent, scheduledFireTime);
+        }
+    }
+
+    private void fire(String group, final MotechEvent motechEvent, Date scheduledFireTime) {
+        if (log.isDebugEnabled()) {
+            log.debug("Sending Motech Event Message: " + motechEvent);
+        }
+
+        jobGroups.fire(group, scheduledFireTime, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    send(motechEvent);
+                } catch (Exception e) {
+                    log.error("Job execution failed.", e);
+                }
+            }
+        });
+    }
+
+    private void send(MotechEvent motechEvent) {
+        if (publisher != null) {
+            publisher.sendEventMessage(motechEvent);
+        } else {
+            schedulerFireEventGateway.sendEventMessage(motechEvent);
+        }
+    }
+
+    public void setSchedulerFireEventGateway(SchedulerFireEventGateway schedulerFireEventGateway) {
+        this.schedulerFireEventGateway = schedulerFireEventGateway;
+    }
+
+    /**
+     * @param publisher sends the fired events instead of the schedulerFireEventGateway, may be null
+     */
+    public void setPublisher(OutboundEventGateway publisher) {
+        this.publisher = publisher;
+    }
+
+    public void setCoalescedTriggers(CoalescedTriggers coalescedTriggers) {
+        this.coalescedTriggers = coalescedTriggers;
+    }
+
+    public void setJobGroups(JobGroups jobGroups) {
+        this.jobGroups = jobGroups == null ? new JobGroups() : jobGroups;
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves the {@link SchedulerQueryService} as JSON, bound to the loopback interface by default:
+ *
+ * /scheduler/jobs?subject=s, ?externalId=id, ?prefix=p or ?from=t&amp;to=t, each with optional offset and limit
+ * /scheduler/fires?from=t&amp;to=t the number of fires of every job group in the window
+ * /scheduler/groups the number of jobs of every job group
+ *
+ * Times are ISO-8601, e.g. 2011-10-17T08:00. Like MetricsScrapeServer it uses the HTTP server that ships with the JDK,
+ * and failing to bind the port is logged and does not stop the application.
+ *
+ * The endpoint does not authenticate its callers, so it is off unless enabled; applicationPlatformScheduler.xml
+ * enables it when the system property motech.scheduler.query.server.enabled is true.
+ */
+public class SchedulerQueryServer {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    static final String PATH = "/scheduler";
+    static final int DEFAULT_LIMIT = 100;
+    static final int MAX_LIMIT = 10000;
+
+    private SchedulerQueryService schedulerQueryService;
+    private String host = "127.0.0.1";
+    private int port = 9103;
+    private boolean enabled;
+
+    private HttpServer server;
+
+    public SchedulerQueryServer() {
+    }
+
+    public SchedulerQueryServer(SchedulerQueryService schedulerQueryService) {
+        this.schedulerQueryService = schedulerQueryService;
+    }
+
+    public synchronized void start() {
+        if (server != null || !enabled) {
+            return;
+        }
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        } catch (IOException e) {
+            log.error(String.format("Unable to serve scheduler queries on %s:%d", host, port), e);
+            return;
+        }
+
+        server.createContext(PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                int status = 200;
+                String body;
+                try {
+                    body = respond(exchange.getRequestURI().getPath(), parameters(exchange.getRequestURI().getRawQuery()));
+                    if (body == null) {
+                        status = 404;
+                        body = error("Unknown path " + exchange.getRequestURI().getPath());
+                    }
+                } catch (IllegalArgumentException e) {
+                    status = 400;
+                    body = error(e.getMessage());
+                }
+
+                byte[] bytes = body.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(status, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                try {
+                    out.write(bytes);
+                } finally {
+                    out.close();
+                }
+            }
+        });
+        server.start();
+
+        log.info(String.format("Serving scheduler queries on http://%s:%d%s", host, getPort(), PATH));
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * @return the JSON answer to the query, null if the path is unknown
+     */
+    String respond(String path, Map<String, String> parameters) {
+        if (path.equals(PATH + "/jobs")) {
+            return jobs(parameters);
+        }
+        if (path.equals(PATH + "/fires")) {
+            return counts(schedulerQueryService.countFiresByGroup(date(parameters, "from"), date(parameters, "to")));
+        }
+        if (path.equals(PATH + "/groups")) {
+            return counts(schedulerQueryService.countByGroup());
+        }
+        return null;
+    }
+
+    private String jobs(Map<String, String> parameters) {
+        int offset = number(parameters, "offset", 0);
+        int limit = Math.min(number(parameters, "limit", DEFAULT_LIMIT), MAX_LIMIT);
+
+        int total;
+        List<ScheduledJob> jobs;
+        if (parameters.containsKey("subject")) {
+            String subject = parameters.get("subject");
+            total = schedulerQueryService.countBySubject(subject);
+            jobs = schedulerQueryService.findBySubject(subject, offset, limit);
+        } else if (parameters.containsKey("externalId")) {
+            String externalId = parameters.get("externalId");
+            total = schedulerQueryService.countByExternalId(externalId);
+            jobs = schedulerQueryService.findByExternalId(externalId, offset, limit);
+        } else if (parameters.containsKey("prefix")) {
+            String prefix = parameters.get("prefix");
+            total = schedulerQueryService.countByPrefix(prefix);
+            jobs = schedulerQueryService.findByPrefix(prefix, offset, limit);
+        } else if (parameters.containsKey("from") || parameters.containsKey("to")) {
+            Date from = date(parameters, "from");
+            Date to = date(parameters, "to");
+            total = -1;
+            jobs = schedulerQueryService.findFiringBetween(from, to, offset, limit);
+        } else {
+            total = schedulerQueryService.count();
+            jobs = schedulerQueryService.findByPrefix("", offset, limit);
+        }
+
+        StringBuilder json = new StringBuilder("{");
+        if (total >= 0) {
+            json.append("\"total\":").append(total).append(',');
+        }
+        json.append("\"offset\":").append(offset).append(",\"jobs\":[");
+        for (int i = 0; i < jobs.size(); i++) {
+            ScheduledJob job = jobs.get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"name\":");
+            string(json, job.getName());
+            json.append(",\"group\":");
+            string(json, job.getGroup());
+            json.append(",\"jobId\":");
+            string(json, job.getJobId());
+            json.append(",\"nextFireTime\":");
+            string(json, job.getNextFireTime() == null ? null : new DateTime(job.getNextFireTime()).toString());
+            json.append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String counts(Map<String, Integer> counts) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            string(json, count.getKey());
+            json.append(':').append(count.getValue());
+        }
+        return json.append('}').toString();
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        string(json, message);
+        return json.append('}').toString();
+    }
+
+    private static void string(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    private static Date date(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return new DateTime(value).toDate();
+    }
+
+    private static int number(Map<String, String> parameters, String name, int defaultValue) {
+        String value = parameters.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Parameter " + name + " is not a number: " + value);
+        }
+    }
+
+    static Map<String, String> parameters(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<String, String>();
+        if (query == null) {
+            return parameters;
+        }
+
+        for (String pair : query.split("&")) {
+            if (pair.length() == 0) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return parameters;
+    }
+
+    /**
+     * @return the port the endpoint listens on, the actual one if it was configured as 0
+     */
+    public synchronized int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setSchedulerQueryService(SchedulerQueryService schedulerQueryService) {
+        this.schedulerQueryService = schedulerQueryService;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+}
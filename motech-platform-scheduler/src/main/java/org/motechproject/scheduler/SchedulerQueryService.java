@@ -0,0 +1,331 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.scheduler;
+
+import org.motechproject.metrics.MetricsAgent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answers questions about the scheduled jobs, e.g. how many jobs fire between 08:00 and 09:00 tomorrow, from the
+ * {@link JobIndex} of {@link MotechSchedulerServiceImpl} instead of the job store.
+ *
+ * Fire times are computed from the {@link JobSchedule} of each job. Cron jobs sharing an expression are computed once
+ * per expression, and each job only looks up its start and end time in them, so a query over a window costs one pass
+ * over the index plus the distinct expressions. Jobs are
+ * returned sorted by name, a page at a time.
+ *
+ * When started with a {@link MetricsAgent}, every gaugeIntervalMillis it logs motech.scheduler.&lt;group&gt;.jobs and
+ * motech.scheduler.&lt;group&gt;.fires-next-hour for every job group.
+ */
+public class SchedulerQueryService {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    /**
+     * The most fire times counted for one job or cron expression in a window, so that a job firing every second
+     * over a long window can not stall a query.
+     */
+    public static final int MAX_FIRES_PER_SCHEDULE = 100000;
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+
+    @Autowired
+    private MotechSchedulerServiceImpl schedulerService;
+
+    @Autowired(required = false)
+    private MetricsAgent metricsAgent;
+
+    private long gaugeIntervalMillis = 60000;
+    private ScheduledExecutorService gauges;
+
+    public SchedulerQueryService() {
+    }
+
+    public SchedulerQueryService(MotechSchedulerServiceImpl schedulerService) {
+        this.schedulerService = schedulerService;
+    }
+
+    public int count() {
+        return index().size();
+    }
+
+    /**
+     * @return the number of jobs of each group, by group name
+     */
+    public Map<String, Integer> countByGroup() {
+        JobIndex index = index();
+        Map<String, Integer> counts = new TreeMap<String, Integer>();
+        for (String triggerName : index.triggerNames()) {
+            String group = index.groupOf(triggerName);
+            if (group != null) {
+                Integer count = counts.get(group);
+                counts.put(group, count == null ? 1 : count + 1);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * @return the jobs scheduled for events of the subject
+     */
+    public List<ScheduledJob> findBySubject(String subject, int offset, int limit) {
+        return page(bySubject(subject), offset, limit);
+    }
+
+    public int countBySubject(String subject) {
+        return bySubject(subject).size();
+    }
+
+    /**
+     * @return the jobs scheduled with the JobID
+     */
+    public List<ScheduledJob> findByExternalId(String externalId, int offset, int limit) {
+        return page(sorted(index().triggersWithJobId(externalId)), offset, limit);
+    }
+
+    public int countByExternalId(String externalId) {
+        return index().triggersWithJobId(externalId).size();
+    }
+
+    /**
+     * @return the jobs whose name or JobID starts with the prefix
+     */
+    public List<ScheduledJob> findByPrefix(String prefix, int offset, int limit) {
+        return page(sorted(index().triggersStartingWith(prefix)), offset, limit);
+    }
+
+    public int countByPrefix(String prefix) {
+        return index().triggersStartingWith(prefix).size();
+    }
+
+    /**
+     * @return the jobs that fire at least once at or after from and before to
+     */
+    public List<ScheduledJob> findFiringBetween(Date from, Date to, int offset, int limit) {
+        JobIndex index = index();
+        Map<String, List<Date>> cronFireTimes = new HashMap<String, List<Date>>();
+        List<String> firing = new ArrayList<String>();
+        for (String triggerName : index.triggerNames()) {
+            JobSchedule schedule = index.scheduleOf(triggerName);
+            if (schedule != null && countFires(schedule, from, to, cronFireTimes, 1) > 0) {
+                firing.add(triggerName);
+            }
+        }
+        return page(sorted(firing), offset, limit);
+    }
+
+    /**
+     * @return the number of times jobs fire at or after from and before to, each fire of a repeating job counted
+     */
+    public int countFiresBetween(Date from, Date to) {
+        int fires = 0;
+        for (int groupFires : countFiresByGroup(from, to).values()) {
+            fires += groupFires;
+        }
+        return fires;
+    }
+
+    /**
+     * @return the number of times the jobs of each group fire at or after from and before to, by group name
+     */
+    public Map<String, Integer> countFiresByGroup(Date from, Date to) {
+        JobIndex index = index();
+        Map<String, List<Date>> cronFireTimes = new HashMap<String, List<Date>>();
+        Map<String, Integer> fires = new TreeMap<String, Integer>();
+        for (String triggerName : index.triggerNames()) {
+            JobSchedule schedule = index.scheduleOf(triggerName);
+            String group = index.groupOf(triggerName);
+            if (schedule == null || group == null) {
+                continue;
+            }
+
+            int count = countFires(schedule, from, to, cronFireTimes, MAX_FIRES_PER_SCHEDULE);
+            Integer groupFires = fires.get(group);
+            fires.put(group, groupFires == null ? count : groupFires + count);
+        }
+        return fires;
+    }
+
+    /**
+     * Logs the number of jobs of every group, and how often they fire in the next hour.
+     */
+    public void logGauges() {
+        if (metricsAgent == null) {
+            return;
+        }
+
+        Date now = new Date();
+        Map<String, Integer> fires = countFiresByGroup(now, new Date(now.getTime() + HOUR_MILLIS));
+        for (Map.Entry<String, Integer> group : countByGroup().entrySet()) {
+            String metric = "motech.scheduler." + group.getKey();
+            Integer groupFires = fires.get(group.getKey());
+            metricsAgent.logGauge(metric + ".jobs", group.getValue());
+            metricsAgent.logGauge(metric + ".fires-next-hour", groupFires == null ? 0 : groupFires);
+        }
+    }
+
+    public synchronized void start() {
+        if (gauges != null || metricsAgent == null) {
+            return;
+        }
+
+        gauges = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "MotechScheduler-gauges");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        gauges.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    logGauges();
+                } catch (Exception e) {
+                    log.error("Can not log the scheduler gauges", e);
+                }
+            }
+        }, gaugeIntervalMillis, gaugeIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (gauges != null) {
+            gauges.shutdownNow();
+            gauges = null;
+        }
+    }
+
+    public void setSchedulerService(MotechSchedulerServiceImpl schedulerService) {
+        this.schedulerService = schedulerService;
+    }
+
+    public void setMetricsAgent(MetricsAgent metricsAgent) {
+        this.metricsAgent = metricsAgent;
+    }
+
+    public void setGaugeIntervalMillis(long gaugeIntervalMillis) {
+        this.gaugeIntervalMillis = gaugeIntervalMillis;
+    }
+
+    /**
+     * Counts the fire times of the schedule at or after from and before to, stopping at max. Cron schedules in the
+     * default time zone share the fire times of their expression, computed once and kept in cronFireTimes, and only
+     * look up where their start and end time fall in them.
+     */
+    private int countFires(JobSchedule schedule, Date from, Date to, Map<String, List<Date>> cronFireTimes, int max) {
+        CompiledCronExpression expression = schedule.getSharedCronExpression();
+        if (expression != null) {
+            List<Date> fireTimes = cronFireTimes(expression, from, to, cronFireTimes);
+            int first = indexOfFirstAtOrAfter(fireTimes, schedule.getStartTime());
+            int last = schedule.getEndTime() == Long.MAX_VALUE ? fireTimes.size() :
+                    indexOfFirstAtOrAfter(fireTimes, schedule.getEndTime() + 1);
+            return Math.max(0, Math.min(last - first, max));
+        }
+        return schedule.countFires(from, to, max);
+    }
+
+    /**
+     * @return the index of the first of the sorted fire times at or after the time, the size of the list if there is
+     * none
+     */
+    private static int indexOfFirstAtOrAfter(List<Date> fireTimes, long time) {
+        int index = Collections.binarySearch(fireTimes, new Date(time));
+        return index < 0 ? -index - 1 : index;
+    }
+
+    /**
+     * @return the fire times of the expression at or after from and before to
+     */
+    private List<Date> cronFireTimes(CompiledCronExpression expression, Date from, Date to,
+                                     Map<String, List<Date>> cronFireTimes) {
+        List<Date> fireTimes = cronFireTimes.get(expression.getSource());
+        if (fireTimes != null) {
+            return fireTimes;
+        }
+
+        fireTimes = new ArrayList<Date>();
+        Date fireTime = expression.getTimeAfter(new Date(from.getTime() - 1));
+        while (fireTime != null && fireTime.before(to) && fireTimes.size() < MAX_FIRES_PER_SCHEDULE) {
+            fireTimes.add(fireTime);
+            fireTime = expression.getTimeAfter(fireTime);
+        }
+        cronFireTimes.put(expression.getSource(), fireTimes);
+        return fireTimes;
+    }
+
+    private List<String> bySubject(String subject) {
+        String prefix = subject + "-";
+        List<String> triggerNames = new ArrayList<String>();
+        for (String triggerName : index().triggersStartingWith(prefix)) {
+            if (triggerName.startsWith(prefix)) {
+                triggerNames.add(triggerName);
+            }
+        }
+        return sorted(triggerNames);
+    }
+
+    private List<ScheduledJob> page(List<String> triggerNames, int offset, int limit) {
+        JobIndex index = index();
+        Date now = new Date();
+        List<ScheduledJob> jobs = new ArrayList<ScheduledJob>();
+        for (int i = Math.max(offset, 0); i < triggerNames.size() && jobs.size() < limit; i++) {
+            String triggerName = triggerNames.get(i);
+            JobSchedule schedule = index.scheduleOf(triggerName);
+            jobs.add(new ScheduledJob(triggerName, index.groupOf(triggerName), index.jobIdOf(triggerName),
+                                      schedule == null ? null : schedule.getFireTimeAfter(now)));
+        }
+        return jobs;
+    }
+
+    private static List<String> sorted(List<String> triggerNames) {
+        Collections.sort(triggerNames);
+        return triggerNames;
+    }
+
+    private JobIndex index() {
+        return schedulerService.getJobIndex();
+    }
+}
@@ -1,6 +1,7 @@
 package org.motechproject.scheduler.builder;
 
 import org.motechproject.model.Time;
+import org.motechproject.scheduler.CronExpressionCache;
 
 public class CronJobExpressionBuilder {
 
@@ -17,7 +18,8 @@ public class CronJobExpressionBuilder {
     }
 
     public String build() {
-        return String.format(CRON_JOB_EXPR, startTime.getMinute(), repeatIntervalInMinutes, startTime.getHour(), getEndHour());
+        return CronExpressionCache.intern(String.format(CRON_JOB_EXPR, startTime.getMinute(), repeatIntervalInMinutes,
+                                                        startTime.getHour(), getEndHour()));
     }
 
     private int getEndHour() {
@@ -1,6 +1,7 @@
 package org.motechproject.scheduler.builder;
 
 import org.motechproject.model.Time;
+import org.motechproject.scheduler.CronExpressionCache;
 
 public class CronJobSimpleExpressionBuilder {
 
@@ -20,6 +21,6 @@ public class CronJobSimpleExpressionBuilder {
 
     public String build() {
         String day = dayOfMonth == 0 ? "*" : "*/" + dayOfMonth;
-        return String.format(CRON_JOB_EXPR, startTime.getMinute(), startTime.getHour(), day);
+        return CronExpressionCache.intern(String.format(CRON_JOB_EXPR, startTime.getMinute(), startTime.getHour(), day));
     }
 }
@@ -3,6 +3,7 @@ package org.motechproject.scheduler.builder;
 
 import org.motechproject.model.DayOfWeek;
 import org.motechproject.model.Time;
+import org.motechproject.scheduler.CronExpressionCache;
 
 public class WeeklyCronJobExpressionBuilder {
     private int quartzDayOfWeek;
@@ -26,6 +27,6 @@ public class WeeklyCronJobExpressionBuilder {
     public String build() {
         String CRON_JOB_EXPR = "0 %d %d ? * %d";
 
-        return String.format(CRON_JOB_EXPR, minute, hour, quartzDayOfWeek);
+        return CronExpressionCache.intern(String.format(CRON_JOB_EXPR, minute, hour, quartzDayOfWeek));
     }
 }
@@ -0,0 +1,117 @@
+package org.motechproject.scheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.CronTrigger;
+import org.quartz.JobDetail;
+import org.quartz.ObjectAlreadyExistsException;
+import org.quartz.Scheduler;
+import org.quartz.Trigger;
+import org.quartz.impl.StdSchedulerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class BatchingJobStoreTXIT {
+    private static final String GROUP = MotechSchedulerServiceImpl.JOB_GROUP_NAME;
+
+    private String database;
+    private Scheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        database = "quartz-" + UUID.randomUUID();
+        scheduler = startScheduler();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void shouldKeepJobsAcrossRestart() throws Exception {
+        store(1200);
+
+        scheduler.shutdown();
+        scheduler = startScheduler();
+
+        assertEquals(1200, scheduler.getTriggerNames(GROUP).length);
+        JobDetail job = scheduler.getJobDetail("job-7", GROUP);
+        assertEquals("external-7", job.getJobDataMap().getString("ExternalID"));
+        assertEquals("0 0 10 * * ?", ((CronTrigger) scheduler.getTrigger("job-7", GROUP)).getCronExpression());
+    }
+
+    @Test
+    public void shouldRemoveTriggersAndTheirJobs() throws Exception {
+        store(10);
+
+        int removed = store().removeTriggers(Arrays.asList("job-1", "job-2", "not-scheduled"), GROUP);
+
+        assertEquals(2, removed);
+        assertEquals(8, scheduler.getTriggerNames(GROUP).length);
+        assertNull(scheduler.getJobDetail("job-1", GROUP));
+    }
+
+    @Test
+    public void shouldReplaceExistingJobsWhenAsked() throws Exception {
+        store(10);
+
+        store(10, true);
+
+        assertEquals(10, scheduler.getTriggerNames(GROUP).length);
+    }
+
+    @Test(expected = ObjectAlreadyExistsException.class)
+    public void shouldRejectExistingJobsByDefault() throws Exception {
+        store(10);
+
+        store(10, false);
+    }
+
+    private void store(int count) throws Exception {
+        store(count, false);
+    }
+
+    private void store(int count, boolean replace) throws Exception {
+        List<JobDetail> jobs = new ArrayList<JobDetail>();
+        List<Trigger> triggers = new ArrayList<Trigger>();
+        for (int i = 0; i < count; i++) {
+            JobDetail job = new JobDetail("job-" + i, GROUP, MotechScheduledJob.class);
+            job.getJobDataMap().put("ExternalID", "external-" + i);
+            jobs.add(job);
+            triggers.add(new CronTrigger("job-" + i, GROUP, "0 0 10 * * ?"));
+        }
+        store().storeJobsAndTriggers(jobs, triggers, replace);
+    }
+
+    private BatchingJobStoreTX store() throws Exception {
+        return BatchingJobStoreTX.forScheduler(scheduler.getSchedulerName());
+    }
+
+    private Scheduler startScheduler() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", database);
+        properties.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount", "1");
+        properties.setProperty("org.quartz.jobStore.class", BatchingJobStoreTX.class.getName());
+        properties.setProperty("org.quartz.jobStore.driverDelegateClass", "org.quartz.impl.jdbcjobstore.StdJDBCDelegate");
+        properties.setProperty("org.quartz.jobStore.dataSource", "motechDS");
+        properties.setProperty("org.quartz.jobStore.batchSize", "500");
+        properties.setProperty("org.quartz.dataSource.motechDS.driver", "org.h2.Driver");
+        properties.setProperty("org.quartz.dataSource.motechDS.URL", "jdbc:h2:mem:" + database +
+                ";DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:quartz_tables_h2.sql'");
+        properties.setProperty("org.quartz.dataSource.motechDS.user", "sa");
+        properties.setProperty("org.quartz.dataSource.motechDS.password", "");
+
+        Scheduler started = new StdSchedulerFactory(properties).getScheduler();
+        started.start();
+        return started;
+    }
+}
@@ -0,0 +1,117 @@
+package org.motechproject.scheduler;
+
+import org.junit.After;
+import org.junit.Test;
+import org.motechproject.model.CronSchedulableJob;
+import org.motechproject.model.MotechEvent;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Enrolls 10k entities with three daily jobs each, once a job at a time and once with scheduleJobs per entity, on the
+ * RAM and on the H2 job store, and prints how long each took.
+ */
+public class BulkSchedulingPerformanceIT {
+    private static final int ENTITIES = 10000;
+    private static final int JOBS_PER_ENTITY = 3;
+    private static final String SUBJECT = "bulk-performance";
+
+    private SchedulerFactoryBean schedulerFactoryBean;
+
+    @After
+    public void tearDown() throws Exception {
+        schedulerFactoryBean.destroy();
+    }
+
+    @Test
+    public void shouldEnrollOnRamJobStore() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+
+        enroll("RAMJobStore", properties);
+    }
+
+    @Test
+    public void shouldEnrollOnDurableJobStore() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.jobStore.class", BatchingJobStoreTX.class.getName());
+        properties.setProperty("org.quartz.jobStore.driverDelegateClass", "org.quartz.impl.jdbcjobstore.StdJDBCDelegate");
+        properties.setProperty("org.quartz.jobStore.dataSource", "motechDS");
+        properties.setProperty("org.quartz.dataSource.motechDS.driver", "org.h2.Driver");
+        properties.setProperty("org.quartz.dataSource.motechDS.URL", "jdbc:h2:mem:" + UUID.randomUUID() +
+                ";DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:quartz_tables_h2.sql'");
+        properties.setProperty("org.quartz.dataSource.motechDS.user", "sa");
+        properties.setProperty("org.quartz.dataSource.motechDS.password", "");
+
+        enroll("BatchingJobStoreTX", properties);
+    }
+
+    private void enroll(String store, Properties properties) throws Exception {
+        MotechSchedulerServiceImpl schedulerService = schedulerService(properties);
+
+        long start = System.nanoTime();
+        for (int entity = 0; entity < ENTITIES; entity++) {
+            for (CronSchedulableJob job : jobsFor("single-" + entity)) {
+                schedulerService.scheduleJob(job);
+            }
+        }
+        long single = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int entity = 0; entity < ENTITIES; entity++) {
+            schedulerService.scheduleJobs(jobsFor("bulk-" + entity));
+        }
+        long bulk = System.nanoTime() - start;
+
+        System.out.println(String.format("%s: enrolled %d entities one job at a time in %d ms, with scheduleJobs in %d ms",
+                                         store, ENTITIES, single / 1000000, bulk / 1000000));
+        assertEquals(2 * ENTITIES * JOBS_PER_ENTITY, schedulerFactoryBean.getScheduler()
+                .getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
+
+        List<String> jobIds = new ArrayList<String>();
+        for (int entity = 0; entity < ENTITIES; entity++) {
+            for (int dosage = 0; dosage < JOBS_PER_ENTITY; dosage++) {
+                jobIds.add(SUBJECT + "-bulk-" + entity + "." + dosage);
+            }
+        }
+        start = System.nanoTime();
+        schedulerService.unscheduleJobs(jobIds);
+        System.out.println(String.format("%s: unscheduled %d jobs in %d ms", store, jobIds.size(),
+                                         (System.nanoTime() - start) / 1000000));
+        assertEquals(ENTITIES * JOBS_PER_ENTITY, schedulerFactoryBean.getScheduler()
+                .getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
+    }
+
+    private List<CronSchedulableJob> jobsFor(String externalId) {
+        List<CronSchedulableJob> jobs = new ArrayList<CronSchedulableJob>();
+        for (int dosage = 0; dosage < JOBS_PER_ENTITY; dosage++) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put(MotechSchedulerService.JOB_ID_KEY, externalId + "." + dosage);
+            jobs.add(new CronSchedulableJob(new MotechEvent(SUBJECT, params), "0 0 " + (8 + 4 * dosage) + " * * ?"));
+        }
+        return jobs;
+    }
+
+    private MotechSchedulerServiceImpl schedulerService(Properties properties) throws Exception {
+        properties.setProperty("org.quartz.scheduler.instanceName", "bulk-performance-" + UUID.randomUUID());
+        properties.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount", "1");
+
+        schedulerFactoryBean = new SchedulerFactoryBean();
+        schedulerFactoryBean.setQuartzProperties(properties);
+        schedulerFactoryBean.afterPropertiesSet();
+
+        MotechSchedulerServiceImpl schedulerService = new MotechSchedulerServiceImpl();
+        ReflectionTestUtils.setField(schedulerService, "schedulerFactoryBean", schedulerFactoryBean);
+        return schedulerService;
+    }
+}
@@ -0,0 +1,137 @@
+package org.motechproject.scheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.model.MotechEvent;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class CoalescedTriggersTest {
+    private static final String SUBJECT = "org.motechproject.server.pillreminder.scheduler-reminder";
+    private static final String NINE = "0 5 9 * * ?";
+    private static final String FOUR = "0 5 16 * * ?";
+
+    private CoalescedTriggers coalescedTriggers;
+
+    @Before
+    public void setUp() {
+        coalescedTriggers = new CoalescedTriggers();
+    }
+
+    @Test
+    public void shouldShareSlotForSameSubjectAndCronExpression() {
+        assertNull(coalescedTriggers.add("pillreminder", SUBJECT, NINE, member("dosage1", null, null)));
+        assertNull(coalescedTriggers.add("pillreminder", SUBJECT, NINE, member("dosage2", null, null)));
+
+        assertTrue(coalescedTriggers.hasSlot(CoalescedTriggers.slotName(SUBJECT, NINE)));
+        assertSame(coalescedTriggers.slotOf("dosage1"), coalescedTriggers.slotOf("dosage2"));
+        assertEquals(2, coalescedTriggers.size("pillreminder"));
+    }
+
+    @Test
+    public void shouldNotStartSlotNameWithSubject() {
+        assertFalse(CoalescedTriggers.slotName(SUBJECT, NINE).startsWith(SUBJECT));
+    }
+
+    @Test
+    public void shouldFireEventOfEveryMemberWithItsJobId() {
+        coalescedTriggers.add("pillreminder", SUBJECT, NINE, member("dosage1", null, null));
+        coalescedTriggers.add("pillreminder", SUBJECT, NINE, member("dosage2", null, null));
+
+        List<MotechEvent> events = coalescedTriggers.fire(CoalescedTriggers.slotName(SUBJECT, NINE), new Date());
+
+        assertEquals(2, events.size());
+        for (MotechEvent event : events) {
+            assertEquals(SUBJECT, event.getSubject());
+            assertEquals("regimen1", event.getParameters().get("regimen"));
+        }
+        assertFalse(events.get(0).getParameters().get(MotechSchedulerService.JOB_ID_KEY)
+                .equals(events.get(1).getParameters().get(MotechSchedulerService.JOB_ID_KEY)));
+    }
+
+    @Test
+    public void shouldSkipMembersThatHaveNotStarted() {
+        Date now = new Date();
+        coalescedTriggers.add("pillreminder", SUBJECT, NINE, member("dosage1", new Date(now.getTime() + 1000), null));
+
+        assertTrue(coalescedTriggers.fire(CoalescedTriggers.slotName(SUBJECT, NINE), now).isEmpty());
+        assertEquals(1, coalescedTriggers.size());
+    }
+
+    @Test
+    public void shouldDropMembersPastTheirEnd() {
+        JobIndex jobIndex = new JobIndex();
+        jobIndex.add("dosage1", "pillreminder", "1", null);
+        coalescedTriggers.setJobIndex(jobIndex);
+        Date now = new Date();
+        coalescedTriggers.add("pillreminder", SUBJECT, NINE, member("dosage1", null, new Date(now.getTime() - 1000)));
+
+        assertTrue(coalescedTriggers.fire(CoalescedTriggers.slotName(SUBJECT, NINE), now).isEmpty());
+        assertFalse(coalescedTriggers.contains("dosage1"));
+        assertNull(jobIndex.groupOf("dosage1"));
+    }
+
+    @Test
+    public void shouldUnscheduleSlotWhoseLastMemberExpired() throws SchedulerException {
+        Scheduler scheduler = mock(Scheduler.class);
+        coalescedTriggers.setScheduler(scheduler);
+        Date now = new Date();
+        coalescedTriggers.add("pillreminder", SUBJECT, NINE, member("dosage1", null, new Date(now.getTime() - 1000)));
+        coalescedTriggers.add("pillreminder", SUBJECT, FOUR, member("dosage2", null, new Date(now.getTime() - 1000)));
+        coalescedTriggers.add("pillreminder", SUBJECT, FOUR, member("dosage3", null, null));
+
+        coalescedTriggers.fire(CoalescedTriggers.slotName(SUBJECT, NINE), now);
+        coalescedTriggers.fire(CoalescedTriggers.slotName(SUBJECT, FOUR), now);
+
+        assertFalse(coalescedTriggers.hasSlot(CoalescedTriggers.slotName(SUBJECT, NINE)));
+        verify(scheduler).unscheduleJob(CoalescedTriggers.slotName(SUBJECT, NINE), "pillreminder");
+        assertTrue(coalescedTriggers.hasSlot(CoalescedTriggers.slotName(SUBJECT, FOUR)));
+        verify(scheduler, never()).unscheduleJob(CoalescedTriggers.slotName(SUBJECT, FOUR), "pillreminder");
+    }
+
+    @Test
+    public void shouldReturnSlotThatLostItsLastMember() {
+        coalescedTriggers.add("pillreminder", SUBJECT, NINE, member("dosage1", null, null));
+        coalescedTriggers.add("pillreminder", SUBJECT, NINE, member("dosage2", null, null));
+
+        assertNull(coalescedTriggers.remove("dosage1"));
+        CoalescedTriggers.Slot emptied = coalescedTriggers.remove("dosage2");
+
+        assertEquals(CoalescedTriggers.slotName(SUBJECT, NINE), emptied.getName());
+        assertFalse(coalescedTriggers.hasSlot(emptied.getName()));
+        assertNull(coalescedTriggers.remove("dosage2"));
+    }
+
+    @Test
+    public void shouldMoveMemberToSlotOfNewCronExpression() {
+        coalescedTriggers.add("pillreminder", SUBJECT, NINE, member("dosage1", null, null));
+
+        CoalescedTriggers.Slot emptied = coalescedTriggers.add("pillreminder", SUBJECT, FOUR, member("dosage1", null, null));
+
+        assertEquals(CoalescedTriggers.slotName(SUBJECT, NINE), emptied.getName());
+        assertEquals(FOUR, coalescedTriggers.slotOf("dosage1").getCronExpression());
+        assertEquals(1, coalescedTriggers.size());
+    }
+
+    @Test
+    public void shouldFireNothingForUnknownSlot() {
+        assertEquals(Collections.<MotechEvent>emptyList(), coalescedTriggers.fire("coalesced:unknown", new Date()));
+    }
+
+    private CoalescedTriggers.Member member(String jobName, Date startTime, Date endTime) {
+        Map<String, Object> parameters = new HashMap<String, Object>();
+        parameters.put("regimen", "regimen1");
+        return new CoalescedTriggers.Member(jobName, parameters, startTime, endTime);
+    }
+}
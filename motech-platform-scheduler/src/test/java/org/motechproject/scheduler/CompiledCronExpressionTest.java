@@ -0,0 +1,80 @@
+package org.motechproject.scheduler;
+
+import org.junit.Test;
+import org.quartz.CronExpression;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class CompiledCronExpressionTest {
+    private static final String[] ZONES = {"UTC", "Asia/Kolkata", "America/New_York", "Europe/London", "Australia/Lord_Howe"};
+
+    @Test
+    public void shouldRecognizeDailyAndWeeklyExpressions() throws ParseException {
+        assertTrue(compiled("0 30 9 * * ?").isDailyOrWeekly());
+        assertTrue(compiled("0 0 0 ? * 6").isDailyOrWeekly());
+        assertFalse(compiled("0 5 9 */2 * ?").isDailyOrWeekly());
+        assertFalse(compiled("0 15/30 9-23 * * ?").isDailyOrWeekly());
+    }
+
+    @Test
+    public void shouldComputeSameDailyFireTimesAsQuartz() throws ParseException {
+        assertSameFireTimesAsQuartz("0 30 9 * * ?");
+        assertSameFireTimesAsQuartz("0 0 0 * * ?");
+        assertSameFireTimesAsQuartz("0 30 2 * * ?");
+        assertSameFireTimesAsQuartz("0 59 23 * * ?");
+    }
+
+    @Test
+    public void shouldComputeSameWeeklyFireTimesAsQuartz() throws ParseException {
+        assertSameFireTimesAsQuartz("0 0 0 ? * 1");
+        assertSameFireTimesAsQuartz("0 30 2 ? * 1");
+        assertSameFireTimesAsQuartz("0 15 10 ? * 7");
+    }
+
+    @Test
+    public void shouldFireStrictlyAfterTheGivenTime() throws ParseException {
+        CompiledCronExpression expression = new CompiledCronExpression("0 30 9 * * ?", TimeZone.getTimeZone("UTC"));
+        Date nineThirty = new Date(9 * 3600000L + 30 * 60000L);
+
+        assertEquals(nineThirty, expression.getTimeAfter(new Date(nineThirty.getTime() - 1)));
+        assertEquals(new Date(nineThirty.getTime() + 24 * 3600000L), expression.getTimeAfter(nineThirty));
+    }
+
+    @Test
+    public void shouldShareOneInstanceBetweenClones() throws ParseException {
+        CompiledCronExpression expression = compiled("0 30 9 * * ?");
+
+        assertSame(expression, expression.clone());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void shouldNotChangeTimeZoneOfSharedExpression() throws ParseException {
+        new CompiledCronExpression("0 30 9 * * ?", TimeZone.getTimeZone("UTC")).setTimeZone(TimeZone.getTimeZone("Asia/Kolkata"));
+    }
+
+    private void assertSameFireTimesAsQuartz(String cronExpression) throws ParseException {
+        Random random = new Random(cronExpression.hashCode());
+        for (String zone : ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            CronExpression quartz = new CronExpression(cronExpression);
+            quartz.setTimeZone(timeZone);
+            CompiledCronExpression compiled = new CompiledCronExpression(cronExpression, timeZone);
+
+            Date time = new Date(1293840000000L + (long) random.nextInt(1000) * 1000);
+            for (int i = 0; i < 800; i++) {
+                Date expected = quartz.getTimeAfter(time);
+                assertEquals(cronExpression + " in " + zone + " after " + time, expected, compiled.getTimeAfter(time));
+                time = new Date(time.getTime() + (i % 2 == 0 ? 1000 : random.nextInt(86400) * 1000L));
+            }
+        }
+    }
+
+    private CompiledCronExpression compiled(String cronExpression) throws ParseException {
+        return new CompiledCronExpression(cronExpression, TimeZone.getDefault());
+    }
+}
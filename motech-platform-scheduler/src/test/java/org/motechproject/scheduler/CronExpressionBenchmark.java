@@ -0,0 +1,71 @@
+package org.motechproject.scheduler;
+
+import org.quartz.CronExpression;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Compares parsing the cron expressions MOTECH builds with Quartz against getting them from
+ * {@link CronExpressionCache}, and computing their next fire times with a Quartz {@link CronExpression} against a
+ * {@link CompiledCronExpression}. Each measurement is repeated after a warm up round and printed in ns per operation.
+ *
+ * Not a unit test; run it with (the argument is the number of operations per round, 1000000 by default):
+ * mvn test-compile exec:java -Dexec.mainClass=org.motechproject.scheduler.CronExpressionBenchmark -Dexec.classpathScope=test -Dexec.args=1000000
+ */
+public class CronExpressionBenchmark {
+    private static final String[] EXPRESSIONS = {"0 30 9 * * ?", "0 0 21 * * ?", "0 15 10 ? * 2", "0 5 9 */2 * ?"};
+    private static final int ROUNDS = 3;
+
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            System.out.println("round " + round + (round == 1 ? " (warm up)" : ""));
+            for (String expression : EXPRESSIONS) {
+                report(expression, "parse with Quartz", parse(expression, operations / 10), operations / 10);
+                report(expression, "parse from cache", cached(expression, operations), operations);
+
+                CronExpression quartz = new CronExpression(expression);
+                quartz.setTimeZone(TimeZone.getDefault());
+                report(expression, "next fire with Quartz", nextFireTimes(quartz, operations / 10), operations / 10);
+                report(expression, "next fire compiled", nextFireTimes(CronExpressionCache.compile(expression),
+                                                                       operations), operations);
+            }
+        }
+        System.out.println("checksum " + sink);
+    }
+
+    private static long parse(String expression, int operations) throws ParseException {
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            sink += new CronExpression(expression).hashCode();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long cached(String expression, int operations) throws ParseException {
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            sink += CronExpressionCache.compile(expression).hashCode();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long nextFireTimes(CronExpression expression, int operations) {
+        Date time = new Date();
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            time = expression.getTimeAfter(time);
+        }
+        sink += time.getTime();
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String expression, String measurement, long nanos, int operations) {
+        System.out.println(String.format("  %-16s %-22s %8d ns/op", expression, measurement, nanos / operations));
+    }
+}
@@ -0,0 +1,59 @@
+package org.motechproject.scheduler;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.text.ParseException;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class CronExpressionCacheTest {
+
+    @After
+    public void tearDown() {
+        CronExpressionCache.clear();
+    }
+
+    @Test
+    public void shouldParseExpressionOnce() throws ParseException {
+        assertSame(CronExpressionCache.compile("0 30 9 * * ?"), CronExpressionCache.compile(new String("0 30 9 * * ?")));
+        assertEquals(1, CronExpressionCache.size());
+    }
+
+    @Test
+    public void shouldInternBuiltExpressions() {
+        String first = CronExpressionCache.intern(new String("0 30 9 * * ?"));
+
+        assertSame(first, CronExpressionCache.intern(new String("0 30 9 * * ?")));
+    }
+
+    @Test
+    public void shouldPassInvalidExpressionsThrough() {
+        String invalid = "not a cron expression";
+
+        assertSame(invalid, CronExpressionCache.intern(invalid));
+        assertEquals(0, CronExpressionCache.size());
+    }
+
+    @Test(expected = ParseException.class)
+    public void shouldRejectInvalidExpressions() throws ParseException {
+        CronExpressionCache.compile("not a cron expression");
+    }
+
+    @Test
+    public void shouldCompileAgainWhenDefaultTimeZoneChanges() throws ParseException {
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+            CompiledCronExpression utc = CronExpressionCache.compile("0 30 9 * * ?");
+            TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+            CompiledCronExpression kolkata = CronExpressionCache.compile("0 30 9 * * ?");
+
+            assertNotSame(utc, kolkata);
+            assertEquals(TimeZone.getTimeZone("Asia/Kolkata"), kolkata.getTimeZone());
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+}
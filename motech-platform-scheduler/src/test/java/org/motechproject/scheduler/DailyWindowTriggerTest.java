@@ -0,0 +1,114 @@
+package org.motechproject.scheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.model.Time;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class DailyWindowTriggerTest {
+    private static final long FIFTEEN_MINUTES = 15 * 60 * 1000;
+
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    public void shouldFireWithinWindowOfEveryDay() {
+        DailyWindowTrigger trigger = new DailyWindowTrigger("job", "group", time(1, 0, 0), null, FIFTEEN_MINUTES,
+                                                            new Time(9, 0), new Time(10, 0));
+
+        List<Date> fireTimes = fireTimes(trigger, 10);
+
+        assertEquals(time(1, 9, 0), fireTimes.get(0));
+        assertEquals(time(1, 9, 15), fireTimes.get(1));
+        assertEquals(time(1, 10, 0), fireTimes.get(4));
+        assertEquals(time(2, 9, 0), fireTimes.get(5));
+        assertEquals(time(2, 10, 0), fireTimes.get(9));
+    }
+
+    @Test
+    public void shouldStartInTheMiddleOfAWindow() {
+        DailyWindowTrigger trigger = new DailyWindowTrigger("job", "group", time(1, 9, 20), null, FIFTEEN_MINUTES,
+                                                            new Time(9, 0), new Time(10, 0));
+
+        List<Date> fireTimes = fireTimes(trigger, 2);
+
+        assertEquals(time(1, 9, 30), fireTimes.get(0));
+        assertEquals(time(1, 9, 45), fireTimes.get(1));
+    }
+
+    @Test
+    public void shouldFireInWindowSpanningMidnight() {
+        DailyWindowTrigger trigger = new DailyWindowTrigger("job", "group", time(1, 0, 0), null, FIFTEEN_MINUTES,
+                                                            new Time(23, 30), new Time(0, 15));
+
+        List<Date> fireTimes = fireTimes(trigger, 6);
+
+        assertEquals(time(1, 0, 0), fireTimes.get(0));
+        assertEquals(time(1, 0, 15), fireTimes.get(1));
+        assertEquals(time(1, 23, 30), fireTimes.get(2));
+        assertEquals(time(2, 0, 0), fireTimes.get(4));
+        assertEquals(time(2, 0, 15), fireTimes.get(5));
+    }
+
+    @Test
+    public void shouldStopAtEndTime() {
+        DailyWindowTrigger trigger = new DailyWindowTrigger("job", "group", time(1, 0, 0), time(2, 9, 15),
+                                                            FIFTEEN_MINUTES, new Time(9, 0), new Time(10, 0));
+
+        List<Date> fireTimes = fireTimes(trigger, 10);
+
+        assertEquals(6, fireTimes.size());
+        assertEquals(time(2, 9, 0), fireTimes.get(5));
+        assertEquals(time(2, 9, 0), trigger.getFireTimeBefore(trigger.getEndTime()));
+    }
+
+    @Test
+    public void shouldFindLastFireTimeBeforeGivenTime() {
+        DailyWindowTrigger trigger = new DailyWindowTrigger("job", "group", time(1, 0, 0), null, FIFTEEN_MINUTES,
+                                                            new Time(9, 0), new Time(10, 0));
+
+        assertEquals(time(1, 10, 0), trigger.getFireTimeBefore(time(2, 9, 0)));
+        assertEquals(time(2, 9, 0), trigger.getFireTimeBefore(time(2, 9, 1)));
+        assertNull(trigger.getFireTimeBefore(time(1, 9, 0)));
+    }
+
+    @Test
+    public void shouldBeStoredWithItsWindow() {
+        assertTrue(new DailyWindowTrigger().hasAdditionalProperties());
+    }
+
+    private List<Date> fireTimes(DailyWindowTrigger trigger, int count) {
+        List<Date> fireTimes = new ArrayList<Date>();
+        Date fireTime = trigger.computeFirstFireTime(null);
+        while (fireTime != null && fireTimes.size() < count) {
+            fireTimes.add(fireTime);
+            fireTime = trigger.getFireTimeAfter(fireTime);
+        }
+        return fireTimes;
+    }
+
+    private Date time(int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(2012, Calendar.JANUARY, day, hour, minute);
+        return calendar.getTime();
+    }
+}
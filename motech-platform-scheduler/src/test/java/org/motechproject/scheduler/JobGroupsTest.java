@@ -0,0 +1,236 @@
+package org.motechproject.scheduler;
+
+import org.junit.After;
+import org.junit.Test;
+import org.motechproject.metrics.MetricsAgent;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class JobGroupsTest {
+    private JobGroups jobGroups;
+
+    @After
+    public void tearDown() {
+        if (jobGroups != null) {
+            jobGroups.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldPickGroupWithLongestMatchingPrefix() {
+        jobGroups = new JobGroups(Arrays.asList(group("motech", 0, "org.motechproject."),
+                                                group("pillreminder", 0, "org.motechproject.server.pillreminder.")));
+
+        assertEquals("pillreminder", jobGroups.groupFor("org.motechproject.server.pillreminder.reminder-d1").getName());
+        assertEquals("motech", jobGroups.groupFor("org.motechproject.server.outbox.execute-p1").getName());
+        assertEquals(MotechSchedulerServiceImpl.JOB_GROUP_NAME, jobGroups.groupFor("testEvent-1").getName());
+    }
+
+    @Test
+    public void shouldUseDeclaredDefaultGroup() {
+        JobGroup defaultGroup = group(MotechSchedulerServiceImpl.JOB_GROUP_NAME, 2);
+        jobGroups = new JobGroups(Arrays.asList(defaultGroup));
+
+        assertSame(defaultGroup, jobGroups.groupFor("testEvent-1"));
+        assertSame(defaultGroup, jobGroups.group("unknown"));
+        assertEquals(1, jobGroups.getGroups().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectGroupDeclaredTwice() {
+        new JobGroups(Arrays.asList(group("pillreminder", 1), group("pillreminder", 2)));
+    }
+
+    @Test
+    public void shouldSendOnCallingThreadWhenGroupHasNoThreads() {
+        jobGroups = new JobGroups();
+        final AtomicReference<Thread> sentOn = new AtomicReference<Thread>();
+
+        jobGroups.fire(MotechSchedulerServiceImpl.JOB_GROUP_NAME, new Date(), new Runnable() {
+            @Override
+            public void run() {
+                sentOn.set(Thread.currentThread());
+            }
+        });
+
+        assertSame(Thread.currentThread(), sentOn.get());
+    }
+
+    @Test
+    public void shouldNotHoldUpOtherGroupsWhileOneIsBusy() throws InterruptedException {
+        jobGroups = new JobGroups(Arrays.asList(group("pillreminder", 1), group("messagecampaign", 1)));
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch campaignSent = new CountDownLatch(1);
+
+        for (int i = 0; i < 100; i++) {
+            jobGroups.fire("pillreminder", new Date(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        jobGroups.fire("messagecampaign", new Date(), new Runnable() {
+            @Override
+            public void run() {
+                campaignSent.countDown();
+            }
+        });
+
+        assertTrue(campaignSent.await(5, TimeUnit.SECONDS));
+        assertEquals(99, jobGroups.group("pillreminder").getQueued());
+        release.countDown();
+    }
+
+    @Test
+    public void shouldSendOnCallingThreadWhenGroupQueueIsFull() throws InterruptedException {
+        JobGroup pillReminders = group("pillreminder", 1);
+        pillReminders.setQueueCapacity(2);
+        jobGroups = new JobGroups(Arrays.asList(pillReminders));
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicReference<Thread> sentOn = new AtomicReference<Thread>();
+
+        for (int i = 0; i < 3; i++) {
+            jobGroups.fire("pillreminder", new Date(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        jobGroups.fire("pillreminder", new Date(), new Runnable() {
+            @Override
+            public void run() {
+                sentOn.set(Thread.currentThread());
+            }
+        });
+
+        assertSame(Thread.currentThread(), sentOn.get());
+        assertEquals(2, pillReminders.getQueued());
+        release.countDown();
+    }
+
+    @Test
+    public void shouldSendQueuedJobsOnShutdown() {
+        jobGroups = new JobGroups(Arrays.asList(group("pillreminder", 1)));
+        final AtomicInteger sent = new AtomicInteger();
+
+        for (int i = 0; i < 100; i++) {
+            jobGroups.fire("pillreminder", new Date(), new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    sent.incrementAndGet();
+                }
+            });
+        }
+        jobGroups.shutdown();
+
+        assertEquals(100, sent.get());
+    }
+
+    @Test
+    public void shouldSendJobsFiredAfterShutdownOnCallingThread() {
+        jobGroups = new JobGroups(Arrays.asList(group("pillreminder", 1)));
+        final AtomicReference<Thread> sentOn = new AtomicReference<Thread>();
+        jobGroups.fire("pillreminder", new Date(), new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        jobGroups.shutdown();
+
+        jobGroups.fire("pillreminder", new Date(), new Runnable() {
+            @Override
+            public void run() {
+                sentOn.set(Thread.currentThread());
+            }
+        });
+
+        assertSame(Thread.currentThread(), sentOn.get());
+    }
+
+    @Test
+    public void shouldReportFireLatencyPerGroup() {
+        MetricsAgent metricsAgent = mock(MetricsAgent.class);
+        jobGroups = new JobGroups(Arrays.asList(group("pillreminder", 0)));
+        jobGroups.setMetricsAgent(metricsAgent);
+
+        jobGroups.fire("pillreminder", new Date(System.currentTimeMillis() - 5000), new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+
+        verify(metricsAgent).logTimedEvent(eq("motech.scheduler.pillreminder.fire-latency"), anyLong());
+        verify(metricsAgent).logGauge("motech.scheduler.pillreminder.queued", 0);
+    }
+
+    @Test
+    public void shouldSkipJobsLaterThanThresholdWhenGroupSkipsMisfires() {
+        MetricsAgent metricsAgent = mock(MetricsAgent.class);
+        JobGroup pillReminders = group("pillreminder", 0);
+        pillReminders.setMisfirePolicy(JobGroup.MisfirePolicy.SKIP);
+        pillReminders.setMisfireThresholdMillis(1000);
+        jobGroups = new JobGroups(Arrays.asList(pillReminders));
+        jobGroups.setMetricsAgent(metricsAgent);
+        final AtomicBoolean sent = new AtomicBoolean();
+
+        jobGroups.fire("pillreminder", new Date(System.currentTimeMillis() - 5000), new Runnable() {
+            @Override
+            public void run() {
+                sent.set(true);
+            }
+        });
+
+        assertFalse(sent.get());
+        verify(metricsAgent).logEvent("motech.scheduler.pillreminder.misfired");
+    }
+
+    @Test
+    public void shouldSendLateJobsWhenGroupFiresMisfires() {
+        JobGroup campaigns = group("messagecampaign", 0);
+        campaigns.setMisfirePolicy(JobGroup.MisfirePolicy.FIRE_NOW);
+        campaigns.setMisfireThresholdMillis(1000);
+        jobGroups = new JobGroups(Arrays.asList(campaigns));
+        final AtomicBoolean sent = new AtomicBoolean();
+
+        jobGroups.fire("messagecampaign", new Date(System.currentTimeMillis() - 5000), new Runnable() {
+            @Override
+            public void run() {
+                sent.set(true);
+            }
+        });
+
+        assertTrue(sent.get());
+    }
+
+    private JobGroup group(String name, int threadCount, String... subjectPrefixes) {
+        JobGroup group = new JobGroup(name);
+        group.setThreadCount(threadCount);
+        group.setSubjectPrefixes(Arrays.asList(subjectPrefixes));
+        return group;
+    }
+}
@@ -0,0 +1,121 @@
+package org.motechproject.scheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.quartz.SimpleTrigger;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JobIndexTest {
+    private JobIndex index;
+
+    @Before
+    public void setUp() {
+        index = new JobIndex();
+    }
+
+    @Test
+    public void shouldFindTriggersByJobIdPrefix() {
+        index.add("send-campaign.c1.e1.week1", "campaign.c1.e1.week1", null);
+        index.add("send-campaign.c1.e1.week2", "campaign.c1.e1.week2", null);
+        index.add("send-campaign.c1.e2.week1", "campaign.c1.e2.week1", null);
+
+        List<String> triggers = index.triggersStartingWith("campaign.c1.e1");
+
+        assertEquals(Arrays.asList("send-campaign.c1.e1.week1", "send-campaign.c1.e1.week2"), triggers);
+    }
+
+    @Test
+    public void shouldFindTriggersByNamePrefix() {
+        index.add("pillreminder-dosage1", "dosage1", null);
+        index.add("pillreminder-dosage1-repeat", "dosage1", null);
+        index.add("outbox-dosage1", "dosage1", null);
+
+        assertEquals(Arrays.asList("pillreminder-dosage1", "pillreminder-dosage1-repeat"),
+                     index.triggersStartingWith("pillreminder-dosage1"));
+    }
+
+    @Test
+    public void shouldReportEachTriggerOnce() {
+        index.add("job-1", "job-1", null);
+
+        assertEquals(Arrays.asList("job-1"), index.triggersStartingWith("job"));
+    }
+
+    @Test
+    public void shouldFindTriggersByTag() {
+        index.add("pillreminder-dosage1", "dosage1", Arrays.asList("regimen1", "patient1"));
+        index.add("pillreminder-dosage2", "dosage2", Arrays.asList("regimen1"));
+        index.add("pillreminder-dosage3", "dosage3", Arrays.asList("regimen10"));
+
+        assertEquals(Arrays.asList("pillreminder-dosage1", "pillreminder-dosage2"), index.triggersTagged("regimen1"));
+        assertEquals(Arrays.asList("pillreminder-dosage1"), index.triggersTagged("patient1"));
+    }
+
+    @Test
+    public void shouldForgetRemovedTriggers() {
+        index.add("job-1", "1", Arrays.asList("tag"));
+        index.add("job-2", "2", Arrays.asList("tag"));
+
+        index.remove("job-1");
+
+        assertEquals(Arrays.asList("job-2"), index.triggersStartingWith("job"));
+        assertEquals(Arrays.asList("job-2"), index.triggersTagged("tag"));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void shouldRememberGroupOfTrigger() {
+        index.add("pillreminder-dosage1", "pillreminder", "dosage1", null);
+        index.add("testEvent-1", "1", null);
+
+        assertEquals("pillreminder", index.groupOf("pillreminder-dosage1"));
+        assertEquals(MotechSchedulerServiceImpl.JOB_GROUP_NAME, index.groupOf("testEvent-1"));
+        assertNull(index.groupOf("unknown"));
+    }
+
+    @Test
+    public void shouldReplaceKeysOfRescheduledTrigger() {
+        index.add("job-1", "old", Arrays.asList("old-tag"));
+        index.add("job-1", "new", Arrays.asList("new-tag"));
+
+        assertTrue(index.triggersStartingWith("old").isEmpty());
+        assertTrue(index.triggersTagged("old-tag").isEmpty());
+        assertEquals(Arrays.asList("job-1"), index.triggersStartingWith("new"));
+        assertEquals(Arrays.asList("job-1"), index.triggersTagged("new-tag"));
+    }
+
+    @Test
+    public void shouldFindTriggersByExactJobId() {
+        index.add("pillreminder-dosage1", "dosage1", null);
+        index.add("pillreminder-dosage1-repeat", "dosage1", null);
+        index.add("pillreminder-dosage10", "dosage10", null);
+
+        assertEquals(Arrays.asList("pillreminder-dosage1", "pillreminder-dosage1-repeat"),
+                     index.triggersWithJobId("dosage1"));
+        assertTrue(index.triggersWithJobId("dosage").isEmpty());
+    }
+
+    @Test
+    public void shouldKeepScheduleOfTriggerWithoutTheTrigger() {
+        Date start = new Date(System.currentTimeMillis() + 60000);
+        SimpleTrigger first = new SimpleTrigger("job-1", "default", start, null, 0, 0);
+        SimpleTrigger second = new SimpleTrigger("job-1", "default", new Date(start.getTime() + 60000), null, 0, 0);
+        index.add("job-1", "default", "1", null, first);
+
+        assertEquals(start, index.scheduleOf("job-1").getFireTimeAfter(new Date()));
+        assertEquals("1", index.jobIdOf("job-1"));
+
+        index.setSchedule("job-1", second);
+        assertEquals(second.getStartTime(), index.scheduleOf("job-1").getFireTimeAfter(new Date()));
+
+        index.setSchedule("unknown", second);
+        assertNull(index.scheduleOf("unknown"));
+    }
+}
@@ -0,0 +1,99 @@
+package org.motechproject.scheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.model.Time;
+import org.quartz.CronTrigger;
+import org.quartz.SimpleTrigger;
+import org.quartz.Trigger;
+
+import java.text.ParseException;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class JobScheduleTest {
+    private static final long FIFTEEN_MINUTES = 15 * 60 * 1000L;
+
+    private TimeZone defaultTimeZone;
+
+    @Before
+    public void setUp() {
+        defaultTimeZone = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+    }
+
+    @After
+    public void tearDown() {
+        TimeZone.setDefault(defaultTimeZone);
+    }
+
+    @Test
+    public void shouldFireLikeCronTrigger() throws ParseException {
+        CronTrigger trigger = new CronTrigger("daily", "default");
+        trigger.setCronExpression(new CompiledCronExpression("0 30 8 * * ?", TimeZone.getDefault()));
+        trigger.setStartTime(at(1, 9 * 60));
+        trigger.setEndTime(at(4, 8 * 60 + 30));
+
+        assertSameFireTimes(trigger, JobSchedule.of(trigger), at(0, 0));
+        assertSame(CronExpressionCache.compile("0 30 8 * * ?"), JobSchedule.of(trigger).getSharedCronExpression());
+    }
+
+    @Test
+    public void shouldFireLikeSimpleTrigger() {
+        SimpleTrigger repeating = new SimpleTrigger("repeat", "default", at(0, 8 * 60), at(0, 9 * 60),
+                                                    SimpleTrigger.REPEAT_INDEFINITELY, FIFTEEN_MINUTES);
+        SimpleTrigger counted = new SimpleTrigger("counted", "default", at(0, 8 * 60), null, 2, FIFTEEN_MINUTES);
+        SimpleTrigger once = new SimpleTrigger("once", "default", at(0, 8 * 60), null, 0, 0);
+
+        assertSameFireTimes(repeating, JobSchedule.of(repeating), at(0, 0));
+        assertSameFireTimes(counted, JobSchedule.of(counted), at(0, 0));
+        assertSameFireTimes(once, JobSchedule.of(once), at(0, 0));
+        assertNull(JobSchedule.of(once).getSharedCronExpression());
+    }
+
+    @Test
+    public void shouldFireLikeDailyWindowTrigger() {
+        DailyWindowTrigger trigger = new DailyWindowTrigger("window", "default", at(0, 0), null, FIFTEEN_MINUTES,
+                                                            new Time(23, 0), new Time(1, 0));
+
+        assertSameFireTimes(trigger, JobSchedule.of(trigger), at(0, 0));
+    }
+
+    @Test
+    public void shouldCountFiresOfSimpleScheduleWithoutGoingThroughThem() {
+        JobSchedule schedule = JobSchedule.of(new SimpleTrigger("repeat", "default", at(0, 8 * 60), at(0, 9 * 60),
+                                                                SimpleTrigger.REPEAT_INDEFINITELY, FIFTEEN_MINUTES));
+
+        assertEquals(5, schedule.countFires(at(0, 0), at(1, 0), 100));
+        assertEquals(4, schedule.countFires(at(0, 8 * 60), at(0, 9 * 60), 100));
+        assertEquals(4, schedule.countFires(at(0, 8 * 60 + 1), at(1, 0), 100));
+        assertEquals(2, schedule.countFires(at(0, 0), at(1, 0), 2));
+        assertEquals(0, schedule.countFires(at(0, 9 * 60 + 1), at(1, 0), 100));
+    }
+
+    @Test
+    public void shouldNotKnowScheduleOfNoTrigger() {
+        assertNull(JobSchedule.of(null));
+    }
+
+    private void assertSameFireTimes(Trigger trigger, JobSchedule schedule, Date from) {
+        Date expected = trigger.getFireTimeAfter(from);
+        Date actual = schedule.getFireTimeAfter(from);
+        for (int i = 0; i < 200 && expected != null; i++) {
+            assertEquals(expected, actual);
+            expected = trigger.getFireTimeAfter(expected);
+            actual = schedule.getFireTimeAfter(actual);
+        }
+        assertEquals(expected, actual);
+    }
+
+    private Date at(int day, int minuteOfDay) {
+        return new GregorianCalendar(2011, 9, 17 + day, minuteOfDay / 60, minuteOfDay % 60).getTime();
+    }
+}
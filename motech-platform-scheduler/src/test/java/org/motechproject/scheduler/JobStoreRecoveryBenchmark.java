@@ -0,0 +1,109 @@
+package org.motechproject.scheduler;
+
+import org.motechproject.model.MotechEvent;
+import org.quartz.CronTrigger;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.Trigger;
+import org.quartz.impl.StdSchedulerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Compares getting N triggers back after a restart: rebuilding them in a RAMJobStore one scheduleJob() at a time, the
+ * way modules re-enroll, against starting a scheduler on a {@link BatchingJobStoreTX} that already holds them.
+ *
+ * Not a unit test; run it with (the argument is the number of triggers, 1000000 by default):
+ * mvn test-compile exec:java -Dexec.mainClass=org.motechproject.scheduler.JobStoreRecoveryBenchmark -Dexec.classpathScope=test -Dexec.args=1000000
+ */
+public class JobStoreRecoveryBenchmark {
+    private static final String GROUP = MotechSchedulerServiceImpl.JOB_GROUP_NAME;
+    private static final int CHUNK = 10000;
+
+    public static void main(String[] args) throws Exception {
+        int triggers = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        File directory = new File(System.getProperty("java.io.tmpdir"), "motech-recovery-benchmark-" + System.nanoTime());
+        String url = "jdbc:h2:" + new File(directory, "quartz").getAbsolutePath() +
+                ";INIT=RUNSCRIPT FROM 'classpath:quartz_tables_h2.sql'";
+
+        Scheduler durable = scheduler("durable", durableStore(url));
+        BatchingJobStoreTX store = BatchingJobStoreTX.forScheduler(durable.getSchedulerName());
+        long start = System.nanoTime();
+        for (int from = 0; from < triggers; from += CHUNK) {
+            List<JobDetail> jobs = new ArrayList<JobDetail>();
+            List<Trigger> cronTriggers = new ArrayList<Trigger>();
+            for (int i = from; i < Math.min(from + CHUNK, triggers); i++) {
+                jobs.add(job(i));
+                cronTriggers.add(trigger(i));
+            }
+            store.storeJobsAndTriggers(jobs, cronTriggers, false);
+        }
+        System.out.println(String.format("persisted %d triggers in %d ms", triggers, millisSince(start)));
+        durable.shutdown();
+
+        start = System.nanoTime();
+        durable = scheduler("durable", durableStore(url));
+        durable.start();
+        long recovered = millisSince(start);
+        int count = durable.getTriggerNames(GROUP).length;
+        System.out.println(String.format("restart with %d persisted triggers: %d ms", count, recovered));
+        durable.shutdown();
+
+        Properties ramStore = new Properties();
+        ramStore.setProperty("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+        start = System.nanoTime();
+        Scheduler ram = scheduler("ram", ramStore);
+        ram.start();
+        for (int i = 0; i < triggers; i++) {
+            ram.scheduleJob(job(i), trigger(i));
+        }
+        System.out.println(String.format("restart with RAMJobStore, re-scheduling %d triggers: %d ms", triggers,
+                                         millisSince(start)));
+        ram.shutdown();
+
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    private static Properties durableStore(String url) {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.jobStore.class", BatchingJobStoreTX.class.getName());
+        properties.setProperty("org.quartz.jobStore.driverDelegateClass", "org.quartz.impl.jdbcjobstore.StdJDBCDelegate");
+        properties.setProperty("org.quartz.jobStore.dataSource", "motechDS");
+        properties.setProperty("org.quartz.jobStore.batchSize", "1000");
+        properties.setProperty("org.quartz.dataSource.motechDS.driver", "org.h2.Driver");
+        properties.setProperty("org.quartz.dataSource.motechDS.URL", url);
+        properties.setProperty("org.quartz.dataSource.motechDS.user", "sa");
+        properties.setProperty("org.quartz.dataSource.motechDS.password", "");
+        return properties;
+    }
+
+    private static Scheduler scheduler(String name, Properties store) throws Exception {
+        Properties properties = new Properties();
+        properties.putAll(store);
+        properties.setProperty("org.quartz.scheduler.instanceName", "recovery-benchmark-" + name);
+        properties.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount", "1");
+        return new StdSchedulerFactory(properties).getScheduler();
+    }
+
+    private static JobDetail job(int i) {
+        JobDetail job = new JobDetail("job-" + i, GROUP, MotechScheduledJob.class);
+        job.getJobDataMap().put("ExternalID", "external-" + i);
+        job.getJobDataMap().put(MotechEvent.EVENT_TYPE_KEY_NAME, "benchmark");
+        return job;
+    }
+
+    private static Trigger trigger(int i) throws Exception {
+        return new CronTrigger("job-" + i, GROUP, "0 " + (i % 60) + " 10 * * ?");
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+}
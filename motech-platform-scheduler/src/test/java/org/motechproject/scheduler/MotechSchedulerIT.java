@@ -10,11 +10,13 @@ import org.motechproject.model.CronSchedulableJob;
 import org.motechproject.model.MotechEvent;
 import org.motechproject.model.RepeatingSchedulableJob;
 import org.motechproject.model.RunOnceSchedulableJob;
+import org.motechproject.model.Time;
 import org.motechproject.server.event.EventListenerRegistry;
 import org.motechproject.server.event.annotations.MotechListenerEventProxy;
 import org.quartz.CronTrigger;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
+import org.quartz.Trigger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.quartz.SchedulerFactoryBean;
 import org.springframework.test.context.ContextConfiguration;
@@ -291,6 +293,26 @@ public class MotechSchedulerIT {
         motechScheduler.scheduleRunOnceJob(schedulableJob);
     }
 
+    @Test
+    public void scheduleRunOnceJobsSkippingPastJobsTest() throws Exception {
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DATE, -1);
+
+        Map<String, Object> pastParams = new HashMap<String, Object>();
+        pastParams.put("JobID", UUID.randomUUID().toString());
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("JobID", UUID.randomUUID().toString());
+
+        int scheduledJobsNum = schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length;
+
+        motechScheduler.scheduleRunOnceJobs(Arrays.asList(
+                new RunOnceSchedulableJob(new MotechEvent("TestEvent", pastParams), calendar.getTime()),
+                new RunOnceSchedulableJob(new MotechEvent("TestEvent", params), new Date((new Date()).getTime() + 5000))));
+
+        assertEquals(scheduledJobsNum + 1, schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
+    }
+
     @Test
     public void testScheduleRepeatingJob() throws Exception {
         String uuidStr = UUID.randomUUID().toString();
@@ -313,6 +335,28 @@ public class MotechSchedulerIT {
         assertEquals(scheduledJobsNum + 1, schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
     }
 
+    @Test
+    public void testScheduleRepeatingJobWithDailyWindow() throws Exception {
+        String uuidStr = UUID.randomUUID().toString();
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("JobID", uuidStr);
+        MotechEvent motechEvent = new MotechEvent("TestEvent", params);
+
+        RepeatingSchedulableJob schedulableJob = new RepeatingSchedulableJob(motechEvent, new Date(), null, 15 * 60 * 1000,
+                                                                             new Time(9, 0), new Time(10, 0));
+
+        motechScheduler.scheduleRepeatingJob(schedulableJob);
+
+        Trigger trigger = schedulerFactoryBean.getScheduler().getTrigger("TestEvent-" + uuidStr +
+                MotechSchedulerServiceImpl.REPEAT_JOB_SUFFIX, MotechSchedulerServiceImpl.JOB_GROUP_NAME);
+        Assert.assertTrue(trigger instanceof DailyWindowTrigger);
+        Calendar nextFireTime = Calendar.getInstance();
+        nextFireTime.setTime(trigger.getNextFireTime());
+        Assert.assertTrue(nextFireTime.get(Calendar.HOUR_OF_DAY) == 9 || nextFireTime.get(Calendar.HOUR_OF_DAY) == 10);
+        Assert.assertEquals(0, nextFireTime.get(Calendar.MINUTE) % 15);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testScheduleRepeatingJobTest_NoStartDate() throws Exception {
         String uuidStr = UUID.randomUUID().toString();
@@ -400,6 +444,21 @@ public class MotechSchedulerIT {
         assertEquals(numOfScheduledJobs - 3, schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
     }
 
+    @Test
+    public void unscheduleJobsGivenJobIdPrefixes() throws Exception {
+
+        motechScheduler.scheduleJob(getJob("testJobId.2.1"));
+        motechScheduler.scheduleJob(getJob("testJobId.2.2"));
+        motechScheduler.scheduleJob(getJob("testJobId.3.1"));
+        motechScheduler.scheduleJob(getJob("testJobId.4.1"));
+
+        int numOfScheduledJobs = schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length;
+
+        motechScheduler.unscheduleAllJobs(Arrays.asList("testJobId.2", "testJobId.3", "testJobId.2.1"));
+
+        assertEquals(numOfScheduledJobs - 3, schedulerFactoryBean.getScheduler().getTriggerNames(MotechSchedulerServiceImpl.JOB_GROUP_NAME).length);
+    }
+
     private CronSchedulableJob getJob(String jobId) {
         Map<String, Object> params = new HashMap<String, Object>();
         String testJobId1 = jobId;
@@ -0,0 +1,96 @@
+package org.motechproject.scheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.gateway.OutboundEventGateway;
+import org.motechproject.model.MotechEvent;
+import org.quartz.JobDetail;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class SchedulerFirePipelineTest {
+    private SchedulerFireEventGateway schedulerFireEventGateway;
+    private SchedulerFirePipeline pipeline;
+
+    @Before
+    public void setUp() {
+        schedulerFireEventGateway = mock(SchedulerFireEventGateway.class);
+        pipeline = new SchedulerFirePipeline(schedulerFireEventGateway, new JobGroups());
+    }
+
+    @Test
+    public void shouldSendJobDataAsEventParametersWithJobName() {
+        pipeline.fire(jobDetail("testEvent-1", "1"), new Date());
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(MotechSchedulerService.JOB_ID_KEY, "testEvent-1");
+        verify(schedulerFireEventGateway).sendEventMessage(new MotechEvent("testEvent", params));
+    }
+
+    @Test
+    public void shouldSendThroughPublisherWhenSet() {
+        OutboundEventGateway publisher = mock(OutboundEventGateway.class);
+        pipeline.setPublisher(publisher);
+
+        pipeline.fire(jobDetail("testEvent-1", "1"), new Date());
+
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(MotechSchedulerService.JOB_ID_KEY, "testEvent-1");
+        verify(publisher).sendEventMessage(new MotechEvent("testEvent", params));
+    }
+
+    @Test
+    public void shouldNotPassGatewayFailureToQuartz() {
+        SchedulerFirePipeline failing = new SchedulerFirePipeline(new SchedulerFireEventGateway() {
+            @Override
+            public void sendEventMessage(MotechEvent motechEvent) {
+                throw new IllegalStateException("broker down");
+            }
+        }, null);
+
+        failing.fire(jobDetail("testEvent-1", "1"), new Date());
+    }
+
+    @Test
+    public void shouldTakeEventTypeOutOfParameters() {
+        JobDetail jobDetail = jobDetail("testEvent-1", "1");
+
+        pipeline.fire(jobDetail, new Date());
+
+        assertEquals(1, jobDetail.getJobDataMap().size());
+    }
+
+    @Test
+    public void shouldSendEventOfEveryMemberOfCoalescedSlot() {
+        CoalescedTriggers coalescedTriggers = new CoalescedTriggers();
+        pipeline.setCoalescedTriggers(coalescedTriggers);
+        Map<String, Object> params = new HashMap<String, Object>();
+        coalescedTriggers.add(MotechSchedulerServiceImpl.JOB_GROUP_NAME, "testEvent", "0 0 9 * * ?",
+                              new CoalescedTriggers.Member("testEvent-1", params, null, null));
+        coalescedTriggers.add(MotechSchedulerServiceImpl.JOB_GROUP_NAME, "testEvent", "0 0 9 * * ?",
+                              new CoalescedTriggers.Member("testEvent-2", params, null, null));
+        String slotName = CoalescedTriggers.slotName("testEvent", "0 0 9 * * ?");
+        JobDetail slot = new JobDetail(slotName, MotechSchedulerServiceImpl.JOB_GROUP_NAME, MotechScheduledJob.class);
+        slot.getJobDataMap().put(CoalescedTriggers.SLOT_KEY, slotName);
+
+        pipeline.fire(slot, new Date());
+
+        params.put(MotechSchedulerService.JOB_ID_KEY, "testEvent-1");
+        verify(schedulerFireEventGateway).sendEventMessage(new MotechEvent("testEvent", params));
+        params.put(MotechSchedulerService.JOB_ID_KEY, "testEvent-2");
+        verify(schedulerFireEventGateway).sendEventMessage(new MotechEvent("testEvent", params));
+    }
+
+    private JobDetail jobDetail(String name, String jobId) {
+        JobDetail jobDetail = new JobDetail(name, MotechSchedulerServiceImpl.JOB_GROUP_NAME, MotechScheduledJob.class);
+        jobDetail.getJobDataMap().put(MotechSchedulerService.JOB_ID_KEY, jobId);
+        jobDetail.getJobDataMap().put(MotechEvent.EVENT_TYPE_KEY_NAME, "testEvent");
+        return jobDetail;
+    }
+}
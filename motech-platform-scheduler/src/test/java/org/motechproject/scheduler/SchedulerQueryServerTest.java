@@ -0,0 +1,78 @@
+package org.motechproject.scheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SchedulerQueryServerTest {
+    private JobIndex index;
+    private SchedulerQueryServer server;
+
+    @Before
+    public void setUp() {
+        index = new JobIndex();
+        MotechSchedulerServiceImpl schedulerService = mock(MotechSchedulerServiceImpl.class);
+        when(schedulerService.getJobIndex()).thenReturn(index);
+        server = new SchedulerQueryServer(new SchedulerQueryService(schedulerService));
+    }
+
+    @Test
+    public void shouldAnswerJobsBySubjectAsJson() throws Exception {
+        index.add("pillreminder-dosage1", "pillreminder", "dosage1", null, null);
+        index.add("pillreminder-dosage2", "pillreminder", "do\"sage2", null, null);
+
+        String json = server.respond("/scheduler/jobs", SchedulerQueryServer.parameters("subject=pillreminder&offset=1"));
+
+        assertEquals("{\"total\":2,\"offset\":1,\"jobs\":[{\"name\":\"pillreminder-dosage2\",\"group\":\"pillreminder\"," +
+                     "\"jobId\":\"do\\\"sage2\",\"nextFireTime\":null}]}", json);
+    }
+
+    @Test
+    public void shouldAnswerJobCountsByGroup() throws Exception {
+        index.add("pillreminder-dosage1", "pillreminder", "dosage1", null, null);
+        index.add("testEvent-1", "default", "1", null, null);
+
+        assertEquals("{\"default\":1,\"pillreminder\":1}", server.respond("/scheduler/groups", SchedulerQueryServer.parameters(null)));
+    }
+
+    @Test
+    public void shouldDecodeQueryParameters() throws Exception {
+        Map<String, String> parameters = SchedulerQueryServer.parameters("prefix=a%2Bb&from=2011-10-17T08%3A00&flag");
+
+        assertEquals("a+b", parameters.get("prefix"));
+        assertEquals("2011-10-17T08:00", parameters.get("from"));
+        assertEquals("", parameters.get("flag"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectWindowWithoutEnd() throws Exception {
+        server.respond("/scheduler/fires", SchedulerQueryServer.parameters("from=2011-10-17T08:00"));
+    }
+
+    @Test
+    public void shouldNotAnswerUnknownPath() throws Exception {
+        assertNull(server.respond("/scheduler/unknown", SchedulerQueryServer.parameters(null)));
+    }
+
+    @Test
+    public void shouldOnlyListenWhenEnabled() {
+        server.setPort(0);
+        server.start();
+        assertEquals(0, server.getPort());
+
+        server.setEnabled(true);
+        server.start();
+        try {
+            assertTrue(server.getPort() > 0);
+        } finally {
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.motechproject.scheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.metrics.MetricsAgent;
+import org.quartz.CronTrigger;
+import org.quartz.SimpleTrigger;
+import org.quartz.Trigger;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SchedulerQueryServiceTest {
+    private JobIndex index;
+    private SchedulerQueryService queryService;
+
+    private Date monday = new GregorianCalendar(2011, 9, 17).getTime();
+
+    @Before
+    public void setUp() {
+        index = new JobIndex();
+        MotechSchedulerServiceImpl schedulerService = mock(MotechSchedulerServiceImpl.class);
+        when(schedulerService.getJobIndex()).thenReturn(index);
+        queryService = new SchedulerQueryService(schedulerService);
+    }
+
+    @Test
+    public void shouldFindJobsBySubject() {
+        index.add("pillreminder-dosage2", "pillreminder", "dosage2", null, null);
+        index.add("pillreminder-dosage1", "pillreminder", "dosage1", null, null);
+        index.add("pillreminder.repeat-dosage1", "pillreminder", "dosage1", null, null);
+
+        List<ScheduledJob> jobs = queryService.findBySubject("pillreminder", 0, 10);
+
+        assertEquals(2, jobs.size());
+        assertEquals("pillreminder-dosage1", jobs.get(0).getName());
+        assertEquals("dosage1", jobs.get(0).getJobId());
+        assertEquals("pillreminder", jobs.get(0).getGroup());
+        assertNull(jobs.get(0).getNextFireTime());
+        assertEquals("pillreminder-dosage2", jobs.get(1).getName());
+        assertEquals(2, queryService.countBySubject("pillreminder"));
+    }
+
+    @Test
+    public void shouldFindJobsByExternalIdAndPrefix() {
+        index.add("pillreminder-dosage1", "pillreminder", "dosage1", null, null);
+        index.add("pillreminder-dosage1-repeat", "pillreminder", "dosage1", null, null);
+        index.add("outbox-dosage10", "default", "dosage10", null, null);
+
+        assertEquals(2, queryService.countByExternalId("dosage1"));
+        assertEquals(3, queryService.countByPrefix("dosage1"));
+        assertEquals("outbox-dosage10", queryService.findByPrefix("dosage1", 0, 1).get(0).getName());
+    }
+
+    @Test
+    public void shouldPageJobs() {
+        for (int i = 0; i < 25; i++) {
+            index.add(String.format("subject-%02d", i), "default", String.format("%02d", i), null, null);
+        }
+
+        List<ScheduledJob> page = queryService.findBySubject("subject", 20, 10);
+
+        assertEquals(5, page.size());
+        assertEquals("subject-20", page.get(0).getName());
+        assertTrue(queryService.findBySubject("subject", 30, 10).isEmpty());
+        assertEquals(25, queryService.count());
+    }
+
+    @Test
+    public void shouldCountFiresOfCronJobsWithinTheirStartAndEnd() throws ParseException {
+        index.add("daily-1", "campaign", "1", null, cron("daily-1", "0 30 8 * * ?", monday, null));
+        index.add("daily-2", "campaign", "2", null, cron("daily-2", "0 30 8 * * ?", at(2, 0), at(4, 8 * 60 + 30)));
+        index.add("hourly-3", "default", "3", null, cron("hourly-3", "0 0 * * * ?", monday, null));
+
+        Map<String, Integer> fires = queryService.countFiresByGroup(monday, at(7, 0));
+
+        assertEquals(Integer.valueOf(7 + 3), fires.get("campaign"));
+        assertEquals(Integer.valueOf(7 * 24), fires.get("default"));
+        assertEquals(7 + 3 + 7 * 24, queryService.countFiresBetween(monday, at(7, 0)));
+    }
+
+    @Test
+    public void shouldCountFiresOfRepeatingJobs() {
+        index.add("repeat-1", "default", "1", null,
+                  new SimpleTrigger("repeat-1", "default", at(0, 8 * 60), null, SimpleTrigger.REPEAT_INDEFINITELY,
+                                    15 * 60 * 1000L));
+
+        assertEquals(4, queryService.countFiresBetween(at(0, 8 * 60), at(0, 9 * 60)));
+    }
+
+    @Test
+    public void shouldFindJobsFiringInWindow() throws ParseException {
+        index.add("morning-1", "default", "1", null, cron("morning-1", "0 0 8 * * ?", monday, null));
+        index.add("evening-2", "default", "2", null, cron("evening-2", "0 0 20 * * ?", monday, null));
+        index.add("unknown-3", "default", "3", null, null);
+
+        List<ScheduledJob> jobs = queryService.findFiringBetween(at(1, 7 * 60), at(1, 9 * 60), 0, 10);
+
+        assertEquals(1, jobs.size());
+        assertEquals("morning-1", jobs.get(0).getName());
+    }
+
+    @Test
+    public void shouldLogGaugesPerGroup() throws ParseException {
+        MetricsAgent metricsAgent = mock(MetricsAgent.class);
+        queryService.setMetricsAgent(metricsAgent);
+        index.add("minutely-1", "campaign", "1", null, cron("minutely-1", "0 * * * * ?", monday, null));
+        index.add("once-2", "campaign", "2", null, null);
+
+        queryService.logGauges();
+
+        verify(metricsAgent).logGauge("motech.scheduler.campaign.jobs", 2);
+        verify(metricsAgent).logGauge("motech.scheduler.campaign.fires-next-hour", 60);
+    }
+
+    private Trigger cron(String name, String cronExpression, Date start, Date end) throws ParseException {
+        CronTrigger trigger = new CronTrigger(name, "default");
+        trigger.setCronExpression(CronExpressionCache.compile(cronExpression));
+        trigger.setStartTime(start);
+        trigger.setEndTime(end);
+        return trigger;
+    }
+
+    private Date at(int day, int minuteOfDay) {
+        return new GregorianCalendar(2011, 9, 17 + day, minuteOfDay / 60, minuteOfDay % 60).getTime();
+    }
+}
@@ -0,0 +1,117 @@
+package org.motechproject.scheduler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.model.CronSchedulableJob;
+import org.motechproject.model.MotechEvent;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Two nodes on one H2 job store: the jobs one node schedules are unscheduled by prefix and by tag on the other, whose
+ * job index was loaded before they were scheduled.
+ */
+public class SharedJobStoreIT {
+    private static final String SUBJECT = "shared-store";
+    private static final String GROUP = MotechSchedulerServiceImpl.JOB_GROUP_NAME;
+
+    private String database;
+    private List<SchedulerFactoryBean> schedulerFactoryBeans = new ArrayList<SchedulerFactoryBean>();
+    private MotechSchedulerServiceImpl node;
+    private MotechSchedulerServiceImpl otherNode;
+
+    @Before
+    public void setUp() throws Exception {
+        database = "shared-store-" + UUID.randomUUID();
+        node = schedulerService();
+        otherNode = schedulerService();
+        node.getJobIndex();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (SchedulerFactoryBean schedulerFactoryBean : schedulerFactoryBeans) {
+            schedulerFactoryBean.destroy();
+        }
+    }
+
+    @Test
+    public void shouldUnscheduleJobsScheduledByAnotherNodeGivenAJobIdPrefix() throws Exception {
+        otherNode.scheduleJob(job("patient-1.morning", null));
+        otherNode.scheduleJob(job("patient-1.evening", null));
+        otherNode.scheduleJob(job("patient-2.morning", null));
+
+        node.unscheduleAllJobs(SUBJECT + "-patient-1");
+
+        assertEquals(Arrays.asList(SUBJECT + "-patient-2.morning"), triggerNames());
+    }
+
+    @Test
+    public void shouldUnscheduleJobsScheduledByAnotherNodeGivenJobIdPrefixes() throws Exception {
+        otherNode.scheduleJob(job("patient-1.morning", null));
+        otherNode.scheduleJob(job("patient-2.morning", null));
+        otherNode.scheduleJob(job("patient-3.morning", null));
+
+        node.unscheduleAllJobs(Arrays.asList("patient-1", "patient-3"));
+
+        assertEquals(Arrays.asList(SUBJECT + "-patient-2.morning"), triggerNames());
+    }
+
+    @Test
+    public void shouldUnscheduleJobsScheduledByAnotherNodeWithATag() throws Exception {
+        otherNode.scheduleJob(job("patient-1.morning", "campaign"));
+        otherNode.scheduleJob(job("patient-2.morning", null));
+
+        node.unscheduleJobsWithTag("campaign");
+
+        assertEquals(Arrays.asList(SUBJECT + "-patient-2.morning"), triggerNames());
+    }
+
+    private List<String> triggerNames() throws Exception {
+        return Arrays.asList(schedulerFactoryBeans.get(0).getScheduler().getTriggerNames(GROUP));
+    }
+
+    private CronSchedulableJob job(String jobId, String tag) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put(MotechSchedulerService.JOB_ID_KEY, jobId);
+        if (tag != null) {
+            params.put(MotechSchedulerService.JOB_TAGS_KEY, tag);
+        }
+        return new CronSchedulableJob(new MotechEvent(SUBJECT, params), "0 0 10 * * ?");
+    }
+
+    private MotechSchedulerServiceImpl schedulerService() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", "shared-store-" + UUID.randomUUID());
+        properties.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount", "1");
+        properties.setProperty("org.quartz.jobStore.class", BatchingJobStoreTX.class.getName());
+        properties.setProperty("org.quartz.jobStore.driverDelegateClass", "org.quartz.impl.jdbcjobstore.StdJDBCDelegate");
+        properties.setProperty("org.quartz.jobStore.dataSource", "motechDS");
+        properties.setProperty("org.quartz.dataSource.motechDS.driver", "org.h2.Driver");
+        properties.setProperty("org.quartz.dataSource.motechDS.URL", "jdbc:h2:mem:" + database +
+                ";DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:quartz_tables_h2.sql'");
+        properties.setProperty("org.quartz.dataSource.motechDS.user", "sa");
+        properties.setProperty("org.quartz.dataSource.motechDS.password", "");
+
+        SchedulerFactoryBean schedulerFactoryBean = new SchedulerFactoryBean();
+        schedulerFactoryBean.setQuartzProperties(properties);
+        schedulerFactoryBean.afterPropertiesSet();
+        schedulerFactoryBeans.add(schedulerFactoryBean);
+
+        MotechSchedulerServiceImpl schedulerService = new MotechSchedulerServiceImpl();
+        ReflectionTestUtils.setField(schedulerService, "schedulerFactoryBean", schedulerFactoryBean);
+        return schedulerService;
+    }
+}
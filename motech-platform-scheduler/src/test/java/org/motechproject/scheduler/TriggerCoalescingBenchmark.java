@@ -0,0 +1,120 @@
+package org.motechproject.scheduler;
+
+import org.motechproject.model.CronSchedulableJob;
+import org.motechproject.model.MotechEvent;
+import org.springframework.scheduling.quartz.SchedulerFactoryBean;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules N daily reminders that all share one cron expression on a RAMJobStore, once with a trigger per job and
+ * once coalesced into one trigger by {@link CoalescedTriggers}, and prints the heap they take and how long it takes
+ * until every reminder of a fire time has been sent.
+ *
+ * Not a unit test; run it with (the argument is the number of jobs, 100000 by default):
+ * mvn test-compile exec:java -Dexec.mainClass=org.motechproject.scheduler.TriggerCoalescingBenchmark -Dexec.classpathScope=test -Dexec.args=100000
+ */
+public class TriggerCoalescingBenchmark {
+    private static final String SUBJECT = "org.motechproject.benchmark.reminder";
+    private static final int FIRE_DELAY_SECONDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+
+        run("one trigger per job", jobs, false);
+        run("coalesced", jobs, true);
+    }
+
+    private static void run(String name, int jobs, boolean coalesce) throws Exception {
+        JobGroup group = new JobGroup("benchmark");
+        group.setSubjectPrefixes(Arrays.asList(SUBJECT));
+        group.setCoalesceCronJobs(coalesce);
+        JobGroups jobGroups = new JobGroups(Collections.singletonList(group));
+        CoalescedTriggers coalescedTriggers = new CoalescedTriggers();
+        CountingGateway gateway = new CountingGateway(jobs);
+
+        SchedulerFirePipeline pipeline = new SchedulerFirePipeline(gateway, jobGroups);
+        pipeline.setCoalescedTriggers(coalescedTriggers);
+        Map<String, Object> schedulerContext = new HashMap<String, Object>();
+        schedulerContext.put(SchedulerFirePipeline.SCHEDULER_CONTEXT_KEY, pipeline);
+
+        Properties properties = new Properties();
+        properties.setProperty("org.quartz.scheduler.instanceName", "coalescing-benchmark-" + coalesce);
+        properties.setProperty("org.quartz.jobStore.class", "org.quartz.simpl.RAMJobStore");
+        properties.setProperty("org.quartz.threadPool.class", "org.quartz.simpl.SimpleThreadPool");
+        properties.setProperty("org.quartz.threadPool.threadCount", "10");
+        SchedulerFactoryBean schedulerFactoryBean = new SchedulerFactoryBean();
+        schedulerFactoryBean.setQuartzProperties(properties);
+        schedulerFactoryBean.setSchedulerContextAsMap(schedulerContext);
+        schedulerFactoryBean.afterPropertiesSet();
+        schedulerFactoryBean.start();
+
+        MotechSchedulerServiceImpl schedulerService = new MotechSchedulerServiceImpl();
+        ReflectionTestUtils.setField(schedulerService, "schedulerFactoryBean", schedulerFactoryBean);
+        ReflectionTestUtils.setField(schedulerService, "jobGroups", jobGroups);
+        ReflectionTestUtils.setField(schedulerService, "coalescedTriggers", coalescedTriggers);
+
+        Calendar fireTime = Calendar.getInstance();
+        fireTime.add(Calendar.SECOND, FIRE_DELAY_SECONDS);
+        String cronExpression = String.format("%d %d %d * * ?", fireTime.get(Calendar.SECOND),
+                                              fireTime.get(Calendar.MINUTE), fireTime.get(Calendar.HOUR_OF_DAY));
+
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        for (int i = 0; i < jobs; i++) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put(MotechSchedulerService.JOB_ID_KEY, "patient-" + i);
+            schedulerService.scheduleJob(new CronSchedulableJob(new MotechEvent(SUBJECT, params), cronExpression));
+        }
+        long scheduling = millisSince(start);
+        long heap = usedHeap() - heapBefore;
+        System.out.println(String.format("%s: scheduled %d jobs in %d ms, %d MB of heap, %d Quartz triggers", name,
+                                         jobs, scheduling, heap / (1024 * 1024),
+                                         schedulerFactoryBean.getScheduler().getTriggerNames(group.getName()).length));
+
+        if (!gateway.sent.await(FIRE_DELAY_SECONDS + 300, TimeUnit.SECONDS)) {
+            System.out.println(String.format("%s: only %d of %d reminders sent", name, jobs - gateway.sent.getCount(),
+                                             jobs));
+        } else {
+            long late = System.currentTimeMillis() - fireTime.getTimeInMillis();
+            System.out.println(String.format("%s: last reminder sent %d ms after the fire time", name, late));
+        }
+
+        schedulerFactoryBean.destroy();
+        jobGroups.shutdown();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static class CountingGateway implements SchedulerFireEventGateway {
+        final CountDownLatch sent;
+
+        CountingGateway(int events) {
+            sent = new CountDownLatch(events);
+        }
+
+        @Override
+        public void sendEventMessage(MotechEvent motechEvent) {
+            sent.countDown();
+        }
+    }
+}
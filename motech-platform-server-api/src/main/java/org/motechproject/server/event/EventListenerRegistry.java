@@ -39,6 +39,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -48,7 +49,12 @@ import java.util.*;
 public class EventListenerRegistry {
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
+    // Number of getListeners calls between two reports of the resolution cache statistics
+    private static final int CACHE_REPORT_INTERVAL = 1000;
+
     private EventListenerTree listenerTree = new EventListenerTree();
+    private ListenerResolutionCache resolutionCache = new ListenerResolutionCache();
+    private final AtomicLong lookups = new AtomicLong();
 
     @Autowired
     private MetricsAgent metricsAgent;
@@ -63,6 +69,9 @@ public class EventListenerRegistry {
     /**
      * Register an event listener to be notified when events of a given type are received via the Server JMS Event Queue
      *
+     * A subject may use "*" in place of a single path element ("org.motechproject.*.fired") and "#" in place of any
+     * number of path elements ("org.motechproject.#"). A trailing "*" matches the subject and everything below it.
+     *
      * @param listener the listener instance
      * @param subjects the event types that a listener is interested in
      */
@@ -102,20 +111,77 @@ public class EventListenerRegistry {
         String timer = "motech.listener-registry.addListener";
         metricsAgent.startTimer(timer);
         listenerTree.addListener(listener, subject);
+        resolutionCache.invalidate(subject);
+        metricsAgent.stopTimer(timer);
+    }
+
+    /**
+     * Stop notifying an event listener of events of the given types
+     *
+     * @param listener the listener instance
+     * @param subjects the event types the listener was registered for
+     */
+    public void unregisterListener(org.motechproject.server.event.EventListener listener, List<String> subjects) {
+        if (subjects == null) {
+            String errorMessage = "Invalid attempt to unregister for null subjects";
+            log.error(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        for (String subject : subjects) {
+            unregisterListener(listener, subject);
+        }
+    }
+
+    public void unregisterListener(org.motechproject.server.event.EventListener listener, String subject) {
+        if (listener == null) {
+            String errorMessage = "Invalid attempt to unregister a null EventListener";
+            log.error(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        if (subject == null) {
+            String errorMessage = "Invalid attempt to unregister for null subject";
+            log.error(errorMessage);
+            throw new IllegalArgumentException(errorMessage);
+        }
+
+        String timer = "motech.listener-registry.removeListener";
+        metricsAgent.startTimer(timer);
+        if (listenerTree.removeListener(listener, subject)) {
+            resolutionCache.invalidate(subject);
+        } else {
+            log.info(String.format("Listener %s was not registered for subject %s", listener.getIdentifier(), subject));
+        }
         metricsAgent.stopTimer(timer);
     }
 
     /**
      * Retrieve a list of event listeners for a given event type. If there are no listeners, an empty list is
-     * returned.
+     * returned. The returned set is shared between callers and can not be modified.
+     *
+     * Resolutions are cached per subject until a registration affecting the subject changes, and only lookups that miss
+     * the cache are timed.
+     *
      * @param subject The event type that you are seeking listeners for
      * @return A list of scheduled event listeners that are interested in that event
      */
     public Set<org.motechproject.server.event.EventListener> getListeners(String subject) {
-        String timer = "motech.listener-registry.getListeners";
-        metricsAgent.startTimer(timer);
-        Set<org.motechproject.server.event.EventListener> ret = listenerTree.getListeners(subject);
-        metricsAgent.stopTimer(timer);
+        Set<org.motechproject.server.event.EventListener> ret = resolutionCache.get(subject);
+
+        if (ret == null) {
+            String timer = "motech.listener-registry.getListeners";
+            metricsAgent.startTimer(timer);
+            long generation = resolutionCache.getGeneration();
+            ret = listenerTree.getListeners(subject);
+            resolutionCache.put(subject, ret, generation);
+            metricsAgent.stopTimer(timer);
+        }
+
+        if (lookups.incrementAndGet() % CACHE_REPORT_INTERVAL == 0) {
+            metricsAgent.logGauge("motech.listener-registry.cache.hit-ratio", resolutionCache.takeHitPercentage());
+            metricsAgent.logGauge("motech.listener-registry.cache.size", resolutionCache.size());
+        }
 
         return ret;
     }
@@ -4,6 +4,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
 * Created by IntelliJ IDEA.
@@ -11,19 +13,38 @@ import java.util.*;
 * Date: 4/9/11
 * Time: 10:02 PM
 * To change this template use File | Settings | File Templates.
+*
+* Subject index used by the {@link EventListenerRegistry}. Children are kept in a hash map keyed by path element and
+* every node carries the immutable set of listeners an event ending at that node resolves to, so a lookup is a walk
+* down the subject with no locking and no set copying. Registration and removal are rare and are serialized on the
+* root of the tree; they rebuild the affected nodes' sets and publish them through volatile writes.
+*
+* Subjects with a wildcard before their last path element ("org.motechproject.*.fired", "org.#.fired") can not be
+* stored as a path. They are compiled into {@link SubjectPattern}s held by the root and matched against the subject on
+* every lookup; the registry memoizes the result in its {@link ListenerResolutionCache}.
 */
 class EventListenerTree
 {
     private final Logger log = LoggerFactory.getLogger(this.getClass());
 
-    private final String SPLIT_REGEX = "\\.";
+    private static final char PATH_SEPARATOR = '.';
 
-    private List<EventListenerTree> children = new ArrayList<EventListenerTree>();
-    private EventListenerTree parent;
+    private final ConcurrentMap<String, EventListenerTree> children = new ConcurrentHashMap<String, EventListenerTree>();
+    private final EventListenerTree parent;
 
-    private String pathElement;
-    private Set<EventListener> listeners;
-    private Set<EventListener> wildcardListeners;
+    private final String pathElement;
+
+    // Listeners registered for exactly this subject and for this subject's wildcard ("subject.*")
+    private volatile Set<EventListener> listeners = Collections.emptySet();
+    private volatile Set<EventListener> wildcardListeners = Collections.emptySet();
+
+    // Wildcard listeners of this node and all of its ancestors: what a subject falling off the tree below here gets
+    private volatile Set<EventListener> inheritedWildcardListeners = Collections.emptySet();
+    // listeners + inheritedWildcardListeners: what a subject ending at this node gets
+    private volatile Set<EventListener> resolvedListeners = Collections.emptySet();
+
+    // Root only: listeners registered with a pattern
+    private volatile Map<SubjectPattern, Set<EventListener>> patternListeners = Collections.emptyMap();
 
     public EventListenerTree() {
         this.pathElement = null;
@@ -33,6 +54,11 @@ class EventListenerTree
     public EventListenerTree(String pathElement, EventListenerTree parent) {
         this.pathElement = pathElement;
         this.parent = parent;
+
+        if (parent != null) {
+            this.inheritedWildcardListeners = parent.inheritedWildcardListeners;
+            this.resolvedListeners = parent.inheritedWildcardListeners;
+        }
     }
 
     public String getPathElement() {
@@ -63,202 +89,179 @@ class EventListenerTree
      * @param listener
      * @param subject
      */
-    public void addListener(EventListener listener, String subject)
+    public synchronized void addListener(EventListener listener, String subject)
     {
-        if (subject == null) {
-            throw new IllegalArgumentException("Cannot add listener for null subject");
-        }
-
-        int asteriskLocation = subject.indexOf("*");
-        if (asteriskLocation != -1 && (asteriskLocation  + 1)!= subject.length()) {
-            throw new IllegalArgumentException("Wildcard must be last element of subject: " + subject);
-        }
+        String[] path = parseSubject(subject);
 
-        if (subject.indexOf("..") != -1) {
-            throw new IllegalArgumentException("Subject can not contain an empty path segment: " + subject);
+        if (SubjectPattern.isPattern(path)) {
+            addPatternListener(listener, new SubjectPattern(subject, path));
+        } else if (isWildcard(path)) {
+            getOrCreateNode(path, path.length - 1).addWildcardListener(listener);
+        } else {
+            getOrCreateNode(path, path.length).addListener(listener);
         }
+    }
 
-        // Split the subject into it's path components
-        String[] path = subject.split(SPLIT_REGEX);
-
-        if (path[path.length - 1].indexOf("*") != -1 && path[path.length - 1].length() > 1) {
-            throw new IllegalArgumentException("Wildcard can not be mixed with characters");
-        }
+    /**
+     * Remove a listener previously registered for the given subject. Branches of the tree left without listeners are
+     * pruned.
+     *
+     * @param listener
+     * @param subject
+     * @return true if the listener was registered for the subject
+     */
+    public synchronized boolean removeListener(EventListener listener, String subject) {
+        String[] path = parseSubject(subject);
 
-        EventListenerTree child = getChild(path[0]);
-        if (child == null) {
-            child = new EventListenerTree(path[0], this);
-            addChild(child);
+        if (SubjectPattern.isPattern(path)) {
+            return removePatternListener(listener, new SubjectPattern(subject, path));
         }
 
-        child.addListener(listener, path, 0);
-    }
-
-    private void addListener(EventListener listener, String[] path, int pathLevel) {
-        // I've walked to the end of the path.  Assign this listener to this node
-        if ((pathLevel + 1) == path.length) {
-            addListener(listener);
-            return;
-        }
+        boolean wildcard = isWildcard(path);
 
-        // If the next step is the end of the path and it's a wildcard save listener here
-        if ((pathLevel + 2) == path.length && "*".equals(path[path.length - 1])) {
-            addWildcardListener(listener);
-            return;
+        EventListenerTree node = getNode(path, wildcard ? path.length - 1 : path.length);
+        if (node == null) {
+            return false;
         }
 
-        EventListenerTree child = getChild(path[pathLevel + 1]);
-        if (child == null) {
-            child = new EventListenerTree(path[pathLevel + 1], this);
-            addChild(child);
+        boolean removed = wildcard ? node.removeWildcardListener(listener) : node.removeListener(listener);
+        if (removed) {
+            node.prune();
         }
 
-        child.addListener(listener, path, (pathLevel + 1));
+        return removed;
     }
 
     /**
-     * Given a subject path return all listeners registered for it
+     * Given a subject path return all listeners registered for it. The returned set is shared and can not be modified.
      *
      * @param subject
      * @return
      */
     public Set<EventListener> getListeners(String subject) {
-        // Split the subject into it's path components
-        String[] path = subject.split(SPLIT_REGEX);
+        Set<EventListener> ret = getTreeListeners(subject);
 
-        EventListenerTree child = getChild(path[0]);
-        if (child == null) {
-            return Collections.<EventListener>emptySet();
+        if (patternListeners.isEmpty()) {
+            return ret;
         }
 
-        return child.getListeners(path, 0);
+        return union(ret, getPatternListeners(subject));
     }
 
-    private Set<EventListener> getListeners(String[] path, int pathLevel) {
-        Set<EventListener> ret;
+    private Set<EventListener> getTreeListeners(String subject) {
+        EventListenerTree node = this;
+        int length = subject.length();
+        int start = 0;
 
-        if ((pathLevel + 1) == path.length) {
-            return getAllListeners();
-        }
-
-        EventListenerTree child = getChild(path[pathLevel + 1]);
-        if (child == null) {
-            return getWildcardListeners();
-        }
-
-        ret = child.getListeners(path, (pathLevel + 1));
-        ret.addAll(getWildcardListeners());
+        while (true) {
+            int end = subject.indexOf(PATH_SEPARATOR, start);
+            if (end == -1) {
+                end = length;
+            }
 
-        return ret;
-    }
+            EventListenerTree child = node.children.get(subject.substring(start, end));
+            if (child == null) {
+                return node.inheritedWildcardListeners;
+            }
 
-    public boolean  hasListener(String subject) {
-         // Split the subject into it's path components
-        String[] path = subject.split(SPLIT_REGEX);
+            if (end >= length - 1) {
+                return child.resolvedListeners;
+            }
 
-        EventListenerTree child = getChild(path[0]);
-        if (child == null) {
-            return false;
+            node = child;
+            start = end + 1;
         }
-
-        return child.hasListener(path, 0);
     }
 
-    private boolean hasListener(String[] path, int pathLevel) {
-        if (hasWildcardListeners()) {
-            return true;
-        }
-
-        if ((pathLevel + 1) == path.length) {
-            return listeners != null && !listeners.isEmpty();
-        }
-
-        EventListenerTree child = getChild(path[pathLevel + 1]);
-        if (child == null) {
-            return false;
-        }
-
-        return child.hasListener(path, (pathLevel + 1));
+    public boolean hasListener(String subject) {
+        return !getListeners(subject).isEmpty();
     }
 
     public int getListenerCount(String subject) {
-         // Split the subject into it's path components
-        String[] path = subject.split(SPLIT_REGEX);
+        return getListeners(subject).size();
+    }
 
-        EventListenerTree child = getChild(path[0]);
-        if (child == null) {
-            return 0;
+    private Set<EventListener> getPatternListeners(String subject) {
+        String[] path = SubjectPattern.split(subject);
+        Set<EventListener> ret = null;
+
+        for (Map.Entry<SubjectPattern, Set<EventListener>> entry : patternListeners.entrySet()) {
+            if (entry.getKey().matches(path)) {
+                if (ret == null) {
+                    ret = new HashSet<EventListener>();
+                }
+                ret.addAll(entry.getValue());
+            }
         }
 
-        return child.getListenerCount(path, 0);
+        return ret == null ? Collections.<EventListener>emptySet() : Collections.unmodifiableSet(ret);
     }
 
-    private int getListenerCount(String[] path, int pathLevel) {
-        int ret = 0;
-
-        if ((pathLevel + 1) == path.length) {
-            return getAllListeners().size();
+    private void addPatternListener(EventListener listener, SubjectPattern pattern) {
+        Set<EventListener> current = patternListeners.get(pattern);
+        if (current == null) {
+            current = Collections.emptySet();
         }
 
-        EventListenerTree child = getChild(path[pathLevel + 1]);
-        if (child == null) {
-            return getWildcardListeners().size();
+        if (current.contains(listener)) {
+            log.info(String.format("Ignoring second request to register listener %s for subject %s",
+                                   listener.getIdentifier(), pattern));
+            return;
         }
 
-        ret = getWildcardListeners().size();
-
-        return ret + child.getListeners(path, (pathLevel + 1)).size();
+        Map<SubjectPattern, Set<EventListener>> updated = new HashMap<SubjectPattern, Set<EventListener>>(patternListeners);
+        updated.put(pattern, with(current, listener));
+        patternListeners = Collections.unmodifiableMap(updated);
     }
 
-    private Set<EventListener> getListeners() {
-        Set<EventListener> ret = new HashSet<EventListener>();
-
-        if (listeners == null) {
-            listeners = new HashSet<EventListener>();
+    private boolean removePatternListener(EventListener listener, SubjectPattern pattern) {
+        Set<EventListener> current = patternListeners.get(pattern);
+        if (current == null || !current.contains(listener)) {
+            return false;
         }
 
-        ret.addAll(listeners);
-
-        return ret;
+        Map<SubjectPattern, Set<EventListener>> updated = new HashMap<SubjectPattern, Set<EventListener>>(patternListeners);
+        Set<EventListener> remaining = without(current, listener);
+        if (remaining.isEmpty()) {
+            updated.remove(pattern);
+        } else {
+            updated.put(pattern, remaining);
+        }
+        patternListeners = updated.isEmpty() ? Collections.<SubjectPattern, Set<EventListener>>emptyMap()
+                                             : Collections.unmodifiableMap(updated);
+        return true;
     }
 
-    private Set<EventListener> getAllListeners() {
-        Set<EventListener> ret = new HashSet<EventListener>();
+    private EventListenerTree getNode(String[] path, int depth) {
+        EventListenerTree node = this;
 
-        if (listeners == null) {
-            listeners = new HashSet<EventListener>();
+        for (int i = 0; i < depth && node != null; i++) {
+            node = node.children.get(path[i]);
         }
 
-        if (wildcardListeners == null) {
-            wildcardListeners = new HashSet<EventListener>();
-        }
-
-        ret.addAll(listeners);
-        ret.addAll(wildcardListeners);
-
-        return ret;
+        return node;
     }
 
-    private Set<EventListener> getWildcardListeners() {
-        Set<EventListener> ret = new HashSet<EventListener>();
+    private EventListenerTree getOrCreateNode(String[] path, int depth) {
+        EventListenerTree node = this;
 
-        if (wildcardListeners == null) {
-            wildcardListeners = new HashSet<EventListener>();
+        for (int i = 0; i < depth; i++) {
+            EventListenerTree child = node.children.get(path[i]);
+            if (child == null) {
+                child = new EventListenerTree(path[i], node);
+                node.children.put(path[i], child);
+            }
+            node = child;
         }
 
-        ret.addAll(wildcardListeners);
-
-        return ret;
+        return node;
     }
 
     private void addListener(EventListener listener) {
-        if (listeners == null) {
-            listeners = new HashSet<EventListener>();
-        }
-
         // Don't allow duplicate listener registrations Set will handle this for me, but then I can't log it
         if (!listeners.contains(listener)) {
-            listeners.add(listener); // Add the listener to the list
+            listeners = with(listeners, listener);
+            resolvedListeners = union(listeners, inheritedWildcardListeners);
         } else {
             log.info(String.format("Ignoring second request to register listener %s for subject %s",
                                    listener.getIdentifier(), getSubject()));
@@ -266,44 +269,119 @@ class EventListenerTree
     }
 
     private void addWildcardListener(EventListener listener) {
-        if (wildcardListeners == null) {
-            wildcardListeners = new HashSet<EventListener>();
-        }
-
         // Don't allow duplicate listener registrations Set will handle this for me, but then I can't log it
         if (!wildcardListeners.contains(listener)) {
-            wildcardListeners.add(listener); // Add the listener to the list
+            wildcardListeners = with(wildcardListeners, listener);
+            refreshWildcardListeners();
         } else {
             log.info(String.format("Ignoring second request to register wildcardListeners %s for subject %s.*",
                                    listener.getIdentifier(), getSubject()));
         }
     }
 
-    private boolean hasWildcardListeners() {
-        return wildcardListeners != null && !wildcardListeners.isEmpty();
+    private boolean removeListener(EventListener listener) {
+        if (!listeners.contains(listener)) {
+            return false;
+        }
+
+        listeners = without(listeners, listener);
+        resolvedListeners = union(listeners, inheritedWildcardListeners);
+        return true;
     }
 
-    private EventListenerTree getChild(String pathElement) {
-        EventListenerTree ret = null;
+    private boolean removeWildcardListener(EventListener listener) {
+        if (!wildcardListeners.contains(listener)) {
+            return false;
+        }
 
-        if (children != null) {
-            for (EventListenerTree n : children) {
-                if (n.getPathElement().equals(pathElement)) {
-                    ret = n;
-                    break;
-                }
+        wildcardListeners = without(wildcardListeners, listener);
+        refreshWildcardListeners();
+        return true;
+    }
+
+    /**
+     * Recompute the inherited wildcard listeners of this node and everything below it
+     */
+    private void refreshWildcardListeners() {
+        Set<EventListener> inherited = parent == null ? Collections.<EventListener>emptySet()
+                                                      : parent.inheritedWildcardListeners;
+
+        inheritedWildcardListeners = union(wildcardListeners, inherited);
+        resolvedListeners = union(listeners, inheritedWildcardListeners);
+
+        for (EventListenerTree child : children.values()) {
+            child.refreshWildcardListeners();
+        }
+    }
+
+    /**
+     * Walk up from this node removing nodes that no longer hold any listeners or children
+     */
+    private void prune() {
+        EventListenerTree node = this;
+
+        while (node.parent != null && node.children.isEmpty()
+               && node.listeners.isEmpty() && node.wildcardListeners.isEmpty()) {
+            node.parent.children.remove(node.pathElement);
+            node = node.parent;
+        }
+    }
+
+    private static boolean isWildcard(String[] path) {
+        return SubjectPattern.isWildcard(path[path.length - 1]);
+    }
+
+    /**
+     * Validate a subject and split it into it's path components
+     */
+    private static String[] parseSubject(String subject) {
+        if (subject == null) {
+            throw new IllegalArgumentException("Cannot add listener for null subject");
+        }
+
+        if (subject.indexOf("..") != -1) {
+            throw new IllegalArgumentException("Subject can not contain an empty path segment: " + subject);
+        }
+
+        String[] path = SubjectPattern.split(subject);
+
+        for (String element : path) {
+            boolean hasWildcard = element.indexOf(SubjectPattern.SINGLE_WILDCARD) != -1
+                                  || element.indexOf(SubjectPattern.MULTI_WILDCARD) != -1;
+            if (hasWildcard && element.length() > 1) {
+                throw new IllegalArgumentException("Wildcard can not be mixed with characters: " + subject);
             }
         }
 
-        return ret;
+        return path;
     }
 
-    private void addChild(EventListenerTree child) {
-        if (children == null) {
-            children = new ArrayList<EventListenerTree>();
+    private static Set<EventListener> with(Set<EventListener> set, EventListener listener) {
+        Set<EventListener> ret = new HashSet<EventListener>(set);
+        ret.add(listener);
+        return Collections.unmodifiableSet(ret);
+    }
+
+    private static Set<EventListener> without(Set<EventListener> set, EventListener listener) {
+        if (set.size() == 1) {
+            return Collections.emptySet();
         }
 
-        children.add(child);
+        Set<EventListener> ret = new HashSet<EventListener>(set);
+        ret.remove(listener);
+        return Collections.unmodifiableSet(ret);
     }
 
+    private static Set<EventListener> union(Set<EventListener> a, Set<EventListener> b) {
+        if (b.isEmpty()) {
+            return a;
+        }
+        if (a.isEmpty()) {
+            return b;
+        }
+
+        Set<EventListener> ret = new HashSet<EventListener>(a);
+        ret.addAll(b);
+        return Collections.unmodifiableSet(ret);
+    }
 }
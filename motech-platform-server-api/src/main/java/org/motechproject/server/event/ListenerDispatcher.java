@@ -0,0 +1,289 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.server.event;
+
+import org.motechproject.metrics.MetricsAgent;
+import org.motechproject.model.MotechEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands an event to all of it's listeners in-process, on a bounded pool of worker threads.
+ *
+ * The caller, normally the JMS consumer thread relaying the event, runs one of the listeners itself and then waits
+ * for the others, so the message is only acknowledged once every listener has finished. When the pool's queue is full
+ * the caller runs the rejected listener too, which keeps it from taking more messages off the queue until the pool
+ * catches up.
+ *
+ * Optionally the number of concurrent invocations of any one listener is capped, and events carrying the configured
+ * ordering key parameter are serialized per key value: two events with the same key are never handled at the same
+ * time and are handled in the order they reach the dispatcher.
+ */
+public class ListenerDispatcher {
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private static final int ORDERING_LOCK_STRIPES = 64;
+
+    @Autowired
+    private MetricsAgent metricsAgent;
+
+    private int poolSize = 10;
+    private int queueCapacity = 100;
+    private int maxConcurrencyPerListener = 0;
+    private String orderingKeyParameter;
+
+    private ThreadPoolExecutor executor;
+    private final ConcurrentMap<String, Semaphore> listenerPermits = new ConcurrentHashMap<String, Semaphore>();
+    private final Lock[] orderingLocks = new Lock[ORDERING_LOCK_STRIPES];
+
+    public ListenerDispatcher() {
+        for (int i = 0; i < orderingLocks.length; i++) {
+            orderingLocks[i] = new ReentrantLock(true);
+        }
+    }
+
+    public ListenerDispatcher(MetricsAgent metricsAgent) {
+        this();
+        this.metricsAgent = metricsAgent;
+    }
+
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                                          new ArrayBlockingQueue<Runnable>(queueCapacity),
+                                          new DispatcherThreadFactory(),
+                                          new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Invoke every listener with the event and wait for all of them to finish
+     *
+     * @param event the event being relayed
+     * @param listeners the listeners of the event's subject
+     * @return the listeners that threw, mapped to what they threw; empty if all of them succeeded
+     */
+    public Map<EventListener, Throwable> dispatch(MotechEvent event, Collection<EventListener> listeners) {
+        Lock orderingLock = getOrderingLock(event);
+
+        if (orderingLock == null) {
+            return invokeAll(event, listeners);
+        }
+
+        orderingLock.lock();
+        try {
+            return invokeAll(event, listeners);
+        } finally {
+            orderingLock.unlock();
+        }
+    }
+
+    private Map<EventListener, Throwable> invokeAll(MotechEvent event, Collection<EventListener> listeners) {
+        ThreadPoolExecutor pool = executor;
+        if (pool == null) {
+            throw new IllegalStateException("ListenerDispatcher has not been started");
+        }
+
+        Map<EventListener, Throwable> failures = new HashMap<EventListener, Throwable>();
+        Map<EventListener, Future<?>> pending = new HashMap<EventListener, Future<?>>();
+        EventListener callerListener = null;
+
+        for (EventListener listener : listeners) {
+            if (callerListener == null) {
+                callerListener = listener;
+            } else {
+                pending.put(listener, pool.submit(new ListenerInvocation(listener, event)));
+            }
+        }
+
+        if (callerListener != null) {
+            try {
+                new ListenerInvocation(callerListener, event).call();
+            } catch (Exception e) {
+                failures.put(callerListener, e);
+            }
+        }
+
+        boolean interrupted = false;
+        for (Map.Entry<EventListener, Future<?>> entry : pending.entrySet()) {
+            while (true) {
+                try {
+                    entry.getValue().get();
+                    break;
+                } catch (ExecutionException e) {
+                    failures.put(entry.getKey(), e.getCause());
+                    break;
+                } catch (InterruptedException e) {
+                    // Keep waiting, the message must not be acknowledged before every listener is done
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        for (Map.Entry<EventListener, Throwable> failure : failures.entrySet()) {
+            log.error(String.format("Listener %s failed to handle event %s", failure.getKey().getIdentifier(),
+                                    event.getSubject()), failure.getValue());
+        }
+
+        return failures;
+    }
+
+    private Lock getOrderingLock(MotechEvent event) {
+        if (orderingKeyParameter == null) {
+            return null;
+        }
+
+        Object key = event.getParameters().get(orderingKeyParameter);
+        if (key == null) {
+            return null;
+        }
+
+        return orderingLocks[(key.hashCode() & Integer.MAX_VALUE) % orderingLocks.length];
+    }
+
+    private Semaphore getPermits(EventListener listener) {
+        if (maxConcurrencyPerListener <= 0) {
+            return null;
+        }
+
+        Semaphore permits = listenerPermits.get(listener.getIdentifier());
+        if (permits == null) {
+            Semaphore created = new Semaphore(maxConcurrencyPerListener, true);
+            permits = listenerPermits.putIfAbsent(listener.getIdentifier(), created);
+            if (permits == null) {
+                permits = created;
+            }
+        }
+
+        return permits;
+    }
+
+    private class ListenerInvocation implements Callable<Object> {
+        private final EventListener listener;
+        private final MotechEvent event;
+
+        ListenerInvocation(EventListener listener, MotechEvent event) {
+            this.listener = listener;
+            this.event = event;
+        }
+
+        @Override
+        public Object call() throws Exception {
+            Semaphore permits = getPermits(listener);
+            if (permits != null) {
+                permits.acquire();
+            }
+
+            String timer = listener.getIdentifier() + ".handler." + event.getSubject();
+            try {
+                metricsAgent.startTimer(timer);
+                metricsAgent.logEvent(event.getSubject());
+                listener.handle(event);
+            } finally {
+                metricsAgent.stopTimer(timer);
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private static class DispatcherThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "motech-listener-dispatcher-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public int getMaxConcurrencyPerListener() {
+        return maxConcurrencyPerListener;
+    }
+
+    /**
+     * @param maxConcurrencyPerListener the most invocations of one listener that may run at once, 0 for no limit
+     */
+    public void setMaxConcurrencyPerListener(int maxConcurrencyPerListener) {
+        this.maxConcurrencyPerListener = maxConcurrencyPerListener;
+    }
+
+    public String getOrderingKeyParameter() {
+        return orderingKeyParameter;
+    }
+
+    /**
+     * @param orderingKeyParameter the event parameter whose value events are serialized on, null to not order events
+     */
+    public void setOrderingKeyParameter(String orderingKeyParameter) {
+        this.orderingKeyParameter = orderingKeyParameter;
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.server.event;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Memoizes the listeners each concrete subject resolves to, wildcard listeners included, so relaying a subject that
+ * has been seen before is a single map read. When a listener is registered or unregistered only the cached subjects
+ * that match the registration's subject are evicted.
+ *
+ * A lookup that misses records the generation before asking the tree and stores its result with it. If a registration
+ * change happened in the meantime the result may be stale and is dropped again, so the cache never holds an entry older
+ * than the last change that affects it.
+ */
+class ListenerResolutionCache {
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final ConcurrentMap<String, Set<EventListener>> resolved = new ConcurrentHashMap<String, Set<EventListener>>();
+    private final int maxSize;
+
+    private volatile long generation;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ListenerResolutionCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ListenerResolutionCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param subject a concrete event subject
+     * @return the cached listeners for the subject, or null if it has not been resolved since it was last affected by a
+     * registration change
+     */
+    public Set<EventListener> get(String subject) {
+        Set<EventListener> ret = resolved.get(subject);
+
+        if (ret == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        return ret;
+    }
+
+    /**
+     * @return the generation to pass to {@link #put} for a lookup started now
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache the listeners a subject resolved to
+     *
+     * @param subject a concrete event subject
+     * @param listeners the listeners the subject resolved to
+     * @param lookupGeneration the value of {@link #getGeneration} taken before the listeners were resolved
+     */
+    public void put(String subject, Set<EventListener> listeners, long lookupGeneration) {
+        if (resolved.size() >= maxSize) {
+            resolved.clear();
+        }
+
+        resolved.put(subject, listeners);
+
+        if (generation != lookupGeneration) {
+            resolved.remove(subject, listeners);
+        }
+    }
+
+    /**
+     * Evict every cached subject a listener registered for the given subject would receive. Must be called after the
+     * tree has been changed.
+     *
+     * @param registeredSubject the subject, possibly with wildcards, a listener was registered or unregistered for
+     */
+    public synchronized void invalidate(String registeredSubject) {
+        generation++;
+
+        SubjectPattern pattern = SubjectPattern.compile(registeredSubject);
+        for (String subject : resolved.keySet()) {
+            if (pattern.matches(SubjectPattern.split(subject))) {
+                resolved.remove(subject);
+            }
+        }
+    }
+
+    public int size() {
+        return resolved.size();
+    }
+
+    /**
+     * @return the percentage of lookups that were served from the cache since the last call
+     */
+    public long takeHitPercentage() {
+        long hitCount = hits.getAndSet(0);
+        long lookupCount = hitCount + misses.getAndSet(0);
+
+        return lookupCount == 0 ? 0 : (hitCount * 100) / lookupCount;
+    }
+}
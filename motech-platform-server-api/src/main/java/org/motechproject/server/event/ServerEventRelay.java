@@ -28,6 +28,9 @@ public class ServerEventRelay implements EventRelay
     @Autowired
     private MetricsAgent metricsAgent;
 
+    @Autowired(required = false)
+    private ListenerDispatcher listenerDispatcher;
+
     private static final String MESSAGE_DESTINATION = "message-destination";
     private static final String ORIGINAL_PARAMETERS = "original-parameters";
 
@@ -40,6 +43,11 @@ public class ServerEventRelay implements EventRelay
         this.metricsAgent = metricsAgent;
     }
 
+    public ServerEventRelay(OutboundEventGateway outboundEventGateway, EventListenerRegistry eventListenerRegistry, MetricsAgent metricsAgent, ListenerDispatcher listenerDispatcher) {
+        this(outboundEventGateway, eventListenerRegistry, metricsAgent);
+        this.listenerDispatcher = listenerDispatcher;
+    }
+
     // @TODO either relayEvent should be made private, or this method moved out to it's own class.
     public void sendEventMessage(MotechEvent event) {
         log.info("Sending event: " + event.getSubject());
@@ -102,7 +110,14 @@ public class ServerEventRelay implements EventRelay
         } else {
         	
         	// Is there a single listener?
-	        if (listeners.size() > 1) {
+	        if (listeners.size() > 1 && listenerDispatcher != null) {
+                // Fan out in-process. Only the listeners that failed get a message of their own, so they are retried
+                // individually without running the others again
+                Map<EventListener, Throwable> failures = listenerDispatcher.dispatch(event, listeners);
+                if (!failures.isEmpty()) {
+                    splitEvent(event, failures.keySet());
+                }
+	        } else if (listeners.size() > 1) {
 	        	// We need to split the message for each listener to ensure the work units
 	        	// are completed individually. Therefore, if a message fails it will be
 	        	// re-distributed to another server without being lost
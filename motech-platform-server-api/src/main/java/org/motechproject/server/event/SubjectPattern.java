@@ -0,0 +1,188 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.server.event;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled listener subject. The {@link EventListenerTree} keeps the subjects with wildcards it can not store as a
+ * single path in this form, and the {@link ListenerResolutionCache} uses it to find the subjects a registration affects.
+ *
+ * "*" stands for exactly one path element and "#" for any number of path elements, including none, so
+ * "org.motechproject.*.fired" matches "org.motechproject.scheduler.fired" and "org.#.fired" matches both "org.fired"
+ * and "org.motechproject.scheduler.fired". A trailing "*" keeps the meaning it has in the tree, the subject itself and
+ * everything below it, and is compiled as "#".
+ */
+final class SubjectPattern {
+    static final String SINGLE_WILDCARD = "*";
+    static final String MULTI_WILDCARD = "#";
+
+    private static final char PATH_SEPARATOR = '.';
+
+    private final String subject;
+    private final String[] elements;
+
+    /**
+     * @param subject the subject the listener was registered for
+     * @param path the subject already split into it's path elements
+     */
+    SubjectPattern(String subject, String[] path) {
+        this.subject = subject;
+        this.elements = new String[path.length];
+
+        // Wildcards are replaced by the constants so matching can compare them by reference
+        for (int i = 0; i < path.length; i++) {
+            boolean last = (i + 1) == path.length;
+
+            if (MULTI_WILDCARD.equals(path[i]) || (last && SINGLE_WILDCARD.equals(path[i]))) {
+                elements[i] = MULTI_WILDCARD;
+            } else if (SINGLE_WILDCARD.equals(path[i])) {
+                elements[i] = SINGLE_WILDCARD;
+            } else {
+                elements[i] = path[i];
+            }
+        }
+    }
+
+    /**
+     * Compile any subject a listener can be registered for, including ones the tree indexes by path
+     */
+    static SubjectPattern compile(String subject) {
+        return new SubjectPattern(subject, split(subject));
+    }
+
+    String getSubject() {
+        return subject;
+    }
+
+    /**
+     * @param path a concrete subject split into it's path elements
+     * @return true if the subject matches this pattern
+     */
+    boolean matches(String[] path) {
+        return matches(path, 0, 0);
+    }
+
+    private boolean matches(String[] path, int element, int pathLevel) {
+        while (element < elements.length) {
+            String expected = elements[element];
+
+            if (expected == MULTI_WILDCARD) {
+                // Collapse consecutive multi level wildcards, then try every possible number of path elements
+                while (element + 1 < elements.length && elements[element + 1] == MULTI_WILDCARD) {
+                    element++;
+                }
+                if (element + 1 == elements.length) {
+                    return true;
+                }
+                for (int level = pathLevel; level <= path.length; level++) {
+                    if (matches(path, element + 1, level)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            if (pathLevel == path.length) {
+                return false;
+            }
+
+            if (expected != SINGLE_WILDCARD && !expected.equals(path[pathLevel])) {
+                return false;
+            }
+
+            element++;
+            pathLevel++;
+        }
+
+        return pathLevel == path.length;
+    }
+
+    /**
+     * @param path a subject split into it's path elements
+     * @return true if the subject has wildcards that the tree can not index
+     */
+    static boolean isPattern(String[] path) {
+        for (int i = 0; i < path.length - 1; i++) {
+            if (SINGLE_WILDCARD.equals(path[i]) || MULTI_WILDCARD.equals(path[i])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Split a subject into it's path components. A trailing separator is ignored.
+     */
+    static String[] split(String subject) {
+        List<String> path = new ArrayList<String>();
+        int start = 0;
+        int end;
+        while ((end = subject.indexOf(PATH_SEPARATOR, start)) != -1) {
+            path.add(subject.substring(start, end));
+            start = end + 1;
+        }
+        if (start < subject.length() || path.isEmpty()) {
+            path.add(subject.substring(start));
+        }
+
+        return path.toArray(new String[path.size()]);
+    }
+
+    /**
+     * @param element a single path element
+     * @return true if the path element is one of the wildcards
+     */
+    static boolean isWildcard(String element) {
+        return SINGLE_WILDCARD.equals(element) || MULTI_WILDCARD.equals(element);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        return Arrays.equals(elements, ((SubjectPattern) o).elements);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(elements);
+    }
+
+    @Override
+    public String toString() {
+        return subject;
+    }
+}
@@ -58,6 +58,8 @@ public abstract class MotechListenerAbstractProxy implements EventListener {
 		this.name = name;
 		this.bean = bean;
 		this.method = method;
+		// Resolved once at registration so invocations skip the access check
+		this.method.setAccessible(true);
 	}
 
 	/**
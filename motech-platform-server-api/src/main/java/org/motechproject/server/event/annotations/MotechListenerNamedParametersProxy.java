@@ -33,26 +33,41 @@ package org.motechproject.server.event.annotations;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 
 import org.motechproject.model.MotechEvent;
 import org.springframework.util.Assert;
 import org.springframework.util.ReflectionUtils;
 
 /**
+ * Dispatches named event parameters to handlers whose parameters are all annotated with {@link MotechParam}. The
+ * parameter names are read from the annotations once, when the listener is registered.
  * @author yyonkov
  *
  */
 public class MotechListenerNamedParametersProxy extends MotechListenerAbstractProxy {
 
+	private final Class<?>[] parameterTypes;
+	private final String[] parameterNames;
+
 	/**
 	 * @param name
 	 * @param bean
 	 * @param method
+	 * @throws IllegalArgumentException if a parameter of the method is not annotated with {@link MotechParam}
 	 */
 	public MotechListenerNamedParametersProxy(String name, Object bean, Method method) {
 		super(name, bean, method);
+		this.parameterTypes = method.getParameterTypes();
+		this.parameterNames = new String[parameterTypes.length];
+
+		Annotation[][] paramAnnotations = method.getParameterAnnotations();
+		Assert.isTrue(parameterTypes.length==paramAnnotations.length);
+		for(int i = 0; i<parameterTypes.length; i++) {
+			MotechParam annotation = findMotechParam(paramAnnotations[i]);
+			Assert.notNull(annotation, "MotechParam(name) annotation is required for each parameter.");
+			parameterNames[i] = annotation.value();
+		}
 	}
 
 	/* (non-Javadoc)
@@ -60,22 +75,28 @@ public class MotechListenerNamedParametersProxy extends MotechListenerAbstractPr
 	 */
 	@Override
 	public void callHandler(MotechEvent event) {
-		List<Object> args = new ArrayList<Object>();
-		Class<?>[] paramTypes = method.getParameterTypes();
-		Annotation[][] paramAnnotations = method.getParameterAnnotations();
-		Assert.isTrue(paramTypes.length==paramAnnotations.length);
-		for(int i = 0; i<paramTypes.length; i++) {
-			Class<?> t = paramTypes[i];
-			Assert.notEmpty(paramAnnotations[i], "MotechParam(name) annotation is required for each parameter.");
-			//TODO now assuming only MotechParam annotation is present...
-			Assert.isAssignable(MotechParam.class, paramAnnotations[i][0].getClass());
-			MotechParam annotation = (MotechParam)paramAnnotations[i][0];
-			Object arg = event.getParameters().get(annotation.value());
-			Assert.notNull(arg, String.format("parameter #%d with name:\"%s\" not found or null prameter passed.",i,annotation.value()));
-			Assert.isAssignable(t, arg.getClass(), String.format("Parameter #%d expected subtypes of %s passed %s.", i, t.getName(), arg.getClass().getName()));
-			args.add(arg);
+		Map<String, Object> params = event.getParameters();
+		Object[] args = new Object[parameterTypes.length];
+		for(int i = 0; i<parameterTypes.length; i++) {
+			Object arg = params.get(parameterNames[i]);
+			// Messages are only built on failure, this runs for every event
+			if (arg == null) {
+				throw new IllegalArgumentException(String.format("parameter #%d with name:\"%s\" not found or null prameter passed.",i,parameterNames[i]));
+			}
+			if (!parameterTypes[i].isAssignableFrom(arg.getClass())) {
+				throw new IllegalArgumentException(String.format("Parameter #%d expected subtypes of %s passed %s.", i, parameterTypes[i].getName(), arg.getClass().getName()));
+			}
+			args[i] = arg;
+		}
+		ReflectionUtils.invokeMethod(method,bean,args);
+	}
+
+	private static MotechParam findMotechParam(Annotation[] annotations) {
+		for (Annotation annotation : annotations) {
+			if (annotation instanceof MotechParam) {
+				return (MotechParam) annotation;
+			}
 		}
-		ReflectionUtils.invokeMethod(method,bean,args.toArray());
-		
+		return null;
 	}
 }
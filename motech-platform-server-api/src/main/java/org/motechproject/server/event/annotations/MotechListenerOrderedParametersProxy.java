@@ -32,8 +32,6 @@
 package org.motechproject.server.event.annotations;
 
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Map;
 
 import org.motechproject.model.MotechEvent;
@@ -49,8 +47,18 @@ import org.springframework.util.ReflectionUtils;
  */
 public class MotechListenerOrderedParametersProxy extends MotechListenerAbstractProxy {
 	private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+	// Resolved at registration: the handler's parameter types and the event parameter key ("0".."n") for each of them
+	private final Class<?>[] parameterTypes;
+	private final String[] parameterKeys;
+
 	public MotechListenerOrderedParametersProxy(String name, Object bean, Method method) {
 		super(name, bean, method);
+		this.parameterTypes = method.getParameterTypes();
+		this.parameterKeys = new String[parameterTypes.length];
+		for (int i = 0; i < parameterKeys.length; i++) {
+			parameterKeys[i] = Integer.toString(i);
+		}
 	}
 
 	/* (non-Javadoc)
@@ -59,21 +67,19 @@ public class MotechListenerOrderedParametersProxy extends MotechListenerAbstract
 	@Override
 	public void callHandler(MotechEvent event) {
 		Map<String, Object> params = event.getParameters();
-		List<Object> args = new ArrayList<Object>();
-		int i = 0;
-		for(Class<?> t : method.getParameterTypes()) {
-			Object param = params.get(Integer.toString(i));
+		Object[] args = new Object[parameterTypes.length];
+		for (int i = 0; i < parameterTypes.length; i++) {
+			Class<?> t = parameterTypes[i];
+			Object param = params.get(parameterKeys[i]);
 			if( param!=null && t.isAssignableFrom(param.getClass())) {
-				args.add(param);
-				i++;
-			} else if ( params.containsKey(Integer.toString(i)) && !t.isPrimitive() && param==null) {
-				args.add(param);
-				i++;				
+				args[i] = param;
+			} else if ( param==null && !t.isPrimitive() && params.containsKey(parameterKeys[i])) {
+				args[i] = null;
 			} else {
 				logger.warn(String.format("Method: %s parameter: #%d of type: %s is not available in the event: %s. Handler skiped...", method.toGenericString(), i, t.getName(), event));
 				return;
 			}
 		}
-		ReflectionUtils.invokeMethod(method,bean,args.toArray());
+		ReflectionUtils.invokeMethod(method,bean,args);
 	}
 }
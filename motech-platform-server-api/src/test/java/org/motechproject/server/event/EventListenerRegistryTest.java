@@ -37,6 +37,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Matchers;
+import org.motechproject.metrics.MetricsAgent;
 import org.motechproject.metrics.impl.MultipleMetricsAgentImpl;
 import org.motechproject.model.MotechEvent;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -213,6 +214,79 @@ public class EventListenerRegistryTest {
 		assertEquals(el.iterator().next(), sel);
 	}
 	
+    @Test
+    public void testUnregisterListener() {
+        EventListener sel = new SampleEventListener();
+        EventListener sel2 = new FooEventListener();
+        registry.registerListener(sel, "org.motechproject.server.someevent");
+        registry.registerListener(sel2, "org.motechproject.server.someevent");
+
+        registry.unregisterListener(sel, "org.motechproject.server.someevent");
+
+        Set<EventListener> el = registry.getListeners("org.motechproject.server.someevent");
+        assertEquals(1, el.size());
+        assertTrue(el.contains(sel2));
+    }
+
+    @Test
+    public void testUnregisterForMultipleEvents() {
+        List<String> et = new ArrayList<String>();
+        et.add("org.motechproject.server.someevent");
+        et.add("org.motechproject.server.*");
+
+        EventListener sel = new SampleEventListener();
+        registry.registerListener(sel, et);
+        registry.unregisterListener(sel, et);
+
+        assertFalse(registry.hasListener("org.motechproject.server.someevent"));
+        assertFalse(registry.hasListener("org.motechproject.server.someotherevent"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNullEventListenerUnregistration() {
+        registry.unregisterListener(null, "org.motechproject.server.someevent");
+    }
+
+    @Test
+    public void testRegisterAfterLookup() {
+        EventListener sel = new SampleEventListener();
+        EventListener sel2 = new FooEventListener();
+        registry.registerListener(sel, "org.motechproject.server.someevent");
+        assertEquals(1, registry.getListeners("org.motechproject.server.someevent").size());
+
+        registry.registerListener(sel2, "org.motechproject.*.someevent");
+
+        Set<EventListener> el = registry.getListeners("org.motechproject.server.someevent");
+        assertEquals(2, el.size());
+        assertTrue(el.contains(sel2));
+    }
+
+    @Test
+    public void testUnregisterAfterLookup() {
+        EventListener sel = new SampleEventListener();
+        registry.registerListener(sel, "org.motechproject.server.*");
+        assertTrue(registry.getListeners("org.motechproject.server.someevent").contains(sel));
+
+        registry.unregisterListener(sel, "org.motechproject.server.*");
+
+        assertEquals(0, registry.getListeners("org.motechproject.server.someevent").size());
+    }
+
+    @Test
+    public void testCacheHitRatioReported() {
+        MetricsAgent metricsAgent = mock(MetricsAgent.class);
+        registry = new EventListenerRegistry(metricsAgent);
+        registry.registerListener(new SampleEventListener(), "org.motechproject.server.someevent");
+
+        for (int i = 0; i < 1000; i++) {
+            registry.getListeners("org.motechproject.server.someevent");
+        }
+
+        verify(metricsAgent).logGauge("motech.listener-registry.cache.hit-ratio", 99);
+        verify(metricsAgent).logGauge("motech.listener-registry.cache.size", 1);
+        verify(metricsAgent, times(1)).startTimer("motech.listener-registry.getListeners");
+    }
+
 	@Test
 	public void testGetEmptyListenerList() {
 		List<String> et = new ArrayList<String>();
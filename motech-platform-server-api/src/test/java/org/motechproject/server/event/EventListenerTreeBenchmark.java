@@ -0,0 +1,156 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.server.event;
+
+import org.motechproject.model.MotechEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares subject lookups on {@link EventListenerTree} against the {@link LegacyEventListenerTree} it replaced.
+ * Builds both trees with the same few thousand subjects and wildcard listeners and times getListeners over a mix of
+ * registered, wildcard-only and unknown subjects.
+ *
+ * Not a unit test; run it with:
+ * mvn test-compile exec:java -Dexec.mainClass=org.motechproject.server.event.EventListenerTreeBenchmark -Dexec.classpathScope=test
+ */
+public class EventListenerTreeBenchmark {
+    private static final int MODULES = 20;
+    private static final int SUBJECTS_PER_MODULE = 250;
+    private static final int LOOKUPS = 2000000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        EventListenerTree tree = new EventListenerTree();
+        LegacyEventListenerTree legacyTree = new LegacyEventListenerTree();
+
+        for (int module = 0; module < MODULES; module++) {
+            EventListener wildcardListener = new BenchmarkEventListener("wildcard-" + module);
+            tree.addListener(wildcardListener, subject(module) + ".*");
+            legacyTree.addListener(wildcardListener, subject(module) + ".*");
+
+            for (int i = 0; i < SUBJECTS_PER_MODULE; i++) {
+                EventListener listener = new BenchmarkEventListener("listener-" + module + "-" + i);
+                tree.addListener(listener, subject(module, i));
+                legacyTree.addListener(listener, subject(module, i));
+            }
+        }
+
+        String[] subjects = lookupSubjects();
+        System.out.println(String.format("%d subjects, %d wildcard listeners, %d lookups per round",
+                                         MODULES * SUBJECTS_PER_MODULE, MODULES, LOOKUPS));
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long legacy = timeLegacy(legacyTree, subjects);
+            long current = time(tree, subjects);
+            System.out.println(String.format("round %d: legacy %d ns/lookup, current %d ns/lookup", round,
+                                             legacy / LOOKUPS, current / LOOKUPS));
+        }
+    }
+
+    private static String[] lookupSubjects() {
+        Random random = new Random(42);
+        List<String> subjects = new ArrayList<String>();
+
+        for (int i = 0; i < 1024; i++) {
+            int module = random.nextInt(MODULES);
+            switch (i % 4) {
+                case 0:
+                case 1:
+                    subjects.add(subject(module, random.nextInt(SUBJECTS_PER_MODULE)));
+                    break;
+                case 2:
+                    subjects.add(subject(module) + ".unregistered-" + i);
+                    break;
+                default:
+                    subjects.add("org.example.unknown-" + i);
+            }
+        }
+
+        return subjects.toArray(new String[subjects.size()]);
+    }
+
+    private static long time(EventListenerTree tree, String[] subjects) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            found += tree.getListeners(subjects[i & (subjects.length - 1)]).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        blackhole(found);
+        return elapsed;
+    }
+
+    private static long timeLegacy(LegacyEventListenerTree tree, String[] subjects) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            found += tree.getListeners(subjects[i & (subjects.length - 1)]).size();
+        }
+        long elapsed = System.nanoTime() - start;
+        blackhole(found);
+        return elapsed;
+    }
+
+    private static void blackhole(long value) {
+        if (value == Long.MIN_VALUE) {
+            System.out.println(value);
+        }
+    }
+
+    private static String subject(int module) {
+        return "org.motechproject.module" + module;
+    }
+
+    private static String subject(int module, int event) {
+        return subject(module) + ".event" + (event % 10) + ".fired-" + event;
+    }
+
+    private static class BenchmarkEventListener implements EventListener {
+        private final String identifier;
+
+        BenchmarkEventListener(String identifier) {
+            this.identifier = identifier;
+        }
+
+        @Override
+        public void handle(MotechEvent event) {
+        }
+
+        @Override
+        public String getIdentifier() {
+            return identifier;
+        }
+    }
+}
@@ -91,9 +91,45 @@ public class EventListenerTreeTest
 		assertEquals(listeners.iterator().next(), el);
     }
 
+    @Test
+    public void testAddListener_WildcardInMiddle() {
+        tree.addListener(el, "org.motechproject.*.some-event");
+
+        assertTrue(tree.hasListener(EVENT1));
+        assertFalse(tree.hasListener(EVENT2));
+        assertFalse(tree.hasListener("org.motechproject.server.scheduler.some-event"));
+    }
+
+    @Test
+    public void testAddListener_MultiLevelWildcard() {
+        tree.addListener(el, "org.#.some-event");
+
+        assertTrue(tree.hasListener(EVENT1));
+        assertTrue(tree.hasListener("org.some-event"));
+        assertTrue(tree.hasListener("org.motechproject.server.scheduler.some-event"));
+        assertFalse(tree.hasListener(EVENT2));
+    }
+
+    @Test
+    public void testAddListener_TrailingMultiLevelWildcard() {
+        tree.addListener(el, "org.motechproject.server.#");
+
+        assertEquals(1, tree.getListenerCount(EVENT1));
+        assertEquals(1, tree.getListenerCount(EVENT2));
+        assertEquals(0, tree.getListenerCount("org.motechproject.client.some-event"));
+    }
+
+    @Test
+    public void testAddListener_MatchAll() {
+        tree.addListener(el, "#");
+
+        assertTrue(tree.hasListener(EVENT1));
+        assertTrue(tree.hasListener("other"));
+    }
+
     @Test(expected = IllegalArgumentException.class)
-    public void testAddListener_InvalidSubjectWildcardInMiddle() {
-        tree.addListener(el, "org.motechproject.*.event");
+    public void testAddListener_InvalidSubjectMultiLevelWildcard() {
+        tree.addListener(el, "org.motechproject.#event");
     }
 
     @Test(expected = IllegalArgumentException.class)
@@ -136,6 +172,117 @@ public class EventListenerTreeTest
         assertEquals(1, tree.getListenerCount(EVENT2));
     }
 
+    @Test
+    public void getListeners_WildcardAddedAfterSubject() {
+        EventListener foo = new FooEventListener();
+        tree.addListener(foo, EVENT1);
+        tree.addListener(el, WILDCARD_EVENT);
+
+        Set<EventListener> listeners = tree.getListeners(EVENT1);
+        assertEquals(2, listeners.size());
+        assertTrue(listeners.contains(foo));
+        assertTrue(listeners.contains(el));
+    }
+
+    @Test
+    public void getListeners_WildcardAppliesToDeeperSubjects() {
+        tree.addListener(el, WILDCARD_EVENT);
+
+        assertTrue(tree.hasListener("org.motechproject.server.some-event.sub-event"));
+        assertTrue(tree.hasListener("org.motechproject.server"));
+        assertFalse(tree.hasListener("org.motechproject"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getListeners_ReturnsUnmodifiableSet() {
+        tree.addListener(el, EVENT1);
+
+        tree.getListeners(EVENT1).add(new FooEventListener());
+    }
+
+    @Test
+    public void removeListener() {
+        EventListener foo = new FooEventListener();
+        tree.addListener(el, EVENT1);
+        tree.addListener(foo, EVENT1);
+
+        assertTrue(tree.removeListener(el, EVENT1));
+
+        Set<EventListener> listeners = tree.getListeners(EVENT1);
+        assertEquals(1, listeners.size());
+        assertTrue(listeners.contains(foo));
+    }
+
+    @Test
+    public void removeListener_Wildcard() {
+        EventListener foo = new FooEventListener();
+        tree.addListener(el, WILDCARD_EVENT);
+        tree.addListener(foo, EVENT1);
+
+        assertTrue(tree.removeListener(el, WILDCARD_EVENT));
+
+        assertEquals(1, tree.getListenerCount(EVENT1));
+        assertFalse(tree.hasListener(EVENT2));
+    }
+
+    @Test
+    public void removeListener_NotRegistered() {
+        tree.addListener(el, EVENT1);
+
+        assertFalse(tree.removeListener(new FooEventListener(), EVENT1));
+        assertFalse(tree.removeListener(el, EVENT2));
+        assertFalse(tree.removeListener(el, WILDCARD_EVENT));
+        assertTrue(tree.hasListener(EVENT1));
+    }
+
+    @Test
+    public void removeListener_ThenAddAgain() {
+        tree.addListener(el, EVENT1);
+        tree.removeListener(el, EVENT1);
+
+        assertFalse(tree.hasListener(EVENT1));
+
+        tree.addListener(el, EVENT1);
+        assertTrue(tree.hasListener(EVENT1));
+    }
+
+    @Test
+    public void getListeners_PatternAndTreeListeners() {
+        EventListener foo = new FooEventListener();
+        tree.addListener(foo, EVENT1);
+        tree.addListener(el, "org.*.server.*");
+
+        Set<EventListener> listeners = tree.getListeners(EVENT1);
+        assertEquals(2, listeners.size());
+        assertTrue(listeners.contains(foo));
+        assertTrue(listeners.contains(el));
+
+        assertEquals(1, tree.getListenerCount(EVENT2));
+    }
+
+    @Test
+    public void getListeners_PatternRegisteredAfterLookup() {
+        EventListener foo = new FooEventListener();
+        tree.addListener(el, "org.*.server.other");
+        assertEquals(0, tree.getListenerCount(EVENT1));
+
+        tree.addListener(foo, "org.*.server.some-event");
+        assertEquals(1, tree.getListenerCount(EVENT1));
+
+        tree.addListener(el, EVENT1);
+        assertEquals(2, tree.getListenerCount(EVENT1));
+    }
+
+    @Test
+    public void removeListener_Pattern() {
+        tree.addListener(el, "org.*.server.some-event");
+        assertTrue(tree.hasListener(EVENT1));
+
+        assertTrue(tree.removeListener(el, "org.*.server.some-event"));
+        assertFalse(tree.hasListener(EVENT1));
+        assertFalse(tree.removeListener(el, "org.*.server.some-event"));
+    }
+
     class FooEventListener implements EventListener {
 
         @Override
@@ -0,0 +1,337 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.server.event;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * The list based, copy-on-read subject tree that {@link EventListenerTree} replaced. Kept only as the baseline for
+ * {@link EventListenerTreeBenchmark}.
+ */
+class LegacyEventListenerTree
+{
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final String SPLIT_REGEX = "\\.";
+
+    private List<LegacyEventListenerTree> children = new ArrayList<LegacyEventListenerTree>();
+    private LegacyEventListenerTree parent;
+
+    private String pathElement;
+    private Set<EventListener> listeners;
+    private Set<EventListener> wildcardListeners;
+
+    public LegacyEventListenerTree() {
+        this.pathElement = null;
+        this.parent = null;
+    }
+
+    public LegacyEventListenerTree(String pathElement, LegacyEventListenerTree parent) {
+        this.pathElement = pathElement;
+        this.parent = parent;
+    }
+
+    public String getPathElement() {
+        return pathElement;
+    }
+
+    /**
+     * Walk up the tree from this point building out the subject
+     *
+     * @return
+     */
+    public String getSubject() {
+        if (parent == null) {
+            return "";
+        }
+
+        String parentSubject = parent.getSubject();
+        if ("".equals(parentSubject)) {
+            return pathElement;
+        } else {
+            return parentSubject + "." + pathElement;
+        }
+    }
+
+    /**
+     * Given a full path create the tree structure to store it
+     *
+     * @param listener
+     * @param subject
+     */
+    public void addListener(EventListener listener, String subject)
+    {
+        if (subject == null) {
+            throw new IllegalArgumentException("Cannot add listener for null subject");
+        }
+
+        int asteriskLocation = subject.indexOf("*");
+        if (asteriskLocation != -1 && (asteriskLocation  + 1)!= subject.length()) {
+            throw new IllegalArgumentException("Wildcard must be last element of subject: " + subject);
+        }
+
+        if (subject.indexOf("..") != -1) {
+            throw new IllegalArgumentException("Subject can not contain an empty path segment: " + subject);
+        }
+
+        // Split the subject into it's path components
+        String[] path = subject.split(SPLIT_REGEX);
+
+        if (path[path.length - 1].indexOf("*") != -1 && path[path.length - 1].length() > 1) {
+            throw new IllegalArgumentException("Wildcard can not be mixed with characters");
+        }
+
+        LegacyEventListenerTree child = getChild(path[0]);
+        if (child == null) {
+            child = new LegacyEventListenerTree(path[0], this);
+            addChild(child);
+        }
+
+        child.addListener(listener, path, 0);
+    }
+
+    private void addListener(EventListener listener, String[] path, int pathLevel) {
+        // I've walked to the end of the path.  Assign this listener to this node
+        if ((pathLevel + 1) == path.length) {
+            addListener(listener);
+            return;
+        }
+
+        // If the next step is the end of the path and it's a wildcard save listener here
+        if ((pathLevel + 2) == path.length && "*".equals(path[path.length - 1])) {
+            addWildcardListener(listener);
+            return;
+        }
+
+        LegacyEventListenerTree child = getChild(path[pathLevel + 1]);
+        if (child == null) {
+            child = new LegacyEventListenerTree(path[pathLevel + 1], this);
+            addChild(child);
+        }
+
+        child.addListener(listener, path, (pathLevel + 1));
+    }
+
+    /**
+     * Given a subject path return all listeners registered for it
+     *
+     * @param subject
+     * @return
+     */
+    public Set<EventListener> getListeners(String subject) {
+        // Split the subject into it's path components
+        String[] path = subject.split(SPLIT_REGEX);
+
+        LegacyEventListenerTree child = getChild(path[0]);
+        if (child == null) {
+            return Collections.<EventListener>emptySet();
+        }
+
+        return child.getListeners(path, 0);
+    }
+
+    private Set<EventListener> getListeners(String[] path, int pathLevel) {
+        Set<EventListener> ret;
+
+        if ((pathLevel + 1) == path.length) {
+            return getAllListeners();
+        }
+
+        LegacyEventListenerTree child = getChild(path[pathLevel + 1]);
+        if (child == null) {
+            return getWildcardListeners();
+        }
+
+        ret = child.getListeners(path, (pathLevel + 1));
+        ret.addAll(getWildcardListeners());
+
+        return ret;
+    }
+
+    public boolean  hasListener(String subject) {
+         // Split the subject into it's path components
+        String[] path = subject.split(SPLIT_REGEX);
+
+        LegacyEventListenerTree child = getChild(path[0]);
+        if (child == null) {
+            return false;
+        }
+
+        return child.hasListener(path, 0);
+    }
+
+    private boolean hasListener(String[] path, int pathLevel) {
+        if (hasWildcardListeners()) {
+            return true;
+        }
+
+        if ((pathLevel + 1) == path.length) {
+            return listeners != null && !listeners.isEmpty();
+        }
+
+        LegacyEventListenerTree child = getChild(path[pathLevel + 1]);
+        if (child == null) {
+            return false;
+        }
+
+        return child.hasListener(path, (pathLevel + 1));
+    }
+
+    public int getListenerCount(String subject) {
+         // Split the subject into it's path components
+        String[] path = subject.split(SPLIT_REGEX);
+
+        LegacyEventListenerTree child = getChild(path[0]);
+        if (child == null) {
+            return 0;
+        }
+
+        return child.getListenerCount(path, 0);
+    }
+
+    private int getListenerCount(String[] path, int pathLevel) {
+        int ret = 0;
+
+        if ((pathLevel + 1) == path.length) {
+            return getAllListeners().size();
+        }
+
+        LegacyEventListenerTree child = getChild(path[pathLevel + 1]);
+        if (child == null) {
+            return getWildcardListeners().size();
+        }
+
+        ret = getWildcardListeners().size();
+
+        return ret + child.getListeners(path, (pathLevel + 1)).size();
+    }
+
+    private Set<EventListener> getListeners() {
+        Set<EventListener> ret = new HashSet<EventListener>();
+
+        if (listeners == null) {
+            listeners = new HashSet<EventListener>();
+        }
+
+        ret.addAll(listeners);
+
+        return ret;
+    }
+
+    private Set<EventListener> getAllListeners() {
+        Set<EventListener> ret = new HashSet<EventListener>();
+
+        if (listeners == null) {
+            listeners = new HashSet<EventListener>();
+        }
+
+        if (wildcardListeners == null) {
+            wildcardListeners = new HashSet<EventListener>();
+        }
+
+        ret.addAll(listeners);
+        ret.addAll(wildcardListeners);
+
+        return ret;
+    }
+
+    private Set<EventListener> getWildcardListeners() {
+        Set<EventListener> ret = new HashSet<EventListener>();
+
+        if (wildcardListeners == null) {
+            wildcardListeners = new HashSet<EventListener>();
+        }
+
+        ret.addAll(wildcardListeners);
+
+        return ret;
+    }
+
+    private void addListener(EventListener listener) {
+        if (listeners == null) {
+            listeners = new HashSet<EventListener>();
+        }
+
+        // Don't allow duplicate listener registrations Set will handle this for me, but then I can't log it
+        if (!listeners.contains(listener)) {
+            listeners.add(listener); // Add the listener to the list
+        } else {
+            log.info(String.format("Ignoring second request to register listener %s for subject %s",
+                                   listener.getIdentifier(), getSubject()));
+        }
+    }
+
+    private void addWildcardListener(EventListener listener) {
+        if (wildcardListeners == null) {
+            wildcardListeners = new HashSet<EventListener>();
+        }
+
+        // Don't allow duplicate listener registrations Set will handle this for me, but then I can't log it
+        if (!wildcardListeners.contains(listener)) {
+            wildcardListeners.add(listener); // Add the listener to the list
+        } else {
+            log.info(String.format("Ignoring second request to register wildcardListeners %s for subject %s.*",
+                                   listener.getIdentifier(), getSubject()));
+        }
+    }
+
+    private boolean hasWildcardListeners() {
+        return wildcardListeners != null && !wildcardListeners.isEmpty();
+    }
+
+    private LegacyEventListenerTree getChild(String pathElement) {
+        LegacyEventListenerTree ret = null;
+
+        if (children != null) {
+            for (LegacyEventListenerTree n : children) {
+                if (n.getPathElement().equals(pathElement)) {
+                    ret = n;
+                    break;
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    private void addChild(LegacyEventListenerTree child) {
+        if (children == null) {
+            children = new ArrayList<LegacyEventListenerTree>();
+        }
+
+        children.add(child);
+    }
+
+}
@@ -0,0 +1,233 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.server.event;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.metrics.MetricsAgent;
+import org.motechproject.model.MotechEvent;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class ListenerDispatcherTest {
+    private static final String SUBJECT = "org.motechproject.server.someevent";
+
+    private ListenerDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        dispatcher = new ListenerDispatcher(mock(MetricsAgent.class));
+        dispatcher.setPoolSize(4);
+        dispatcher.setQueueCapacity(10);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    public void dispatchToAllListeners() {
+        dispatcher.start();
+        RecordingListener first = new RecordingListener("first");
+        RecordingListener second = new RecordingListener("second");
+        RecordingListener third = new RecordingListener("third");
+
+        Map<EventListener, Throwable> failures = dispatcher.dispatch(new MotechEvent(SUBJECT),
+                                                                     Arrays.<EventListener>asList(first, second, third));
+
+        assertTrue(failures.isEmpty());
+        assertEquals(1, first.handled.get());
+        assertEquals(1, second.handled.get());
+        assertEquals(1, third.handled.get());
+    }
+
+    @Test
+    public void reportFailedListeners() {
+        dispatcher.start();
+        RecordingListener ok = new RecordingListener("ok");
+        RecordingListener failing = new RecordingListener("failing");
+        failing.fail = true;
+
+        Map<EventListener, Throwable> failures = dispatcher.dispatch(new MotechEvent(SUBJECT),
+                                                                     Arrays.<EventListener>asList(ok, failing));
+
+        assertEquals(1, failures.size());
+        assertTrue(failures.containsKey(failing));
+        assertEquals(1, ok.handled.get());
+    }
+
+    @Test
+    public void stopTimerOfFailedListener() {
+        MetricsAgent metricsAgent = mock(MetricsAgent.class);
+        dispatcher = new ListenerDispatcher(metricsAgent);
+        dispatcher.start();
+        RecordingListener failing = new RecordingListener("failing");
+        failing.fail = true;
+
+        dispatcher.dispatch(new MotechEvent(SUBJECT), Arrays.<EventListener>asList(failing));
+
+        verify(metricsAgent).startTimer("failing.handler." + SUBJECT);
+        verify(metricsAgent).stopTimer("failing.handler." + SUBJECT);
+    }
+
+    @Test
+    public void callerRunsListenersWhenPoolIsSaturated() {
+        dispatcher.setPoolSize(1);
+        dispatcher.setQueueCapacity(1);
+        dispatcher.start();
+
+        List<EventListener> listeners = new ArrayList<EventListener>();
+        for (int i = 0; i < 10; i++) {
+            RecordingListener listener = new RecordingListener("listener" + i);
+            listener.sleepMillis = 5;
+            listeners.add(listener);
+        }
+
+        assertTrue(dispatcher.dispatch(new MotechEvent(SUBJECT), listeners).isEmpty());
+        for (EventListener listener : listeners) {
+            assertEquals(1, ((RecordingListener) listener).handled.get());
+        }
+    }
+
+    @Test
+    public void limitConcurrencyPerListener() throws Exception {
+        dispatcher.setMaxConcurrencyPerListener(1);
+        dispatcher.start();
+        final RecordingListener shared = new RecordingListener("shared");
+        shared.sleepMillis = 20;
+
+        runConcurrently(6, new Runnable() {
+            @Override
+            public void run() {
+                dispatcher.dispatch(new MotechEvent(SUBJECT),
+                                    Arrays.<EventListener>asList(new RecordingListener("other"), shared));
+            }
+        });
+
+        assertEquals(6, shared.handled.get());
+        assertEquals(1, shared.maxConcurrent.get());
+    }
+
+    @Test
+    public void serializeEventsWithTheSameKey() throws Exception {
+        dispatcher.setOrderingKeyParameter("ExternalID");
+        dispatcher.start();
+        final RecordingListener first = new RecordingListener("first");
+        final RecordingListener second = new RecordingListener("second");
+        first.sleepMillis = 20;
+
+        runConcurrently(4, new Runnable() {
+            @Override
+            public void run() {
+                Map<String, Object> parameters = new HashMap<String, Object>();
+                parameters.put("ExternalID", "patient-1");
+                dispatcher.dispatch(new MotechEvent(SUBJECT, parameters), Arrays.<EventListener>asList(first, second));
+            }
+        });
+
+        assertEquals(4, first.handled.get());
+        assertEquals(1, first.maxConcurrent.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void dispatchBeforeStart() {
+        dispatcher.dispatch(new MotechEvent(SUBJECT), Arrays.<EventListener>asList(new RecordingListener("first")));
+    }
+
+    private void runConcurrently(int threads, final Runnable runnable) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runnable.run();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    private static class RecordingListener implements EventListener {
+        private final String identifier;
+        private final AtomicInteger handled = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final AtomicInteger maxConcurrent = new AtomicInteger();
+        private volatile boolean fail;
+        private volatile long sleepMillis;
+
+        RecordingListener(String identifier) {
+            this.identifier = identifier;
+        }
+
+        @Override
+        public void handle(MotechEvent event) {
+            int now = running.incrementAndGet();
+            synchronized (maxConcurrent) {
+                if (now > maxConcurrent.get()) {
+                    maxConcurrent.set(now);
+                }
+            }
+
+            try {
+                if (sleepMillis > 0) {
+                    Thread.sleep(sleepMillis);
+                }
+                if (fail) {
+                    throw new IllegalStateException("failing on purpose");
+                }
+                handled.incrementAndGet();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String getIdentifier() {
+            return identifier;
+        }
+    }
+}
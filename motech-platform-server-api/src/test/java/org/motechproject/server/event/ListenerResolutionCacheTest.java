@@ -0,0 +1,127 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.server.event;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class ListenerResolutionCacheTest {
+    private ListenerResolutionCache cache;
+    private Set<EventListener> listeners = Collections.<EventListener>singleton(new SampleEventListener());
+
+    @Before
+    public void setUp() {
+        cache = new ListenerResolutionCache();
+    }
+
+    @Test
+    public void getAfterPut() {
+        assertNull(cache.get("org.motechproject.server.someevent"));
+
+        cache.put("org.motechproject.server.someevent", listeners, cache.getGeneration());
+
+        assertSame(listeners, cache.get("org.motechproject.server.someevent"));
+    }
+
+    @Test
+    public void putDroppedWhenInvalidatedDuringLookup() {
+        long generation = cache.getGeneration();
+        cache.invalidate("org.motechproject.client.otherevent");
+
+        cache.put("org.motechproject.server.someevent", listeners, generation);
+
+        assertNull(cache.get("org.motechproject.server.someevent"));
+    }
+
+    @Test
+    public void invalidateExactSubject() {
+        cache.put("org.motechproject.server.someevent", listeners, cache.getGeneration());
+        cache.put("org.motechproject.server.otherevent", listeners, cache.getGeneration());
+
+        cache.invalidate("org.motechproject.server.someevent");
+
+        assertNull(cache.get("org.motechproject.server.someevent"));
+        assertNotNull(cache.get("org.motechproject.server.otherevent"));
+    }
+
+    @Test
+    public void invalidateWildcardSubject() {
+        cache.put("org.motechproject.server", listeners, cache.getGeneration());
+        cache.put("org.motechproject.server.someevent", listeners, cache.getGeneration());
+        cache.put("org.motechproject.client.someevent", listeners, cache.getGeneration());
+
+        cache.invalidate("org.motechproject.server.*");
+
+        assertNull(cache.get("org.motechproject.server"));
+        assertNull(cache.get("org.motechproject.server.someevent"));
+        assertNotNull(cache.get("org.motechproject.client.someevent"));
+    }
+
+    @Test
+    public void invalidatePatternSubject() {
+        cache.put("org.motechproject.server.someevent", listeners, cache.getGeneration());
+        cache.put("org.motechproject.server.otherevent", listeners, cache.getGeneration());
+
+        cache.invalidate("org.#.someevent");
+
+        assertNull(cache.get("org.motechproject.server.someevent"));
+        assertNotNull(cache.get("org.motechproject.server.otherevent"));
+    }
+
+    @Test
+    public void clearedWhenFull() {
+        cache = new ListenerResolutionCache(2);
+        cache.put("a", listeners, cache.getGeneration());
+        cache.put("b", listeners, cache.getGeneration());
+        cache.put("c", listeners, cache.getGeneration());
+
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void hitPercentage() {
+        cache.put("a", listeners, cache.getGeneration());
+        cache.get("a");
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        assertEquals(75, cache.takeHitPercentage());
+        assertEquals(0, cache.takeHitPercentage());
+    }
+}
@@ -13,6 +13,7 @@ import org.motechproject.model.MotechEvent;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
@@ -80,6 +81,37 @@ public class ServerEventRelayIT {
         assertFalse(firstListener.equals(secondListener));
     }
 
+    @Test
+    public void testDispatchingRelay() throws Exception {
+        ArgumentCaptor<MotechEvent> argument = ArgumentCaptor.forClass(MotechEvent.class);
+        MetricsAgent metricsAgent = new MultipleMetricsAgentImpl();
+        ListenerDispatcher dispatcher = new ListenerDispatcher(metricsAgent);
+        dispatcher.start();
+        eventRelay = new ServerEventRelay(outboundEventGateway, registry, metricsAgent, dispatcher);
+
+        SampleEventListener sel = mock(SampleEventListener.class);
+        stub(sel.getIdentifier()).toReturn("SampleEventListener");
+        registry.registerListener(sel, "org.motechproject.server.someevent");
+
+        FooEventListener fel = mock(FooEventListener.class);
+        stub(fel.getIdentifier()).toReturn("FooEventListener");
+        doThrow(new RuntimeException("failing on purpose")).when(fel).handle(motechEvent);
+        registry.registerListener(fel, "org.motechproject.server.someevent");
+
+        try {
+            eventRelay.relayEvent(motechEvent);
+        } finally {
+            dispatcher.stop();
+        }
+
+        verify(sel).handle(motechEvent);
+        verify(fel).handle(motechEvent);
+
+        // Only the failed listener is retried through its own message
+        verify(outboundEventGateway, times(1)).sendEventMessage(argument.capture());
+        assertEquals("FooEventListener", argument.getValue().getParameters().get("message-destination"));
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void testRelayNullEvent() throws Exception {
         eventRelay.relayEvent(null);
@@ -0,0 +1,103 @@
+/**
+ * MOTECH PLATFORM OPENSOURCE LICENSE AGREEMENT
+ *
+ * Copyright (c) 2011 Grameen Foundation USA.  All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice,
+ * this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation
+ * and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of Grameen Foundation USA, nor its respective contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY GRAMEEN FOUNDATION USA AND ITS CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO,
+ * THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED.  IN NO EVENT SHALL GRAMEEN FOUNDATION USA OR ITS CONTRIBUTORS
+ * BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING
+ * IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY
+ * OF SUCH DAMAGE.
+ */
+package org.motechproject.server.event;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SubjectPatternTest {
+
+    @Test
+    public void singleLevelWildcard() {
+        SubjectPattern pattern = pattern("org.motechproject.*.fired");
+
+        assertTrue(pattern.matches(path("org.motechproject.scheduler.fired")));
+        assertFalse(pattern.matches(path("org.motechproject.fired")));
+        assertFalse(pattern.matches(path("org.motechproject.scheduler.job.fired")));
+        assertFalse(pattern.matches(path("org.motechproject.scheduler.fired.again")));
+    }
+
+    @Test
+    public void multiLevelWildcard() {
+        SubjectPattern pattern = pattern("org.#.fired");
+
+        assertTrue(pattern.matches(path("org.fired")));
+        assertTrue(pattern.matches(path("org.motechproject.fired")));
+        assertTrue(pattern.matches(path("org.motechproject.scheduler.fired")));
+        assertFalse(pattern.matches(path("org.motechproject.scheduler")));
+        assertFalse(pattern.matches(path("com.motechproject.fired")));
+    }
+
+    @Test
+    public void trailingWildcardMatchesSubjectAndEverythingBelow() {
+        SubjectPattern pattern = pattern("org.*.scheduler.*");
+
+        assertTrue(pattern.matches(path("org.motechproject.scheduler")));
+        assertTrue(pattern.matches(path("org.motechproject.scheduler.fired")));
+        assertTrue(pattern.matches(path("org.motechproject.scheduler.job.fired")));
+        assertFalse(pattern.matches(path("org.scheduler")));
+    }
+
+    @Test
+    public void consecutiveMultiLevelWildcards() {
+        SubjectPattern pattern = pattern("#.#.fired");
+
+        assertTrue(pattern.matches(path("fired")));
+        assertTrue(pattern.matches(path("org.motechproject.fired")));
+        assertFalse(pattern.matches(path("org.motechproject")));
+    }
+
+    @Test
+    public void isPattern() {
+        assertTrue(SubjectPattern.isPattern(path("org.*.fired")));
+        assertTrue(SubjectPattern.isPattern(path("#.fired")));
+        assertFalse(SubjectPattern.isPattern(path("org.motechproject.*")));
+        assertFalse(SubjectPattern.isPattern(path("org.motechproject.#")));
+        assertFalse(SubjectPattern.isPattern(path("org.motechproject.fired")));
+    }
+
+    @Test
+    public void trailingWildcardsAreEquivalent() {
+        assertEquals(pattern("org.*.fired.*"), pattern("org.*.fired.#"));
+        assertEquals(pattern("org.*.fired.*").hashCode(), pattern("org.*.fired.#").hashCode());
+        assertFalse(pattern("org.*.fired").equals(pattern("org.#.fired")));
+    }
+
+    private SubjectPattern pattern(String subject) {
+        return new SubjectPattern(subject, path(subject));
+    }
+
+    private String[] path(String subject) {
+        return subject.split("\\.");
+    }
+}
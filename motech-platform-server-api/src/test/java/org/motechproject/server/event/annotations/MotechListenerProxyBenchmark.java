@@ -0,0 +1,171 @@
+package org.motechproject.server.event.annotations;
+
+import org.motechproject.model.MotechEvent;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Times handle() on the three @MotechListener proxy types against the per-event reflection they used to do, which is
+ * kept here as the Legacy* proxies.
+ *
+ * Not a unit test; run it with:
+ * mvn test-compile exec:java -Dexec.mainClass=org.motechproject.server.event.annotations.MotechListenerProxyBenchmark -Dexec.classpathScope=test
+ */
+public class MotechListenerProxyBenchmark {
+    private static final int CALLS = 500000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Handler handler = new Handler();
+        Method eventMethod = eventMethod();
+        Method orderedMethod = orderedMethod();
+        Method namedMethod = namedMethod();
+
+        MotechEvent orderedEvent = new MotechEvent("ordered");
+        orderedEvent.getParameters().put("0", "external-1");
+        orderedEvent.getParameters().put("1", 3);
+        orderedEvent.getParameters().put("2", "message-key");
+
+        MotechEvent namedEvent = new MotechEvent("named");
+        namedEvent.getParameters().put("ExternalID", "external-1");
+        namedEvent.getParameters().put("Day", 3);
+        namedEvent.getParameters().put("MessageKey", "message-key");
+
+        MotechListenerAbstractProxy[][] proxies = {
+                // getMethod returns a new Method each time, the legacy proxies must not share the accessible flag
+                {new LegacyEventProxy(handler, eventMethod()),
+                 new MotechListenerEventProxy("handler", handler, eventMethod)},
+                {new LegacyOrderedParametersProxy(handler, orderedMethod()),
+                 new MotechListenerOrderedParametersProxy("handler", handler, orderedMethod)},
+                {new LegacyNamedParametersProxy(handler, namedMethod()),
+                 new MotechListenerNamedParametersProxy("handler", handler, namedMethod)}
+        };
+        MotechEvent[] events = {namedEvent, orderedEvent, namedEvent};
+        String[] types = {"MOTECH_EVENT", "ORDERED_PARAMETERS", "NAMED_PARAMETERS"};
+
+        System.out.println(String.format("%d calls per round", CALLS));
+
+        for (int round = 0; round < ROUNDS; round++) {
+            StringBuilder line = new StringBuilder("round " + round + ":");
+            for (int type = 0; type < proxies.length; type++) {
+                long legacy = time(proxies[type][0], events[type]);
+                long current = time(proxies[type][1], events[type]);
+                line.append(String.format(" %s legacy %d ns, current %d ns;", types[type], legacy / CALLS,
+                                          current / CALLS));
+            }
+            System.out.println(line);
+        }
+
+        if (handler.calls == Long.MIN_VALUE) {
+            System.out.println(handler.calls);
+        }
+    }
+
+    private static Method eventMethod() throws NoSuchMethodException {
+        return Handler.class.getMethod("handleEvent", MotechEvent.class);
+    }
+
+    private static Method orderedMethod() throws NoSuchMethodException {
+        return Handler.class.getMethod("handleOrdered", String.class, Integer.class, String.class);
+    }
+
+    private static Method namedMethod() throws NoSuchMethodException {
+        return Handler.class.getMethod("handleNamed", String.class, Integer.class, String.class);
+    }
+
+    private static long time(MotechListenerAbstractProxy proxy, MotechEvent event) {
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            proxy.handle(event);
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static class Handler {
+        long calls;
+
+        public void handleEvent(MotechEvent event) {
+            calls++;
+        }
+
+        public void handleOrdered(String externalId, Integer day, String messageKey) {
+            calls++;
+        }
+
+        public void handleNamed(@MotechParam("ExternalID") String externalId, @MotechParam("Day") Integer day,
+                                @MotechParam("MessageKey") String messageKey) {
+            calls++;
+        }
+    }
+
+    private static class LegacyEventProxy extends MotechListenerAbstractProxy {
+        LegacyEventProxy(Object bean, Method method) {
+            super("legacy", bean, method);
+            method.setAccessible(false);
+        }
+
+        @Override
+        public void callHandler(MotechEvent event) {
+            ReflectionUtils.invokeMethod(method, bean, event);
+        }
+    }
+
+    private static class LegacyOrderedParametersProxy extends MotechListenerAbstractProxy {
+        LegacyOrderedParametersProxy(Object bean, Method method) {
+            super("legacy", bean, method);
+            method.setAccessible(false);
+        }
+
+        @Override
+        public void callHandler(MotechEvent event) {
+            Map<String, Object> params = event.getParameters();
+            List<Object> args = new ArrayList<Object>();
+            int i = 0;
+            for (Class<?> t : method.getParameterTypes()) {
+                Object param = params.get(Integer.toString(i));
+                if (param != null && t.isAssignableFrom(param.getClass())) {
+                    args.add(param);
+                    i++;
+                } else if (params.containsKey(Integer.toString(i)) && !t.isPrimitive() && param == null) {
+                    args.add(param);
+                    i++;
+                } else {
+                    return;
+                }
+            }
+            ReflectionUtils.invokeMethod(method, bean, args.toArray());
+        }
+    }
+
+    private static class LegacyNamedParametersProxy extends MotechListenerAbstractProxy {
+        LegacyNamedParametersProxy(Object bean, Method method) {
+            super("legacy", bean, method);
+            method.setAccessible(false);
+        }
+
+        @Override
+        public void callHandler(MotechEvent event) {
+            List<Object> args = new ArrayList<Object>();
+            Class<?>[] paramTypes = method.getParameterTypes();
+            Annotation[][] paramAnnotations = method.getParameterAnnotations();
+            Assert.isTrue(paramTypes.length == paramAnnotations.length);
+            for (int i = 0; i < paramTypes.length; i++) {
+                Class<?> t = paramTypes[i];
+                Assert.notEmpty(paramAnnotations[i], "MotechParam(name) annotation is required for each parameter.");
+                Assert.isAssignable(MotechParam.class, paramAnnotations[i][0].getClass());
+                MotechParam annotation = (MotechParam) paramAnnotations[i][0];
+                Object arg = event.getParameters().get(annotation.value());
+                Assert.notNull(arg, String.format("parameter #%d with name:\"%s\" not found or null prameter passed.", i, annotation.value()));
+                Assert.isAssignable(t, arg.getClass(), String.format("Parameter #%d expected subtypes of %s passed %s.", i, t.getName(), arg.getClass().getName()));
+                args.add(arg);
+            }
+            ReflectionUtils.invokeMethod(method, bean, args.toArray());
+        }
+    }
+}
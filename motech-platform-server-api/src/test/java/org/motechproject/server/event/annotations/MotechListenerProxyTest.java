@@ -0,0 +1,122 @@
+package org.motechproject.server.event.annotations;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.motechproject.MotechException;
+import org.motechproject.model.MotechEvent;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.*;
+
+public class MotechListenerProxyTest {
+    private Handler handler;
+
+    @Before
+    public void setUp() {
+        handler = new Handler();
+    }
+
+    @Test
+    public void shouldPassEventToEventHandler() throws Exception {
+        MotechEvent event = new MotechEvent("subject");
+
+        new MotechListenerEventProxy("handler", handler, method("handleEvent", MotechEvent.class)).handle(event);
+
+        assertSame(event, handler.event);
+    }
+
+    @Test
+    public void shouldPassOrderedParameters() throws Exception {
+        MotechEvent event = new MotechEvent("subject");
+        event.getParameters().put("0", 23);
+        event.getParameters().put("1", null);
+
+        proxy("handleOrdered", Integer.class, String.class).handle(event);
+
+        assertArrayEquals(new Object[]{23, null}, handler.args);
+    }
+
+    @Test
+    public void shouldSkipHandlerWhenOrderedParameterIsMissing() throws Exception {
+        MotechEvent event = new MotechEvent("subject");
+        event.getParameters().put("0", 23);
+
+        proxy("handleOrdered", Integer.class, String.class).handle(event);
+
+        assertNull(handler.args);
+    }
+
+    @Test
+    public void shouldSkipHandlerWhenOrderedParameterHasWrongType() throws Exception {
+        MotechEvent event = new MotechEvent("subject");
+        event.getParameters().put("0", "23");
+        event.getParameters().put("1", "s");
+
+        proxy("handleOrdered", Integer.class, String.class).handle(event);
+
+        assertNull(handler.args);
+    }
+
+    @Test
+    public void shouldPassNamedParameters() throws Exception {
+        MotechEvent event = new MotechEvent("subject");
+        event.getParameters().put("id", "id0012");
+        event.getParameters().put("key", "2354");
+
+        namedProxy("handleNamed").handle(event);
+
+        assertArrayEquals(new Object[]{"id0012", "2354"}, handler.args);
+    }
+
+    @Test(expected = MotechException.class)
+    public void shouldFailWhenNamedParameterIsMissing() throws Exception {
+        MotechEvent event = new MotechEvent("subject");
+        event.getParameters().put("id", "id0012");
+
+        namedProxy("handleNamed").handle(event);
+    }
+
+    @Test(expected = MotechException.class)
+    public void shouldFailWhenNamedParameterHasWrongType() throws Exception {
+        MotechEvent event = new MotechEvent("subject");
+        event.getParameters().put("id", "id0012");
+        event.getParameters().put("key", 1);
+
+        namedProxy("handleNamed").handle(event);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNamedHandlerWithUnannotatedParameterAtRegistration() throws Exception {
+        new MotechListenerNamedParametersProxy("handler", handler, method("handleOrdered", Integer.class, String.class));
+    }
+
+    private MotechListenerAbstractProxy proxy(String name, Class<?>... parameterTypes) throws Exception {
+        return new MotechListenerOrderedParametersProxy("handler", handler, method(name, parameterTypes));
+    }
+
+    private MotechListenerAbstractProxy namedProxy(String name) throws Exception {
+        return new MotechListenerNamedParametersProxy("handler", handler, method(name, String.class, String.class));
+    }
+
+    private static Method method(String name, Class<?>... parameterTypes) throws Exception {
+        return Handler.class.getDeclaredMethod(name, parameterTypes);
+    }
+
+    static class Handler {
+        MotechEvent event;
+        Object[] args;
+
+        void handleEvent(MotechEvent event) {
+            this.event = event;
+        }
+
+        void handleOrdered(Integer a, String s) {
+            args = new Object[]{a, s};
+        }
+
+        void handleNamed(@MotechParam("id") String id, @Deprecated @MotechParam("key") String key) {
+            args = new Object[]{id, key};
+        }
+    }
+}
@@ -4,14 +4,14 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.motechproject.model.Time;
+import org.motechproject.scheduler.CoalescedTriggers;
+import org.motechproject.scheduler.MotechSchedulerService;
 import org.motechproject.scheduletracking.api.contract.EnrollmentRequest;
 import org.motechproject.scheduletracking.api.dao.AllEnrollments;
 import org.motechproject.scheduletracking.api.dao.AllTrackedSchedules;
 import org.motechproject.scheduletracking.api.domain.enrollment.Enrollment;
-import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.quartz.SchedulerFactoryBean;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
@@ -23,6 +23,8 @@ import static org.junit.Assert.assertThat;
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(locations = {"classpath:testApplicationContext.xml"})
 public class ScheduleTrackingServiceIT {
+    private static final String JOB_GROUP = "scheduletracking";
+
     @Autowired
     private ScheduleTrackingService scheduleTrackingService;
     @Autowired
@@ -30,23 +32,21 @@ public class ScheduleTrackingServiceIT {
     @Autowired
     private AllTrackedSchedules allTrackedSchedules;
     @Autowired
-    private SchedulerFactoryBean schedulerFactoryBean;
+    private MotechSchedulerService schedulerService;
+    @Autowired
+    private CoalescedTriggers coalescedTriggers;
     private EnrollmentRequest enrollmentRequest;
-    private Scheduler scheduler;
     private int initialSize;
 
     @Before
     public void setup() throws SchedulerException {
         enrollmentRequest = new EnrollmentRequest("job_001", "IPTI Schedule", "sd", 1, new Time(1, 1));
-        scheduler = schedulerFactoryBean.getScheduler();
 
         for (Enrollment enrollment : allEnrollments.getAll()) {
             allEnrollments.remove(enrollment);
         }
 
-        for (String jobName : scheduler.getJobNames("default")) {
-            scheduler.deleteJob(jobName, "default");
-        }
+        schedulerService.unscheduleAllJobs("org.motechproject.scheduletracking");
     }
 
     @Test
@@ -58,7 +58,7 @@ public class ScheduleTrackingServiceIT {
     public void shouldEnrollSchedule() throws SchedulerException {
         scheduleTrackingService.enroll(enrollmentRequest);
         assertThat(allEnrollments.getAll().size(), is(equalTo(1)));
-        assertThat(scheduler.getJobNames("default").length, is(equalTo(1)));
+        assertThat(coalescedTriggers.size(JOB_GROUP), is(equalTo(1)));
     }
 
     @Test
@@ -67,6 +67,6 @@ public class ScheduleTrackingServiceIT {
         scheduleTrackingService.enroll(enrollmentRequest);
 
         assertThat(allEnrollments.getAll().size(), is(equalTo(1)));
-        assertThat(scheduler.getJobNames("default").length, is(equalTo(1)));
+        assertThat(coalescedTriggers.size(JOB_GROUP), is(equalTo(1)));
     }
 }